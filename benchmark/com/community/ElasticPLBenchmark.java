@@ -0,0 +1,270 @@
+package com.community;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+/**
+ * Throughput of every stage of the ElasticPL toolchain, run against the programs in benchmark/programs.
+ *
+ * Each stage mutates the parser state, so the input of a stage is rebuilt before every invocation by running the
+ * stages in front of it. Run with -prof gc (the default of run-benchmarks.sh) to get the allocation rate per stage.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ElasticPLBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Program {
+
+        @Param({"small", "wcet_limit", "deep_calls", "repeat_loops"})
+        public String program;
+
+        String source;
+
+        @Setup(Level.Trial)
+        public void load() throws IOException {
+            source = new String(Files.readAllBytes(Paths.get("benchmark/programs", program + ".epl")),
+                    StandardCharsets.UTF_8);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Tokenized {
+
+        Primitives.STATE state;
+
+        @Setup(Level.Invocation)
+        public void build(Program program) throws Exceptions.SyntaxErrorException {
+            TokenManager t = new TokenManager();
+            t.build_token_list(program.source);
+            state = t.state;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Parsed {
+
+        Primitives.STATE state;
+
+        @Setup(Level.Invocation)
+        public void build(Program program) throws Exceptions.SyntaxErrorException {
+            TokenManager t = new TokenManager();
+            t.build_token_list(program.source);
+            ASTBuilder.parse_token_list(t.state);
+            state = t.state;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Analyzed {
+
+        Primitives.STATE state;
+
+        @Setup(Level.Invocation)
+        public void build(Program program) throws Exceptions.SyntaxErrorException {
+            TokenManager t = new TokenManager();
+            t.build_token_list(program.source);
+            ASTBuilder.parse_token_list(t.state);
+            WCETCalculator.calc_wcet(t.state);
+            WCETCalculator.get_verify_wcet(t.state);
+            state = t.state;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Verify {
+
+        final byte[] publicKey = new byte[32];
+        final byte[] multiplier = new byte[32];
+        final int[] storage = new int[32];
+        final int[] validator = new int[32];
+        final int[] target = new int[4];
+        long workId;
+        String verifyCode;
+
+        @Setup(Level.Trial)
+        public void convert(Program program) throws Exception {
+            workId = program.program.hashCode();
+            verifyCode = Executor.checkCodeAndReturnVerify(program.source);
+        }
+    }
+
+    /**
+     * The verify script compiled to JVM classes by Rhino's optimizer, with the instruction counters generated into
+     * them. Validation cannot use it: the compiled code counts instructions differently from the interpreter, so
+     * whether a submission stays within INSTRUCTION_LIMIT would depend on the backend. It is only measured here.
+     */
+    static final class CompiledVerifier {
+
+        private final ContextFactory factory = new ContextFactory() {
+
+            @Override
+            protected Context makeContext() {
+                Context cx = super.makeContext();
+                cx.setOptimizationLevel(9);
+                cx.setGenerateObserverCount(true);
+                cx.setInstructionObserverThreshold(10000);
+                return cx;
+            }
+
+            @Override
+            protected void observeInstructionCount(Context cx, int instructionCount) {
+                // counted as in the sandbox, without a limit
+            }
+
+        };
+        private final int[] u = new int[VerifierContext.TEMP_ARRAY_SIZE];
+        private final int[] i = new int[VerifierContext.TEMP_ARRAY_SIZE];
+        private final float[] f = new float[VerifierContext.TEMP_ARRAY_SIZE];
+        private final double[] d = new double[VerifierContext.TEMP_ARRAY_SIZE];
+        private final ScriptableObject scope;
+        private final Script script;
+
+        CompiledVerifier(String code) {
+            Context cx = factory.enterContext();
+            try {
+                scope = cx.initStandardObjects();
+                put(scope, "u", u);
+                put(scope, "m", i);
+                put(scope, "f", f);
+                put(scope, "d", d);
+                put(scope, "ExposedToRhino", Executor.jsObj);
+                script = cx.compileString(code, "epl", 1, null);
+            } finally {
+                Context.exit();
+            }
+        }
+
+        private static void put(Scriptable scope, String name, Object value) {
+            scope.put(name, scope, Context.toObject(value, scope));
+        }
+
+        Object execute(int[] storage, int[] target, boolean verify_pow) {
+            Arrays.fill(u, 0);
+            Arrays.fill(i, 0);
+            Arrays.fill(f, 0);
+            Arrays.fill(d, 0);
+            Context cx = factory.enterContext();
+            try {
+                Scriptable instanceScope = cx.newObject(scope);
+                instanceScope.setPrototype(scope);
+                instanceScope.setParentScope(null);
+                put(instanceScope, "s", storage);
+                put(instanceScope, "target", target);
+                put(instanceScope, "verify_pow", verify_pow ? 1 : 0);
+                return script.exec(cx, instanceScope);
+            } finally {
+                Context.exit();
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Backend {
+
+        // "rhino" is the interpreter used for validation, "bytecode" the compiled CompiledVerifier
+        @Param({"rhino", "bytecode"})
+        public String backend;
+
+        Script script;
+        VerifierContext context;
+        CompiledVerifier compiled;
+
+        @Setup(Level.Trial)
+        public void compile(Verify verify) {
+            String code = verify.verifyCode + " verify(); function res(){ return [pow_found, bounty_found]; } res();";
+            if ("bytecode".equals(backend)) {
+                compiled = new CompiledVerifier(code);
+            } else {
+                script = Executor.newSandbox().compile("epl", code);
+                context = VerifierContext.get();
+            }
+        }
+
+        Object execute(Verify verify) {
+            if (compiled != null) {
+                return compiled.execute(verify.storage, verify.target, false);
+            }
+            return context.execute(script, verify.storage, verify.target, false);
+        }
+    }
+
+    @Benchmark
+    public Primitives.STATE tokenize(Program program) throws Exceptions.SyntaxErrorException {
+        TokenManager t = new TokenManager();
+        t.build_token_list(program.source);
+        return t.state;
+    }
+
+    @Benchmark
+    public Primitives.STATE parse(Tokenized input) throws Exceptions.SyntaxErrorException {
+        ASTBuilder.parse_token_list(input.state);
+        return input.state;
+    }
+
+    @Benchmark
+    public int calcWcet(Parsed input) throws Exceptions.SyntaxErrorException {
+        return WCETCalculator.calc_wcet(input.state) + WCETCalculator.get_verify_wcet(input.state);
+    }
+
+    @Benchmark
+    public Primitives.STATE convertVerify(Analyzed input) throws Exceptions.SyntaxErrorException {
+        CodeConverter.convert_verify(input.state);
+        return input.state;
+    }
+
+    // the complete validation path, using the interpreter and the compiled verify cache
+    @Benchmark
+    public Executor.CODE_RESULT executeCode(Verify verify) {
+        return Executor.executeCode(verify.publicKey, 0, verify.workId, verify.verifyCode, verify.multiplier,
+                verify.storage, verify.validator, false, verify.target);
+    }
+
+    // the script alone, on the backend given by the backend parameter
+    @Benchmark
+    public Object runVerify(Verify verify, Backend backend) {
+        return backend.execute(verify);
+    }
+
+}
@@ -0,0 +1,20 @@
+#!/bin/sh
+# Runs the JMH benchmarks in benchmark/ (ElasticPL toolchain stages against benchmark/programs).
+# JMH is not part of the distribution: put jmh-core, jmh-generator-annprocess, jopt-simple and
+# commons-math3 into benchlib/ first. Any arguments are passed on to JMH, e.g.
+#   ./run-benchmarks.sh ElasticPLBenchmark.runVerify -p program=wcet_limit
+CP=conf/:classes/:lib/*:benchlib/*
+SP=src/:benchmark/
+
+if ! ls benchlib/jmh-core-*.jar > /dev/null 2>&1; then
+    echo "JMH not found, please copy jmh-core, jmh-generator-annprocess, jopt-simple and commons-math3 into benchlib/"
+    exit 1
+fi
+
+/bin/rm -f elastic.jar
+/bin/rm -rf classes
+/bin/mkdir -p classes/
+
+javac -encoding utf8 -sourcepath ${SP} -classpath ${CP} -d classes/ src/nxt/*.java src/nxt/*/*.java benchmark/com/community/*.java || exit 1
+
+java -classpath ${CP} org.openjdk.jmh.Main -prof gc "$@"
@@ -2,10 +2,14 @@ package com.community;
 import nxt.Appendix;
 import nxt.crypto.Crypto;
 import nxt.util.Convert;
+import nxt.util.Logger;
 import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.Script;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.community.Constants.MAX_SOURCE_SIZE;
 import static java.security.MessageDigest.getInstance;
@@ -29,11 +33,16 @@ public class Executor {
 
 
     public static Object jsObj = new ExposedToRhino();
-    public static MessageDigest dig = null;
+    // submissions of one block may be verified concurrently, so every thread gets its own digest
+    private static final ThreadLocal<MessageDigest> dig = new ThreadLocal<>();
+
+    // Compiled verify programs, one per work id. They are built once (when the work is created or when the first
+    // submission is checked) and reused for every following pow/bounty validation of that work.
+    private static final Map<Long, CompiledVerify> compiledVerifyCache = new ConcurrentHashMap<>();
 
     static {
         try {
-            dig = getInstance("MD5");
+            getInstance("MD5");
         } catch (NoSuchAlgorithmException e) {
             // Should always work
             e.printStackTrace();
@@ -93,6 +102,11 @@ public class Executor {
     public static int[] personalizedIntStream(final byte[] publicKey, final long blockId, final byte[] multiplicator, final long workId) throws Exception {
         final int[] stream = new int[12];
 
+        MessageDigest dig = Executor.dig.get();
+        if (dig == null) {
+            dig = getInstance("MD5");
+            Executor.dig.set(dig);
+        }
         dig.reset();
         dig.update(multiplicator);
         dig.update(publicKey);
@@ -142,38 +156,14 @@ public class Executor {
         result.pow = false;
         result.error = false;
         try {
-            delight.rhinosandox.RhinoSandbox sandbox = delight.rhinosandox.RhinoSandboxes.create();
-            sandbox.setInstructionLimit(Constants.INSTRUCTION_LIMIT);
-            sandbox.setMaxDuration(Constants.SAFE_TIME_LIMIT);
-            sandbox.allow(ExposedToRhino.class);
-            sandbox.inject("s", storage); // todo, add extra elements to S[] as coralreefer proposed
-            sandbox.inject("target", target);
-            sandbox.inject("verify_pow", verify_pow?1:0);
-
-            // Inject temp arrays
+            // Temp arrays and the exposed POW functions live in the (reused) verifier context of this thread
             int[] m = personalizedIntStream(publicKey, blockId, multiplier, workId);
-            int[] u = new int[10000];
-            int[] i = new int[10000];
-            float[] f = new float[10000];
-            double[] d = new double[10000];
-            sandbox.inject("u", u);
-            sandbox.inject("m", i);
-            sandbox.inject("f", f);
-            sandbox.inject("d", d);
-
-
-            // Add native java object for Rhino exposed POW functions
-            sandbox.inject("ExposedToRhino", jsObj);
-
-            String vcode = verifyCode + " verify(); function res(){ return [pow_found, " +
-                    "bounty_found]; } " +
-                    "res();";
-            //System.out.println(vcode); // todo, comment in to see what code is being executed
 
-            org.mozilla.javascript.NativeArray array = (NativeArray) sandbox.eval("epl", vcode);
+            Script script = getCompiledVerify(workId, verifyCode);
+            org.mozilla.javascript.NativeArray array = (NativeArray) VerifierContext.get()
+                    .execute(script, storage, target, verify_pow);
             double p = (double) array.get(0);
             double b = (double) array.get(1);
-            System.out.println(p + ", " + b);
 
             result.bty = b==1.0;
             result.pow = p==1.0;
@@ -188,6 +178,45 @@ public class Executor {
         }
     }
 
+    public static void precompileVerify(final long workId, final String verifyCode) {
+        try {
+            getCompiledVerify(workId, verifyCode);
+        } catch (Exception e) {
+            // Will be retried (and fail the submission) on first use
+            Logger.logDebugMessage("Failed to precompile verify function of work " + Long.toUnsignedString(workId), e);
+        }
+    }
+
+    public static void evictCompiledVerify(final long workId) {
+        compiledVerifyCache.remove(workId);
+    }
+
+    public static void clearCompiledVerify() {
+        compiledVerifyCache.clear();
+    }
+
+    static delight.rhinosandox.RhinoSandbox newSandbox() {
+        delight.rhinosandox.RhinoSandbox sandbox = delight.rhinosandox.RhinoSandboxes.create();
+        sandbox.setInstructionLimit(Constants.INSTRUCTION_LIMIT);
+        sandbox.setMaxDuration(Constants.SAFE_TIME_LIMIT);
+        return sandbox;
+    }
+
+    private static Script getCompiledVerify(final long workId, final String verifyCode) {
+        CompiledVerify compiled = compiledVerifyCache.get(workId);
+        if (compiled == null || !compiled.matches(verifyCode)) {
+            String vcode = verifyCode + " verify(); function res(){ return [pow_found, " +
+                    "bounty_found]; } " +
+                    "res();";
+            //System.out.println(vcode); // todo, comment in to see what code is being executed
+
+            Script script = newSandbox().compile("epl", vcode);
+            compiled = new CompiledVerify(verifyCode, script);
+            compiledVerifyCache.put(workId, compiled);
+        }
+        return compiled.script;
+    }
+
     public static int checkCodeAndReturnStorageSize(String elasticPL) throws Exceptions.SyntaxErrorException {
         if(elasticPL.length()>MAX_SOURCE_SIZE) throw new Exceptions.SyntaxErrorException("Code length exceeded");
         TokenManager t = new TokenManager();
@@ -210,6 +239,22 @@ public class Executor {
         return t.state.ast_submit_sz;
     }
 
+    private static class CompiledVerify {
+        private final int sourceLength;
+        private final int sourceHash;
+        private final Script script;
+
+        private CompiledVerify(final String verifyCode, final Script script) {
+            this.sourceLength = verifyCode.length();
+            this.sourceHash = verifyCode.hashCode();
+            this.script = script;
+        }
+
+        private boolean matches(final String verifyCode) {
+            return verifyCode.length() == sourceLength && verifyCode.hashCode() == sourceHash;
+        }
+    }
+
     public static class CODE_RESULT {
         public boolean pow;
         public boolean bty;
@@ -0,0 +1,80 @@
+package com.community;
+
+import delight.rhinosandox.RhinoSandbox;
+import org.mozilla.javascript.Script;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+/**
+ * Per-thread verifier state: one sandbox whose sealed global scope holds the temp arrays and the exposed
+ * pow functions, so that a verification only has to reset the arrays and bind the per-submission values.
+ */
+final class VerifierContext {
+
+    static final int TEMP_ARRAY_SIZE = 10000;
+
+    private static final ThreadLocal<VerifierContext> contexts = new ThreadLocal<>();
+
+    static VerifierContext get() {
+        VerifierContext context = contexts.get();
+        if (context == null) {
+            context = new VerifierContext();
+            contexts.set(context);
+        }
+        return context;
+    }
+
+    private final RhinoSandbox sandbox;
+    private final int[] u = new int[TEMP_ARRAY_SIZE];
+    private final int[] i = new int[TEMP_ARRAY_SIZE];
+    private final float[] f = new float[TEMP_ARRAY_SIZE];
+    private final double[] d = new double[TEMP_ARRAY_SIZE];
+    private final Map<String, Object> variables = new HashMap<>();
+
+    private VerifierContext() {
+        this.sandbox = Executor.newSandbox();
+        sandbox.allow(ExposedToRhino.class);
+        sandbox.inject("u", u);
+        sandbox.inject("m", i);
+        sandbox.inject("f", f);
+        sandbox.inject("d", d);
+
+        // Add native java object for Rhino exposed POW functions
+        sandbox.inject("ExposedToRhino", Executor.jsObj);
+    }
+
+    Object execute(final Script script, final int[] storage, final int[] target, final boolean verify_pow) {
+        // the previous run may have left anything in here, even if it was aborted halfway through
+        Arrays.fill(u, 0);
+        Arrays.fill(i, 0);
+        Arrays.fill(f, 0);
+        Arrays.fill(d, 0);
+
+        variables.put("s", storage); // todo, add extra elements to S[] as coralreefer proposed
+        variables.put("target", target);
+        variables.put("verify_pow", verify_pow ? 1 : 0);
+        try {
+            return sandbox.exec(script, variables);
+        } finally {
+            variables.clear();
+        }
+    }
+}
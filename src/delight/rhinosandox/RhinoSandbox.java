@@ -1,6 +1,7 @@
 package delight.rhinosandox;
 
 import java.util.Map;
+import org.mozilla.javascript.Script;
 import org.mozilla.javascript.ScriptableObject;
 
 @SuppressWarnings("all")
@@ -58,4 +59,14 @@ public interface RhinoSandbox {
    * <p><code>variables</code> defines variables with Java objects which will be available for the execution of this script.
    */
   public abstract Object eval(final String soureName, final String js, final Map<String, Object> variables);
+  
+  /**
+   * Compiles a script once so that it can be executed many times using {@link #exec(Script, Map)}.
+   */
+  public abstract Script compile(final String sourceName, final String js);
+  
+  /**
+   * <p>Executes a previously compiled script with its own scope, just like {@link #eval(String, String, Map)}.
+   */
+  public abstract Object exec(final Script script, final Map<String, Object> variables);
 }
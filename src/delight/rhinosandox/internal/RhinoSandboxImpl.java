@@ -10,6 +10,7 @@ import java.util.Set;
 import org.eclipse.xtext.xbase.lib.Exceptions;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Script;
 import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.ScriptableObject;
 
@@ -75,6 +76,13 @@ public class RhinoSandboxImpl implements RhinoSandbox {
   }
   
   public void assertSafeScope(final Context context) {
+    final SafeContext.CountContext mcx = ((SafeContext.CountContext) context);
+    if (((!this.useSafeStandardObjects) && (!mcx.restricted))) {
+      mcx.restricted = true;
+      context.setClassShutter(this.classShutter);
+      SafeWrapFactory _safeWrapFactory = new SafeWrapFactory();
+      context.setWrapFactory(_safeWrapFactory);
+    }
     boolean _notEquals = (!Objects.equal(this.safeScope, null));
     if (_notEquals) {
       return;
@@ -84,9 +92,6 @@ public class RhinoSandboxImpl implements RhinoSandbox {
       this.safeScope = _initSafeStandardObjects;
       return;
     }
-    context.setClassShutter(this.classShutter);
-    SafeWrapFactory _safeWrapFactory = new SafeWrapFactory();
-    context.setWrapFactory(_safeWrapFactory);
     this.safeScope = this.globalScope;
   }
   
@@ -110,27 +115,59 @@ public class RhinoSandboxImpl implements RhinoSandbox {
       if (this.sealScope) {
         this.globalScope.sealObject();
       }
-      final Scriptable instanceScope = context.newObject(this.safeScope);
-      instanceScope.setPrototype(this.safeScope);
-      instanceScope.setParentScope(null);
-      Set<Map.Entry<String, Object>> _entrySet = variables.entrySet();
-      for (final Map.Entry<String, Object> entry : _entrySet) {
-        {
-          Object _value = entry.getValue();
-          Class<?> _class = _value.getClass();
-          this.allow(_class);
-          String _key = entry.getKey();
-          Object _value_1 = entry.getValue();
-          Scriptable _object = Context.toObject(_value_1, instanceScope);
-          instanceScope.put(_key, instanceScope, _object);
-        }
-      }
+      final Scriptable instanceScope = this.newInstanceScope(context, variables);
       return context.evaluateString(instanceScope, js, sourceName, 1, null);
     } finally {
       Context.exit();
     }
   }
   
+  @Override
+  public Script compile(final String sourceName, final String js) {
+    this.assertContextFactory();
+    try {
+      final Context context = this.contextFactory.enterContext();
+      return context.compileString(js, sourceName, 1, null);
+    } finally {
+      Context.exit();
+    }
+  }
+  
+  @Override
+  public Object exec(final Script script, final Map<String, Object> variables) {
+    this.assertContextFactory();
+    try {
+      final Context context = this.contextFactory.enterContext();
+      this.assertSafeScope(context);
+      if (this.sealScope) {
+        this.globalScope.sealObject();
+      }
+      final Scriptable instanceScope = this.newInstanceScope(context, variables);
+      return script.exec(context, instanceScope);
+    } finally {
+      Context.exit();
+    }
+  }
+  
+  private Scriptable newInstanceScope(final Context context, final Map<String, Object> variables) {
+    final Scriptable instanceScope = context.newObject(this.safeScope);
+    instanceScope.setPrototype(this.safeScope);
+    instanceScope.setParentScope(null);
+    Set<Map.Entry<String, Object>> _entrySet = variables.entrySet();
+    for (final Map.Entry<String, Object> entry : _entrySet) {
+      {
+        Object _value = entry.getValue();
+        Class<?> _class = _value.getClass();
+        this.allow(_class);
+        String _key = entry.getKey();
+        Object _value_1 = entry.getValue();
+        Scriptable _object = Context.toObject(_value_1, instanceScope);
+        instanceScope.put(_key, instanceScope, _object);
+      }
+    }
+    return instanceScope;
+  }
+  
   @Override
   public Object eval(final String sourceName, final String js) {
     HashMap<String, Object> _hashMap = new HashMap<String, Object>();
@@ -19,6 +19,8 @@ public class SafeContext extends ContextFactory {
     private long startTime;
     
     private long instructions;
+    
+    boolean restricted;
   }
   
   private final static int INSTRUCTION_STEPS = 10000;
@@ -26,6 +26,7 @@ import nxt.db.DbIterator;
 import nxt.db.DbKey;
 import nxt.db.DbUtils;
 import nxt.db.DerivedDbTable;
+import nxt.db.EntityCodec;
 import nxt.db.VersionedEntityDbTable;
 import nxt.db.VersionedPersistentDbTable;
 import nxt.util.Convert;
@@ -33,15 +34,19 @@ import nxt.util.Listener;
 import nxt.util.Listeners;
 import nxt.util.Logger;
 
+import java.nio.ByteBuffer;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -327,7 +332,21 @@ public final class Account {
 
     };
 
-    private static final VersionedEntityDbTable<Account> accountTable = new VersionedEntityDbTable<Account>("account", accountDbKeyFactory) {
+    static final EntityCodec<Account> accountCodec = new EntityCodec<Account>() {
+
+        @Override
+        public byte[] encode(Account account) {
+            return account.toBytes();
+        }
+
+        @Override
+        public Account decode(DbKey dbKey, ByteBuffer buffer) {
+            return new Account(buffer, dbKey);
+        }
+
+    };
+
+    private static final VersionedEntityDbTable<Account> accountTable = new VersionedEntityDbTable<Account>("account", accountDbKeyFactory, accountCodec) {
 
         @Override
         protected Account load(Connection con, ResultSet rs, DbKey dbKey) throws SQLException {
@@ -633,7 +652,7 @@ public final class Account {
     private static DbIterator<AccountLease> getLeaseChangingAccounts(final int height) {
         Connection con = null;
         try {
-            con = Db.db.getConnection();
+            con = accountLeaseTable.getConnection();
             PreparedStatement pstmt = con.prepareStatement(
                     "SELECT * FROM account_lease WHERE current_leasing_height_from = ? AND latest = TRUE "
                             + "UNION ALL SELECT * FROM account_lease WHERE current_leasing_height_to = ? AND latest = TRUE "
@@ -749,6 +768,26 @@ public final class Account {
         }
     }
 
+    private Account(ByteBuffer buffer, DbKey dbKey) {
+        this.id = buffer.getLong();
+        this.dbKey = dbKey;
+        this.balanceNQT = buffer.getLong();
+        this.unconfirmedBalanceNQT = buffer.getLong();
+        this.forgedBalanceNQT = buffer.getLong();
+        this.activeLesseeId = buffer.getLong();
+        if (buffer.get() != 0) {
+            controls = Collections.unmodifiableSet(EnumSet.of(ControlType.PHASING_ONLY));
+        } else {
+            controls = Collections.emptySet();
+        }
+    }
+
+    private byte[] toBytes() {
+        return ByteBuffer.allocate(41).putLong(id).putLong(balanceNQT).putLong(unconfirmedBalanceNQT)
+                .putLong(forgedBalanceNQT).putLong(activeLesseeId)
+                .put((byte)(controls.contains(ControlType.PHASING_ONLY) ? 1 : 0)).array();
+    }
+
     private void save(Connection con) throws SQLException {
         try (PreparedStatement pstmt = con.prepareStatement("MERGE INTO account (id, "
                 + "balance, unconfirmed_balance, forged_balance, "
@@ -872,6 +911,95 @@ public final class Account {
         }
     }
 
+    /**
+     * Get the effective balances of several accounts, reading the accounts, their lessors and their guaranteed
+     * balance additions with one query each
+     *
+     * @param   accountIds          Account identifiers
+     * @param   height              Blockchain height
+     * @return                      Effective balance in NXT of each account, 0 if the account does not exist
+     */
+    static Map<Long, Long> getEffectiveBalancesNXT(Collection<Long> accountIds, int height) {
+        Map<Long, Long> result = new HashMap<>();
+        if (accountIds.isEmpty()) {
+            return result;
+        }
+        Nxt.getBlockchain().readLock();
+        try {
+            if (height < Constants.TRANSPARENT_FORGING_BLOCK_3 || height <= Constants.GUARANTEED_BALANCE_CONFIRMATIONS) {
+                for (long accountId : accountIds) {
+                    Account account = getAccount(accountId, height);
+                    result.put(accountId, account == null ? 0 : Math.max(account.getEffectiveBalanceNXT(height), 0));
+                }
+                return result;
+            }
+            int guaranteedHeight = height - Constants.GUARANTEED_BALANCE_CONFIRMATIONS;
+            if (guaranteedHeight + Constants.GUARANTEED_BALANCE_CONFIRMATIONS < Nxt.getBlockchainProcessor().getMinRollbackHeight()
+                    || guaranteedHeight > Nxt.getBlockchain().getHeight()) {
+                throw new IllegalArgumentException("Height " + guaranteedHeight + " not available for guaranteed balance calculation");
+            }
+            Long[] ids = accountIds.toArray(new Long[accountIds.size()]);
+            List<Account> accounts = new ArrayList<>();
+            try (DbIterator<Account> iterator = accountTable.getManyBy(new DbClause.LongsClause("id", ids), height, 0, -1, "")) {
+                iterator.forEachRemaining(accounts::add);
+            }
+            List<Account> lessors = new ArrayList<>();
+            try (DbIterator<Account> iterator = accountTable.getManyBy(new DbClause.LongsClause("active_lessee_id", ids), height, 0, -1, "")) {
+                iterator.forEachRemaining(lessors::add);
+            }
+            Long[] guaranteedIds = new Long[accounts.size() + lessors.size()];
+            for (int i = 0; i < accounts.size(); i++) {
+                guaranteedIds[i] = accounts.get(i).id;
+            }
+            for (int i = 0; i < lessors.size(); i++) {
+                guaranteedIds[accounts.size() + i] = lessors.get(i).id;
+            }
+            Map<Long, Long> additions = new HashMap<>();
+            try (Connection con = Db.db.getConnection();
+                 PreparedStatement pstmt = con.prepareStatement("SELECT account_id, SUM (additions) AS additions "
+                         + "FROM account_guaranteed_balance WHERE account_id IN (SELECT * FROM TABLE (x BIGINT = ?)) "
+                         + "AND height > ? AND height <= ? GROUP BY account_id")) {
+                pstmt.setObject(1, guaranteedIds);
+                pstmt.setInt(2, guaranteedHeight);
+                pstmt.setInt(3, height);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        additions.put(rs.getLong("account_id"), rs.getLong("additions"));
+                    }
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e.toString(), e);
+            }
+            Map<Long, Long> guaranteedBalances = new HashMap<>();
+            for (Account account : accounts) {
+                guaranteedBalances.put(account.id, account.activeLesseeId != 0 ? 0
+                        : Math.max(Math.subtractExact(account.balanceNQT, additions.getOrDefault(account.id, 0L)), 0));
+            }
+            Map<Long, Long> leasedBalances = new HashMap<>();
+            for (Account lessor : lessors) {
+                leasedBalances.merge(lessor.activeLesseeId,
+                        Math.max(lessor.balanceNQT - additions.getOrDefault(lessor.id, 0L), 0), Long::sum);
+            }
+            for (long accountId : accountIds) {
+                Long guaranteedBalanceNQT = guaranteedBalances.get(accountId);
+                if (guaranteedBalanceNQT == null) {
+                    //
+                    // No account row, the account may still exist through its public key
+                    //
+                    Account account = getAccount(accountId, height);
+                    result.put(accountId, account == null ? 0 : Math.max(account.getEffectiveBalanceNXT(height), 0));
+                    continue;
+                }
+                long effectiveBalanceNQT = guaranteedBalanceNQT + leasedBalances.getOrDefault(accountId, 0L);
+                result.put(accountId, (height > Constants.SHUFFLING_BLOCK && effectiveBalanceNQT < Constants.MIN_FORGING_BALANCE_NQT) ? 0
+                        : effectiveBalanceNQT / Constants.ONE_NXT);
+            }
+            return result;
+        } finally {
+            Nxt.getBlockchain().readUnlock();
+        }
+    }
+
     private long getLessorsGuaranteedBalanceNQT(int height) {
         List<Account> lessors = new ArrayList<>();
         try (DbIterator<Account> iterator = getLessors(height)) {
@@ -0,0 +1,146 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt;
+
+import nxt.util.Convert;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Binary encoding of blocks and transactions for peers advertising {@link nxt.peer.Peer.Service#BINARY_BLOCKS}.
+ *
+ * A transaction record is its signed bytes followed by its prunable attachment JSON, which the bytes only reference
+ * by hash. A block record is the signed block bytes followed by the records of its transactions. All lengths are
+ * little-endian ints, as in the signed bytes, and a record is carried in the JSON request as a Base64 string.
+ */
+public final class BinaryFormat {
+
+    public static String encodeBlock(Block block) {
+        byte[] blockBytes = block.getBytes();
+        List<byte[]> transactions = new ArrayList<>(block.getTransactions().size());
+        int size = 4 + blockBytes.length + 4;
+        for (Transaction transaction : block.getTransactions()) {
+            byte[] transactionBytes = transactionBytes(transaction);
+            transactions.add(transactionBytes);
+            size += transactionBytes.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(blockBytes.length);
+        buffer.put(blockBytes);
+        buffer.putInt(transactions.size());
+        transactions.forEach(buffer::put);
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+    public static String encodeTransaction(Transaction transaction) {
+        return Base64.getEncoder().encodeToString(transactionBytes(transaction));
+    }
+
+    static BlockImpl parseBlock(String blockData) throws NxtException.NotValidException {
+        ByteBuffer buffer = wrap(blockData);
+        try {
+            byte[] blockBytes = readBytes(buffer);
+            int transactionCount = buffer.getInt();
+            if (transactionCount < 0 || transactionCount > Constants.MAX_NUMBER_OF_TRANSACTIONS) {
+                throw new NxtException.NotValidException("Invalid transaction count " + transactionCount);
+            }
+            List<TransactionImpl> blockTransactions = new ArrayList<>(transactionCount);
+            for (int i = 0; i < transactionCount; i++) {
+                blockTransactions.add(parseTransaction(buffer));
+            }
+            checkConsumed(buffer);
+            return BlockImpl.parseBlock(blockBytes, blockTransactions);
+        } catch (BufferUnderflowException e) {
+            throw new NxtException.NotValidException("Truncated block data", e);
+        }
+    }
+
+    static TransactionImpl parseTransaction(String transactionData) throws NxtException.NotValidException {
+        ByteBuffer buffer = wrap(transactionData);
+        try {
+            TransactionImpl transaction = parseTransaction(buffer);
+            checkConsumed(buffer);
+            return transaction;
+        } catch (BufferUnderflowException e) {
+            throw new NxtException.NotValidException("Truncated transaction data", e);
+        }
+    }
+
+    private static byte[] transactionBytes(Transaction transaction) {
+        byte[] bytes = transaction.getBytes();
+        JSONObject prunableAttachments = transaction.getPrunableAttachmentJSON();
+        byte[] prunableBytes = prunableAttachments == null ? Convert.EMPTY_BYTE : Convert.toBytes(prunableAttachments.toJSONString());
+        ByteBuffer buffer = ByteBuffer.allocate(4 + bytes.length + 4 + prunableBytes.length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+        buffer.putInt(prunableBytes.length);
+        buffer.put(prunableBytes);
+        return buffer.array();
+    }
+
+    private static TransactionImpl parseTransaction(ByteBuffer buffer) throws NxtException.NotValidException {
+        byte[] bytes = readBytes(buffer);
+        byte[] prunableBytes = readBytes(buffer);
+        JSONObject prunableAttachments = null;
+        if (prunableBytes.length > 0) {
+            Object json = JSONValue.parse(Convert.toString(prunableBytes));
+            if (!(json instanceof JSONObject)) {
+                throw new NxtException.NotValidException("Invalid prunable attachment data");
+            }
+            prunableAttachments = (JSONObject) json;
+        }
+        return TransactionImpl.parseTransaction(bytes, prunableAttachments);
+    }
+
+    private static ByteBuffer wrap(String data) throws NxtException.NotValidException {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(data));
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        } catch (IllegalArgumentException e) {
+            throw new NxtException.NotValidException("Invalid Base64 data", e);
+        }
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) throws NxtException.NotValidException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new NxtException.NotValidException("Invalid record length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static void checkConsumed(ByteBuffer buffer) throws NxtException.NotValidException {
+        if (buffer.hasRemaining()) {
+            throw new NxtException.NotValidException("Trailing " + buffer.remaining() + " bytes after record");
+        }
+    }
+
+    private BinaryFormat() {}
+
+}
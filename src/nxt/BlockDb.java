@@ -18,6 +18,7 @@ package nxt;
 
 import nxt.db.DbUtils;
 import nxt.util.Logger;
+import nxt.util.LruCache;
 
 import java.math.BigInteger;
 import java.sql.Connection;
@@ -25,21 +26,28 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 final class BlockDb {
 
-    /** Block cache */
+    /** Block cache, the BLOCK_CACHE_SIZE blocks at the tip and their transactions */
     static final int BLOCK_CACHE_SIZE = 10;
-    static final Map<Long, BlockImpl> blockCache = new HashMap<>();
-    static final SortedMap<Integer, BlockImpl> heightMap = new TreeMap<>();
-    static final Map<Long, TransactionImpl> transactionCache = new HashMap<>();
+    static final Map<Long, BlockImpl> blockCache = new ConcurrentHashMap<>();
+    static final SortedMap<Integer, BlockImpl> heightMap = new ConcurrentSkipListMap<>();
+    static final Map<Long, TransactionImpl> transactionCache = new ConcurrentHashMap<>();
+    /** Least recently used blocks and transactions behind the tip */
+    static final LruCache<Long, BlockImpl> lruBlockCache = new LruCache<>(Nxt.getIntProperty("nxt.blockCacheSize"),
+            Nxt.getIntProperty("nxt.blockCacheMB") * 1024L * 1024L, block -> 256 + block.getPayloadLength());
+    static final LruCache<Integer, Long> lruHeightCache = new LruCache<>(Nxt.getIntProperty("nxt.blockCacheSize"),
+            Long.MAX_VALUE, blockId -> 0);
+    static final LruCache<Long, TransactionImpl> lruTransactionCache = new LruCache<>(Nxt.getIntProperty("nxt.transactionCacheSize"),
+            Nxt.getIntProperty("nxt.transactionCacheMB") * 1024L * 1024L, transaction -> 256 + transaction.getFullSize());
     static final Blockchain blockchain = Nxt.getBlockchain();
     static {
         Nxt.getBlockchainProcessor().addListener((block) -> {
@@ -47,12 +55,18 @@ final class BlockDb {
                 int height = block.getHeight();
                 Iterator<BlockImpl> it = blockCache.values().iterator();
                 while (it.hasNext()) {
-                    Block cacheBlock = it.next();
+                    BlockImpl cacheBlock = it.next();
                     int cacheHeight = cacheBlock.getHeight();
                     if (cacheHeight <= height - BLOCK_CACHE_SIZE || cacheHeight >= height) {
                         cacheBlock.getTransactions().forEach((tx) -> transactionCache.remove(tx.getId()));
                         heightMap.remove(cacheHeight);
                         it.remove();
+                        if (cacheHeight < height) {
+                            int generation = lruBlockCache.getGeneration();
+                            cacheBlock(cacheBlock, generation, lruHeightCache.getGeneration());
+                            cacheBlock.getTransactions().forEach((tx) ->
+                                    lruTransactionCache.put(tx.getId(), tx, lruTransactionCache.getGeneration()));
+                        }
                     }
                 }
                 block.getTransactions().forEach((tx) -> transactionCache.put(tx.getId(), (TransactionImpl)tx));
@@ -67,25 +81,60 @@ final class BlockDb {
             blockCache.clear();
             heightMap.clear();
             transactionCache.clear();
+            lruBlockCache.clear();
+            lruHeightCache.clear();
+            lruTransactionCache.clear();
+        }
+    }
+
+    static TransactionImpl findCachedTransaction(long transactionId) {
+        TransactionImpl transaction = transactionCache.get(transactionId);
+        return transaction != null ? transaction : lruTransactionCache.get(transactionId);
+    }
+
+    static TransactionImpl cacheTransaction(TransactionImpl transaction, int generation) {
+        if (!Db.db.isInTransaction()) {
+            lruTransactionCache.put(transaction.getId(), transaction, generation);
+        }
+        return transaction;
+    }
+
+    static void removeCachedTransaction(long transactionId) {
+        transactionCache.remove(transactionId);
+        lruTransactionCache.remove(transactionId);
+    }
+
+    /**
+     * Add a block read from the database to the least recently used cache. The next block id of the last block is
+     * updated when a block is pushed, so only blocks with a successor are cached, and nothing read within a database
+     * transaction is cached as it could still be rolled back.
+     */
+    private static void cacheBlock(BlockImpl block, int generation, int heightGeneration) {
+        if (block != null && block.getNextBlockId() != 0 && !Db.db.isInTransaction()) {
+            lruBlockCache.put(block.getId(), block, generation);
+            lruHeightCache.put(block.getHeight(), block.getId(), heightGeneration);
         }
     }
 
     static BlockImpl findBlock(long blockId) {
         // Check the block cache
-        synchronized (blockCache) {
-            BlockImpl block = blockCache.get(blockId);
-            if (block != null) {
-                return block;
-            }
+        BlockImpl block = blockCache.get(blockId);
+        if (block == null) {
+            block = lruBlockCache.get(blockId);
+        }
+        if (block != null) {
+            return block;
         }
         // Search the database
+        int generation = lruBlockCache.getGeneration();
+        int heightGeneration = lruHeightCache.getGeneration();
         try (Connection con = Db.db.getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT * FROM block WHERE id = ?")) {
             pstmt.setLong(1, blockId);
             try (ResultSet rs = pstmt.executeQuery()) {
-                BlockImpl block = null;
                 if (rs.next()) {
                     block = loadBlock(con, rs);
+                    cacheBlock(block, generation, heightGeneration);
                 }
                 return block;
             }
@@ -100,11 +149,12 @@ final class BlockDb {
 
     static boolean hasBlock(long blockId, int height) {
         // Check the block cache
-        synchronized(blockCache) {
-            BlockImpl block = blockCache.get(blockId);
-            if (block != null) {
-                return block.getHeight() <= height;
-            }
+        BlockImpl block = blockCache.get(blockId);
+        if (block == null) {
+            block = lruBlockCache.get(blockId);
+        }
+        if (block != null) {
+            return block.getHeight() <= height;
         }
         // Search the database
         try (Connection con = Db.db.getConnection();
@@ -120,21 +170,28 @@ final class BlockDb {
 
     static long findBlockIdAtHeight(int height) {
         // Check the cache
-        synchronized(blockCache) {
-            BlockImpl block = heightMap.get(height);
-            if (block != null) {
-                return block.getId();
-            }
+        BlockImpl block = heightMap.get(height);
+        if (block != null) {
+            return block.getId();
+        }
+        Long blockId = lruHeightCache.get(height);
+        if (blockId != null) {
+            return blockId;
         }
         // Search the database
+        int generation = lruHeightCache.getGeneration();
         try (Connection con = Db.db.getConnection();
-             PreparedStatement pstmt = con.prepareStatement("SELECT id FROM block WHERE height = ?")) {
+             PreparedStatement pstmt = con.prepareStatement("SELECT id, next_block_id FROM block WHERE height = ?")) {
             pstmt.setInt(1, height);
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (!rs.next()) {
                     throw new RuntimeException("Block at height " + height + " not found in database!");
                 }
-                return rs.getLong("id");
+                long id = rs.getLong("id");
+                if (rs.getLong("next_block_id") != 0 && !Db.db.isInTransaction()) {
+                    lruHeightCache.put(height, id, generation);
+                }
+                return id;
             }
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
@@ -143,20 +200,27 @@ final class BlockDb {
 
     static BlockImpl findBlockAtHeight(int height) {
         // Check the cache
-        synchronized(blockCache) {
-            BlockImpl block = heightMap.get(height);
+        BlockImpl block = heightMap.get(height);
+        if (block != null) {
+            return block;
+        }
+        Long blockId = lruHeightCache.get(height);
+        if (blockId != null) {
+            block = lruBlockCache.get(blockId);
             if (block != null) {
                 return block;
             }
         }
         // Search the database
+        int generation = lruBlockCache.getGeneration();
+        int heightGeneration = lruHeightCache.getGeneration();
         try (Connection con = Db.db.getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT * FROM block WHERE height = ?")) {
             pstmt.setInt(1, height);
             try (ResultSet rs = pstmt.executeQuery()) {
-                BlockImpl block;
                 if (rs.next()) {
                     block = loadBlock(con, rs);
+                    cacheBlock(block, generation, heightGeneration);
                 } else {
                     throw new RuntimeException("Block at height " + height + " not found in database!");
                 }
@@ -278,10 +342,7 @@ final class BlockDb {
                     pstmt.setLong(2, block.getPreviousBlockId());
                     pstmt.executeUpdate();
                 }
-                BlockImpl previousBlock;
-                synchronized (blockCache) {
-                    previousBlock = blockCache.get(block.getPreviousBlockId());
-                }
+                BlockImpl previousBlock = blockCache.get(block.getPreviousBlockId());
                 if (previousBlock != null) {
                     previousBlock.setNextBlockId(block.getId());
                 }
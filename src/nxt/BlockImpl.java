@@ -318,6 +318,56 @@ final class BlockImpl implements Block {
         }
     }
 
+    static BlockImpl parseBlock(byte[] blockBytes, List<TransactionImpl> blockTransactions) throws NxtException.NotValidException {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(blockBytes);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            int version = buffer.getInt();
+            int timestamp = buffer.getInt();
+            long previousBlock = buffer.getLong();
+            int transactionCount = buffer.getInt();
+            long totalAmountNQT;
+            long totalFeeNQT;
+            if (version < 3) {
+                totalAmountNQT = buffer.getInt() * Constants.ONE_NXT;
+                totalFeeNQT = buffer.getInt() * Constants.ONE_NXT;
+            } else {
+                totalAmountNQT = buffer.getLong();
+                totalFeeNQT = buffer.getLong();
+            }
+            int payloadLength = buffer.getInt();
+            byte[] payloadHash = new byte[32];
+            buffer.get(payloadHash);
+            byte[] generatorPublicKey = new byte[32];
+            buffer.get(generatorPublicKey);
+            byte[] generationSignature = new byte[32];
+            buffer.get(generationSignature);
+            byte[] previousBlockHash = null;
+            if (version > 1) {
+                previousBlockHash = new byte[32];
+                buffer.get(previousBlockHash);
+            }
+            byte[] blockSignature = new byte[64];
+            buffer.get(blockSignature);
+            if (buffer.hasRemaining()) {
+                throw new NxtException.NotValidException("Block bytes too long, " + buffer.remaining() + " extra bytes");
+            }
+            if (transactionCount != blockTransactions.size()) {
+                throw new NxtException.NotValidException("Block declares " + transactionCount + " transactions, received "
+                        + blockTransactions.size());
+            }
+            BlockImpl block = new BlockImpl(version, timestamp, previousBlock, totalAmountNQT, totalFeeNQT, payloadLength, payloadHash, generatorPublicKey,
+                    generationSignature, blockSignature, previousBlockHash, blockTransactions);
+            if (!block.checkSignature()) {
+                throw new NxtException.NotValidException("Invalid block signature");
+            }
+            return block;
+        } catch (NxtException.NotValidException|RuntimeException e) {
+            Logger.logDebugMessage("Failed to parse block: " + Convert.toHexString(blockBytes));
+            throw e;
+        }
+    }
+
     @Override
     public byte[] getBytes() {
         return Arrays.copyOf(bytes(), bytes.length);
@@ -363,6 +413,13 @@ final class BlockImpl implements Block {
 
     private volatile boolean hasValidSignature = false;
 
+    // Checks the block and transaction signatures of a block loaded from the database ahead of its validation, where
+    // the valid verdicts are then found cached.  A parsed block had its signatures checked by the parser already.
+    void preverifySignatures() {
+        checkSignature();
+        getTransactions().forEach(TransactionImpl::preverifySignature);
+    }
+
     private boolean checkSignature() {
         if (! hasValidSignature) {
             byte[] data = Arrays.copyOf(bytes(), bytes.length - 64);
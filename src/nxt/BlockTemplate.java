@@ -0,0 +1,250 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt;
+
+import nxt.util.Convert;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Candidate transactions for the next block, ranked by fee per byte.
+ *
+ * A transaction referencing another one can only be included once the referenced transaction is in an earlier block,
+ * so a chained work package is confirmed one link per block. Each includable transaction is therefore ranked by the
+ * fee per byte of its whole package, itself and the unconfirmed transactions chained to it, so a package which was
+ * started keeps its rank until its last link is confirmed instead of being overtaken by newer transactions.
+ *
+ * The ranking is rebuilt when the last block changes. For the same last block it follows the changes of the
+ * unconfirmed pool, so only the transactions added or removed and the packages they belong to are ranked again. The
+ * generator thread refreshes it before the hit time arrives.
+ */
+final class BlockTemplate {
+
+    private static final class Candidate {
+        private final UnconfirmedTransaction transaction;
+        private final long packageFeePerByte;
+
+        private Candidate(UnconfirmedTransaction transaction, long packageFeePerByte) {
+            this.transaction = transaction;
+            this.packageFeePerByte = packageFeePerByte;
+        }
+    }
+
+    /** Best package fee per byte first, ties in pool order */
+    private static final Comparator<Candidate> candidateComparator = (c1, c2) -> {
+        int compare = Long.compare(c2.packageFeePerByte, c1.packageFeePerByte);
+        if (compare != 0) {
+            return compare;
+        }
+        return UnconfirmedTransactionPool.priorityComparator.compare(c1.transaction, c2.transaction);
+    };
+
+    /** Longest chain followed when computing the package fee, as in hasAllReferencedTransactions */
+    private static final int MAX_CHAIN_LENGTH = 10;
+
+    private final BlockchainProcessorImpl blockchainProcessor;
+    private final Map<Long, Boolean> includable = new HashMap<>();
+    private final Map<Long, UnconfirmedTransaction> pooled = new HashMap<>();
+    private final Map<Long, List<UnconfirmedTransaction>> referencing = new HashMap<>();
+    private final Map<Long, Candidate> candidateById = new HashMap<>();
+    private final NavigableSet<Candidate> ranked = new TreeSet<>(candidateComparator);
+    private long previousBlockId;
+    private long poolVersion = -1;
+    private List<UnconfirmedTransaction> candidates = Collections.emptyList();
+
+    BlockTemplate(BlockchainProcessorImpl blockchainProcessor) {
+        this.blockchainProcessor = blockchainProcessor;
+    }
+
+    /**
+     * Get the candidate transactions for the block after the previous block. The caller must hold the blockchain
+     * read lock.
+     *
+     * @param   previousBlock       Previous block
+     * @return                      Includable transactions, best package fee per byte first
+     */
+    synchronized List<UnconfirmedTransaction> getCandidates(Block previousBlock) {
+        TransactionProcessorImpl transactionProcessor = TransactionProcessorImpl.getInstance();
+        long version = transactionProcessor.getUnconfirmedTransactionVersion();
+        List<UnconfirmedTransactionPool.Change> changes = null;
+        if (previousBlock.getId() != previousBlockId) {
+            previousBlockId = previousBlock.getId();
+            includable.clear();
+        } else if (version == poolVersion) {
+            return candidates;
+        } else {
+            changes = transactionProcessor.getUnconfirmedTransactionChanges(poolVersion);
+        }
+        if (changes == null) {
+            //
+            // Changes made while the pool is read are applied again by the next call, which leaves each transaction
+            // as it is in the pool
+            //
+            rankAll(transactionProcessor, previousBlock);
+            poolVersion = version;
+        } else {
+            for (UnconfirmedTransactionPool.Change change : changes) {
+                if (change.added) {
+                    add(change.transaction, previousBlock);
+                } else {
+                    remove(change.transaction);
+                }
+            }
+            poolVersion += changes.size();
+        }
+        List<UnconfirmedTransaction> result = new ArrayList<>(ranked.size());
+        ranked.forEach(candidate -> result.add(candidate.transaction));
+        candidates = result;
+        return candidates;
+    }
+
+    private void rankAll(TransactionProcessorImpl transactionProcessor, Block previousBlock) {
+        pooled.clear();
+        referencing.clear();
+        candidateById.clear();
+        ranked.clear();
+        for (UnconfirmedTransaction unconfirmedTransaction : transactionProcessor.getUnconfirmedTransactionView()) {
+            if (pooled.putIfAbsent(unconfirmedTransaction.getId(), unconfirmedTransaction) == null) {
+                link(unconfirmedTransaction);
+            }
+        }
+        includable.keySet().retainAll(pooled.keySet());
+        for (UnconfirmedTransaction unconfirmedTransaction : pooled.values()) {
+            rankIfIncludable(unconfirmedTransaction, previousBlock);
+        }
+    }
+
+    private void add(UnconfirmedTransaction unconfirmedTransaction, Block previousBlock) {
+        if (pooled.putIfAbsent(unconfirmedTransaction.getId(), unconfirmedTransaction) != null) {
+            return;
+        }
+        link(unconfirmedTransaction);
+        rankIfIncludable(unconfirmedTransaction, previousBlock);
+        rerankReferenced(unconfirmedTransaction);
+    }
+
+    private void remove(UnconfirmedTransaction unconfirmedTransaction) {
+        if (pooled.remove(unconfirmedTransaction.getId()) == null) {
+            return;
+        }
+        byte[] referencedFullHash = unconfirmedTransaction.getTransaction().referencedTransactionFullHash();
+        if (referencedFullHash != null) {
+            Long referencedId = Convert.fullHashToId(referencedFullHash);
+            List<UnconfirmedTransaction> siblings = referencing.get(referencedId);
+            if (siblings != null) {
+                siblings.remove(unconfirmedTransaction);
+                if (siblings.isEmpty()) {
+                    referencing.remove(referencedId);
+                }
+            }
+        }
+        includable.remove(unconfirmedTransaction.getId());
+        Candidate candidate = candidateById.remove(unconfirmedTransaction.getId());
+        if (candidate != null) {
+            ranked.remove(candidate);
+        }
+        rerankReferenced(unconfirmedTransaction);
+    }
+
+    /**
+     * Link a transaction to the one it references, which may only arrive later
+     */
+    private void link(UnconfirmedTransaction unconfirmedTransaction) {
+        byte[] referencedFullHash = unconfirmedTransaction.getTransaction().referencedTransactionFullHash();
+        if (referencedFullHash != null) {
+            referencing.computeIfAbsent(Convert.fullHashToId(referencedFullHash), id -> new ArrayList<>()).add(unconfirmedTransaction);
+        }
+    }
+
+    private void rankIfIncludable(UnconfirmedTransaction unconfirmedTransaction, Block previousBlock) {
+        if (includable.computeIfAbsent(unconfirmedTransaction.getId(), id -> isIncludable(unconfirmedTransaction, previousBlock))) {
+            rank(unconfirmedTransaction);
+        }
+    }
+
+    private void rank(UnconfirmedTransaction unconfirmedTransaction) {
+        long[] feeAndSize = new long[2];
+        addPackage(unconfirmedTransaction, feeAndSize, 0);
+        Candidate candidate = new Candidate(unconfirmedTransaction, feeAndSize[0] / feeAndSize[1]);
+        Candidate previous = candidateById.put(unconfirmedTransaction.getId(), candidate);
+        if (previous != null) {
+            ranked.remove(previous);
+        }
+        ranked.add(candidate);
+    }
+
+    /**
+     * Rank again the transactions whose package includes the given transaction
+     */
+    private void rerankReferenced(UnconfirmedTransaction unconfirmedTransaction) {
+        UnconfirmedTransaction transaction = unconfirmedTransaction;
+        for (int depth = 0; depth < MAX_CHAIN_LENGTH; depth++) {
+            transaction = getReferenced(transaction);
+            if (transaction == null) {
+                return;
+            }
+            if (candidateById.containsKey(transaction.getId())) {
+                rank(transaction);
+            }
+        }
+    }
+
+    private UnconfirmedTransaction getReferenced(UnconfirmedTransaction unconfirmedTransaction) {
+        byte[] referencedFullHash = unconfirmedTransaction.getTransaction().referencedTransactionFullHash();
+        if (referencedFullHash == null) {
+            return null;
+        }
+        UnconfirmedTransaction referenced = pooled.get(Convert.fullHashToId(referencedFullHash));
+        return referenced != null && Arrays.equals(referenced.getTransaction().fullHash(), referencedFullHash) ? referenced : null;
+    }
+
+    private void addPackage(UnconfirmedTransaction unconfirmedTransaction, long[] feeAndSize, int depth) {
+        feeAndSize[0] += unconfirmedTransaction.getFeeNQT();
+        feeAndSize[1] += unconfirmedTransaction.getTransaction().getFullSize();
+        List<UnconfirmedTransaction> next = referencing.get(unconfirmedTransaction.getId());
+        if (next != null && depth < MAX_CHAIN_LENGTH) {
+            for (UnconfirmedTransaction transaction : next) {
+                if (getReferenced(transaction) == unconfirmedTransaction) {
+                    addPackage(transaction, feeAndSize, depth + 1);
+                }
+            }
+        }
+    }
+
+    private boolean isIncludable(UnconfirmedTransaction unconfirmedTransaction, Block previousBlock) {
+        TransactionImpl transaction = unconfirmedTransaction.getTransaction();
+        if (transaction.getVersion() != blockchainProcessor.getTransactionVersion(previousBlock.getHeight())
+                || !blockchainProcessor.hasAllReferencedTransactions(transaction, transaction.getTimestamp(), 0)) {
+            return false;
+        }
+        try {
+            transaction.validate();
+            return true;
+        } catch (NxtException.ValidationException e) {
+            return false;
+        }
+    }
+
+}
@@ -18,6 +18,7 @@ package nxt;
 
 import nxt.db.DbIterator;
 import nxt.util.Filter;
+import nxt.util.LruCache;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -33,6 +34,14 @@ public interface Blockchain {
 
     void updateUnlock();
 
+    long getWriteLockCount();
+
+    long getWriteLockTime();
+
+    long getMaxWriteLockTime();
+
+    long getLastWriteLockTime();
+
     Block getLastBlock();
 
     Block getLastBlock(int timestamp);
@@ -71,6 +80,10 @@ public interface Blockchain {
 
     Block getECBlock(int timestamp);
 
+    LruCache<Long, ? extends Block> getBlockCache();
+
+    LruCache<Long, ? extends Transaction> getTransactionCache();
+
     Transaction getTransaction(long transactionId);
 
     Transaction getTransactionByFullHash(String fullHash);
@@ -21,6 +21,7 @@ import nxt.db.DbIterator;
 import nxt.db.DbUtils;
 import nxt.util.Convert;
 import nxt.util.Filter;
+import nxt.util.LruCache;
 import nxt.util.ReadWriteUpdateLock;
 
 import java.sql.Connection;
@@ -42,6 +43,8 @@ final class BlockchainImpl implements Blockchain {
 
     private final ReadWriteUpdateLock lock = new ReadWriteUpdateLock();
     private final AtomicReference<BlockImpl> lastBlock = new AtomicReference<>();
+    /** Last block of the committed database state, seen by all threads but the one holding the write lock */
+    private volatile BlockImpl lastCommittedBlock;
 
     @Override
     public void readLock() {
@@ -68,21 +71,59 @@ final class BlockchainImpl implements Blockchain {
     }
 
     void writeUnlock() {
+        if (!Db.db.isInTransaction()) {
+            commitLastBlock();
+        }
         lock.writeLock().unlock();
     }
 
+    @Override
+    public long getWriteLockCount() {
+        return lock.getWriteHoldCount();
+    }
+
+    @Override
+    public long getWriteLockTime() {
+        return lock.getWriteHoldTime() / 1000000;
+    }
+
+    @Override
+    public long getMaxWriteLockTime() {
+        return lock.getMaxWriteHoldTime() / 1000000;
+    }
+
+    @Override
+    public long getLastWriteLockTime() {
+        return lock.getLastWriteHoldTime() / 1000000;
+    }
+
     @Override
     public BlockImpl getLastBlock() {
-        return lastBlock.get();
+        return lock.writeLock().hasLock() ? lastBlock.get() : lastCommittedBlock;
     }
 
     void setLastBlock(BlockImpl block) {
+        if (Db.db.isInTransaction()) {
+            // deferred entity writes take the height they were inserted at
+            Db.db.flushPendingWrites();
+        }
         lastBlock.set(block);
+        if (!lock.writeLock().hasLock()) {
+            lastCommittedBlock = block;
+        }
+    }
+
+    /**
+     * Make the last block visible to the threads not holding the write lock, done when the write lock is released
+     * outside of a database transaction, or explicitly by a writer which commits while holding on to the lock
+     */
+    void commitLastBlock() {
+        lastCommittedBlock = lastBlock.get();
     }
 
     @Override
     public int getHeight() {
-        BlockImpl last = lastBlock.get();
+        BlockImpl last = getLastBlock();
         return last == null ? 0 : last.getHeight();
     }
 
@@ -112,13 +153,13 @@ final class BlockchainImpl implements Blockchain {
 
     @Override
     public int getLastBlockTimestamp() {
-        BlockImpl last = lastBlock.get();
+        BlockImpl last = getLastBlock();
         return last == null ? 0 : last.getTimestamp();
     }
 
     @Override
     public BlockImpl getLastBlock(int timestamp) {
-        BlockImpl block = lastBlock.get();
+        BlockImpl block = getLastBlock();
         if (timestamp >= block.getTimestamp()) {
             return block;
         }
@@ -127,7 +168,7 @@ final class BlockchainImpl implements Blockchain {
 
     @Override
     public BlockImpl getBlock(long blockId) {
-        BlockImpl block = lastBlock.get();
+        BlockImpl block = getLastBlock();
         if (block.getId() == blockId) {
             return block;
         }
@@ -136,7 +177,7 @@ final class BlockchainImpl implements Blockchain {
 
     @Override
     public boolean hasBlock(long blockId) {
-        return lastBlock.get().getId() == blockId || BlockDb.hasBlock(blockId);
+        return getLastBlock().getId() == blockId || BlockDb.hasBlock(blockId);
     }
 
     @Override
@@ -332,7 +373,7 @@ final class BlockchainImpl implements Blockchain {
 
     @Override
     public long getBlockIdAtHeight(int height) {
-        Block block = lastBlock.get();
+        Block block = getLastBlock();
         if (height > block.getHeight()) {
             throw new IllegalArgumentException("Invalid height " + height + ", current blockchain is at " + block.getHeight());
         }
@@ -344,7 +385,7 @@ final class BlockchainImpl implements Blockchain {
 
     @Override
     public BlockImpl getBlockAtHeight(int height) {
-        BlockImpl block = lastBlock.get();
+        BlockImpl block = getLastBlock();
         if (height > block.getHeight()) {
             throw new IllegalArgumentException("Invalid height " + height + ", current blockchain is at " + block.getHeight());
         }
@@ -363,6 +404,16 @@ final class BlockchainImpl implements Blockchain {
         return BlockDb.findBlockAtHeight(Math.max(block.getHeight() - 720, 0));
     }
 
+    @Override
+    public LruCache<Long, BlockImpl> getBlockCache() {
+        return BlockDb.lruBlockCache;
+    }
+
+    @Override
+    public LruCache<Long, TransactionImpl> getTransactionCache() {
+        return BlockDb.lruTransactionCache;
+    }
+
     @Override
     public TransactionImpl getTransaction(long transactionId) {
         return TransactionDb.findTransaction(transactionId);
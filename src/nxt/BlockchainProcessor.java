@@ -33,6 +33,10 @@ public interface BlockchainProcessor extends Observable<Block,BlockchainProcesso
         BEFORE_BLOCK_APPLY, AFTER_BLOCK_APPLY
     }
 
+    enum DownloadStage {
+        FETCH, VERIFY, APPLY
+    }
+
     Peer getLastBlockchainFeeder();
 
     int getLastBlockchainFeederHeight();
@@ -41,12 +45,20 @@ public interface BlockchainProcessor extends Observable<Block,BlockchainProcesso
 
     boolean isDownloading();
 
+    int getDownloadQueueDepth(DownloadStage stage);
+
     boolean isProcessingBlock();
 
     int getMinRollbackHeight();
 
     int getInitialScanHeight();
 
+    int getScanStartHeight();
+
+    int getScanCheckpointHeight();
+
+    double getScanRate();
+
     void generateBlock(String secretPhrase, int blockTimestamp) throws BlockNotAcceptedException;
 
     void processPeerBlock(JSONObject request) throws NxtException;
@@ -17,10 +17,10 @@
 
 package nxt;
 
+import nxt.computation.MessageEncoder;
 import nxt.crypto.Crypto;
 import nxt.db.DbIterator;
 import nxt.db.DerivedDbTable;
-import nxt.db.FilteringIterator;
 import nxt.db.FullTextTrigger;
 import nxt.peer.Peer;
 import nxt.peer.Peers;
@@ -42,10 +42,12 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -55,12 +57,16 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static nxt.TransactionType.SUBTYPE_PAYMENT_REDEEM;
 import static nxt.TransactionType.TYPE_PAYMENT;
@@ -189,11 +195,31 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
     private final int defaultNumberOfForkConfirmations = Nxt.getIntProperty(Constants.isTestnet
             ? "nxt.testnetNumberOfForkConfirmations" : "nxt.numberOfForkConfirmations");
     private final boolean simulateEndlessDownload = Nxt.getBooleanProperty("nxt.simulateEndlessDownload");
+    private final int downloadPipelineDepth = Math.max(Nxt.getIntProperty("nxt.downloadPipelineDepth", 8), 1);
+    private volatile List<GetNextBlocks> downloadPipeline = Collections.emptyList();
+    /** Number of blocks a scan reads and checks ahead of the block being applied */
+    private static final int SCAN_LOOKAHEAD = 32;
+
+    private static final int MIN_TRIM_SLICE_ROWS = 100;
+    private static final int MAX_TRIM_SLICE_ROWS = 100000;
+
+    private final long trimSliceMillis = Math.max(Nxt.getIntProperty("nxt.trimSliceMillis", 100), 1);
+    private volatile int trimSliceRows = 1000;
+    private final int scanCheckpointInterval = Math.min(Math.max(Nxt.getIntProperty("nxt.scanCheckpointInterval", 500), 1),
+            Constants.MAX_ROLLBACK);
 
     private int initialScanHeight;
+    private volatile int scanStartHeight;
+    private volatile long scanStartTime;
+    private volatile int scanCheckpointHeight;
     private volatile int lastTrimHeight;
+    /** Held while the derived tables are trimmed, or read by a snapshot export that needs their older versions */
+    private final ReentrantLock trimLock = new ReentrantLock();
+    /** Height of the restored snapshot, the derived tables have no versions below it */
+    private volatile int snapshotHeight;
     private volatile int lastRestoreTime = 0;
     private final Set<Long> prunableTransactions = new HashSet<>();
+    private final BlockTemplate blockTemplate = new BlockTemplate(this);
 
     private final Listeners<Block, Event> blockListeners = new Listeners<>();
     private volatile Peer lastBlockchainFeeder;
@@ -501,12 +527,18 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
         /**
          * Download the block chain
          *
+         * The segments are processed as a pipeline.  The network threads fetch and parse
+         * a segment, the common pool then checks its block and transaction signatures, and
+         * this thread pushes the blocks in chain order as soon as their segment is through,
+         * while the following segments are still being downloaded and verified.  At most
+         * downloadPipelineDepth segments are in flight, so a slow apply holds back the fetching.
+         * The download stops if the chain tip moves between two segments, see pushSegment.
+         *
          * @param   feederPeer              Peer supplying the blocks list
          * @param   commonBlock             Common block
          * @throws  InterruptedException    Download interrupted
          */
         private void downloadBlockchain(final Peer feederPeer, final Block commonBlock, final int startHeight) throws InterruptedException {
-            Map<Long, PeerBlock> blockMap = new HashMap<>();
             //
             // Break the download into multiple segments.  The first block in each segment
             // is the common block for that segment.
@@ -520,120 +552,129 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
             int nextPeerIndex = ThreadLocalRandom.current().nextInt(connectedPublicPeers.size());
             long maxResponseTime = 0;
             Peer slowestPeer = null;
-            //
-            // Issue the getNextBlocks requests and get the results.  We will repeat
-            // a request if the peer didn't respond or returned a partial block list.
-            // The download will be aborted if we are unable to get a segment after
-            // retrying with different peers.
-            //
-            download: while (!getList.isEmpty()) {
-                //
-                // Submit threads to issue 'getNextBlocks' requests.  The first segment
-                // will always be sent to the feeder peer.  Subsequent segments will
-                // be sent to the feeder peer if we failed trying to download the blocks
-                // from another peer.  We will stop the download and process any pending
-                // blocks if we are unable to download a segment from the feeder peer.
-                //
-                for (GetNextBlocks nextBlocks : getList) {
-                    Peer peer;
-                    if (nextBlocks.getRequestCount() > 1) {
-                        break download;
-                    }
-                    if (nextBlocks.getStart() == 0 || nextBlocks.getRequestCount() != 0) {
-                        peer = feederPeer;
-                    } else {
-                        if (nextPeerIndex >= connectedPublicPeers.size()) {
-                            nextPeerIndex = 0;
+            List<BlockImpl> forkBlocks = new ArrayList<>();
+            int submitted = 0;
+            downloadPipeline = getList;
+            try {
+                download: for (int i = 0; i < getList.size(); i++) {
+                    GetNextBlocks nextBlocks = getList.get(i);
+                    //
+                    // Keep the pipeline filled.  The first segment will always be sent to the
+                    // feeder peer, the others are spread over the connected peers.
+                    //
+                    while (submitted < getList.size() && submitted < i + downloadPipelineDepth) {
+                        GetNextBlocks submittedBlocks = getList.get(submitted++);
+                        Peer peer;
+                        if (submittedBlocks.getStart() == 0) {
+                            peer = feederPeer;
+                        } else {
+                            if (nextPeerIndex >= connectedPublicPeers.size()) {
+                                nextPeerIndex = 0;
+                            }
+                            peer = connectedPublicPeers.get(nextPeerIndex++);
                         }
-                        peer = connectedPublicPeers.get(nextPeerIndex++);
+                        submitSegment(submittedBlocks, peer);
                     }
-                    if (nextBlocks.getPeer() == peer) {
-                        break download;
-                    }
-                    nextBlocks.setPeer(peer);
-                    Future<List<BlockImpl>> future = networkService.submit(nextBlocks);
-                    nextBlocks.setFuture(future);
-                }
-                //
-                // Get the results.  A peer is on a different fork if a returned
-                // block is not in the block identifier list.
-                //
-                Iterator<GetNextBlocks> it = getList.iterator();
-                while (it.hasNext()) {
-                    GetNextBlocks nextBlocks = it.next();
-                    List<BlockImpl> blockList;
-                    try {
-                        blockList = nextBlocks.getFuture().get();
-                    } catch (ExecutionException exc) {
-                        throw new RuntimeException(exc.getMessage(), exc);
-                    }
-                    if (blockList == null) {
-                        nextBlocks.getPeer().deactivate();
-                        continue;
-                    }
-                    Peer peer = nextBlocks.getPeer();
-                    int index = nextBlocks.getStart() + 1;
-                    for (BlockImpl block : blockList) {
-                        if (block.getId() != chainBlockIds.get(index)) {
+                    //
+                    // Wait for the segment and push its blocks.  A peer is on a different fork
+                    // if a returned block is not in the block identifier list.  We will repeat
+                    // a request with the feeder peer if the peer didn't respond or returned a
+                    // partial block list, and stop the download if the feeder peer fails too.
+                    //
+                    while (true) {
+                        List<BlockImpl> blockList;
+                        try {
+                            blockList = nextBlocks.getFuture().get();
+                        } catch (ExecutionException exc) {
+                            throw new RuntimeException(exc.getMessage(), exc);
+                        }
+                        Peer peer = nextBlocks.getPeer();
+                        if (nextBlocks.getResponseTime() > maxResponseTime) {
+                            maxResponseTime = nextBlocks.getResponseTime();
+                            slowestPeer = peer;
+                        }
+                        int index = nextBlocks.getStart() + 1;
+                        if (blockList == null) {
+                            peer.deactivate();
+                        } else {
+                            try {
+                                index = pushSegment(blockList, chainBlockIds, index, startHeight, forkBlocks);
+                            } catch (BlockNotAcceptedException e) {
+                                peer.blacklist(e);
+                                break download;
+                            }
+                            if (index < 0) {
+                                break download;
+                            }
+                        }
+                        if (index > nextBlocks.getStop()) {
+                            nextBlocks.setStage(null);
                             break;
                         }
-                        blockMap.put(block.getId(), new PeerBlock(peer, block));
-                        index++;
-                    }
-                    if (index > nextBlocks.getStop()) {
-                        it.remove();
-                    } else {
                         nextBlocks.setStart(index - 1);
+                        if (nextBlocks.getRequestCount() > 1 || peer == feederPeer) {
+                            break download;
+                        }
+                        submitSegment(nextBlocks, feederPeer);
                     }
-                    if (nextBlocks.getResponseTime() > maxResponseTime) {
-                        maxResponseTime = nextBlocks.getResponseTime();
-                        slowestPeer = nextBlocks.getPeer();
+                }
+            } finally {
+                //
+                // Segments still in the pipeline after an invalid block, a fork or an error are of
+                // no use anymore.  Cancelling them skips their verify stage if it did not start yet.
+                //
+                for (GetNextBlocks segment : getList) {
+                    Future<List<BlockImpl>> future = segment.getFuture();
+                    if (future != null && !future.isDone()) {
+                        future.cancel(true);
                     }
                 }
-
+                downloadPipeline = Collections.emptyList();
             }
             if (slowestPeer != null && connectedPublicPeers.size() >= Peers.maxNumberOfConnectedPublicPeers && chainBlockIds.size() > 360) {
                 Logger.logDebugMessage(slowestPeer.getHost() + " took " + maxResponseTime + " ms, disconnecting");
                 slowestPeer.deactivate();
             }
             //
-            // Add the new blocks to the blockchain.  We will stop if we encounter
-            // a missing block (this will happen if an invalid block is encountered
-            // when downloading the blocks)
+            // Process a fork
             //
-            blockchain.writeLock();
-            try {
-                List<BlockImpl> forkBlocks = new ArrayList<>();
-                for (int index = 1; index < chainBlockIds.size() && blockchain.getHeight() - startHeight < 720; index++) {
-                    PeerBlock peerBlock = blockMap.get(chainBlockIds.get(index));
-                    if (peerBlock == null) {
-                        break;
-                    }
-                    BlockImpl block = peerBlock.getBlock();
-                    if (blockchain.getLastBlock().getId() == block.getPreviousBlockId()) {
-                        try {
-                            pushBlock(block);
-                        } catch (BlockNotAcceptedException e) {
-                            peerBlock.getPeer().blacklist(e);
-                        }
-                    } else {
-                        forkBlocks.add(block);
+            if (!forkBlocks.isEmpty()) {
+                blockchain.writeLock();
+                try {
+                    int myForkSize = blockchain.getHeight() - startHeight;
+                    if (myForkSize < 720) {
+                        Logger.logDebugMessage("Will process a fork of " + forkBlocks.size() + " blocks, mine is " + myForkSize);
+                        processFork(feederPeer, forkBlocks, commonBlock);
                     }
+                } finally {
+                    blockchain.writeUnlock();
                 }
-                //
-                // Process a fork
-                //
-                int myForkSize = blockchain.getHeight() - startHeight;
-                if (!forkBlocks.isEmpty() && myForkSize < 720) {
-                    Logger.logDebugMessage("Will process a fork of " + forkBlocks.size() + " blocks, mine is " + myForkSize);
-                    processFork(feederPeer, forkBlocks, commonBlock);
-                }
-            } finally {
-                blockchain.writeUnlock();
             }
 
         }
 
+        /**
+         * Send a segment down the pipeline: fetch and parse it on the network threads, which
+         * also checks the signatures, then run the submission verify scripts on the common pool.
+         * The verdicts are remembered, so pushBlock only does the state-dependent checks.
+         *
+         * @param   nextBlocks              Segment to download
+         * @param   peer                    Peer to download it from
+         */
+        private void submitSegment(GetNextBlocks nextBlocks, Peer peer) {
+            nextBlocks.setPeer(peer);
+            nextBlocks.setStage(DownloadStage.FETCH);
+            nextBlocks.setFuture(CompletableFuture.supplyAsync(nextBlocks::call, networkService)
+                    .thenApplyAsync(blockList -> {
+                        if (blockList != null) {
+                            nextBlocks.setStage(DownloadStage.VERIFY);
+                            blockList.parallelStream().forEach(BlockchainProcessorImpl.this::prevalidate);
+                        }
+                        nextBlocks.setStage(DownloadStage.APPLY);
+                        return blockList;
+                    }));
+        }
+
         private void processFork(final Peer peer, final List<BlockImpl> forkBlocks, final Block commonBlock) {
 
             BigInteger curCumulativeDifficulty = blockchain.getLastBlock().getCumulativeDifficulty();
@@ -713,6 +754,9 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
         /** Time it took to return getNextBlocks */
         private long responseTime;
 
+        /** Pipeline stage the segment is waiting in, null once applied */
+        private volatile DownloadStage stage;
+
         /**
          * Create the callable future
          *
@@ -746,6 +790,9 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
             request.put("requestType", "getNextBlocks");
             request.put("blockIds", idList);
             request.put("blockId", Long.toUnsignedString(blockIds.get(start)));
+            if (peer.providesService(Peer.Service.BINARY_BLOCKS)) {
+                request.put("binary", true);
+            }
             long startTime = System.currentTimeMillis();
             JSONObject response = peer.send(JSON.prepareRequest(request), 10 * 1024 * 1024);
             responseTime = System.currentTimeMillis() - startTime;
@@ -757,7 +804,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
             // an invalid block.  We will return the valid blocks and reset the stop
             // index so no more blocks will be processed.
             //
-            List<JSONObject> nextBlocks = (List<JSONObject>)response.get("nextBlocks");
+            List<Object> nextBlocks = (List<Object>)response.get("nextBlocks");
             if (nextBlocks == null)
                 return null;
             if (nextBlocks.size() > 36) {
@@ -768,8 +815,9 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
             List<BlockImpl> blockList = new ArrayList<>(nextBlocks.size());
             try {
                 int count = stop - start;
-                for (JSONObject blockData : nextBlocks) {
-                    blockList.add(BlockImpl.parseBlock(blockData));
+                for (Object blockData : nextBlocks) {
+                    blockList.add(blockData instanceof String ? BinaryFormat.parseBlock((String) blockData)
+                            : BlockImpl.parseBlock((JSONObject) blockData));
                     if (--count <= 0)
                         break;
                 }
@@ -861,46 +909,23 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
         public long getResponseTime() {
             return responseTime;
         }
-    }
-
-    /**
-     * Block returned by a peer
-     */
-    private static class PeerBlock {
-
-        /** Peer */
-        private final Peer peer;
-
-        /** Block */
-        private final BlockImpl block;
 
         /**
-         * Create the peer block
+         * Return the pipeline stage
          *
-         * @param   peer                Peer
-         * @param   block               Block
+         * @return                      Pipeline stage or null
          */
-        public PeerBlock(Peer peer, BlockImpl block) {
-            this.peer = peer;
-            this.block = block;
+        public DownloadStage getStage() {
+            return stage;
         }
 
         /**
-         * Return the peer
+         * Set the pipeline stage
          *
-         * @return                      Peer
+         * @param   stage               Pipeline stage or null
          */
-        public Peer getPeer() {
-            return peer;
-        }
-
-        /**
-         * Return the block
-         *
-         * @return                      Block
-         */
-        public BlockImpl getBlock() {
-            return block;
+        public void setStage(DownloadStage stage) {
+            this.stage = stage;
         }
     }
 
@@ -1058,7 +1083,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
         final int trimFrequency = Nxt.getIntProperty("nxt.trimFrequency");
         blockListeners.addListener(block -> {
             if (block.getHeight() % 5000 == 0) {
-                Logger.logMessage("processed block " + block.getHeight());
+                Logger.logMessage("processed block " + block.getHeight() + String.format(", %.1f blocks per second", getScanRate()));
             }
             if (trimDerivedTables && block.getHeight() % trimFrequency == 0) {
                 doTrimDerivedTables();
@@ -1069,8 +1094,11 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
             if (trimDerivedTables && block.getHeight() % trimFrequency == 0 && !isTrimming) {
                 isTrimming = true;
                 networkService.submit(() -> {
-                    trimDerivedTables();
-                    isTrimming = false;
+                    try {
+                        trimDerivedTables();
+                    } finally {
+                        isTrimming = false;
+                    }
                 });
             }
             if (block.getHeight() % 5000 == 0) {
@@ -1092,22 +1120,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
             } else if (Nxt.getBooleanProperty("nxt.forceScan")) {
                 scan(0, Nxt.getBooleanProperty("nxt.forceValidate"));
             } else {
-                boolean rescan;
-                boolean validate;
-                int height;
-                try (Connection con = Db.db.getConnection();
-                     Statement stmt = con.createStatement();
-                     ResultSet rs = stmt.executeQuery("SELECT * FROM scan")) {
-                    rs.next();
-                    rescan = rs.getBoolean("rescan");
-                    validate = rs.getBoolean("validate");
-                    height = rs.getInt("height");
-                } catch (SQLException e) {
-                    throw new RuntimeException(e.toString(), e);
-                }
-                if (rescan) {
-                    scan(height, validate);
-                }
+                runScheduledScan();
             }
         }, false);
 
@@ -1137,10 +1150,62 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 
     @Override
     public void trimDerivedTables() {
+        if (!trimLock.tryLock()) {
+            Logger.logDebugMessage("Derived tables are being exported, trimming skipped");
+            return;
+        }
+        try {
+            trimDerivedTablesInSlices();
+        } finally {
+            trimLock.unlock();
+        }
+    }
+
+    /**
+     * Trim the derived tables in slices, each in its own database transaction under the read lock, so block apply
+     * does not wait for the trimming of a whole table.  The number of rows in a slice is adjusted to take about
+     * nxt.trimSliceMillis, and the trimming pauses as long as the last slice took before it continues.
+     */
+    private void trimDerivedTablesInSlices() {
+        int trimHeight = Math.max(blockchain.getHeight() - Constants.MAX_ROLLBACK, 0);
+        if (trimHeight <= 0) {
+            return;
+        }
+        lastTrimHeight = trimHeight;
+        long start = System.currentTimeMillis();
+        int slices = 0;
         try {
             Db.db.beginTransaction();
-            doTrimDerivedTables();
-            Db.db.commitTransaction();
+            for (DerivedDbTable table : derivedTables) {
+                Object fromKey = null;
+                do {
+                    long sliceStart = System.currentTimeMillis();
+                    blockchain.readLock();
+                    try {
+                        fromKey = table.trim(trimHeight, fromKey, trimSliceRows);
+                        Db.db.commitTransaction();
+                    } finally {
+                        blockchain.readUnlock();
+                    }
+                    slices += 1;
+                    long elapsed = System.currentTimeMillis() - sliceStart;
+                    if (elapsed > trimSliceMillis) {
+                        trimSliceRows = Math.max(trimSliceRows / 2, MIN_TRIM_SLICE_ROWS);
+                    } else if (elapsed < trimSliceMillis / 2) {
+                        trimSliceRows = Math.min(trimSliceRows * 2, MAX_TRIM_SLICE_ROWS);
+                    }
+                    if (fromKey != null && elapsed > 0) {
+                        try {
+                            Thread.sleep(Math.min(elapsed, trimSliceMillis));
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                    }
+                } while (fromKey != null);
+            }
+            Logger.logDebugMessage("Trimmed derived tables at height " + trimHeight + " in " + slices + " slices, "
+                    + (System.currentTimeMillis() - start) + " ms");
         } catch (Exception e) {
             Logger.logMessage(e.toString(), e);
             Db.db.rollbackTransaction();
@@ -1151,20 +1216,44 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
     }
 
     private void doTrimDerivedTables() {
-        lastTrimHeight = Math.max(blockchain.getHeight() - Constants.MAX_ROLLBACK, 0);
-        if (lastTrimHeight > 0) {
-            for (DerivedDbTable table : derivedTables) {
-                blockchain.readLock();
-                try {
-                    table.trim(lastTrimHeight);
-                    Db.db.commitTransaction();
-                } finally {
-                    blockchain.readUnlock();
+        if (!trimLock.tryLock()) {
+            return;
+        }
+        try {
+            lastTrimHeight = Math.max(blockchain.getHeight() - Constants.MAX_ROLLBACK, 0);
+            if (lastTrimHeight > 0) {
+                for (DerivedDbTable table : derivedTables) {
+                    blockchain.readLock();
+                    try {
+                        table.trim(lastTrimHeight);
+                        Db.db.commitTransaction();
+                    } finally {
+                        blockchain.readUnlock();
+                    }
                 }
             }
+        } finally {
+            trimLock.unlock();
         }
     }
 
+    /**
+     * Keep the derived tables from being trimmed while a snapshot export reads them at an older height
+     *
+     * @return                      False if they are being trimmed
+     */
+    boolean suspendTrim() {
+        return trimLock.tryLock();
+    }
+
+    void resumeTrim() {
+        trimLock.unlock();
+    }
+
+    long getScanStartTime() {
+        return scanStartTime;
+    }
+
     List<DerivedDbTable> getDerivedTables() {
         return derivedTables;
     }
@@ -1189,11 +1278,46 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
         return initialScanHeight;
     }
 
+    @Override
+    public int getScanStartHeight() {
+        return scanStartHeight;
+    }
+
+    @Override
+    public int getScanCheckpointHeight() {
+        return scanCheckpointHeight;
+    }
+
+    /**
+     * Get the rate of the running scan
+     *
+     * @return                      Blocks applied per second since the scan started, 0 if no scan is running
+     */
+    @Override
+    public double getScanRate() {
+        long elapsed = System.currentTimeMillis() - scanStartTime;
+        if (!isScanning || elapsed <= 0) {
+            return 0;
+        }
+        return Math.max(blockchain.getHeight() - scanStartHeight + 1, 0) * 1000.0 / elapsed;
+    }
+
     @Override
     public boolean isDownloading() {
         return isDownloading;
     }
 
+    @Override
+    public int getDownloadQueueDepth(DownloadStage stage) {
+        int depth = 0;
+        for (GetNextBlocks nextBlocks : downloadPipeline) {
+            if (nextBlocks.getStage() == stage) {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
     @Override
     public boolean isProcessingBlock() {
         return isProcessingBlock;
@@ -1201,12 +1325,14 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 
     @Override
     public int getMinRollbackHeight() {
-        return trimDerivedTables ? (lastTrimHeight > 0 ? lastTrimHeight : Math.max(blockchain.getHeight() - Constants.MAX_ROLLBACK, 0)) : 0;
+        int minRollbackHeight = trimDerivedTables ? (lastTrimHeight > 0 ? lastTrimHeight : Math.max(blockchain.getHeight() - Constants.MAX_ROLLBACK, 0)) : 0;
+        return Math.max(minRollbackHeight, snapshotHeight);
     }
 
     @Override
     public void processPeerBlock(JSONObject request) throws NxtException {
-        BlockImpl block = BlockImpl.parseBlock(request);
+        String blockBytes = (String) request.get("blockBytes");
+        BlockImpl block = blockBytes != null ? BinaryFormat.parseBlock(blockBytes) : BlockImpl.parseBlock(request);
         BlockImpl lastBlock = blockchain.getLastBlock();
         if (block.getPreviousBlockId() == lastBlock.getId()) {
             pushBlock(block);
@@ -1419,10 +1545,56 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
         }
     }
 
+    /**
+     * Push the blocks of a downloaded segment which extend the chain, and collect the others as
+     * fork blocks to be processed once the download is complete.
+     *
+     * Each segment takes the write lock on its own, so another block may have been pushed since
+     * the previous segment.  The download is stopped then, instead of taking the remaining blocks
+     * for a fork of the blocks it just pushed.
+     *
+     * @param   blockList               Blocks of the segment
+     * @param   chainBlockIds           Block identifiers of the download, starting with the common block
+     * @param   index                   Index of the first block of the segment in chainBlockIds
+     * @param   startHeight             Height of the common block
+     * @param   forkBlocks              Fork blocks collected so far
+     * @return                          Index of the first block not taken from the segment, or -1 to stop the download
+     * @throws  BlockNotAcceptedException   Block not accepted
+     */
+    int pushSegment(List<BlockImpl> blockList, List<Long> chainBlockIds, int index, int startHeight,
+                    List<BlockImpl> forkBlocks) throws BlockNotAcceptedException {
+        blockchain.writeLock();
+        try {
+            if (forkBlocks.isEmpty() && index > 1 && blockchain.getLastBlock().getId() != chainBlockIds.get(index - 1)) {
+                Logger.logDebugMessage("Blockchain changed during download, stopping at height " + blockchain.getHeight());
+                return -1;
+            }
+            for (BlockImpl block : blockList) {
+                if (block.getId() != chainBlockIds.get(index)) {
+                    break;
+                }
+                if (blockchain.getHeight() - startHeight >= 720) {
+                    return -1;
+                }
+                if (forkBlocks.isEmpty() && blockchain.getLastBlock().getId() == block.getPreviousBlockId()) {
+                    pushBlock(block);
+                } else {
+                    forkBlocks.add(block);
+                }
+                index++;
+            }
+            return index;
+        } finally {
+            blockchain.writeUnlock();
+        }
+    }
+
     private void pushBlock(final BlockImpl block) throws BlockNotAcceptedException {
 
         int curTime = Nxt.getEpochTime();
 
+        prevalidate(block);
+
         blockchain.writeLock();
         try {
             BlockImpl previousLastBlock = null;
@@ -1501,6 +1673,21 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
         }
     }
 
+    /**
+     * Run the verify scripts of the submissions before the write lock is taken, so readers are not held up by them.
+     * The verdicts are remembered by the submission prevalidator, where validation finds them.  The signatures need
+     * no such step: a block from a peer had them checked, and cached, when it was parsed on the network threads.
+     *
+     * @param   block                   Block about to be pushed
+     */
+    private void prevalidate(BlockImpl block) {
+        try {
+            MessageEncoder.prevalidateBlock(block);
+        } catch (RuntimeException e) {
+            Logger.logDebugMessage("Pre-validation failed for block " + block.getStringId(), e);
+        }
+    }
+
     private void validate(BlockImpl block, BlockImpl previousLastBlock, int curTime) throws BlockNotAcceptedException {
         if (previousLastBlock.getId() != block.getPreviousBlockId()) {
             throw new BlockOutOfOrderException("Previous block id doesn't match", block);
@@ -1791,11 +1978,25 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                 : 3;
     }
 
-    private int getTransactionVersion(int previousBlockHeight) {
+    int getTransactionVersion(int previousBlockHeight) {
         return previousBlockHeight < Constants.DIGITAL_GOODS_STORE_BLOCK ? 0 : 1;
     }
 
     private boolean verifyChecksum(byte[] validChecksum, int fromHeight, int toHeight) {
+        byte[] checksum = calculateChecksum(fromHeight, toHeight);
+        if (validChecksum == null) {
+            Logger.logMessage("Checksum calculated:\n" + Arrays.toString(checksum));
+            return true;
+        } else if (!Arrays.equals(checksum, validChecksum)) {
+            Logger.logErrorMessage("Checksum failed at block " + blockchain.getHeight() + ": " + Arrays.toString(checksum));
+            return false;
+        } else {
+            Logger.logMessage("Checksum passed at block " + blockchain.getHeight());
+            return true;
+        }
+    }
+
+    byte[] calculateChecksum(int fromHeight, int toHeight) {
         MessageDigest digest = Crypto.sha256();
         try (Connection con = Db.db.getConnection();
              PreparedStatement pstmt = con.prepareStatement(
@@ -1810,28 +2011,11 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
         }
-        byte[] checksum = digest.digest();
-        if (validChecksum == null) {
-            Logger.logMessage("Checksum calculated:\n" + Arrays.toString(checksum));
-            return true;
-        } else if (!Arrays.equals(checksum, validChecksum)) {
-            Logger.logErrorMessage("Checksum failed at block " + blockchain.getHeight() + ": " + Arrays.toString(checksum));
-            return false;
-        } else {
-            Logger.logMessage("Checksum passed at block " + blockchain.getHeight());
-            return true;
-        }
+        return digest.digest();
     }
 
     SortedSet<UnconfirmedTransaction> selectUnconfirmedTransactions(Map<TransactionType, Map<String, Integer>> duplicates, Block previousBlock, int blockTimestamp) {
-        List<UnconfirmedTransaction> orderedUnconfirmedTransactions = new ArrayList<>();
-        try (FilteringIterator<UnconfirmedTransaction> unconfirmedTransactions = new FilteringIterator<>(
-                TransactionProcessorImpl.getInstance().getAllUnconfirmedTransactions(),
-                transaction -> hasAllReferencedTransactions(transaction.getTransaction(), transaction.getTimestamp(), 0))) {
-            for (UnconfirmedTransaction unconfirmedTransaction : unconfirmedTransactions) {
-                orderedUnconfirmedTransactions.add(unconfirmedTransaction);
-            }
-        }
+        List<UnconfirmedTransaction> orderedUnconfirmedTransactions = blockTemplate.getCandidates(previousBlock);
         SortedSet<UnconfirmedTransaction> sortedTransactions = new TreeSet<>(transactionArrivalComparator);
         int payloadLength = 0;
         while (payloadLength <= Constants.MAX_PAYLOAD_LENGTH && sortedTransactions.size() <= Constants.MAX_NUMBER_OF_TRANSACTIONS) {
@@ -1841,18 +2025,10 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                 if (sortedTransactions.contains(unconfirmedTransaction) || payloadLength + transactionLength > Constants.MAX_PAYLOAD_LENGTH) {
                     continue;
                 }
-                if (unconfirmedTransaction.getVersion() != getTransactionVersion(previousBlock.getHeight())) {
-                    continue;
-                }
                 if (blockTimestamp > 0 && (!(unconfirmedTransaction.getType().getType() == TYPE_PAYMENT && unconfirmedTransaction.getType().getSubtype() == SUBTYPE_PAYMENT_REDEEM) && (unconfirmedTransaction.getTimestamp() > blockTimestamp + Constants.MAX_TIMEDRIFT)
                         || unconfirmedTransaction.getExpiration(true) < blockTimestamp)) {
                     continue;
                 }
-                try {
-                    unconfirmedTransaction.getTransaction().validate();
-                } catch (NxtException.ValidationException e) {
-                    continue;
-                }
                 if (unconfirmedTransaction.getTransaction().attachmentIsDuplicate(duplicates, true)) {
                     continue;
                 }
@@ -1867,6 +2043,14 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
     }
 
 
+    /**
+     * Rank the unconfirmed transactions for the block after the last block ahead of the hit time. The caller must
+     * hold the blockchain read lock.
+     */
+    void prepareBlockTemplate() {
+        blockTemplate.getCandidates(blockchain.getLastBlock());
+    }
+
     private static final Comparator<UnconfirmedTransaction> transactionArrivalComparator = Comparator
             .comparingLong(UnconfirmedTransaction::getArrivalTimestamp)
             .thenComparingInt(UnconfirmedTransaction::getHeight)
@@ -1945,6 +2129,31 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                 && hasAllReferencedTransactions(referencedTransaction, timestamp, count + 1);
     }
 
+    /**
+     * Run the scan recorded in the scan table, if there is one, continuing from its checkpoint
+     */
+    void runScheduledScan() {
+        boolean rescan;
+        boolean validate;
+        int height;
+        int checkpoint;
+        try (Connection con = Db.db.getConnection();
+             Statement stmt = con.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT * FROM scan")) {
+            rs.next();
+            rescan = rs.getBoolean("rescan");
+            validate = rs.getBoolean("validate");
+            height = rs.getInt("height");
+            checkpoint = rs.getInt("checkpoint");
+            snapshotHeight = rs.getInt("snapshot_height");
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+        if (rescan) {
+            scan(height, checkpoint, validate, false);
+        }
+    }
+
     void scheduleScan(int height, boolean validate) {
         try (Connection con = Db.db.getConnection();
              PreparedStatement pstmt = con.prepareStatement("UPDATE scan SET rescan = TRUE, height = ?, validate = ?")) {
@@ -1957,17 +2166,89 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
         }
     }
 
+    /**
+     * Read the next block of a scan and, if the scan validates, check its signatures in the background.  The
+     * submissions are not verified ahead: their inputs depend on the work state left by the blocks in between.
+     *
+     * @return                      FALSE if the block cannot be read, the scan stops at it
+     */
+    private boolean readAhead(Connection con, ResultSet rs, boolean validate, Deque<ScannedBlock> lookahead) throws SQLException {
+        long dbId = rs.getLong("db_id");
+        try {
+            BlockImpl block = BlockDb.loadBlock(con, rs, true);
+            block.loadTransactions();
+            lookahead.add(new ScannedBlock(dbId, block, validate ? CompletableFuture.runAsync(block::preverifySignatures, networkService)
+                    : CompletableFuture.completedFuture(null)));
+            return true;
+        } catch (RuntimeException e) {
+            lookahead.add(new ScannedBlock(dbId, e));
+            return false;
+        }
+    }
+
+    private static final class ScannedBlock {
+
+        private final long dbId;
+        private final BlockImpl block;
+        private final CompletableFuture<Void> prevalidation;
+        private final RuntimeException exception;
+
+        private ScannedBlock(long dbId, BlockImpl block, CompletableFuture<Void> prevalidation) {
+            this.dbId = dbId;
+            this.block = block;
+            this.prevalidation = prevalidation;
+            this.exception = null;
+        }
+
+        private ScannedBlock(long dbId, RuntimeException exception) {
+            this.dbId = dbId;
+            this.block = null;
+            this.prevalidation = null;
+            this.exception = exception;
+        }
+
+        private void cancel() {
+            if (prevalidation != null) {
+                prevalidation.cancel(false);
+            }
+        }
+
+        private BlockImpl getBlock() {
+            if (exception != null) {
+                throw exception;
+            }
+            try {
+                prevalidation.join();
+            } catch (CompletionException | CancellationException e) {
+                // the block is validated again when it is applied
+            }
+            return block;
+        }
+    }
+
     @Override
     public void scan(int height, boolean validate) {
-        scan(height, validate, false);
+        scan(height, 0, validate, false);
     }
 
     @Override
     public void fullScanWithShutdown() {
-        scan(0, true, true);
+        scan(0, 0, true, true);
     }
 
-    private void scan(int height, boolean validate, boolean shutdown) {
+    /**
+     * Rebuild the derived tables by applying the blocks again, starting from the given height
+     *
+     * While a block is applied, the blocks ahead of it are already read and their signatures are checked in
+     * parallel.  Every nxt.scanCheckpointInterval blocks the height of the next block is recorded in the
+     * scan table, in the same database transaction as the block, and a scan that was interrupted continues from there.
+     *
+     * @param   height              Height the scan starts from
+     * @param   checkpoint          Height an interrupted scan continues from, ignored unless above the start height
+     * @param   validate            TRUE to validate the blocks and transactions again
+     * @param   shutdown            TRUE to stop after rolling back the derived tables, and scan at the next start
+     */
+    private void scan(int height, int checkpoint, boolean validate, boolean shutdown) {
         blockchain.writeLock();
         try {
             if (!Db.db.isInTransaction()) {
@@ -1976,7 +2257,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                     if (validate) {
                         blockListeners.addListener(checksumListener, Event.BLOCK_SCANNED);
                     }
-                    scan(height, validate, shutdown);
+                    scan(height, checkpoint, validate, shutdown);
                     Db.db.commitTransaction();
                 } catch (Exception e) {
                     Db.db.rollbackTransaction();
@@ -1987,52 +2268,76 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                 }
                 return;
             }
-            scheduleScan(height, validate);
-            if (height > 0 && height < getMinRollbackHeight()) {
-                Logger.logMessage("Rollback to height less than " + getMinRollbackHeight() + " not supported, will do a full scan");
-                height = 0;
+            // the derived tables are only trimmed below the checkpoint while scanning
+            boolean resume = checkpoint > Math.max(height, 0) && !shutdown;
+            if (!resume) {
+                scheduleScan(height, validate);
+                if (height > 0 && height < getMinRollbackHeight()) {
+                    Logger.logMessage("Rollback to height less than " + getMinRollbackHeight() + " not supported, will do a full scan");
+                    height = 0;
+                }
+                if (height < 0) {
+                    height = 0;
+                }
             }
-            if (height < 0) {
-                height = 0;
+            int startHeight = resume ? checkpoint : height;
+            if (resume) {
+                Logger.logMessage("Resuming scan from checkpoint at height " + startHeight + "...");
+            } else {
+                Logger.logMessage("Scanning blockchain starting from height " + height + "...");
             }
-            Logger.logMessage("Scanning blockchain starting from height " + height + "...");
             if (validate) {
                 Logger.logDebugMessage("Also verifying signatures and validating transactions...");
             }
             try (Connection con = Db.db.getConnection();
-                 PreparedStatement pstmtSelect = con.prepareStatement("SELECT * FROM block WHERE " + (height > 0 ? "height >= ? AND " : "")
+                 PreparedStatement pstmtSelect = con.prepareStatement("SELECT * FROM block WHERE " + (startHeight > 0 ? "height >= ? AND " : "")
                          + " db_id >= ? ORDER BY db_id ASC LIMIT 50000");
-                 PreparedStatement pstmtDone = con.prepareStatement("UPDATE scan SET rescan = FALSE, height = 0, validate = FALSE")) {
+                 PreparedStatement pstmtDone = con.prepareStatement("UPDATE scan SET rescan = FALSE, height = 0, validate = FALSE, checkpoint = 0");
+                 PreparedStatement pstmtCheckpoint = con.prepareStatement("UPDATE scan SET checkpoint = ?");
+                 PreparedStatement pstmtSnapshot = con.prepareStatement("UPDATE scan SET snapshot_height = 0")) {
                 isScanning = true;
                 initialScanHeight = blockchain.getHeight();
-                if (height > blockchain.getHeight() + 1) {
-                    Logger.logMessage("Rollback height " + (height - 1) + " exceeds current blockchain height of " + blockchain.getHeight() + ", no scan needed");
+                scanStartHeight = startHeight;
+                scanStartTime = System.currentTimeMillis();
+                scanCheckpointHeight = startHeight;
+                if (!resume) {
+                    pstmtCheckpoint.setInt(1, 0);
+                    pstmtCheckpoint.executeUpdate();
+                }
+                if (startHeight > blockchain.getHeight() + 1) {
+                    Logger.logMessage("Rollback height " + (startHeight - 1) + " exceeds current blockchain height of " + blockchain.getHeight() + ", no scan needed");
                     pstmtDone.executeUpdate();
                     Db.db.commitTransaction();
                     return;
                 }
-                if (height == 0) {
+                if (height == 0 && !resume) {
                     Logger.logDebugMessage("Dropping all full text search indexes");
                     FullTextTrigger.dropAll(con);
                 }
                 for (DerivedDbTable table : derivedTables) {
-                    if (height == 0) {
+                    if (startHeight == 0) {
                         table.truncate();
                     } else {
-                        table.rollback(height - 1);
+                        table.rollback(startHeight - 1);
                     }
                 }
+                if (startHeight == 0) {
+                    pstmtSnapshot.executeUpdate();
+                }
                 Db.db.clearCache();
                 Db.db.commitTransaction();
+                if (startHeight == 0) {
+                    snapshotHeight = 0;
+                }
                 Logger.logDebugMessage("Rolled back derived tables");
-                BlockImpl currentBlock = BlockDb.findBlockAtHeight(height);
+                BlockImpl currentBlock = BlockDb.findBlockAtHeight(startHeight);
                 blockListeners.notify(currentBlock, Event.RESCAN_BEGIN);
                 long currentBlockId = currentBlock.getId();
-                if (height == 0) {
+                if (startHeight == 0) {
                     blockchain.setLastBlock(currentBlock); // special case to avoid no last block
                     Account.addOrGetAccount(Genesis.CREATOR_ID).apply(Genesis.CREATOR_PUBLIC_KEY);
                 } else {
-                    blockchain.setLastBlock(BlockDb.findBlockAtHeight(height - 1));
+                    blockchain.setLastBlock(BlockDb.findBlockAtHeight(startHeight - 1));
                 }
                 if (shutdown) {
                     Logger.logMessage("Scan will be performed at next start");
@@ -2040,8 +2345,8 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                     return;
                 }
                 int pstmtSelectIndex = 1;
-                if (height > 0) {
-                    pstmtSelect.setInt(pstmtSelectIndex++, height);
+                if (startHeight > 0) {
+                    pstmtSelect.setInt(pstmtSelectIndex++, startHeight);
                 }
                 long dbId = Long.MIN_VALUE;
                 boolean hasMore = true;
@@ -2050,60 +2355,81 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                     hasMore = false;
                     pstmtSelect.setLong(pstmtSelectIndex, dbId);
                     try (ResultSet rs = pstmtSelect.executeQuery()) {
-                        while (rs.next()) {
-                            try {
-                                dbId = rs.getLong("db_id");
-                                currentBlock = BlockDb.loadBlock(con, rs, true);
-                                currentBlock.loadTransactions();
-                                if (currentBlock.getId() != currentBlockId || currentBlock.getHeight() > blockchain.getHeight() + 1) {
-                                    throw new NxtException.NotValidException("Database blocks in the wrong order!");
+                        Deque<ScannedBlock> lookahead = new ArrayDeque<>();
+                        boolean hasNext = true;
+                        try {
+                            while (true) {
+                                while (hasNext && lookahead.size() < SCAN_LOOKAHEAD) {
+                                    hasNext = rs.next() && readAhead(con, rs, validate, lookahead);
                                 }
-                                Map<TransactionType, Map<String, Integer>> duplicates = new HashMap<>();
-                                List<TransactionImpl> validPhasedTransactions = new ArrayList<>();
-                                List<TransactionImpl> invalidPhasedTransactions = new ArrayList<>();
-                                validatePhasedTransactions(blockchain.getHeight(), validPhasedTransactions, invalidPhasedTransactions, duplicates);
-                                if (validate && currentBlockId != Genesis.GENESIS_BLOCK_ID) {
-                                    int curTime = Nxt.getEpochTime();
-                                    validate(currentBlock, blockchain.getLastBlock(), curTime);
-                                    byte[] blockBytes = currentBlock.bytes();
-                                    JSONObject blockJSON = (JSONObject) JSONValue.parse(currentBlock.getJSONObject().toJSONString());
-                                    if (!Arrays.equals(blockBytes, BlockImpl.parseBlock(blockJSON).bytes())) {
-                                        throw new NxtException.NotValidException("Block JSON cannot be parsed back to the same block");
+                                ScannedBlock scannedBlock = lookahead.poll();
+                                if (scannedBlock == null) {
+                                    break;
+                                }
+                                try {
+                                    dbId = scannedBlock.dbId;
+                                    currentBlock = scannedBlock.getBlock();
+                                    if (currentBlock.getId() != currentBlockId || currentBlock.getHeight() > blockchain.getHeight() + 1) {
+                                        throw new NxtException.NotValidException("Database blocks in the wrong order!");
                                     }
-                                    validateTransactions(currentBlock, blockchain.getLastBlock(), curTime, duplicates, true);
-                                    for (TransactionImpl transaction : currentBlock.getTransactions()) {
-                                        byte[] transactionBytes = transaction.bytes();
-                                        if (currentBlock.getHeight() > Constants.NQT_BLOCK
-                                                && !Arrays.equals(transactionBytes, TransactionImpl.newTransactionBuilder(transactionBytes).build().bytes())) {
-                                            throw new NxtException.NotValidException("Transaction bytes cannot be parsed back to the same transaction: "
-                                                    + transaction.getJSONObject().toJSONString());
+                                    Map<TransactionType, Map<String, Integer>> duplicates = new HashMap<>();
+                                    List<TransactionImpl> validPhasedTransactions = new ArrayList<>();
+                                    List<TransactionImpl> invalidPhasedTransactions = new ArrayList<>();
+                                    validatePhasedTransactions(blockchain.getHeight(), validPhasedTransactions, invalidPhasedTransactions, duplicates);
+                                    if (validate && currentBlockId != Genesis.GENESIS_BLOCK_ID) {
+                                        int curTime = Nxt.getEpochTime();
+                                        validate(currentBlock, blockchain.getLastBlock(), curTime);
+                                        byte[] blockBytes = currentBlock.bytes();
+                                        JSONObject blockJSON = (JSONObject) JSONValue.parse(currentBlock.getJSONObject().toJSONString());
+                                        if (!Arrays.equals(blockBytes, BlockImpl.parseBlock(blockJSON).bytes())) {
+                                            throw new NxtException.NotValidException("Block JSON cannot be parsed back to the same block");
                                         }
-                                        JSONObject transactionJSON = (JSONObject) JSONValue.parse(transaction.getJSONObject().toJSONString());
-                                        if (!Arrays.equals(transactionBytes, TransactionImpl.newTransactionBuilder(transactionJSON).build().bytes())) {
-                                            throw new NxtException.NotValidException("Transaction JSON cannot be parsed back to the same transaction: "
-                                                    + transaction.getJSONObject().toJSONString());
+                                        validateTransactions(currentBlock, blockchain.getLastBlock(), curTime, duplicates, true);
+                                        for (TransactionImpl transaction : currentBlock.getTransactions()) {
+                                            byte[] transactionBytes = transaction.bytes();
+                                            if (currentBlock.getHeight() > Constants.NQT_BLOCK
+                                                    && !Arrays.equals(transactionBytes, TransactionImpl.newTransactionBuilder(transactionBytes).build().bytes())) {
+                                                throw new NxtException.NotValidException("Transaction bytes cannot be parsed back to the same transaction: "
+                                                        + transaction.getJSONObject().toJSONString());
+                                            }
+                                            JSONObject transactionJSON = (JSONObject) JSONValue.parse(transaction.getJSONObject().toJSONString());
+                                            if (!Arrays.equals(transactionBytes, TransactionImpl.newTransactionBuilder(transactionJSON).build().bytes())) {
+                                                throw new NxtException.NotValidException("Transaction JSON cannot be parsed back to the same transaction: "
+                                                        + transaction.getJSONObject().toJSONString());
+                                            }
                                         }
                                     }
+                                    blockListeners.notify(currentBlock, Event.BEFORE_BLOCK_ACCEPT);
+                                    blockchain.setLastBlock(currentBlock);
+                                    accept(currentBlock, validPhasedTransactions, invalidPhasedTransactions, duplicates);
+                                    currentBlockId = currentBlock.getNextBlockId();
+                                    Db.db.clearCache();
+                                    if ((currentBlock.getHeight() + 1) % scanCheckpointInterval == 0) {
+                                        pstmtCheckpoint.setInt(1, currentBlock.getHeight() + 1);
+                                        pstmtCheckpoint.executeUpdate();
+                                        scanCheckpointHeight = currentBlock.getHeight() + 1;
+                                    }
+                                    Db.db.commitTransaction();
+                                    blockchain.commitLastBlock();
+                                    blockListeners.notify(currentBlock, Event.AFTER_BLOCK_ACCEPT);
+                                } catch (NxtException | RuntimeException e) {
+                                    Db.db.rollbackTransaction();
+                                    Logger.logDebugMessage(e.toString(), e);
+                                    Logger.logDebugMessage("Applying block " + Long.toUnsignedString(currentBlockId) + " at height "
+                                            + (currentBlock == null ? 0 : currentBlock.getHeight()) + " failed, deleting from database");
+                                    BlockImpl lastBlock = BlockDb.deleteBlocksFrom(currentBlockId);
+                                    blockchain.setLastBlock(lastBlock);
+                                    popOffTo(lastBlock);
+                                    break outer;
                                 }
-                                blockListeners.notify(currentBlock, Event.BEFORE_BLOCK_ACCEPT);
-                                blockchain.setLastBlock(currentBlock);
-                                accept(currentBlock, validPhasedTransactions, invalidPhasedTransactions, duplicates);
-                                currentBlockId = currentBlock.getNextBlockId();
-                                Db.db.clearCache();
-                                Db.db.commitTransaction();
-                                blockListeners.notify(currentBlock, Event.AFTER_BLOCK_ACCEPT);
-                            } catch (NxtException | RuntimeException e) {
-                                Db.db.rollbackTransaction();
-                                Logger.logDebugMessage(e.toString(), e);
-                                Logger.logDebugMessage("Applying block " + Long.toUnsignedString(currentBlockId) + " at height "
-                                        + (currentBlock == null ? 0 : currentBlock.getHeight()) + " failed, deleting from database");
-                                BlockImpl lastBlock = BlockDb.deleteBlocksFrom(currentBlockId);
-                                blockchain.setLastBlock(lastBlock);
-                                popOffTo(lastBlock);
-                                break outer;
+                                blockListeners.notify(currentBlock, Event.BLOCK_SCANNED);
+                                hasMore = true;
+                            }
+                        } finally {
+                            // after a failed block or an error the blocks read ahead are not applied
+                            for (ScannedBlock remaining : lookahead) {
+                                remaining.cancel();
                             }
-                            blockListeners.notify(currentBlock, Event.BLOCK_SCANNED);
-                            hasMore = true;
                         }
                         dbId = dbId + 1;
                     }
@@ -154,6 +154,7 @@ public final class Constants {
     public static final int PHASING_BLOCK = isTestnet ? -1 : -1;
     public static final int SHUFFLING_BLOCK = isTestnet ? -1 : -1;
     public static final int FXT_BLOCK = isTestnet ? -1 : -1;
+    public static final int BOUNTY_STORAGE_ORDER_BLOCK = isTestnet ? Integer.MAX_VALUE : Integer.MAX_VALUE;
 
 
 
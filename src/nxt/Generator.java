@@ -35,9 +35,13 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 public final class Generator implements Comparable<Generator> {
@@ -55,7 +59,23 @@ public final class Generator implements Comparable<Generator> {
     private static final Collection<Generator> allGenerators = Collections.unmodifiableCollection(generators.values());
     private static volatile List<Generator> sortedForgers = null;
     private static long lastBlockId;
-    private static int delayTime = Constants.FORGING_DELAY;
+    private static volatile int delayTime = Constants.FORGING_DELAY;
+
+    /** Interval between runs while the next hit time cannot be waited for */
+    private static final long FORGING_POLL_INTERVAL = 500;
+
+    /** Longest wait between runs */
+    private static final long MAX_FORGING_WAIT = 60000;
+
+    /** The run before the next hit time is this early, to prepare the block template */
+    private static final long TEMPLATE_LEAD_TIME = 1000;
+
+    private static final ScheduledExecutorService forgingService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "GenerateBlocks");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static ScheduledFuture<?> nextForgingRun;
 
     private static final Runnable generateBlocksThread = new Runnable() {
 
@@ -77,8 +97,8 @@ public final class Generator implements Comparable<Generator> {
                             lastBlockId = lastBlock.getId();
                             if (lastBlock.getTimestamp() > Nxt.getEpochTime() - 600) {
                                 Block previousBlock = Nxt.getBlockchain().getBlock(lastBlock.getPreviousBlockId());
-                                for (Generator generator : generators.values()) {
-                                    generator.setLastBlock(previousBlock);
+                                List<Generator> previousGenerators = setLastBlock(generators.values(), previousBlock);
+                                for (Generator generator : previousGenerators) {
                                     int timestamp = generator.getTimestamp(generationLimit);
                                     if (timestamp != generationLimit && generator.getHitTime() > 0 && timestamp < lastBlock.getTimestamp()) {
                                         Logger.logDebugMessage("Pop off: " + generator.toString() + " will pop off last block " + lastBlock.getStringId());
@@ -93,8 +113,7 @@ public final class Generator implements Comparable<Generator> {
                                 }
                             }
                             List<Generator> forgers = new ArrayList<>();
-                            for (Generator generator : generators.values()) {
-                                generator.setLastBlock(lastBlock);
+                            for (Generator generator : setLastBlock(generators.values(), lastBlock)) {
                                 if (generator.effectiveBalance.signum() > 0) {
                                     forgers.add(generator);
                                 }
@@ -112,6 +131,9 @@ public final class Generator implements Comparable<Generator> {
                                 logged = true;
                             }
                         }
+                        if (!sortedForgers.isEmpty()) {
+                            BlockchainProcessorImpl.getInstance().prepareBlockTemplate();
+                        }
                         for (Generator generator : sortedForgers) {
                             if (generator.getHitTime() > generationLimit || generator.forge(lastBlock, generationLimit)) {
                                 return;
@@ -133,14 +155,98 @@ public final class Generator implements Comparable<Generator> {
 
     };
 
+    /**
+     * Forging runs when a block is pushed or popped off, when forging starts or stops, shortly before and at the next
+     * hit time, instead of polling
+     */
+    private static final Runnable forgingTask = () -> {
+        synchronized (forgingService) {
+            nextForgingRun = null;
+        }
+        try {
+            generateBlocksThread.run();
+        } finally {
+            scheduleForging(getForgingWait());
+        }
+    };
+
     static {
         if (!Constants.isLightClient) {
-            ThreadPool.scheduleThread("GenerateBlocks", generateBlocksThread, 500, TimeUnit.MILLISECONDS);
+            if (!Nxt.getBooleanProperty("nxt.disableGenerateBlocksThread")) {
+                ThreadPool.runAfterStart(() -> {
+                    Nxt.getBlockchainProcessor().addListener(block -> wakeUp(), BlockchainProcessor.Event.BLOCK_PUSHED);
+                    Nxt.getBlockchainProcessor().addListener(block -> wakeUp(), BlockchainProcessor.Event.BLOCK_POPPED);
+                    wakeUp();
+                });
+            } else {
+                Logger.logMessage("Will not run GenerateBlocks thread");
+            }
         }
     }
 
     static void init() {}
 
+    static void shutdown() {
+        ThreadPool.shutdownExecutor("forgingService", forgingService, 10);
+    }
+
+    private static void wakeUp() {
+        scheduleForging(0);
+    }
+
+    private static void scheduleForging(long delay) {
+        synchronized (forgingService) {
+            if (forgingService.isShutdown()) {
+                return;
+            }
+            if (nextForgingRun != null && !nextForgingRun.isDone()) {
+                if (nextForgingRun.getDelay(TimeUnit.MILLISECONDS) <= delay) {
+                    return;
+                }
+                nextForgingRun.cancel(false);
+            }
+            nextForgingRun = forgingService.schedule(forgingTask, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Get the time until the forging task has to run again
+     *
+     * @return                      Wait in milliseconds
+     */
+    private static long getForgingWait() {
+        Block lastBlock = Nxt.getBlockchain().getLastBlock();
+        List<Generator> forgers = sortedForgers;
+        if (lastBlock == null || lastBlock.getHeight() < Constants.LAST_KNOWN_BLOCK) {
+            return FORGING_POLL_INTERVAL;
+        }
+        if (forgers == null || lastBlock.getId() != lastBlockId) {
+            return 0;
+        }
+        int generationLimit = Nxt.getEpochTime() - delayTime;
+        long nextHitTime = Long.MAX_VALUE;
+        for (Generator generator : forgers) {
+            if (generator.getHitTime() <= generationLimit) {
+                // the hit did not verify yet, try again as time passes
+                return FORGING_POLL_INTERVAL;
+            }
+            nextHitTime = Math.min(nextHitTime, generator.getHitTime());
+        }
+        if (nextHitTime > Integer.MAX_VALUE - delayTime) {
+            return MAX_FORGING_WAIT;
+        }
+        long now = System.currentTimeMillis();
+        if (Nxt.getEpochTime() != Convert.toEpochTime(now)) {
+            // not running on the system clock
+            return FORGING_POLL_INTERVAL;
+        }
+        long wait = Convert.fromEpochTime((int)nextHitTime + delayTime) - now;
+        if (wait > TEMPLATE_LEAD_TIME) {
+            wait -= TEMPLATE_LEAD_TIME;
+        }
+        return Math.min(Math.max(wait, 0), MAX_FORGING_WAIT);
+    }
+
     public static boolean addListener(Listener<Generator> listener, Event eventType) {
         return listeners.addListener(listener, eventType);
     }
@@ -159,6 +265,13 @@ public final class Generator implements Comparable<Generator> {
             Logger.logDebugMessage(old + " is already forging");
             return old;
         }
+        Nxt.getBlockchain().updateLock();
+        try {
+            sortedForgers = null;
+        } finally {
+            Nxt.getBlockchain().updateUnlock();
+        }
+        wakeUp();
         listeners.notify(generator, Event.START_FORGING);
         Logger.logDebugMessage(generator + " started");
         return generator;
@@ -173,6 +286,7 @@ public final class Generator implements Comparable<Generator> {
             } finally {
                 Nxt.getBlockchain().updateUnlock();
             }
+            wakeUp();
             Logger.logDebugMessage(generator + " stopped");
             listeners.notify(generator, Event.STOP_FORGING);
         }
@@ -194,6 +308,7 @@ public final class Generator implements Comparable<Generator> {
         } finally {
             Nxt.getBlockchain().updateUnlock();
         }
+        wakeUp();
         return count;
     }
 
@@ -232,6 +347,7 @@ public final class Generator implements Comparable<Generator> {
 
     static void setDelay(int delay) {
         Generator.delayTime = delay;
+        wakeUp();
     }
 
     static boolean verifyHit(BigInteger hit, BigInteger effectiveBalance, Block previousBlock, int timestamp) {
@@ -240,22 +356,12 @@ public final class Generator implements Comparable<Generator> {
             return false;
         }
 
-        // Get the total amount of claimed XEL until the prev-block-height
-        // This is required to ensure full forging power, even if not everything gets claimed.
-        long alreadyClaimed = 0;
-        if(previousBlock!=null && previousBlock.getHeight()>=0)
-            alreadyClaimed = Redeem.getGuaranteedRedeemed(previousBlock.getHeight());
-
-        // If nothing was claimed, no blocks can be forged - this should be logical
-        if(alreadyClaimed == 0)
+        BigInteger scale = getForgingScale(previousBlock);
+        if (scale == null) {
             return false;
+        }
 
-        // Now calculate the scale-factor
-        BigDecimal bd = new BigDecimal(alreadyClaimed, MathContext.DECIMAL32);
-        BigDecimal ad = new BigDecimal(Constants.MAX_BALANCE_NQT, MathContext.DECIMAL32);
-        ad = ad.divide(bd, 0, RoundingMode.HALF_UP);
-
-        BigInteger effectiveBaseTarget = BigInteger.valueOf(previousBlock.getBaseTarget()).multiply(effectiveBalance).multiply(ad.toBigInteger());
+        BigInteger effectiveBaseTarget = BigInteger.valueOf(previousBlock.getBaseTarget()).multiply(effectiveBalance).multiply(scale);
         BigInteger prevTarget = effectiveBaseTarget.multiply(BigInteger.valueOf(elapsedTime - 1));
         BigInteger target = prevTarget.add(effectiveBaseTarget);
         return hit.compareTo(target) < 0
@@ -284,7 +390,13 @@ public final class Generator implements Comparable<Generator> {
         return new BigInteger(1, new byte[] {generationSignatureHash[7], generationSignatureHash[6], generationSignatureHash[5], generationSignatureHash[4], generationSignatureHash[3], generationSignatureHash[2], generationSignatureHash[1], generationSignatureHash[0]});
     }
 
-    static long getHitTime(BigInteger effectiveBalance, BigInteger hit, Block block) {
+    /**
+     * Get the factor applied to the effective balance for the block after the given block
+     *
+     * @param   block               Block
+     * @return                      Scale factor, or null if nothing was claimed yet and no block can be forged
+     */
+    static BigInteger getForgingScale(Block block) {
 
         // Get the total amount of claimed XEL until the prev-block-height
         // This is required to ensure full forging power, even if not everything gets claimed.
@@ -294,15 +406,48 @@ public final class Generator implements Comparable<Generator> {
 
         // If nothing was claimed, no blocks can be forged - this should be logical
         if(alreadyClaimed == 0)
-            return Long.MAX_VALUE;
+            return null;
 
         // Now calculate the scale-factor
         BigDecimal bd = new BigDecimal(alreadyClaimed, MathContext.DECIMAL32);
         BigDecimal ad = new BigDecimal(Constants.MAX_BALANCE_NQT, MathContext.DECIMAL32);
         ad = ad.divide(bd, 0, RoundingMode.HALF_UP);
+        return ad.toBigInteger();
+    }
+
+    static long getHitTime(BigInteger effectiveBalance, BigInteger hit, Block block) {
+        return getHitTime(effectiveBalance, hit, block, getForgingScale(block));
+    }
 
+    private static long getHitTime(BigInteger effectiveBalance, BigInteger hit, Block block, BigInteger scale) {
+        if (scale == null) {
+            return Long.MAX_VALUE;
+        }
         return block.getTimestamp()
-                + hit.divide(BigInteger.valueOf(block.getBaseTarget()).multiply(effectiveBalance).multiply(ad.toBigInteger())).longValue();
+                + hit.divide(BigInteger.valueOf(block.getBaseTarget()).multiply(effectiveBalance).multiply(scale)).longValue();
+    }
+
+    /**
+     * Compute the hits of the generators on the given block. The effective balances are read with one batch and the
+     * hits are computed in parallel, the scale factor is the same for all generators.
+     *
+     * @param   generators          Generators
+     * @param   lastBlock           Block to forge on
+     * @return                      Generators which were updated
+     */
+    private static List<Generator> setLastBlock(Collection<Generator> generators, Block lastBlock) {
+        List<Generator> updated = new ArrayList<>(generators);
+        List<Long> accountIds = new ArrayList<>(updated.size());
+        updated.forEach(generator -> accountIds.add(generator.accountId));
+        Map<Long, Long> effectiveBalances = Account.getEffectiveBalancesNXT(accountIds, lastBlock.getHeight());
+        BigInteger scale = getForgingScale(lastBlock);
+        updated.parallelStream().forEach(generator -> generator.setLastBlock(lastBlock, effectiveBalances.get(generator.accountId), scale));
+        for (Generator generator : updated) {
+            if (generator.effectiveBalance.signum() > 0) {
+                listeners.notify(generator, Event.GENERATION_DEADLINE);
+            }
+        }
+        return updated;
     }
 
 
@@ -321,7 +466,7 @@ public final class Generator implements Comparable<Generator> {
         Nxt.getBlockchain().updateLock();
         try {
             if (Nxt.getBlockchain().getHeight() >= Constants.LAST_KNOWN_BLOCK) {
-                setLastBlock(Nxt.getBlockchain().getLastBlock());
+                setLastBlock(Collections.singletonList(this), Nxt.getBlockchain().getLastBlock());
             }
             sortedForgers = null;
         } finally {
@@ -359,23 +504,16 @@ public final class Generator implements Comparable<Generator> {
         return "Forger " + Long.toUnsignedString(accountId) + " deadline " + getDeadline() + " hit " + hitTime;
     }
 
-    private void setLastBlock(Block lastBlock) {
-        int height = lastBlock.getHeight();
-        Account account = Account.getAccount(accountId, height);
-        if (account == null) {
-            effectiveBalance = BigInteger.ZERO;
-        } else {
-            effectiveBalance = BigInteger.valueOf(Math.max(account.getEffectiveBalanceNXT(height), 0));
-        }
+    private void setLastBlock(Block lastBlock, long effectiveBalanceNXT, BigInteger scale) {
+        effectiveBalance = BigInteger.valueOf(effectiveBalanceNXT);
         if (effectiveBalance.signum() == 0) {
             hitTime = 0;
             hit = BigInteger.ZERO;
             return;
         }
         hit = getHit(publicKey, lastBlock);
-        hitTime = getHitTime(effectiveBalance, hit, lastBlock);
+        hitTime = getHitTime(effectiveBalance, hit, lastBlock, scale);
         deadline = Math.max(hitTime - lastBlock.getTimestamp(), 0);
-        listeners.notify(this, Event.GENERATION_DEADLINE);
     }
 
     boolean forge(Block lastBlock, int generationLimit) throws BlockchainProcessor.BlockNotAcceptedException {
@@ -444,9 +582,10 @@ public final class Generator implements Comparable<Generator> {
             if (blockId != activeBlockId) {
                 activeBlockId = blockId;
                 Block lastBlock = blockchain.getLastBlock();
-                for (ActiveGenerator generator : activeGenerators) {
-                    generator.setLastBlock(lastBlock);
-                }
+                Map<Long, Long> effectiveBalances = Account.getEffectiveBalancesNXT(activeGeneratorIds, lastBlock.getHeight());
+                BigInteger scale = getForgingScale(lastBlock);
+                activeGenerators.parallelStream().forEach(generator ->
+                        generator.setLastBlock(lastBlock, effectiveBalances.get(generator.accountId), scale));
                 Collections.sort(activeGenerators);
             }
             generatorList = new ArrayList<>(activeGenerators);
@@ -480,7 +619,7 @@ public final class Generator implements Comparable<Generator> {
             return hitTime;
         }
 
-        private void setLastBlock(Block lastBlock) {
+        private void setLastBlock(Block lastBlock, long effectiveBalanceNXT, BigInteger scale) {
             if (publicKey == null) {
                 publicKey = Account.getPublicKey(accountId);
                 if (publicKey == null) {
@@ -488,20 +627,14 @@ public final class Generator implements Comparable<Generator> {
                     return;
                 }
             }
-            int height = lastBlock.getHeight();
-            Account account = Account.getAccount(accountId, height);
-            if (account == null) {
-                hitTime = Long.MAX_VALUE;
-                return;
-            }
-            effectiveBalanceNXT = Math.max(account.getEffectiveBalanceNXT(height), 0);
+            this.effectiveBalanceNXT = effectiveBalanceNXT;
             if (effectiveBalanceNXT == 0) {
                 hitTime = Long.MAX_VALUE;
                 return;
             }
             BigInteger effectiveBalance = BigInteger.valueOf(effectiveBalanceNXT);
             BigInteger hit = Generator.getHit(publicKey, lastBlock);
-            hitTime = Generator.getHitTime(effectiveBalance, hit, lastBlock);
+            hitTime = Generator.getHitTime(effectiveBalance, hit, lastBlock, scale);
         }
 
         @Override
@@ -19,6 +19,7 @@ package nxt;
 import nxt.PowAndBounty;
 import nxt.addons.AddOns;
 import nxt.computation.MessageEncoder;
+import nxt.computation.SubmissionPrevalidator;
 import nxt.crypto.Crypto;
 import nxt.env.DirProvider;
 import nxt.env.RuntimeEnvironment;
@@ -327,7 +328,10 @@ public final class Nxt {
         API.shutdown();
         Users.shutdown();
         ThreadPool.shutdown();
+        Generator.shutdown();
         BlockchainProcessorImpl.getInstance().shutdown();
+        MessageEncoder.shutdown();
+        SubmissionPrevalidator.shutdown();
         Peers.shutdown();
         Db.shutdown();
         Logger.logShutdownMessage("Nxt server " + VERSION + " stopped.");
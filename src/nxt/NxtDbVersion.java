@@ -30,6 +30,11 @@ import java.util.List;
 
 class NxtDbVersion extends DbVersion {
 
+    @Override
+    protected void restore(int dbVersion) {
+        Snapshot.restore(dbVersion);
+    }
+
     protected void update(int nextUpdate) {
         switch (nextUpdate) {
             case 1:
@@ -1216,8 +1221,49 @@ class NxtDbVersion extends DbVersion {
             case 498:
                 apply("CREATE INDEX IF NOT EXISTS pow_and_bountyD ON pow_and_bounty (height)");
             case 499:
-                return;
+                apply("CREATE TABLE IF NOT EXISTS work_storage (db_id IDENTITY, work_id BIGINT NOT NULL, iteration INT NOT NULL, "
+                        + "bucket INT NOT NULL, storage VARBINARY NOT NULL, height INT NOT NULL)");
             case 500:
+                apply("CREATE UNIQUE INDEX IF NOT EXISTS work_storage_id_iteration_bucket_idx ON work_storage (work_id, iteration, bucket)");
+            case 501:
+                apply("CREATE INDEX IF NOT EXISTS work_storage_height_idx ON work_storage (height)");
+            case 502:
+                apply("ALTER TABLE work DROP COLUMN IF EXISTS combined_storage");
+            case 503:
+                apply(null);
+            case 504:
+                apply("CREATE TABLE IF NOT EXISTS work_code (db_id IDENTITY, hash BINARY(32) NOT NULL, code CLOB NOT NULL, "
+                        + "height INT NOT NULL)");
+            case 505:
+                apply("CREATE UNIQUE INDEX IF NOT EXISTS work_code_hash_idx ON work_code (hash)");
+            case 506:
+                apply("CREATE INDEX IF NOT EXISTS work_code_height_idx ON work_code (height)");
+            case 507:
+                apply("ALTER TABLE work DROP COLUMN IF EXISTS verify_function");
+            case 508:
+                apply("ALTER TABLE work DROP COLUMN IF EXISTS source_code");
+            case 509:
+                apply("ALTER TABLE work ADD COLUMN IF NOT EXISTS verify_hash BINARY(32)");
+            case 510:
+                apply("ALTER TABLE work ADD COLUMN IF NOT EXISTS source_hash BINARY(32)");
+            case 511:
+                BlockchainProcessorImpl.getInstance().scheduleScan(0, false);
+                apply(null);
+            case 512:
+                apply("ALTER TABLE scan ADD COLUMN IF NOT EXISTS checkpoint INT NOT NULL DEFAULT 0");
+            case 513:
+                apply("ALTER TABLE work ADD COLUMN IF NOT EXISTS close_height INT NOT NULL DEFAULT 0");
+            case 514:
+                apply("UPDATE work SET close_height = originating_height + blocks_remaining");
+            case 515:
+                apply("CREATE INDEX IF NOT EXISTS work_close_height_idx ON work (close_height, id)");
+            case 516:
+                apply("CREATE TABLE IF NOT EXISTS entity_store (seq BIGINT NOT NULL)");
+            case 517:
+                apply("INSERT INTO entity_store (seq) VALUES (-1)");
+            case 518:
+                apply("ALTER TABLE scan ADD COLUMN IF NOT EXISTS snapshot_height INT NOT NULL DEFAULT 0");
+            case 519:
                 return;
             default:
                 throw new RuntimeException("Blockchain database inconsistent with code, at update " + nextUpdate
@@ -4,7 +4,12 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import nxt.computation.CommandPowBty;
 
@@ -12,8 +17,9 @@ import nxt.db.DbClause;
 import nxt.db.DbIterator;
 import nxt.db.DbKey;
 import nxt.db.DbUtils;
+import nxt.db.EntityCodec;
+import nxt.db.TransactionalDb;
 import nxt.db.VersionedEntityDbTable;
-import nxt.util.Convert;
 import nxt.util.Listener;
 import nxt.util.Listeners;
 import nxt.util.Logger;
@@ -55,8 +61,22 @@ public final class PowAndBounty {
 
     };
 
+    static final EntityCodec<PowAndBounty> powAndBountyCodec = new EntityCodec<PowAndBounty>() {
+
+        @Override
+        public byte[] encode(final PowAndBounty participant) {
+            return participant.toBytes();
+        }
+
+        @Override
+        public PowAndBounty decode(final DbKey dbKey, final ByteBuffer buffer) {
+            return new PowAndBounty(buffer, dbKey);
+        }
+
+    };
+
     private static final VersionedEntityDbTable<PowAndBounty> powAndBountyTable = new VersionedEntityDbTable<PowAndBounty>(
-            "pow_and_bounty", PowAndBounty.powAndBountyDbKeyFactory) {
+            "pow_and_bounty", PowAndBounty.powAndBountyDbKeyFactory, PowAndBounty.powAndBountyCodec) {
 
         @Override
         protected PowAndBounty load(final Connection con, final ResultSet rs, final DbKey dbKey) throws SQLException {
@@ -68,12 +88,46 @@ public final class PowAndBounty {
             participant.save(con);
         }
 
+        @Override
+        public void rollback(final int height) {
+            super.rollback(height);
+            PowAndBounty.multipliers.clear();
+        }
+
+        @Override
+        public void truncate() {
+            super.truncate();
+            PowAndBounty.multipliers.clear();
+        }
+
     };
 
+    // Multipliers already submitted, per open work. Loaded from the table on first use and kept in sync by
+    // addPowBty, so that duplicate checks do not need a blob comparison query per submission.
+    private static final Map<Long, Set<ByteBuffer>> multipliers = new ConcurrentHashMap<>();
+
+    // a block that fails to apply leaves entries in the index that are no longer in the table, start over then
+    private static final TransactionalDb.TransactionCallback multipliersRollback = new TransactionalDb.TransactionCallback() {
+        @Override
+        public void commit() {
+        }
+
+        @Override
+        public void rollback() {
+            PowAndBounty.multipliers.clear();
+        }
+    };
+
+    static {
+        Work.addListener(work -> PowAndBounty.multipliers.remove(work.getId()), Work.Event.WORK_CANCELLED);
+        Work.addListener(work -> PowAndBounty.multipliers.remove(work.getId()), Work.Event.WORK_TIMEOUTED);
+    }
+
 
     public static void addPowBty(final Transaction transaction, final CommandPowBty attachment) {
         PowAndBounty shuffling = new PowAndBounty(transaction, attachment);
         PowAndBounty.powAndBountyTable.insert(shuffling); // store immedeately!
+        PowAndBounty.getMultipliers(attachment.getWork_id()).add(ByteBuffer.wrap(shuffling.multiplier));
 
         // Here check if it is counting or if it is "old"
         Work w = Work.getWork(attachment.getWork_id());
@@ -110,37 +164,30 @@ public final class PowAndBounty {
             }
 
 
-            w.EmitBty();
-            w.JustSave(); // we will have to save again when storage gets consolidated in the next step! Do it more elegant later on
+            // from the fork on, the combined storage is consolidated incrementally, it switches to the new iteration
+            // with its last slot
+            final boolean incremental = Nxt.getBlockchain().getHeight() >= Constants.BOUNTY_STORAGE_ORDER_BLOCK;
+            if (incremental) {
+                w.addBountyStorage(shuffling.validator);
+            }
 
+            w.EmitBty();
+            w.JustSave();
 
-            // In all cases (even after close case) make sure the combined storage is updated properly!
             if(w.getReceived_bounties()%w.getBounty_limit_per_iteration()==0){
-
-                int cntr = 0;
-                String xxxx = Arrays.toString(w.getCombined_storage());
-                byte[] fullstorage = new byte[w.getBounty_limit_per_iteration()*w.getStorage_size()*4];
-                try(DbIterator<PowAndBounty> it = getLastBountiesRelevantForStorageGeneration(w.getId())){
-                    while(it.hasNext()){
-                        PowAndBounty n = it.next();
-                        byte[] storage = n.validator;
-                        for(int i=0;i<storage.length;++i){
-                            fullstorage[cntr*w.getStorage_size()*4+i] = storage[i];
+                if (!incremental || !w.hasAllBountyStorages()) {
+                    // before the fork, and for an iteration that started before it, the slots hold the last bounties
+                    // by height, and bounties of the same height come in the order the database returns them
+                    final List<byte[]> storages = new ArrayList<>();
+                    try (DbIterator<PowAndBounty> it = getLastBountiesRelevantForStorageGeneration(w.getId())) {
+                        while (it.hasNext()) {
+                            storages.add(it.next().validator);
                         }
-                        cntr++;
                     }
-                    w.setCombined_storage(Convert.byte2int(fullstorage));
-                    w.JustSave();
+                    w.setBountyStorages(storages);
                 }
-
-
-
-                Logger.logDebugMessage("Consolidating storage for job " + w.getId() + " after " + w.getReceived_bounties() + " bounties. [processing cntr = " + cntr + "]");
-                Logger.logDebugMessage("Full Storage: before: " + xxxx + ", after: " + Arrays.toString(Convert.byte2int(fullstorage)));
+                Logger.logDebugMessage("Consolidated storage for job " + w.getId() + " after " + w.getReceived_bounties() + " bounties.");
             }
-
-
-
         }
         PowAndBounty.listeners.notify(shuffling, (shuffling.is_pow)?Event.POW_SUBMITTED:Event.BOUNTY_SUBMITTED);
     }
@@ -210,8 +257,33 @@ public final class PowAndBounty {
     }
 
     public static boolean hasMultiplier(long workId, byte[] multiplier) {
-        return PowAndBounty.powAndBountyTable
-                .getCount(new DbClause.BytesClause("multiplier", multiplier).and(new DbClause.LongClause("work_id",workId))) > 0;
+        return PowAndBounty.getMultipliers(workId).contains(ByteBuffer.wrap(multiplier));
+    }
+
+    private static Set<ByteBuffer> getMultipliers(final long workId) {
+        if (Db.db.isInTransaction()) {
+            Db.db.registerCallback(PowAndBounty.multipliersRollback);
+        }
+        return PowAndBounty.multipliers.computeIfAbsent(workId, PowAndBounty::loadMultipliers);
+    }
+
+    private static Set<ByteBuffer> loadMultipliers(final long workId) {
+        final Set<ByteBuffer> set = ConcurrentHashMap.newKeySet();
+        try (Connection con = powAndBountyTable.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT multiplier FROM pow_and_bounty WHERE work_id = ?")) {
+            pstmt.setLong(1, workId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    final byte[] multiplier = rs.getBytes("multiplier");
+                    if (multiplier != null) {
+                        set.add(ByteBuffer.wrap(multiplier));
+                    }
+                }
+            }
+        } catch (final SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+        return set;
     }
 
 
@@ -244,6 +316,10 @@ public final class PowAndBounty {
         return id;
     }
 
+    byte[] getVerificatorHash() {
+        return verificator_hash;
+    }
+
     private PowAndBounty(final ResultSet rs, final DbKey dbKey) throws SQLException {
         this.id = rs.getLong("id");
         this.work_id = rs.getLong("work_id");
@@ -252,13 +328,45 @@ public final class PowAndBounty {
         this.dbKey = dbKey;
         this.too_late = rs.getBoolean("too_late");
         this.hash = rs.getBytes("hash");
-        this.verificator_hash = rs.getBytes("hash");
+        this.verificator_hash = rs.getBytes("verificator_hash");
         this.multiplier = rs.getBytes("multiplier");
         this.pow_hash = rs.getBytes("pow_hash");
         this.validator = rs.getBytes("validator");
         this.storage_bucket = rs.getInt("storage_bucket");
     }
 
+    private PowAndBounty(final ByteBuffer buffer, final DbKey dbKey) {
+        this.id = buffer.getLong();
+        this.work_id = buffer.getLong();
+        this.accountId = buffer.getLong();
+        this.is_pow = buffer.get() != 0;
+        this.dbKey = dbKey;
+        this.too_late = buffer.get() != 0;
+        this.hash = DbUtils.getBytes(buffer);
+        this.verificator_hash = DbUtils.getBytes(buffer);
+        this.multiplier = DbUtils.getBytes(buffer);
+        this.pow_hash = DbUtils.getBytes(buffer);
+        this.validator = DbUtils.getBytes(buffer);
+        this.storage_bucket = buffer.getInt();
+    }
+
+    private byte[] toBytes() {
+        final ByteBuffer buffer = ByteBuffer.allocate(30 + DbUtils.sizeOf(this.hash) + DbUtils.sizeOf(this.verificator_hash)
+                + DbUtils.sizeOf(this.multiplier) + DbUtils.sizeOf(this.pow_hash) + DbUtils.sizeOf(this.validator));
+        buffer.putLong(this.id);
+        buffer.putLong(this.work_id);
+        buffer.putLong(this.accountId);
+        buffer.put((byte) (this.is_pow ? 1 : 0));
+        buffer.put((byte) (this.too_late ? 1 : 0));
+        DbUtils.putBytes(buffer, this.hash);
+        DbUtils.putBytes(buffer, this.verificator_hash);
+        DbUtils.putBytes(buffer, this.multiplier);
+        DbUtils.putBytes(buffer, this.pow_hash);
+        DbUtils.putBytes(buffer, this.validator);
+        buffer.putInt(this.storage_bucket);
+        return buffer.array();
+    }
+
     private PowAndBounty(final Transaction transaction, final CommandPowBty attachment) {
         this.id = transaction.getId();
         this.work_id = attachment.getWork_id();
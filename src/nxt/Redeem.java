@@ -139,7 +139,7 @@ public final class Redeem {
     }
 
     public static boolean isAlreadyRedeemed(final String address) {
-        try (Connection con = Db.db.getConnection();
+        try (Connection con = redeemTable.getConnection();
              PreparedStatement pstmt = con
                      .prepareStatement("SELECT receiver_id FROM redeems WHERE address = ? AND latest = true")) {
             pstmt.setString(1, address);
@@ -238,7 +238,7 @@ public final class Redeem {
         // Adjust to guaranteed level
         height = height - Math.min(Constants.GUARANTEED_BALANCE_CONFIRMATIONS, height - 1);
 
-        try (Connection con = Db.db.getConnection();
+        try (Connection con = redeemTable.getConnection();
              PreparedStatement pstmt = con
                      .prepareStatement("SELECT SUM(AMOUNT) as amount FROM redeems WHERE height <= ? AND latest = true")) {
             pstmt.setInt(1, height);
@@ -0,0 +1,347 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt;
+
+import nxt.crypto.Crypto;
+import nxt.db.DerivedDbTable;
+import nxt.db.FullTextTrigger;
+import nxt.util.Convert;
+import nxt.util.Logger;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Database snapshots, to bootstrap a new node without applying the blockchain from the genesis block.
+ *
+ * A snapshot is a zip file holding an SQL script and a manifest.  The script inserts the blocks and transactions up
+ * to the snapshot height and the rows of the derived tables as they were at that height.  The manifest has the height
+ * and id of the last block, the db version, the verifyChecksum style checksum of the transactions and the SHA-256
+ * hash of the script.  The snapshot height is kept below the blocks that can still be rolled back, so the export
+ * runs next to block push, with only the trimming of the derived tables held off.
+ *
+ * A new node restores the snapshot into its newly created tables when nxt.snapshotFile is set and the hash matches
+ * the trusted nxt.snapshotHash, and then only downloads the blocks after the snapshot height.  It does not roll back
+ * below the snapshot height, the derived tables have no older versions.
+ */
+public final class Snapshot {
+
+    private static final String SCRIPT_ENTRY = "snapshot.sql";
+    private static final String MANIFEST_ENTRY = "snapshot.json";
+    private static final int ROWS_PER_INSERT = 100;
+
+    /**
+     * Export the database at the highest height that can no longer be rolled back
+     *
+     * @param   dir                 Directory to create the snapshot-[height].zip file in
+     * @return                      Snapshot manifest
+     * @throws  IOException         Unable to write the snapshot
+     */
+    public static JSONObject export(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create directory " + dir.getPath());
+        }
+        BlockchainImpl blockchain = BlockchainImpl.getInstance();
+        BlockchainProcessorImpl blockchainProcessor = BlockchainProcessorImpl.getInstance();
+        if (blockchainProcessor.isScanning()) {
+            throw new IllegalStateException("Unable to export a snapshot while the blockchain is scanned");
+        }
+        if (!blockchainProcessor.suspendTrim()) {
+            throw new IllegalStateException("Unable to export a snapshot while the derived tables are trimmed, retry later");
+        }
+        try {
+            long scanStartTime = blockchainProcessor.getScanStartTime();
+            int height = Math.max(blockchain.getHeight() - Constants.MAX_ROLLBACK, blockchainProcessor.getMinRollbackHeight());
+            BlockImpl block = BlockDb.findBlockAtHeight(height);
+            JSONObject manifest = new JSONObject();
+            File file = new File(dir, "snapshot-" + height + ".zip");
+            File tempFile = new File(dir, file.getName() + ".tmp");
+            MessageDigest digest = Crypto.sha256();
+            try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(tempFile));
+                 Connection con = Db.db.getConnection()) {
+                out.putNextEntry(new ZipEntry(SCRIPT_ENTRY));
+                Writer writer = new BufferedWriter(new OutputStreamWriter(new DigestOutputStream(out, digest), StandardCharsets.UTF_8));
+                try (PreparedStatement pstmt = con.prepareStatement("SELECT * FROM block WHERE height <= ? ORDER BY db_id")) {
+                    pstmt.setInt(1, height);
+                    writeRows(writer, "block", pstmt);
+                }
+                writer.write("UPDATE block SET next_block_id = NULL WHERE height = " + height + ";\n");
+                try (PreparedStatement pstmt = con.prepareStatement("SELECT * FROM transaction WHERE height <= ? ORDER BY db_id")) {
+                    pstmt.setInt(1, height);
+                    writeRows(writer, "transaction", pstmt);
+                }
+                try (PreparedStatement pstmt = con.prepareStatement("SELECT referenced_transaction.* FROM referenced_transaction, "
+                        + "transaction WHERE referenced_transaction.transaction_id = transaction.id AND transaction.height <= ? "
+                        + "ORDER BY referenced_transaction.db_id")) {
+                    pstmt.setInt(1, height);
+                    writeRows(writer, "referenced_transaction", pstmt);
+                }
+                for (DerivedDbTable table : blockchainProcessor.getDerivedTables()) {
+                    try (PreparedStatement pstmt = table.prepareSelectAtHeight(con, height)) {
+                        writeRows(writer, table.toString(), pstmt);
+                    }
+                }
+                writer.flush();
+                out.closeEntry();
+                //
+                // Nothing at or below the height may have changed meanwhile
+                //
+                if (blockchainProcessor.isScanning() || blockchainProcessor.getScanStartTime() != scanStartTime
+                        || BlockDb.findBlockAtHeight(height).getId() != block.getId()) {
+                    throw new IllegalStateException("Blockchain was scanned or rolled back below height " + height
+                            + " during the snapshot export, retry");
+                }
+                manifest.put("height", height);
+                manifest.put("block", block.getStringId());
+                manifest.put("dbVersion", getDbVersion(con));
+                manifest.put("checksum", Convert.toHexString(blockchainProcessor.calculateChecksum(0, height)));
+                manifest.put("hash", Convert.toHexString(digest.digest()));
+                out.putNextEntry(new ZipEntry(MANIFEST_ENTRY));
+                out.write(Convert.toBytes(manifest.toJSONString()));
+                out.closeEntry();
+            } catch (SQLException e) {
+                Files.deleteIfExists(tempFile.toPath());
+                throw new RuntimeException(e.toString(), e);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(tempFile.toPath());
+                throw e;
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            manifest.put("file", file.getAbsolutePath());
+            Logger.logMessage("Exported snapshot at height " + height + " to " + file.getAbsolutePath()
+                    + ", hash " + manifest.get("hash"));
+            return manifest;
+        } finally {
+            blockchainProcessor.resumeTrim();
+        }
+    }
+
+    private static void writeRows(Writer writer, String table, PreparedStatement pstmt) throws SQLException, IOException {
+        try (ResultSet rs = pstmt.executeQuery()) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            StringBuilder insert = new StringBuilder("INSERT INTO ").append(table).append(" (");
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                insert.append(i > 1 ? ", " : "").append(metaData.getColumnName(i).toLowerCase());
+            }
+            insert.append(") VALUES\n");
+            int rows = 0;
+            while (rs.next()) {
+                writer.write(rows % ROWS_PER_INSERT == 0 ? insert.toString() : ",\n");
+                writer.write('(');
+                for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                    if (i > 1) {
+                        writer.write(", ");
+                    }
+                    writer.write(toSqlLiteral(rs.getObject(i)));
+                }
+                writer.write(')');
+                rows += 1;
+                if (rows % ROWS_PER_INSERT == 0) {
+                    writer.write(";\n");
+                }
+            }
+            if (rows % ROWS_PER_INSERT != 0) {
+                writer.write(";\n");
+            }
+        }
+    }
+
+    private static String toSqlLiteral(Object value) throws SQLException {
+        if (value == null) {
+            return "NULL";
+        }
+        if (value instanceof Clob) {
+            Clob clob = (Clob) value;
+            value = clob.getSubString(1, (int) clob.length());
+        } else if (value instanceof Blob) {
+            Blob blob = (Blob) value;
+            value = blob.getBytes(1, (int) blob.length());
+        } else if (value instanceof Array) {
+            value = ((Array) value).getArray();
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? "TRUE" : "FALSE";
+        }
+        if (value instanceof Number) {
+            return value.toString();
+        }
+        if (value instanceof String) {
+            return "'" + ((String) value).replace("'", "''") + "'";
+        }
+        if (value instanceof byte[]) {
+            return "X'" + Convert.toHexString((byte[]) value) + "'";
+        }
+        if (value instanceof Object[]) {
+            Object[] elements = (Object[]) value;
+            StringBuilder sb = new StringBuilder("(");
+            for (int i = 0; i < elements.length; i++) {
+                sb.append(i > 0 ? ", " : "").append(toSqlLiteral(elements[i]));
+            }
+            return sb.append(elements.length == 1 ? ",)" : ")").toString();
+        }
+        throw new IllegalArgumentException("Unsupported column value " + value.getClass().getName());
+    }
+
+    private static int getDbVersion(Connection con) throws SQLException {
+        try (Statement stmt = con.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT next_update FROM version")) {
+            rs.next();
+            return rs.getInt(1) - 1;
+        }
+    }
+
+    /**
+     * Restore the snapshot configured by nxt.snapshotFile into the newly created database
+     *
+     * @param   dbVersion           Version of the created tables
+     */
+    static void restore(int dbVersion) {
+        String fileName = Nxt.getStringProperty("nxt.snapshotFile");
+        if (fileName == null) {
+            return;
+        }
+        String trustedHash = Nxt.getStringProperty("nxt.snapshotHash");
+        if (trustedHash == null) {
+            throw new RuntimeException("nxt.snapshotHash must be set to restore the snapshot " + fileName);
+        }
+        restore(new File(fileName).getAbsoluteFile(), trustedHash, dbVersion);
+    }
+
+    /**
+     * Restore a snapshot into empty tables
+     *
+     * The script is copied out of the zip file and hashed first, the copy is only run if its hash matches.
+     *
+     * @param   file                Snapshot file
+     * @param   trustedHash         Expected SHA-256 hash of the script
+     * @param   dbVersion           Version of the tables
+     */
+    static void restore(File file, String trustedHash, int dbVersion) {
+        JSONObject manifest;
+        File scriptFile;
+        try (ZipFile zip = new ZipFile(file)) {
+            ZipEntry manifestEntry = zip.getEntry(MANIFEST_ENTRY);
+            ZipEntry scriptEntry = zip.getEntry(SCRIPT_ENTRY);
+            if (manifestEntry == null || scriptEntry == null) {
+                throw new RuntimeException(file.getPath() + " is not a snapshot");
+            }
+            try (Reader reader = new InputStreamReader(zip.getInputStream(manifestEntry), StandardCharsets.UTF_8)) {
+                manifest = (JSONObject) JSONValue.parse(reader);
+            }
+            scriptFile = File.createTempFile("snapshot", ".sql");
+            MessageDigest digest = Crypto.sha256();
+            try (InputStream in = zip.getInputStream(scriptEntry);
+                 OutputStream out = new FileOutputStream(scriptFile)) {
+                byte[] buffer = new byte[65536];
+                int length;
+                while ((length = in.read(buffer)) > 0) {
+                    digest.update(buffer, 0, length);
+                    out.write(buffer, 0, length);
+                }
+            } catch (IOException e) {
+                Files.deleteIfExists(scriptFile.toPath());
+                throw e;
+            }
+            String hash = Convert.toHexString(digest.digest());
+            if (!hash.equals(manifest.get("hash")) || !hash.equalsIgnoreCase(trustedHash)) {
+                Files.deleteIfExists(scriptFile.toPath());
+                throw new RuntimeException("Snapshot hash " + hash + " does not match nxt.snapshotHash " + trustedHash);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read snapshot " + file.getPath() + ": " + e.toString(), e);
+        }
+        try {
+            int height = ((Long) manifest.get("height")).intValue();
+            if (((Long) manifest.get("dbVersion")).intValue() != dbVersion) {
+                throw new RuntimeException("Snapshot is at db version " + manifest.get("dbVersion") + ", the database at "
+                        + dbVersion);
+            }
+            Logger.logMessage("Restoring snapshot at height " + height + " from " + file.getPath());
+            BlockImpl lastBlock;
+            Db.db.beginTransaction();
+            try (Connection con = Db.db.getConnection();
+                 Statement stmt = con.createStatement()) {
+                stmt.execute("RUNSCRIPT FROM '" + scriptFile.getPath().replace("'", "''") + "' CHARSET 'UTF-8'");
+                stmt.executeUpdate("UPDATE scan SET rescan = FALSE, height = 0, validate = FALSE, checkpoint = 0, "
+                        + "snapshot_height = " + height);
+                //
+                // The script hash is trusted, this only makes sure the restored tables are the ones the manifest describes
+                //
+                lastBlock = BlockDb.findLastBlock();
+                if (lastBlock == null || lastBlock.getHeight() != height || !lastBlock.getStringId().equals(manifest.get("block"))) {
+                    throw new RuntimeException("Restored snapshot does not end at block " + manifest.get("block"));
+                }
+                byte[] checksum = BlockchainProcessorImpl.getInstance().calculateChecksum(0, height);
+                if (!Arrays.equals(checksum, Convert.parseHexString((String) manifest.get("checksum")))) {
+                    throw new RuntimeException("Restored snapshot fails its transaction checksum");
+                }
+                Db.db.commitTransaction();
+            } catch (SQLException e) {
+                Db.db.rollbackTransaction();
+                throw new RuntimeException("Unable to restore snapshot: " + e.toString(), e);
+            } catch (RuntimeException e) {
+                Db.db.rollbackTransaction();
+                throw e;
+            } finally {
+                Db.db.endTransaction();
+            }
+            try (Connection con = Db.db.getConnection()) {
+                FullTextTrigger.reindex(con);
+            } catch (SQLException e) {
+                throw new RuntimeException(e.toString(), e);
+            }
+            Logger.logMessage("Restored snapshot at height " + height + ", block " + lastBlock.getStringId());
+        } finally {
+            try {
+                Files.deleteIfExists(scriptFile.toPath());
+            } catch (IOException e) {
+                Logger.logErrorMessage("Unable to delete " + scriptFile.getPath(), e);
+            }
+        }
+    }
+
+    private Snapshot() {}
+
+}
@@ -853,6 +853,14 @@ final class TransactionImpl implements Transaction {
         return transaction;
     }
 
+    static TransactionImpl parseTransaction(byte[] bytes, JSONObject prunableAttachments) throws NxtException.NotValidException {
+        TransactionImpl transaction = newTransactionBuilder(bytes, prunableAttachments).build();
+        if (transaction.getSignature() != null && !transaction.checkSignature()) {
+            throw new NxtException.NotValidException("Invalid transaction signature for transaction " + transaction.getJSONObject().toJSONString());
+        }
+        return transaction;
+    }
+
     static TransactionImpl.BuilderImpl newTransactionBuilder(JSONObject transactionData) throws NxtException.NotValidException {
         try {
             byte type = ((Long) transactionData.get("type")).byteValue();
@@ -940,6 +948,13 @@ final class TransactionImpl implements Transaction {
 
     private volatile boolean hasValidSignature = false;
 
+    void preverifySignature() {
+        // redeem signatures depend on the public key of the recipient account, so they are left to validation
+        if (!(this.getAttachment() instanceof Attachment.RedeemAttachment)) {
+            this.checkSignature();
+        }
+    }
+
     private boolean checkSignature() {
 
         byte[] toVerifyBytes = this.getBytes();
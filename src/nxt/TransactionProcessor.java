@@ -16,7 +16,7 @@
 
 package nxt;
 
-import nxt.db.DbIterator;
+import nxt.util.Filter;
 import nxt.util.Observable;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -35,13 +35,13 @@ public interface TransactionProcessor extends Observable<List<? extends Transact
         REJECT_PHASED_TRANSACTION
     }
 
-    DbIterator<? extends Transaction> getAllUnconfirmedTransactions();
+    List<? extends Transaction> getAllUnconfirmedTransactions();
 
-    DbIterator<? extends Transaction> getAllUnconfirmedTransactions(int from, int to);
+    List<? extends Transaction> getAllUnconfirmedTransactions(int from, int to);
 
-    DbIterator<? extends Transaction> getAllUnconfirmedTransactions(String sort);
+    List<? extends Transaction> getUnconfirmedTransactions(Filter<Transaction> filter, int from, int to);
 
-    DbIterator<? extends Transaction> getAllUnconfirmedTransactions(int from, int to, String sort);
+    List<? extends Transaction> getUnconfirmedTransactionsBySender(long senderId);
 
     Transaction getUnconfirmedTransaction(long transactionId);
 
@@ -16,7 +16,7 @@
 
 package nxt;
 
-import nxt.db.DbClause;
+import nxt.computation.SubmissionPrevalidator;
 import nxt.db.DbIterator;
 import nxt.db.DbKey;
 import nxt.db.EntityDbTable;
@@ -25,6 +25,7 @@ import nxt.peer.Peers;
 import nxt.util.*;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -52,8 +53,7 @@ final class TransactionProcessorImpl implements TransactionProcessor {
         return instance;
     }
 
-    private final Map<DbKey, UnconfirmedTransaction> transactionCache = new HashMap<>();
-    private volatile boolean cacheInitialized = false;
+    private final UnconfirmedTransactionPool unconfirmedTransactionPool = new UnconfirmedTransactionPool();
 
     final DbKey.LongKeyFactory<UnconfirmedTransaction> unconfirmedTransactionDbKeyFactory = new DbKey.LongKeyFactory<UnconfirmedTransaction>("id") {
 
@@ -74,25 +74,13 @@ final class TransactionProcessorImpl implements TransactionProcessor {
         @Override
         protected void save(Connection con, UnconfirmedTransaction unconfirmedTransaction) throws SQLException {
             unconfirmedTransaction.save(con);
-            if (transactionCache.size() < maxUnconfirmedTransactions) {
-                transactionCache.put(unconfirmedTransaction.getDbKey(), unconfirmedTransaction);
-            }
         }
 
         @Override
         public void rollback(int height) {
-            try (Connection con = Db.db.getConnection();
-                 PreparedStatement pstmt = con.prepareStatement("SELECT * FROM unconfirmed_transaction WHERE height > ?")) {
-                pstmt.setInt(1, height);
-                try (ResultSet rs = pstmt.executeQuery()) {
-                    while (rs.next()) {
-                        UnconfirmedTransaction unconfirmedTransaction = load(con, rs, null);
-                        waitingTransactions.add(unconfirmedTransaction);
-                        transactionCache.remove(unconfirmedTransaction.getDbKey());
-                    }
-                }
-            } catch (SQLException e) {
-                throw new RuntimeException(e.toString(), e);
+            for (UnconfirmedTransaction unconfirmedTransaction : unconfirmedTransactionPool.getAddedAfter(height)) {
+                unconfirmedTransactionPool.remove(unconfirmedTransaction.getId());
+                waitingTransactions.add(unconfirmedTransaction);
             }
             super.rollback(height);
             unconfirmedDuplicates.clear();
@@ -101,7 +89,7 @@ final class TransactionProcessorImpl implements TransactionProcessor {
         @Override
         public void truncate() {
             super.truncate();
-            clearCache();
+            unconfirmedTransactionPool.clear();
         }
 
         @Override
@@ -158,13 +146,7 @@ final class TransactionProcessorImpl implements TransactionProcessor {
                 if (Nxt.getBlockchainProcessor().isDownloading() && ! testUnconfirmedTransactions) {
                     return;
                 }
-                List<UnconfirmedTransaction> expiredTransactions = new ArrayList<>();
-                try (DbIterator<UnconfirmedTransaction> iterator = unconfirmedTransactionTable.getManyBy(
-                        new DbClause.IntClause("expiration", DbClause.Op.LT, Nxt.getEpochTime()), 0, -1, "")) {
-                    while (iterator.hasNext()) {
-                        expiredTransactions.add(iterator.next());
-                    }
-                }
+                List<UnconfirmedTransaction> expiredTransactions = unconfirmedTransactionPool.getExpired(Nxt.getEpochTime());
                 if (expiredTransactions.size() > 0) {
                     BlockchainImpl.getInstance().writeLock();
                     try {
@@ -291,6 +273,7 @@ final class TransactionProcessorImpl implements TransactionProcessor {
 
     private TransactionProcessorImpl() {
         if (!Constants.isLightClient) {
+            loadUnconfirmedTransactions();
             if (!Constants.isOffline) {
                 ThreadPool.scheduleThread("ProcessTransactions", processTransactionsThread, 5);
                 ThreadPool.runAfterStart(this::rebroadcastAllUnconfirmedTransactions);
@@ -315,56 +298,67 @@ final class TransactionProcessorImpl implements TransactionProcessor {
         transactionListeners.notify(transactions, eventType);
     }
 
+    /**
+     * Load the unconfirmed transactions saved by the previous run into the pool
+     */
+    private void loadUnconfirmedTransactions() {
+        try (DbIterator<UnconfirmedTransaction> unconfirmedTransactions = unconfirmedTransactionTable.getAll(0, -1)) {
+            for (UnconfirmedTransaction unconfirmedTransaction : unconfirmedTransactions) {
+                unconfirmedTransactionPool.add(unconfirmedTransaction);
+            }
+        }
+        if (unconfirmedTransactionPool.size() > 0) {
+            Logger.logDebugMessage("Loaded " + unconfirmedTransactionPool.size() + " unconfirmed transactions");
+        }
+    }
+
     @Override
-    public DbIterator<UnconfirmedTransaction> getAllUnconfirmedTransactions() {
-        return unconfirmedTransactionTable.getAll(0, -1);
+    public List<UnconfirmedTransaction> getAllUnconfirmedTransactions() {
+        return unconfirmedTransactionPool.getAll(0, -1);
     }
 
     @Override
-    public DbIterator<UnconfirmedTransaction> getAllUnconfirmedTransactions(int from, int to) {
-        return unconfirmedTransactionTable.getAll(from, to);
+    public List<UnconfirmedTransaction> getAllUnconfirmedTransactions(int from, int to) {
+        return unconfirmedTransactionPool.getAll(from, to);
     }
 
     @Override
-    public DbIterator<UnconfirmedTransaction> getAllUnconfirmedTransactions(String sort) {
-        return unconfirmedTransactionTable.getAll(0, -1, sort);
+    public List<UnconfirmedTransaction> getUnconfirmedTransactions(Filter<Transaction> filter, int from, int to) {
+        return unconfirmedTransactionPool.getAll(filter, from, to);
     }
 
     @Override
-    public DbIterator<UnconfirmedTransaction> getAllUnconfirmedTransactions(int from, int to, String sort) {
-        return unconfirmedTransactionTable.getAll(from, to, sort);
+    public List<UnconfirmedTransaction> getUnconfirmedTransactionsBySender(long senderId) {
+        return unconfirmedTransactionPool.getBySender(senderId);
+    }
+
+    /**
+     * Get the unconfirmed transactions in pool order, the view reflects later changes to the pool
+     */
+    SortedSet<UnconfirmedTransaction> getUnconfirmedTransactionView() {
+        return unconfirmedTransactionPool.getSortedView();
+    }
+
+    long getUnconfirmedTransactionVersion() {
+        return unconfirmedTransactionPool.getVersion();
+    }
+
+    List<UnconfirmedTransactionPool.Change> getUnconfirmedTransactionChanges(long sinceVersion) {
+        return unconfirmedTransactionPool.getChangesSince(sinceVersion);
     }
 
     @Override
     public Transaction getUnconfirmedTransaction(long transactionId) {
-        DbKey dbKey = unconfirmedTransactionDbKeyFactory.newKey(transactionId);
-        return getUnconfirmedTransaction(dbKey);
+        return unconfirmedTransactionPool.get(transactionId);
     }
 
     Transaction getUnconfirmedTransaction(DbKey dbKey) {
-        Nxt.getBlockchain().readLock();
-        try {
-            Transaction transaction = transactionCache.get(dbKey);
-            if (transaction != null) {
-                return transaction;
-            }
-        } finally {
-            Nxt.getBlockchain().readUnlock();
-        }
-        return unconfirmedTransactionTable.get(dbKey);
+        return unconfirmedTransactionPool.get(((DbKey.LongKey)dbKey).getId());
     }
 
     private List<Long> getAllUnconfirmedTransactionIds() {
-        List<Long> result = new ArrayList<>();
-        try (Connection con = Db.db.getConnection();
-             PreparedStatement pstmt = con.prepareStatement("SELECT id FROM unconfirmed_transaction");
-             ResultSet rs = pstmt.executeQuery()) {
-            while (rs.next()) {
-                result.add(rs.getLong("id"));
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e.toString(), e);
-        }
+        List<Long> result = new ArrayList<>(unconfirmedTransactionPool.size());
+        unconfirmedTransactionPool.getSortedView().forEach(unconfirmedTransaction -> result.add(unconfirmedTransaction.getId()));
         return result;
     }
 
@@ -425,6 +419,7 @@ final class TransactionProcessorImpl implements TransactionProcessor {
                 List<Transaction> acceptedTransactions = Collections.singletonList(transaction);
                 Peers.sendToSomePeers(acceptedTransactions);
                 transactionListeners.notify(acceptedTransactions, Event.ADDED_UNCONFIRMED_TRANSACTIONS);
+                SubmissionPrevalidator.submit(acceptedTransactions, this::removeRejectedSubmission);
                 if (enableTransactionRebroadcasting) {
                     broadcastedTransactions.add((TransactionImpl) transaction);
                 }
@@ -448,11 +443,9 @@ final class TransactionProcessorImpl implements TransactionProcessor {
             List<Transaction> removed = new ArrayList<>();
             try {
                 Db.db.beginTransaction();
-                try (DbIterator<UnconfirmedTransaction> unconfirmedTransactions = getAllUnconfirmedTransactions()) {
-                    for (UnconfirmedTransaction unconfirmedTransaction : unconfirmedTransactions) {
-                        unconfirmedTransaction.getTransaction().undoUnconfirmed();
-                        removed.add(unconfirmedTransaction.getTransaction());
-                    }
+                for (UnconfirmedTransaction unconfirmedTransaction : unconfirmedTransactionPool.clear()) {
+                    unconfirmedTransaction.getTransaction().undoUnconfirmed();
+                    removed.add(unconfirmedTransaction.getTransaction());
                 }
                 unconfirmedTransactionTable.truncate();
                 Db.db.commitTransaction();
@@ -466,7 +459,6 @@ final class TransactionProcessorImpl implements TransactionProcessor {
             unconfirmedDuplicates.clear();
             waitingTransactions.clear();
             broadcastedTransactions.clear();
-            transactionCache.clear();
             transactionListeners.notify(removed, Event.REMOVED_UNCONFIRMED_TRANSACTIONS);
         } finally {
             BlockchainImpl.getInstance().writeUnlock();
@@ -492,18 +484,15 @@ final class TransactionProcessorImpl implements TransactionProcessor {
                 return;
             }
             List<Transaction> removed = new ArrayList<>();
-            try (DbIterator<UnconfirmedTransaction> unconfirmedTransactions = getAllUnconfirmedTransactions()) {
-                for (UnconfirmedTransaction unconfirmedTransaction : unconfirmedTransactions) {
-                    unconfirmedTransaction.getTransaction().undoUnconfirmed();
-                    if (removed.size() < maxUnconfirmedTransactions) {
-                        removed.add(unconfirmedTransaction.getTransaction());
-                    }
-                    waitingTransactions.add(unconfirmedTransaction);
+            for (UnconfirmedTransaction unconfirmedTransaction : unconfirmedTransactionPool.clear()) {
+                unconfirmedTransaction.getTransaction().undoUnconfirmed();
+                if (removed.size() < maxUnconfirmedTransactions) {
+                    removed.add(unconfirmedTransaction.getTransaction());
                 }
+                waitingTransactions.add(unconfirmedTransaction);
             }
             unconfirmedTransactionTable.truncate();
             unconfirmedDuplicates.clear();
-            transactionCache.clear();
             transactionListeners.notify(removed, Event.REMOVED_UNCONFIRMED_TRANSACTIONS);
         } finally {
             BlockchainImpl.getInstance().writeUnlock();
@@ -514,13 +503,11 @@ final class TransactionProcessorImpl implements TransactionProcessor {
     public void rebroadcastAllUnconfirmedTransactions() {
         BlockchainImpl.getInstance().writeLock();
         try {
-            try (DbIterator<UnconfirmedTransaction> oldNonBroadcastedTransactions = getAllUnconfirmedTransactions()) {
-                for (UnconfirmedTransaction unconfirmedTransaction : oldNonBroadcastedTransactions) {
-                    if (unconfirmedTransaction.getTransaction().isUnconfirmedDuplicate(unconfirmedDuplicates)) {
-                        Logger.logDebugMessage("Skipping duplicate unconfirmed transaction " + unconfirmedTransaction.getTransaction().getJSONObject().toString());
-                    } else if (enableTransactionRebroadcasting) {
-                        broadcastedTransactions.add(unconfirmedTransaction.getTransaction());
-                    }
+            for (UnconfirmedTransaction unconfirmedTransaction : unconfirmedTransactionPool.getSortedView()) {
+                if (unconfirmedTransaction.getTransaction().isUnconfirmedDuplicate(unconfirmedDuplicates)) {
+                    Logger.logDebugMessage("Skipping duplicate unconfirmed transaction " + unconfirmedTransaction.getTransaction().getJSONObject().toString());
+                } else if (enableTransactionRebroadcasting) {
+                    broadcastedTransactions.add(unconfirmedTransaction.getTransaction());
                 }
             }
         } finally {
@@ -543,28 +530,40 @@ final class TransactionProcessorImpl implements TransactionProcessor {
             }
             return;
         }
+        if (unconfirmedTransactionPool.remove(transaction.getId()) == null) {
+            return;
+        }
         try (Connection con = Db.db.getConnection();
              PreparedStatement pstmt = con.prepareStatement("DELETE FROM unconfirmed_transaction WHERE id = ?")) {
             pstmt.setLong(1, transaction.getId());
-            int deleted = pstmt.executeUpdate();
-            if (deleted > 0) {
-                transaction.undoUnconfirmed();
-                transactionCache.remove(transaction.getDbKey());
-                transactionListeners.notify(Collections.singletonList(transaction), Event.REMOVED_UNCONFIRMED_TRANSACTIONS);
-            }
+            pstmt.executeUpdate();
+            transaction.undoUnconfirmed();
+            transactionListeners.notify(Collections.singletonList(transaction), Event.REMOVED_UNCONFIRMED_TRANSACTIONS);
         } catch (SQLException e) {
             Logger.logErrorMessage(e.toString(), e);
             throw new RuntimeException(e.toString(), e);
         }
     }
 
+    private void removeRejectedSubmission(Transaction transaction) {
+        BlockchainImpl.getInstance().writeLock();
+        try {
+            broadcastedTransactions.remove(transaction);
+            removeUnconfirmedTransaction((TransactionImpl) transaction);
+        } catch (RuntimeException e) {
+            Logger.logMessage("Error removing rejected submission " + transaction.getStringId(), e);
+        } finally {
+            BlockchainImpl.getInstance().writeUnlock();
+        }
+    }
+
     @Override
     public void processLater(Collection<? extends Transaction> transactions) {
         long currentTime = System.currentTimeMillis();
         BlockchainImpl.getInstance().writeLock();
         try {
             for (Transaction transaction : transactions) {
-                BlockDb.transactionCache.remove(transaction.getId());
+                BlockDb.removeCachedTransaction(transaction.getId());
                 if (TransactionDb.hasTransaction(transaction.getId())) {
                     continue;
                 }
@@ -624,7 +623,8 @@ final class TransactionProcessorImpl implements TransactionProcessor {
         List<Exception> exceptions = new ArrayList<>();
         for (Object transactionData : transactionsData) {
             try {
-                TransactionImpl transaction = TransactionImpl.parseTransaction((JSONObject) transactionData);
+                TransactionImpl transaction = transactionData instanceof String ? BinaryFormat.parseTransaction((String) transactionData)
+                        : TransactionImpl.parseTransaction((JSONObject) transactionData);
                 receivedTransactions.add(transaction);
                 if (getUnconfirmedTransaction(transaction.getDbKey()) != null || TransactionDb.hasTransaction(transaction.getId())) {
                     continue;
@@ -642,7 +642,7 @@ final class TransactionProcessorImpl implements TransactionProcessor {
 
             } catch (NxtException.NotCurrentlyValidException ignore) {
             } catch (NxtException.ValidationException|RuntimeException e) {
-                Logger.logDebugMessage(String.format("Invalid transaction from peer: %s", ((JSONObject) transactionData).toJSONString()), e);
+                Logger.logDebugMessage(String.format("Invalid transaction from peer: %s", JSONValue.toJSONString(transactionData)), e);
                 exceptions.add(e);
             }
         }
@@ -651,6 +651,7 @@ final class TransactionProcessorImpl implements TransactionProcessor {
         }
         if (addedUnconfirmedTransactions.size() > 0) {
             transactionListeners.notify(addedUnconfirmedTransactions, Event.ADDED_UNCONFIRMED_TRANSACTIONS);
+            SubmissionPrevalidator.submit(addedUnconfirmedTransactions, this::removeRejectedSubmission);
         }
         broadcastedTransactions.removeAll(receivedTransactions);
         if (!exceptions.isEmpty()) {
@@ -699,6 +700,8 @@ final class TransactionProcessorImpl implements TransactionProcessor {
                     throw new NxtException.NotCurrentlyValidException("Duplicate unconfirmed transaction");
                 }
 
+                unconfirmedTransaction.setPoolHeight(Nxt.getBlockchain().getHeight());
+                unconfirmedTransactionPool.add(unconfirmedTransaction);
                 unconfirmedTransactionTable.insert(unconfirmedTransaction);
 
                 Db.db.commitTransaction();
@@ -713,59 +716,24 @@ final class TransactionProcessorImpl implements TransactionProcessor {
         }
     }
 
-    private static final Comparator<UnconfirmedTransaction> cachedUnconfirmedTransactionComparator = (UnconfirmedTransaction t1, UnconfirmedTransaction t2) -> {
-        int compare;
-        // Sort by transaction_height ASC
-        compare = Integer.compare(t1.getHeight(), t2.getHeight());
-        if (compare != 0)
-            return compare;
-        // Sort by fee_per_byte DESC
-        compare = Long.compare(t1.getFeePerByte(), t2.getFeePerByte());
-        if (compare != 0)
-            return -compare;
-        // Sort by arrival_timestamp ASC
-        compare = Long.compare(t1.getArrivalTimestamp(), t2.getArrivalTimestamp());
-        if (compare != 0)
-            return compare;
-        // Sort by transaction ID ASC
-        return Long.compare(t1.getId(), t2.getId());
-    };
-
     /**
      * Get the cached unconfirmed transactions
      *
-     * @param   exclude                 List of transaction identifiers to exclude
+     * @param   exclude                 Sorted list of transaction identifiers to exclude
      */
     @Override
     public SortedSet<? extends Transaction> getCachedUnconfirmedTransactions(List<String> exclude) {
-        SortedSet<UnconfirmedTransaction> transactionSet = new TreeSet<>(cachedUnconfirmedTransactionComparator);
-        Nxt.getBlockchain().readLock();
-        try {
-            //
-            // Initialize the unconfirmed transaction cache if it hasn't been done yet
-            //
-            synchronized(transactionCache) {
-                if (!cacheInitialized) {
-                    DbIterator<UnconfirmedTransaction> it = getAllUnconfirmedTransactions();
-                    while (it.hasNext()) {
-                        UnconfirmedTransaction unconfirmedTransaction = it.next();
-                        transactionCache.put(unconfirmedTransaction.getDbKey(), unconfirmedTransaction);
-                    }
-                    cacheInitialized = true;
-                }
+        SortedSet<UnconfirmedTransaction> transactionSet = unconfirmedTransactionPool.getSortedView();
+        if (exclude.isEmpty()) {
+            return transactionSet;
+        }
+        SortedSet<UnconfirmedTransaction> result = new TreeSet<>(UnconfirmedTransactionPool.priorityComparator);
+        transactionSet.forEach(transaction -> {
+            if (Collections.binarySearch(exclude, transaction.getStringId()) < 0) {
+                result.add(transaction);
             }
-            //
-            // Build the result set
-            //
-            transactionCache.values().forEach(transaction -> {
-                if (Collections.binarySearch(exclude, transaction.getStringId()) < 0) {
-                    transactionSet.add(transaction);
-                }
-            });
-        } finally {
-            Nxt.getBlockchain().readUnlock();
-        }
-        return transactionSet;
+        });
+        return result;
     }
 
     /**
@@ -33,11 +33,16 @@ class UnconfirmedTransaction implements Transaction {
     private final TransactionImpl transaction;
     private final long arrivalTimestamp;
     private final long feePerByte;
+    private final int transactionHeight;
+    private final int expiration;
+    private int poolHeight;
 
     UnconfirmedTransaction(TransactionImpl transaction, long arrivalTimestamp) {
         this.transaction = transaction;
         this.arrivalTimestamp = arrivalTimestamp;
         this.feePerByte = transaction.getFeeNQT() / transaction.getFullSize();
+        this.transactionHeight = transaction.getHeight();
+        this.expiration = transaction.getExpiration(true);
     }
 
     UnconfirmedTransaction(ResultSet rs) throws SQLException {
@@ -53,6 +58,9 @@ class UnconfirmedTransaction implements Transaction {
             this.transaction.setHeight(rs.getInt("transaction_height"));
             this.arrivalTimestamp = rs.getLong("arrival_timestamp");
             this.feePerByte = rs.getLong("fee_per_byte");
+            this.transactionHeight = rs.getInt("transaction_height");
+            this.expiration = rs.getInt("expiration");
+            this.poolHeight = rs.getInt("height");
         } catch (NxtException.ValidationException e) {
             throw new RuntimeException(e.toString(), e);
         }
@@ -64,9 +72,9 @@ class UnconfirmedTransaction implements Transaction {
                 + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
             int i = 0;
             pstmt.setLong(++i, transaction.getId());
-            pstmt.setInt(++i, transaction.getHeight());
+            pstmt.setInt(++i, transactionHeight);
             pstmt.setLong(++i, feePerByte);
-            pstmt.setInt(++i, transaction.getExpiration(true));
+            pstmt.setInt(++i, expiration);
             pstmt.setBytes(++i, transaction.bytes());
             JSONObject prunableJSON = transaction.getPrunableAttachmentJSON();
             if (prunableJSON != null) {
@@ -75,7 +83,7 @@ class UnconfirmedTransaction implements Transaction {
                 pstmt.setNull(++i, Types.VARCHAR);
             }
             pstmt.setLong(++i, arrivalTimestamp);
-            pstmt.setInt(++i, Nxt.getBlockchain().getHeight());
+            pstmt.setInt(++i, poolHeight);
             pstmt.executeUpdate();
         }
     }
@@ -92,6 +100,31 @@ class UnconfirmedTransaction implements Transaction {
         return feePerByte;
     }
 
+    /**
+     * Transaction height when the transaction arrived, the pool sorts on it while the transaction height can change
+     */
+    int getTransactionHeight() {
+        return transactionHeight;
+    }
+
+    /**
+     * Expiration when the transaction arrived, the pool sorts on it
+     */
+    int getPoolExpiration() {
+        return expiration;
+    }
+
+    /**
+     * Blockchain height when the transaction was added to the pool, it is requeued if that block is popped off
+     */
+    int getPoolHeight() {
+        return poolHeight;
+    }
+
+    void setPoolHeight(int poolHeight) {
+        this.poolHeight = poolHeight;
+    }
+
     @Override
     public boolean equals(Object o) {
         return o instanceof UnconfirmedTransaction && transaction.equals(((UnconfirmedTransaction)o).getTransaction());
@@ -0,0 +1,321 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt;
+
+import nxt.db.TransactionalDb;
+import nxt.util.Filter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Unconfirmed transactions, indexed in memory by id, sender, expiration and priority.
+ *
+ * Readers do not lock and see the indexes as of the last update. Updates are made by the holder of the blockchain
+ * write lock, within the database transaction which reserves the unconfirmed balances, and are undone if that
+ * transaction is rolled back, so the pool always agrees with the account table. The unconfirmed_transaction table
+ * is only written, in the same database transaction, and read back when the node starts.
+ */
+final class UnconfirmedTransactionPool implements TransactionalDb.TransactionCallback {
+
+    /**
+     * Pool order: transaction height ASC, fee per byte DESC, arrival timestamp ASC, id ASC
+     */
+    static final Comparator<UnconfirmedTransaction> priorityComparator = (UnconfirmedTransaction t1, UnconfirmedTransaction t2) -> {
+        int compare;
+        compare = Integer.compare(t1.getTransactionHeight(), t2.getTransactionHeight());
+        if (compare != 0)
+            return compare;
+        compare = Long.compare(t1.getFeePerByte(), t2.getFeePerByte());
+        if (compare != 0)
+            return -compare;
+        compare = Long.compare(t1.getArrivalTimestamp(), t2.getArrivalTimestamp());
+        if (compare != 0)
+            return compare;
+        return Long.compare(t1.getId(), t2.getId());
+    };
+
+    /**
+     * A transaction added to or removed from the pool
+     */
+    static final class Change {
+        final UnconfirmedTransaction transaction;
+        final boolean added;
+
+        private Change(UnconfirmedTransaction transaction, boolean added) {
+            this.transaction = transaction;
+            this.added = added;
+        }
+    }
+
+    /** Number of changes kept for readers following the pool incrementally */
+    private static final int MAX_CHANGES = 10000;
+
+    private static final Comparator<UnconfirmedTransaction> expirationComparator = (UnconfirmedTransaction t1, UnconfirmedTransaction t2) -> {
+        int compare = Integer.compare(t1.getPoolExpiration(), t2.getPoolExpiration());
+        if (compare != 0)
+            return compare;
+        return Long.compare(t1.getId(), t2.getId());
+    };
+
+    private final Map<Long, UnconfirmedTransaction> byId = new ConcurrentHashMap<>();
+    private final Map<Long, Set<UnconfirmedTransaction>> bySender = new ConcurrentHashMap<>();
+    private final NavigableSet<UnconfirmedTransaction> byExpiration = new ConcurrentSkipListSet<>(expirationComparator);
+    private final NavigableSet<UnconfirmedTransaction> byPriority = new ConcurrentSkipListSet<>(priorityComparator);
+    private final ThreadLocal<List<Runnable>> undoLog = ThreadLocal.withInitial(ArrayList::new);
+    private final ArrayDeque<Change> changes = new ArrayDeque<>();
+    private volatile long version;
+
+    UnconfirmedTransaction get(long transactionId) {
+        return byId.get(transactionId);
+    }
+
+    int size() {
+        return byId.size();
+    }
+
+    /**
+     * Get the pool version, it changes whenever a transaction is added or removed
+     */
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the changes made since a pool version, including the ones undoing rolled back changes
+     *
+     * @param   sinceVersion        Pool version
+     * @return                      Changes in the order they were made, null if they are no longer kept
+     */
+    synchronized List<Change> getChangesSince(long sinceVersion) {
+        long count = version - sinceVersion;
+        if (count < 0 || count > changes.size()) {
+            return null;
+        }
+        List<Change> result = new ArrayList<>((int) count);
+        Iterator<Change> iterator = changes.descendingIterator();
+        while (result.size() < count) {
+            result.add(iterator.next());
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Get the transactions in pool order
+     *
+     * @param   from                Index of the first transaction
+     * @param   to                  Index of the last transaction, or -1 for all transactions
+     * @return                      Transactions
+     */
+    List<UnconfirmedTransaction> getAll(int from, int to) {
+        return getAll(transaction -> true, from, to);
+    }
+
+    /**
+     * Get the matching transactions in pool order
+     *
+     * @param   filter              Transaction filter
+     * @param   from                Index of the first matching transaction
+     * @param   to                  Index of the last matching transaction, or -1 for all transactions
+     * @return                      Transactions
+     */
+    List<UnconfirmedTransaction> getAll(Filter<? super UnconfirmedTransaction> filter, int from, int to) {
+        int last = to >= 0 && to >= from ? to : Integer.MAX_VALUE;
+        List<UnconfirmedTransaction> result = new ArrayList<>();
+        int index = 0;
+        for (UnconfirmedTransaction unconfirmedTransaction : byPriority) {
+            if (index > last) {
+                break;
+            }
+            if (filter.ok(unconfirmedTransaction)) {
+                if (index >= from) {
+                    result.add(unconfirmedTransaction);
+                }
+                index++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get a read-only view of the transactions in pool order
+     *
+     * @return                      Transactions
+     */
+    SortedSet<UnconfirmedTransaction> getSortedView() {
+        return Collections.unmodifiableSortedSet(byPriority);
+    }
+
+    List<UnconfirmedTransaction> getBySender(long senderId) {
+        Set<UnconfirmedTransaction> transactions = bySender.get(senderId);
+        if (transactions == null) {
+            return Collections.emptyList();
+        }
+        List<UnconfirmedTransaction> result = new ArrayList<>(transactions);
+        result.sort(priorityComparator);
+        return result;
+    }
+
+    /**
+     * Get the transactions which expired before the given time
+     *
+     * @param   time                Epoch time
+     * @return                      Transactions in expiration order
+     */
+    List<UnconfirmedTransaction> getExpired(int time) {
+        List<UnconfirmedTransaction> result = new ArrayList<>();
+        for (UnconfirmedTransaction unconfirmedTransaction : byExpiration) {
+            if (unconfirmedTransaction.getPoolExpiration() >= time) {
+                break;
+            }
+            result.add(unconfirmedTransaction);
+        }
+        return result;
+    }
+
+    /**
+     * Get the transactions added to the pool after the given blockchain height
+     *
+     * @param   height              Blockchain height
+     * @return                      Transactions
+     */
+    List<UnconfirmedTransaction> getAddedAfter(int height) {
+        List<UnconfirmedTransaction> result = new ArrayList<>();
+        byId.values().forEach(unconfirmedTransaction -> {
+            if (unconfirmedTransaction.getPoolHeight() > height) {
+                result.add(unconfirmedTransaction);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Add a transaction
+     *
+     * @param   unconfirmedTransaction  Transaction
+     * @return                          True if the transaction was added, false if it is already in the pool
+     */
+    synchronized boolean add(UnconfirmedTransaction unconfirmedTransaction) {
+        if (!doAdd(unconfirmedTransaction)) {
+            return false;
+        }
+        journal(() -> doRemove(unconfirmedTransaction.getId()));
+        return true;
+    }
+
+    /**
+     * Remove a transaction
+     *
+     * @param   transactionId       Transaction identifier
+     * @return                      Removed transaction or null if it is not in the pool
+     */
+    synchronized UnconfirmedTransaction remove(long transactionId) {
+        UnconfirmedTransaction unconfirmedTransaction = doRemove(transactionId);
+        if (unconfirmedTransaction != null) {
+            journal(() -> doAdd(unconfirmedTransaction));
+        }
+        return unconfirmedTransaction;
+    }
+
+    /**
+     * Remove all transactions
+     *
+     * @return                      Removed transactions in pool order
+     */
+    synchronized List<UnconfirmedTransaction> clear() {
+        List<UnconfirmedTransaction> removed = new ArrayList<>(byPriority);
+        removed.forEach(unconfirmedTransaction -> doRemove(unconfirmedTransaction.getId()));
+        if (!removed.isEmpty()) {
+            journal(() -> removed.forEach(this::doAdd));
+        }
+        return removed;
+    }
+
+    private boolean doAdd(UnconfirmedTransaction unconfirmedTransaction) {
+        if (byId.putIfAbsent(unconfirmedTransaction.getId(), unconfirmedTransaction) != null) {
+            return false;
+        }
+        bySender.computeIfAbsent(unconfirmedTransaction.getSenderId(), senderId -> ConcurrentHashMap.newKeySet())
+                .add(unconfirmedTransaction);
+        byExpiration.add(unconfirmedTransaction);
+        byPriority.add(unconfirmedTransaction);
+        logChange(new Change(unconfirmedTransaction, true));
+        return true;
+    }
+
+    private UnconfirmedTransaction doRemove(long transactionId) {
+        UnconfirmedTransaction unconfirmedTransaction = byId.remove(transactionId);
+        if (unconfirmedTransaction == null) {
+            return null;
+        }
+        Set<UnconfirmedTransaction> senderTransactions = bySender.get(unconfirmedTransaction.getSenderId());
+        if (senderTransactions != null) {
+            senderTransactions.remove(unconfirmedTransaction);
+            if (senderTransactions.isEmpty()) {
+                bySender.remove(unconfirmedTransaction.getSenderId());
+            }
+        }
+        byExpiration.remove(unconfirmedTransaction);
+        byPriority.remove(unconfirmedTransaction);
+        logChange(new Change(unconfirmedTransaction, false));
+        return unconfirmedTransaction;
+    }
+
+    private void logChange(Change change) {
+        if (changes.size() == MAX_CHANGES) {
+            changes.removeFirst();
+        }
+        changes.addLast(change);
+        version++;
+    }
+
+    /**
+     * Remember how to undo a change made within a database transaction
+     */
+    private void journal(Runnable undo) {
+        if (Db.db.isInTransaction()) {
+            undoLog.get().add(undo);
+            Db.db.registerCallback(this);
+        }
+    }
+
+    @Override
+    public synchronized void commit() {
+        undoLog.get().clear();
+    }
+
+    @Override
+    public synchronized void rollback() {
+        List<Runnable> undo = undoLog.get();
+        for (int i = undo.size() - 1; i >= 0; i--) {
+            undo.get(i).run();
+        }
+        undo.clear();
+    }
+
+}
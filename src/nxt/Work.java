@@ -1,4 +1,5 @@
 package nxt;
+import java.nio.ByteBuffer;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -6,12 +7,16 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import com.community.Executor;
 import nxt.computation.CommandNewWork;
 import nxt.computation.ComputationConstants;
+import nxt.crypto.Crypto;
 import nxt.db.DbClause;
 import nxt.db.DbIterator;
 import nxt.db.DbKey;
 import nxt.db.DbUtils;
+import nxt.db.DerivedDbTable;
+import nxt.db.EntityCodec;
 import nxt.db.VersionedEntityDbTable;
 import nxt.util.Convert;
 import nxt.util.Listener;
@@ -45,9 +50,22 @@ public final class Work {
             return shuffling.dbKey;
         }
 
+    };
+    static final EntityCodec<Work> workCodec = new EntityCodec<Work>() {
+
+        @Override
+        public byte[] encode(final Work work) {
+            return work.toBytes();
+        }
+
+        @Override
+        public Work decode(final DbKey dbKey, final ByteBuffer buffer) {
+            return new Work(buffer, dbKey);
+        }
+
     };
     private static final VersionedEntityDbTable<Work> workTable = new VersionedEntityDbTable<Work>("work",
-            Work.workDbKeyFactory) {
+            Work.workDbKeyFactory, Work.workCodec) {
 
         @Override
         protected Work load(final Connection con, final ResultSet rs, final DbKey dbKey) throws SQLException {
@@ -61,22 +79,43 @@ public final class Work {
 
     };
 
-    // this will check whether work needs to be closed after applying each block
+    // bounty storage, one narrow row per accepted bounty keyed by (work_id, iteration, bucket); rows are never
+    // updated, so a rollback only has to drop the rows above the target height
+    private static final DerivedDbTable workStorageTable = new DerivedDbTable("work_storage") {
+    };
+
+    // source code and verify functions, stored once per distinct text and referenced by their sha256 hash from the
+    // work rows; a text keeps the height of the first work that stored it, so rolling that work back removes it
+    private static final DerivedDbTable workCodeTable = new DerivedDbTable("work_code") {
+    };
+
+    // this will check whether work needs to be closed after applying each block, only the work whose deadline
+    // is the block height is loaded, through the close_height index; the column is versioned with the rest of the
+    // row, so a rollback restores it
     // Later, close work if users balance drops before the estimated remaning balances or if payouts are not
     // performed at all
     static {
         Nxt.getBlockchainProcessor().addListener(block -> {
             final List<Work> shufflings = new ArrayList<>();
-            try (DbIterator<Work> iterator = Work.getActiveWork()) {
+            try (DbIterator<Work> iterator = Work.getExpiringWork(block.getHeight())) {
                 for (final Work shuffling : iterator) shufflings.add(shuffling);
             }
             shufflings.forEach(shuffling -> {
                 shuffling.CheckForAutoClose(block);
             });
         }, BlockchainProcessor.Event.AFTER_BLOCK_APPLY);
+
+        // compiled verify programs are only needed while the work accepts submissions
+        Work.addListener(work -> Executor.evictCompiledVerify(work.getId()), Event.WORK_CANCELLED);
+        Work.addListener(work -> Executor.evictCompiledVerify(work.getId()), Event.WORK_TIMEOUTED);
+        Nxt.getBlockchainProcessor().addListener(block -> Executor.clearCompiledVerify(),
+                BlockchainProcessor.Event.BLOCK_POPPED);
     }
 
     public String getSource_code() {
+        if (source_code == null) {
+            source_code = loadCode(source_hash);
+        }
         return source_code;
     }
 
@@ -100,11 +139,17 @@ public final class Work {
     private int closing_timestamp;
 
     public String getVerifyFunction() {
+        if (verifyFunction == null) {
+            verifyFunction = loadCode(verify_hash);
+        }
         return verifyFunction;
     }
 
     private int[] combined_storage;
+    private int combined_storage_iteration = -1;
     private int storage_size;
+    private final byte[] verify_hash;
+    private final byte[] source_hash;
     private String verifyFunction;
     private String source_code;
 
@@ -144,10 +189,6 @@ public final class Work {
         this.closing_timestamp = closing_timestamp;
     }
 
-    public void setCombined_storage(int[] combined_storage) {
-        this.combined_storage = combined_storage;
-    }
-
     private Work(final ResultSet rs, final DbKey dbKey) throws SQLException {
 
         this.id = rs.getLong("id");
@@ -168,10 +209,58 @@ public final class Work {
         this.sender_account_id = rs.getLong("sender_account_id");
         this.originating_height = rs.getInt("originating_height");
         this.closing_timestamp = rs.getInt("closing_timestamp");
-        this.combined_storage = Convert.byte2int(rs.getBytes("combined_storage"));
         this.storage_size = rs.getInt("storage_size");
-        this.verifyFunction = rs.getString("verify_function");
-        this.source_code = rs.getString("source_code");
+        this.verify_hash = rs.getBytes("verify_hash");
+        this.source_hash = rs.getBytes("source_hash");
+    }
+
+    private Work(final ByteBuffer buffer, final DbKey dbKey) {
+        this.id = buffer.getLong();
+        this.block_id = buffer.getLong();
+        this.dbKey = dbKey;
+        this.xel_per_pow = buffer.getLong();
+        this.cap_number_pow = buffer.getInt();
+        this.blocksRemaining = buffer.getShort();
+        this.closed = buffer.get() != 0;
+        this.cancelled = buffer.get() != 0;
+        this.timedout = buffer.get() != 0;
+        this.xel_per_bounty = buffer.getLong();
+        this.iterations = buffer.getInt();
+        this.iterations_left = buffer.getInt();
+        this.received_bounties = buffer.getInt();
+        this.received_pows = buffer.getInt();
+        this.bounty_limit_per_iteration = buffer.getInt();
+        this.sender_account_id = buffer.getLong();
+        this.originating_height = buffer.getInt();
+        this.closing_timestamp = buffer.getInt();
+        this.storage_size = buffer.getInt();
+        this.verify_hash = DbUtils.getBytes(buffer);
+        this.source_hash = DbUtils.getBytes(buffer);
+    }
+
+    private byte[] toBytes() {
+        final ByteBuffer buffer = ByteBuffer.allocate(81 + DbUtils.sizeOf(this.verify_hash) + DbUtils.sizeOf(this.source_hash));
+        buffer.putLong(this.id);
+        buffer.putLong(this.block_id);
+        buffer.putLong(this.xel_per_pow);
+        buffer.putInt(this.cap_number_pow);
+        buffer.putShort(this.blocksRemaining);
+        buffer.put((byte) (this.closed ? 1 : 0));
+        buffer.put((byte) (this.cancelled ? 1 : 0));
+        buffer.put((byte) (this.timedout ? 1 : 0));
+        buffer.putLong(this.xel_per_bounty);
+        buffer.putInt(this.iterations);
+        buffer.putInt(this.iterations_left);
+        buffer.putInt(this.received_bounties);
+        buffer.putInt(this.received_pows);
+        buffer.putInt(this.bounty_limit_per_iteration);
+        buffer.putLong(this.sender_account_id);
+        buffer.putInt(this.originating_height);
+        buffer.putInt(this.closing_timestamp);
+        buffer.putInt(this.storage_size);
+        DbUtils.putBytes(buffer, this.verify_hash);
+        DbUtils.putBytes(buffer, this.source_hash);
+        return buffer.array();
     }
     private Work(final Transaction transaction, final CommandNewWork attachment) {
         this.id = transaction.getId();
@@ -187,7 +276,6 @@ public final class Work {
         this.received_bounties = 0;
         this.received_pows = 0;
         this.bounty_limit_per_iteration = attachment.getBountiesPerIteration();
-        this.combined_storage = new int[ComputationConstants.BOUNTY_STORAGE_INTS*this.bounty_limit_per_iteration];
         this.sender_account_id = transaction.getSenderId();
         this.cancelled = false;
         this.timedout = false;
@@ -196,6 +284,8 @@ public final class Work {
         this.storage_size = attachment.getStorageSize();
         this.verifyFunction = attachment.getVerifyFunction();
         this.source_code = new String(attachment.getSourceCode());
+        this.verify_hash = Crypto.sha256().digest(Convert.toBytes(this.verifyFunction));
+        this.source_hash = Crypto.sha256().digest(Convert.toBytes(this.source_code));
     }
 
     public static boolean addListener(final Listener<Work> listener, final Event eventType) {
@@ -204,6 +294,8 @@ public final class Work {
 
     public static void addWork(final Transaction transaction, final CommandNewWork attachment) {
         final Work shuffling = new Work(transaction, attachment);
+        Work.saveCode(shuffling.verify_hash, shuffling.verifyFunction);
+        Work.saveCode(shuffling.source_hash, shuffling.source_code);
         Work.workTable.insert(shuffling);
         Work.listeners.notify(shuffling, Event.WORK_CREATED);
     }
@@ -213,7 +305,7 @@ public final class Work {
                                             final int to, final long onlyOneId) {
         final List<Work> ret = new ArrayList<>();
 
-        try (Connection con = Db.db.getConnection();) {
+        try (Connection con = Work.workTable.getConnection();) {
 
             PreparedStatement pstmt = null;
             if(accountId != 0)
@@ -254,6 +346,21 @@ public final class Work {
                 from, to, " ORDER BY blocks_remaining, height DESC ");
     }
 
+    // active work whose latest version was written above the given height, i.e. everything that changed since then
+    public static DbIterator<Work> getActiveWork(final int height, final int from, final int to) {
+        return Work.workTable.getManyBy(
+                new DbClause.BooleanClause("closed", false).and(new DbClause.BooleanClause("latest", true))
+                        .and(new DbClause.IntClause("height", DbClause.Op.GT, height)),
+                from, to, " ORDER BY blocks_remaining, height DESC ");
+    }
+
+    public static DbIterator<Work> getClosedWork(final int height, final int from, final int to) {
+        return Work.workTable.getManyBy(
+                new DbClause.BooleanClause("closed", true).and(new DbClause.BooleanClause("latest", true))
+                        .and(new DbClause.IntClause("height", DbClause.Op.GT, height)),
+                from, to, " ORDER BY height DESC ");
+    }
+
     public static DbIterator<Work> getAll(final int from, final int to) {
         return Work.workTable.getAll(from, to, " ORDER BY blocks_remaining NULLS LAST, height DESC ");
     }
@@ -264,6 +371,12 @@ public final class Work {
                 Integer.MAX_VALUE);
     }
 
+    public static DbIterator<Work> getExpiringWork(final int height) {
+        return Work.workTable.getManyBy(
+                new DbClause.IntClause("close_height", height).and(new DbClause.BooleanClause("closed", false)), 0,
+                -1);
+    }
+
     public static int getCount() {
         return Work.workTable.getCount();
     }
@@ -274,7 +387,7 @@ public final class Work {
 
     public static Work getWorkById(final long work_id) {
 
-        try (Connection con = Db.db.getConnection();
+        try (Connection con = Work.workTable.getConnection();
              PreparedStatement pstmt = con
                      .prepareStatement("SELECT work.* FROM work WHERE work.id = ? AND work.latest = TRUE")) {
             int i = 0;
@@ -289,6 +402,39 @@ public final class Work {
         }
     }
 
+    private static void saveCode(final byte[] hash, final String code) {
+        try (Connection con = Db.db.getConnection();
+             PreparedStatement pstmtSelect = con.prepareStatement("SELECT 1 FROM work_code WHERE hash = ?");
+             PreparedStatement pstmtInsert = con.prepareStatement("INSERT INTO work_code (hash, code, height) "
+                     + "VALUES (?, ?, ?)")) {
+            pstmtSelect.setBytes(1, hash);
+            try (ResultSet rs = pstmtSelect.executeQuery()) {
+                if (rs.next()) {
+                    return;
+                }
+            }
+            int i = 0;
+            pstmtInsert.setBytes(++i, hash);
+            pstmtInsert.setString(++i, code);
+            pstmtInsert.setInt(++i, Nxt.getBlockchain().getHeight());
+            pstmtInsert.executeUpdate();
+        } catch (final SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
+    private static String loadCode(final byte[] hash) {
+        try (Connection con = Db.db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT code FROM work_code WHERE hash = ?")) {
+            pstmt.setBytes(1, hash);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getString("code") : null;
+            }
+        } catch (final SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
     static void init() {
     }
 
@@ -368,14 +514,105 @@ public final class Work {
         return closing_timestamp;
     }
 
+    // The combined storage is the one of the last completed iteration, assembled from its bounty slots
     public int[] getCombined_storage() {
+        final int iteration = this.received_bounties / this.bounty_limit_per_iteration - 1;
+        if (this.combined_storage == null || this.combined_storage_iteration != iteration) {
+            this.combined_storage = loadCombinedStorage(iteration);
+            this.combined_storage_iteration = iteration;
+        }
         return combined_storage;
     }
 
+    private int[] loadCombinedStorage(final int iteration) {
+        if (iteration < 0) {
+            return new int[ComputationConstants.BOUNTY_STORAGE_INTS * this.bounty_limit_per_iteration];
+        }
+        final byte[] fullstorage = new byte[this.bounty_limit_per_iteration * this.storage_size * 4];
+        try (Connection con = Db.db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT bucket, storage FROM work_storage "
+                     + "WHERE work_id = ? AND iteration = ?")) {
+            int i = 0;
+            pstmt.setLong(++i, this.id);
+            pstmt.setInt(++i, iteration);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    final byte[] storage = rs.getBytes("storage");
+                    System.arraycopy(storage, 0, fullstorage, rs.getInt("bucket") * this.storage_size * 4,
+                            Math.min(storage.length, this.storage_size * 4));
+                }
+            }
+        } catch (final SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+        return Convert.byte2int(fullstorage);
+    }
+
+    // Writes the storage of the bounty that was just counted into its slot of the current iteration. Slots are
+    // filled from the back, so the most recent bounty of an iteration ends up in bucket 0.
+    void addBountyStorage(final byte[] storage) {
+        final int position = this.received_bounties - 1;
+        final int iteration = position / this.bounty_limit_per_iteration;
+        final int bucket = this.bounty_limit_per_iteration - 1 - position % this.bounty_limit_per_iteration;
+        try (Connection con = Db.db.getConnection()) {
+            saveBountyStorage(con, iteration, bucket, storage);
+        } catch (final SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
+    // Whether every bounty of the iteration that was just completed wrote its slot, which is not the case for an
+    // iteration that started before BOUNTY_STORAGE_ORDER_BLOCK
+    boolean hasAllBountyStorages() {
+        final int iteration = (this.received_bounties - 1) / this.bounty_limit_per_iteration;
+        try (Connection con = Db.db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT COUNT(*) FROM work_storage "
+                     + "WHERE work_id = ? AND iteration = ?")) {
+            int i = 0;
+            pstmt.setLong(++i, this.id);
+            pstmt.setInt(++i, iteration);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1) == this.bounty_limit_per_iteration;
+            }
+        } catch (final SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
+    // Replaces all slots of the iteration that was just completed, storages.get(i) going to bucket i. Used before
+    // BOUNTY_STORAGE_ORDER_BLOCK, when the slots followed the order of the last bounties by height.
+    void setBountyStorages(final List<byte[]> storages) {
+        final int iteration = (this.received_bounties - 1) / this.bounty_limit_per_iteration;
+        try (Connection con = Db.db.getConnection()) {
+            for (int bucket = 0; bucket < this.bounty_limit_per_iteration; bucket++) {
+                saveBountyStorage(con, iteration, bucket, bucket < storages.size() ? storages.get(bucket) : null);
+            }
+        } catch (final SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+        this.combined_storage = null;
+    }
+
+    private void saveBountyStorage(final Connection con, final int iteration, final int bucket, final byte[] storage)
+            throws SQLException {
+        try (PreparedStatement pstmt = con.prepareStatement("MERGE INTO work_storage "
+                + "(work_id, iteration, bucket, storage, height) KEY (work_id, iteration, bucket) "
+                + "VALUES (?, ?, ?, ?, ?)")) {
+            int i = 0;
+            pstmt.setLong(++i, this.id);
+            pstmt.setInt(++i, iteration);
+            pstmt.setInt(++i, bucket);
+            pstmt.setBytes(++i, storage == null ? new byte[0] : storage);
+            pstmt.setInt(++i, Nxt.getBlockchain().getHeight());
+            pstmt.executeUpdate();
+        }
+    }
+
     private void save(final Connection con) throws SQLException {
         try (PreparedStatement pstmt = con.prepareStatement(
                 "MERGE INTO work (id, cap_number_pow, closing_timestamp, block_id, sender_account_id, xel_per_pow, " +
-                        "iterations, iterations_left, blocks_remaining, closed, cancelled, timedout, xel_per_bounty, received_bounties, received_pows, bounty_limit_per_iteration, originating_height, height, combined_storage, storage_size, verify_function, source_code, latest) "
+                        "iterations, iterations_left, blocks_remaining, closed, cancelled, timedout, xel_per_bounty, received_bounties, received_pows, bounty_limit_per_iteration, originating_height, close_height, height, storage_size, verify_hash, source_hash, latest) "
                         + "KEY (id, height) "
                         + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, TRUE)")) {
             int i = 0;
@@ -396,11 +633,11 @@ public final class Work {
             pstmt.setInt(++i, this.received_pows);
             pstmt.setInt(++i, this.bounty_limit_per_iteration);
             pstmt.setInt(++i, this.originating_height);
+            pstmt.setInt(++i, this.originating_height + this.blocksRemaining);
             pstmt.setInt(++i,Nxt.getBlockchain().getHeight());
-            pstmt.setBytes(++i, Convert.int2byte(this.combined_storage));
             pstmt.setInt(++i, this.storage_size);
-            pstmt.setString(++i, this.verifyFunction);
-            pstmt.setString(++i, this.source_code);
+            pstmt.setBytes(++i, this.verify_hash);
+            pstmt.setBytes(++i, this.source_hash);
             pstmt.executeUpdate();
         }catch(Exception e){
             e.printStackTrace();
@@ -478,15 +715,16 @@ public final class Work {
     public static JSONObject toJsonWithSource(Work work, boolean with_source) {
         final JSONObject response = toJson(work);
         if(with_source)
-            response.put("source", work.source_code);
+            response.put("source", work.getSource_code());
         return response;
     }
 
     public static int[] getStorage(Work work, int storage_slot){
         int[] storage_area = new int[work.storage_size];
         if (storage_slot>=0 && storage_slot < work.bounty_limit_per_iteration) {
+            int[] combined_storage = work.getCombined_storage();
             for (int i = 0; i < work.storage_size; ++i) {
-                storage_area[i] = work.combined_storage[storage_slot * work.storage_size + i];
+                storage_area[i] = combined_storage[storage_slot * work.storage_size + i];
             }
         }
         return storage_area;
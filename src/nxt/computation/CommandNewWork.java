@@ -270,6 +270,7 @@ public class CommandNewWork extends IComputationAttachment {
         // Here, apply the actual package
         Logger.logInfoMessage("new work package submitted: id=" + Long.toUnsignedString(transaction.getId()));
         Work.addWork(transaction, this);
+        Executor.precompileVerify(transaction.getId(), this.verify_function);
     }
 
     public int getStorageSize() {
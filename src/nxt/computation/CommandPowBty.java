@@ -44,6 +44,13 @@ public class CommandPowBty extends IComputationAttachment {
     private boolean isValid = false;
     private int storage_bucket;
 
+    // script verdict computed ahead of apply, only trusted if the work still presents the same inputs at apply time
+    private volatile SubmissionPrevalidator.Verdict precomputedVerdict = null;
+    private byte[] precomputedPubkey;
+    private long precomputedBlockId;
+    private int[] precomputedStorage;
+    private String precomputedVerifyFunction;
+
     public CommandPowBty(long work_id, boolean is_proof_of_work, byte[] multiplier, byte[] hash,  byte[]
             verificator, int storage_bucket) {
         super();
@@ -172,27 +179,58 @@ public class CommandPowBty extends IComputationAttachment {
         return verificator;
     }
 
-    private boolean validatePow(byte[] pubkey, long blockid, long workId, String vcode, int[] target){
+    private boolean executeVerify(byte[] pubkey, long blockid, long workId, String vcode, int[] storage_array){
         byte[] hash_array = this.getPowHash();
         byte[] multiplier_array = this.getMultiplier();
         int[] verificator_array = Convert.byte2int(this.getVerificator());
-
-        int[] storage_array = Work.getStorage(Work.getWorkById(workId), this.storage_bucket);
+        int[] target = new int[]{-1,-1,-1,-1};
 
         Executor.CODE_RESULT result = Executor.executeCode(pubkey, blockid, workId, vcode, multiplier_array,
-                 storage_array, verificator_array, true, target, hash_array);
-        return result.pow;
+                storage_array, verificator_array, this.is_proof_of_work, target, hash_array);
+        return this.is_proof_of_work ? result.pow : result.bty;
+    }
+
+    /**
+     * Captures the inputs of the script execution from the current work state. Called on the block apply thread, or
+     * ahead of it on the last committed state, in which case the verdict is only reused if its inputs still match.
+     * Returns false if the submission is rejected before any script would run.
+     */
+    boolean prepareVerify(Transaction transaction) {
+        if (validated || this.work_id == 0) return false;
+        Work w = Work.getWork(this.work_id);
+        if (w == null || w.isClosed()) return false;
+        if (multiplier.length != ComputationConstants.MULTIPLIER_LENGTH) return false;
+        if (this.storage_bucket > w.getBounty_limit_per_iteration() || this.storage_bucket < 0) return false;
+        if (verificator.length/4 != w.getStorage_size()) return false;
+
+        this.precomputedPubkey = transaction.getSenderPublicKey();
+        this.precomputedBlockId = transaction.getBlockId();
+        this.precomputedStorage = Work.getStorage(w, this.storage_bucket);
+        this.precomputedVerifyFunction = w.getVerifyFunction();
+
+        // already verified for this block ahead of the write lock
+        SubmissionPrevalidator.Verdict verdict = SubmissionPrevalidator.getVerdict(transaction);
+        if (verdict != null && verdict.matches(this.precomputedPubkey, this.precomputedBlockId, this.multiplier,
+                this.precomputedStorage, this.precomputedVerifyFunction)) {
+            this.precomputedVerdict = verdict;
+            return false;
+        }
+        return true;
     }
-    private boolean validateBty(byte[] pubkey, long blockid, long workId, String vcode, int[] target){
-        byte[] hash_array = this.getPowHash();
-        byte[] multiplier_array = this.getMultiplier();
-        int[] verificator_array = Convert.byte2int(this.getVerificator());
 
-        int[] storage_array = Work.getStorage(Work.getWorkById(workId), this.storage_bucket);
+    /**
+     * Runs the script on the inputs captured by {@link #prepareVerify(Transaction)}. Touches no database state,
+     * so it can be run for all submissions of a block in parallel.
+     */
+    void precomputeVerify() {
+        boolean result = executeVerify(this.precomputedPubkey, this.precomputedBlockId, this.work_id,
+                this.precomputedVerifyFunction, this.precomputedStorage);
+        this.precomputedVerdict = SubmissionPrevalidator.newVerdict(this.precomputedPubkey, this.precomputedBlockId,
+                this.multiplier, this.precomputedStorage, this.precomputedVerifyFunction, result);
+    }
 
-        Executor.CODE_RESULT result = Executor.executeCode(pubkey, blockid, workId, vcode, multiplier_array,
-                storage_array, verificator_array, false, target, hash_array);
-        return result.bty;
+    SubmissionPrevalidator.Verdict getPrecomputedVerdict() {
+        return precomputedVerdict;
     }
 
     @Override
@@ -244,15 +282,15 @@ public class CommandPowBty extends IComputationAttachment {
             return false;
         }
 
-        int[] target = new int[]{-1,-1,-1,-1};
-
-        // Validate code-level
-        if (this.is_proof_of_work && !validatePow(transaction.getSenderPublicKey(), transaction.getBlockId(),
-                work_id, w.getVerifyFunction(), target)) {
-            return false;
-        }
-        if (!this.is_proof_of_work && !validateBty(transaction.getSenderPublicKey(), transaction.getBlockId(),
-                work_id, w.getVerifyFunction(), target)) {
+        // Validate code-level, reusing the parallel block precomputation if the work still presents the same inputs
+        // to the script
+        int[] storage_array = Work.getStorage(w, this.storage_bucket);
+        boolean codeValid = SubmissionPrevalidator.verify(transaction.getSenderPublicKey(), transaction.getBlockId(),
+                this.multiplier, storage_array, w.getVerifyFunction(),
+                () -> executeVerify(transaction.getSenderPublicKey(), transaction.getBlockId(), work_id,
+                        w.getVerifyFunction(), storage_array),
+                precomputedVerdict);
+        if (!codeValid) {
             return false;
         }
 
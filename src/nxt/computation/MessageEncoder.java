@@ -5,6 +5,7 @@ import nxt.http.ParameterException;
 import nxt.http.ParameterParser;
 import nxt.peer.Peers;
 import nxt.util.Logger;
+import nxt.util.ThreadPool;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONStreamAware;
 
@@ -16,6 +17,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /******************************************************************************
  * Copyright © 2017 The XEL Core Developers.                                  *
@@ -45,7 +49,52 @@ public class MessageEncoder {
 
     static boolean useComputationEngine = Nxt.getBooleanProperty("nxt.enableComputationEngine");
 
+    // runs the (pure) script executions of the pow/bounty submissions of a block concurrently, created on first use
+    // so that nodes without the computation engine never start it
+    private static ExecutorService verifyService;
+
+    private static synchronized ExecutorService getVerifyService(){
+        if(verifyService == null){
+            verifyService = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors()));
+        }
+        return verifyService;
+    }
+
     static void processBlockInternal(Block block){
+        List<Transaction> transactions = new ArrayList<>();
+        List<IComputationAttachment> attachments = new ArrayList<>();
+        decodeAttachments(block, transactions, attachments);
+
+        precomputeVerifications(transactions, attachments, false);
+
+        // State changes are applied strictly in transaction order
+        for(int i=0;i<attachments.size();++i){
+            try {
+                attachments.get(i).apply(transactions.get(i));
+            } catch (Exception e) {
+                // generous catch, do not allow anything to cripple the blockchain integrity
+                continue;
+            }
+        }
+        block.setLocallyProcessed();
+    }
+
+    /**
+     * Runs the verify scripts of the submissions of a block before it is pushed, outside the blockchain write lock.
+     * The inputs are taken from the last committed state, so block apply only reuses a verdict if the storage and
+     * verify function it captures itself still match.
+     */
+    public static void prevalidateBlock(Block block){
+        if (!useComputationEngine || Nxt.getBlockchain().getHeight() + 1 < ComputationConstants.START_ENCODING_BLOCK) {
+            return;
+        }
+        List<Transaction> transactions = new ArrayList<>();
+        List<IComputationAttachment> attachments = new ArrayList<>();
+        decodeAttachments(block, transactions, attachments);
+        precomputeVerifications(transactions, attachments, true);
+    }
+
+    private static void decodeAttachments(Block block, List<Transaction> transactions, List<IComputationAttachment> attachments){
         // Check all TX for relevant stuff
         for(Transaction t : block.getTransactions()){
             Appendix.PrunablePlainMessage m = t.getPrunablePlainMessage();
@@ -57,14 +106,51 @@ public class MessageEncoder {
                     // Allow the decoding of the attachment
                     IComputationAttachment att = MessageEncoder.decodeAttachment(reconstructedChain);
                     if(att == null) continue;
-                    att.apply(t);
+                    transactions.add(t);
+                    attachments.add(att);
                 } catch (Exception e) {
                     // generous catch, do not allow anything to cripple the blockchain integrity
                     continue;
                 }
             }
         }
-        block.setLocallyProcessed();
+    }
+
+    private static void precomputeVerifications(List<Transaction> transactions, List<IComputationAttachment> attachments,
+                                                boolean remember){
+        // Inputs are captured on this thread, only the scripts run in parallel
+        List<Callable<Void>> jobs = new ArrayList<>();
+        for(int i=0;i<attachments.size();++i){
+            if(!(attachments.get(i) instanceof CommandPowBty)) continue;
+            CommandPowBty att = (CommandPowBty) attachments.get(i);
+            Transaction transaction = transactions.get(i);
+            try {
+                if (att.prepareVerify(transaction)) {
+                    jobs.add(() -> {
+                        att.precomputeVerify();
+                        if (remember) {
+                            SubmissionPrevalidator.putVerdict(transaction, att.getPrecomputedVerdict());
+                        }
+                        return null;
+                    });
+                }
+            } catch (Exception e) {
+                // will be rejected again by the regular validation
+            }
+        }
+        // a single script gains nothing while applying, apply verifies it inline, but ahead of the write lock it does
+        if(jobs.isEmpty() || (jobs.size() < 2 && !remember)) return;
+        try {
+            getVerifyService().invokeAll(jobs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static synchronized void shutdown(){
+        if(verifyService != null){
+            ThreadPool.shutdownExecutor("verifyService", verifyService, 5);
+        }
     }
 
     static {
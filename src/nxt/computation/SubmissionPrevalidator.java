@@ -0,0 +1,169 @@
+package nxt.computation;
+
+import nxt.Appendix;
+import nxt.Nxt;
+import nxt.Transaction;
+import nxt.util.Logger;
+import nxt.util.ThreadPool;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+/**
+ * Runs the verify script of pow/bounty submissions as soon as they enter the unconfirmed pool, so that failing
+ * submissions can be dropped before they are forged or rebroadcast. The block id is an input of the script and is
+ * not known in the pool, so these verdicts only serve the pool and are never reused by block apply.
+ *
+ * Also keeps the verdicts computed for a block ahead of the write lock, which block apply finds by transaction.
+ */
+public final class SubmissionPrevalidator {
+
+    private static final int MAX_CACHED_VERDICTS = 10000;
+    private static final int THREADS = Math.max(1, Nxt.getIntProperty("nxt.computationPrevalidationThreads", 2));
+    private static final int QUEUE_SIZE = Math.max(1, Nxt.getIntProperty("nxt.computationPrevalidationQueue", 1000));
+
+    // when the queue is full new submissions are simply not prevalidated, block apply verifies them anyway;
+    // created on first use so that nodes without the computation engine never start it
+    private static ThreadPoolExecutor verifyService;
+
+    private static synchronized ThreadPoolExecutor getVerifyService() {
+        if (verifyService == null) {
+            verifyService = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(QUEUE_SIZE), new ThreadPoolExecutor.DiscardPolicy());
+        }
+        return verifyService;
+    }
+
+    // verdicts of blocks prevalidated ahead of the write lock, by transaction full hash, oldest evicted first
+    private static final Map<String, Verdict> verdicts = Collections.synchronizedMap(
+            new LinkedHashMap<String, Verdict>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Verdict> eldest) {
+                    return size() > MAX_CACHED_VERDICTS;
+                }
+            });
+
+    /**
+     * Result of one script execution, together with every input of Executor.executeCode it was computed on
+     */
+    static final class Verdict {
+        private final byte[] publicKey;
+        private final long blockId;
+        private final byte[] multiplier;
+        private final int[] storage;
+        private final int verifyFunctionLength;
+        private final int verifyFunctionHash;
+        final boolean valid;
+
+        private Verdict(byte[] publicKey, long blockId, byte[] multiplier, int[] storage, String verifyFunction,
+                        boolean valid) {
+            this.publicKey = publicKey;
+            this.blockId = blockId;
+            this.multiplier = multiplier;
+            this.storage = storage;
+            this.verifyFunctionLength = verifyFunction.length();
+            this.verifyFunctionHash = verifyFunction.hashCode();
+            this.valid = valid;
+        }
+
+        boolean matches(byte[] publicKey, long blockId, byte[] multiplier, int[] storage, String verifyFunction) {
+            return blockId == this.blockId && Arrays.equals(this.publicKey, publicKey)
+                    && Arrays.equals(this.multiplier, multiplier) && Arrays.equals(this.storage, storage)
+                    && verifyFunction.length() == verifyFunctionLength && verifyFunction.hashCode() == verifyFunctionHash;
+        }
+    }
+
+    public static void submit(List<? extends Transaction> transactions, Consumer<Transaction> onInvalid) {
+        if (!MessageEncoder.useComputationEngine) {
+            return;
+        }
+        for (Transaction transaction : transactions) {
+            CommandPowBty att = decodeSubmission(transaction);
+            if (att == null) {
+                continue;
+            }
+            getVerifyService().execute(() -> {
+                try {
+                    if (!att.prepareVerify(transaction)) {
+                        return; // depends on work state which may still change, leave it to block apply
+                    }
+                    att.precomputeVerify();
+                    if (!att.getPrecomputedVerdict().valid) {
+                        Logger.logDebugMessage("Dropping unconfirmed submission " + transaction.getStringId()
+                                + ", verification failed");
+                        onInvalid.accept(transaction);
+                    }
+                } catch (Exception e) {
+                    Logger.logDebugMessage("Error prevalidating submission " + transaction.getStringId(), e);
+                }
+            });
+        }
+    }
+
+    static Verdict getVerdict(Transaction transaction) {
+        return verdicts.get(transaction.getFullHash());
+    }
+
+    static void putVerdict(Transaction transaction, Verdict verdict) {
+        verdicts.put(transaction.getFullHash(), verdict);
+    }
+
+    static Verdict newVerdict(byte[] publicKey, long blockId, byte[] multiplier, int[] storage, String verifyFunction,
+                              boolean valid) {
+        return new Verdict(publicKey, blockId, multiplier, storage, verifyFunction, valid);
+    }
+
+    /**
+     * Returns the precomputed verdict if it was computed on exactly these inputs, or runs the script otherwise
+     */
+    static boolean verify(byte[] publicKey, long blockId, byte[] multiplier, int[] storage, String verifyFunction,
+                          BooleanSupplier execute, Verdict precomputed) {
+        if (precomputed != null && precomputed.matches(publicKey, blockId, multiplier, storage, verifyFunction)) {
+            return precomputed.valid;
+        }
+        return execute.getAsBoolean();
+    }
+
+    private static CommandPowBty decodeSubmission(Transaction transaction) {
+        // only single message submissions, the parts of a chain may not be known to us yet
+        Appendix.PrunablePlainMessage m = transaction.getPrunablePlainMessage();
+        if (m == null || transaction.getReferencedTransactionFullHash() != null
+                || !MessageEncoder.checkMessageForPiggyback(m, true, false)) {
+            return null;
+        }
+        IComputationAttachment att = MessageEncoder.decodeAttachment(new Appendix.PrunablePlainMessage[]{m});
+        return att instanceof CommandPowBty ? (CommandPowBty) att : null;
+    }
+
+    public static synchronized void shutdown() {
+        if (verifyService != null) {
+            ThreadPool.shutdownExecutor("computationPrevalidation", verifyService, 5);
+        }
+    }
+
+    private SubmissionPrevalidator() {}
+}
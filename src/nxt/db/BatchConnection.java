@@ -0,0 +1,191 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt.db;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Connection wrapper which turns the updates of its prepared statements into batches
+ *
+ * There is one statement for each distinct SQL text.  It stays open when the caller closes it, so the rows of all
+ * the entities saved through the connection go into the same batch.  The statements are closed with the connection,
+ * the wrapped connection is not closed.
+ *
+ * Only {@link #prepareStatement(String)} and {@link PreparedStatement#executeUpdate()} are supported, anything that
+ * would read or write the database before {@link #executeBatches} throws UnsupportedOperationException.  The row
+ * count is not known until the batch runs, so executeUpdate returns {@link Statement#SUCCESS_NO_INFO}.
+ *
+ * {@link #executeBatches} runs the batches in the order the statements were first prepared, so each entity must use
+ * the statements in that order: an update through a statement prepared before the last one used for the same entity
+ * throws IllegalStateException.  {@link #nextEntity} starts the statements of the next entity.  The rows of
+ * different entities are expected to be independent of each other.
+ */
+final class BatchConnection extends FilteredConnection {
+
+    private static final FilteredFactory factory = new FilteredFactory() {
+
+        @Override
+        public Statement createStatement(Statement stmt) {
+            return stmt;
+        }
+
+        @Override
+        public PreparedStatement createPreparedStatement(PreparedStatement stmt, String sql) {
+            return stmt;
+        }
+    };
+
+    private final Map<String, BatchStatement> statements = new LinkedHashMap<>();
+    private int lastIndex = -1;
+
+    BatchConnection(Connection con) {
+        super(con, factory);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        BatchStatement stmt = statements.get(sql);
+        if (stmt == null) {
+            stmt = new BatchStatement(super.prepareStatement(sql), sql, statements.size());
+            statements.put(sql, stmt);
+        }
+        return stmt;
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) {
+        throw new UnsupportedOperationException("Only prepareStatement(String) can be batched");
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) {
+        throw new UnsupportedOperationException("Only prepareStatement(String) can be batched");
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) {
+        throw new UnsupportedOperationException("Only prepareStatement(String) can be batched");
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int[] columnIndexes) {
+        throw new UnsupportedOperationException("Only prepareStatement(String) can be batched");
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, String[] columnNames) {
+        throw new UnsupportedOperationException("Only prepareStatement(String) can be batched");
+    }
+
+    @Override
+    public Statement createStatement() {
+        throw new UnsupportedOperationException("Only prepareStatement(String) can be batched");
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency) {
+        throw new UnsupportedOperationException("Only prepareStatement(String) can be batched");
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) {
+        throw new UnsupportedOperationException("Only prepareStatement(String) can be batched");
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql) {
+        throw new UnsupportedOperationException("Only prepareStatement(String) can be batched");
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) {
+        throw new UnsupportedOperationException("Only prepareStatement(String) can be batched");
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) {
+        throw new UnsupportedOperationException("Only prepareStatement(String) can be batched");
+    }
+
+    void nextEntity() {
+        lastIndex = -1;
+    }
+
+    void executeBatches() throws SQLException {
+        for (BatchStatement stmt : statements.values()) {
+            stmt.executeBatch();
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        for (BatchStatement stmt : statements.values()) {
+            stmt.closeStatement();
+        }
+        statements.clear();
+    }
+
+    private final class BatchStatement extends FilteredPreparedStatement {
+
+        private final int index;
+
+        private BatchStatement(PreparedStatement stmt, String sql, int index) {
+            super(stmt, sql);
+            this.index = index;
+        }
+
+        @Override
+        public int executeUpdate() throws SQLException {
+            if (index < lastIndex) {
+                throw new IllegalStateException("Statement " + getSQL() + " would be executed out of order");
+            }
+            lastIndex = index;
+            addBatch();
+            return SUCCESS_NO_INFO;
+        }
+
+        @Override
+        public long executeLargeUpdate() {
+            throw new UnsupportedOperationException("Only executeUpdate() can be batched");
+        }
+
+        @Override
+        public ResultSet executeQuery() {
+            throw new UnsupportedOperationException("Only executeUpdate() can be batched");
+        }
+
+        @Override
+        public boolean execute() {
+            throw new UnsupportedOperationException("Only executeUpdate() can be batched");
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private void closeStatement() throws SQLException {
+            super.close();
+        }
+    }
+}
@@ -174,6 +174,22 @@ public abstract class DbClause {
         }
     }
 
+    public static final class LongsClause extends DbClause {
+
+        private final Long[] values;
+
+        public LongsClause(String columnName, Long[] values) {
+            super(" " + columnName + " IN (SELECT * FROM TABLE (x BIGINT = ?)) ");
+            this.values = values;
+        }
+
+        @Override
+        protected int set(PreparedStatement pstmt, int index) throws SQLException {
+            pstmt.setObject(index, values);
+            return index + 1;
+        }
+    }
+
     public static final class IntClause extends DbClause {
 
         private final int value;
@@ -18,6 +18,7 @@ package nxt.db;
 
 import nxt.util.Logger;
 
+import java.nio.ByteBuffer;
 import java.sql.Array;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -151,6 +152,30 @@ public final class DbUtils {
         return index;
     }
 
+    /**
+     * Encoded size of a byte array that may be null, see {@link #putBytes}
+     */
+    public static int sizeOf(byte[] bytes) {
+        return 4 + (bytes == null ? 0 : bytes.length);
+    }
+
+    public static ByteBuffer putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            return buffer.putInt(-1);
+        }
+        return buffer.putInt(bytes.length).put(bytes);
+    }
+
+    public static byte[] getBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
     private DbUtils() {} // never
 
 }
@@ -35,24 +35,21 @@ public abstract class DbVersion {
             con = db.getConnection();
             stmt = con.createStatement();
             int nextUpdate = 1;
+            boolean created = false;
             try {
-                ResultSet rs = stmt.executeQuery("SELECT next_update FROM version");
-                if (! rs.next()) {
-                    throw new RuntimeException("Invalid version table");
-                }
-                nextUpdate = rs.getInt("next_update");
-                if (! rs.isLast()) {
-                    throw new RuntimeException("Invalid version table");
-                }
-                rs.close();
+                nextUpdate = getNextUpdate(stmt);
                 Logger.logMessage("Database update may take a while if needed, current db version " + (nextUpdate - 1) + "...");
             } catch (SQLException e) {
                 Logger.logMessage("Initializing an empty database");
                 stmt.executeUpdate("CREATE TABLE version (next_update INT NOT NULL)");
                 stmt.executeUpdate("INSERT INTO version VALUES (1)");
                 con.commit();
+                created = true;
             }
             update(nextUpdate);
+            if (created) {
+                restore(getNextUpdate(stmt) - 1);
+            }
         } catch (SQLException e) {
             DbUtils.rollback(con);
             throw new RuntimeException(e.toString(), e);
@@ -62,6 +59,27 @@ public abstract class DbVersion {
 
     }
 
+    private static int getNextUpdate(Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SELECT next_update FROM version")) {
+            if (! rs.next()) {
+                throw new RuntimeException("Invalid version table");
+            }
+            int nextUpdate = rs.getInt("next_update");
+            if (! rs.isLast()) {
+                throw new RuntimeException("Invalid version table");
+            }
+            return nextUpdate;
+        }
+    }
+
+    /**
+     * Populate the tables of a newly created database from an existing copy
+     *
+     * @param   dbVersion           Version of the created tables
+     */
+    protected void restore(int dbVersion) {
+    }
+
     protected void apply(String sql) {
         Connection con = null;
         Statement stmt = null;
@@ -21,6 +21,8 @@ import nxt.Nxt;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 
@@ -64,10 +66,79 @@ public abstract class DerivedDbTable {
         //nothing to trim
     }
 
+    /**
+     * Trim part of the table, so the trimming of a large table can be spread over several transactions
+     *
+     * Only versioned entity tables are trimmed in parts, by ranges of their first key column.  The other tables are
+     * trimmed completely by the first call.
+     *
+     * @param   height              Trim height
+     * @param   fromKey             Value returned by the previous call, null for the first call
+     * @param   limit               Number of rows in the part
+     * @return                      Value to pass to the next call, null once the table is trimmed
+     */
+    public Object trim(int height, Object fromKey, int limit) {
+        trim(height);
+        return null;
+    }
+
+    /**
+     * Select the rows of the table as they were at a height, in db_id order
+     *
+     * The latest flag of a versioned row is returned as it was at that height, the versions added since are ignored.
+     * The caller must keep the table from being trimmed while it reads the rows.
+     *
+     * @param   con                 Database connection
+     * @param   height              Height
+     * @return                      Prepared statement, ready to execute
+     * @throws  SQLException        Database error
+     */
+    public PreparedStatement prepareSelectAtHeight(Connection con, int height) throws SQLException {
+        String selfJoinClause = getSelfJoinClause();
+        if (selfJoinClause == null) {
+            PreparedStatement pstmt = con.prepareStatement("SELECT * FROM " + table + " WHERE height <= ? ORDER BY db_id");
+            pstmt.setInt(1, height);
+            return pstmt;
+        }
+        StringBuilder columns = new StringBuilder();
+        try (Statement stmt = con.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT * FROM " + table + " WHERE FALSE")) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                String column = metaData.getColumnName(i).toLowerCase();
+                if (i > 1) {
+                    columns.append(", ");
+                }
+                if (column.equals("latest")) {
+                    columns.append("NOT EXISTS (SELECT 1 FROM ").append(table).append(" AS b WHERE ").append(selfJoinClause)
+                            .append(" AND b.height > a.height AND b.height <= ?) AS latest");
+                } else {
+                    columns.append("a.").append(column);
+                }
+            }
+        }
+        PreparedStatement pstmt = con.prepareStatement("SELECT " + columns + " FROM " + table + " AS a WHERE a.height <= ? "
+                + "ORDER BY a.db_id");
+        pstmt.setInt(1, height);
+        pstmt.setInt(2, height);
+        return pstmt;
+    }
+
+    /**
+     * Condition joining a row a to the other versions b of the same key, null if the table keeps no versions
+     */
+    String getSelfJoinClause() {
+        return null;
+    }
+
     public void createSearchIndex(Connection con) throws SQLException {
         //implemented in EntityDbTable only
     }
 
+    String getName() {
+        return table;
+    }
+
     public boolean isPersistent() {
         return false;
     }
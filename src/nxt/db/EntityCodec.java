@@ -0,0 +1,44 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt.db;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary form of an entity, for the storage engines that do not keep entities as table rows
+ */
+public interface EntityCodec<T> {
+
+    /**
+     * Encode the columns of the entity
+     *
+     * @param   t                   Entity
+     * @return                      Encoded entity
+     */
+    byte[] encode(T t);
+
+    /**
+     * Decode an entity, as the table would load it from its row
+     *
+     * @param   dbKey               Entity key
+     * @param   buffer              Encoded entity
+     * @return                      Entity
+     */
+    T decode(DbKey dbKey, ByteBuffer buffer);
+
+}
@@ -24,6 +24,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Map;
 
 public abstract class EntityDbTable<T> extends DerivedDbTable {
 
@@ -31,6 +32,7 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
     protected final DbKey.Factory<T> dbKeyFactory;
     private final String defaultSort;
     private final String fullTextSearchColumns;
+    private final EntityStorage<T> storage;
 
     protected EntityDbTable(String table, DbKey.Factory<T> dbKeyFactory) {
         this(table, dbKeyFactory, false, null);
@@ -41,11 +43,17 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
     }
 
     EntityDbTable(String table, DbKey.Factory<T> dbKeyFactory, boolean multiversion, String fullTextSearchColumns) {
+        this(table, dbKeyFactory, multiversion, fullTextSearchColumns, null);
+    }
+
+    EntityDbTable(String table, DbKey.Factory<T> dbKeyFactory, boolean multiversion, String fullTextSearchColumns,
+                  EntityCodec<T> codec) {
         super(table);
         this.dbKeyFactory = dbKeyFactory;
         this.multiversion = multiversion;
         this.defaultSort = " ORDER BY " + (multiversion ? dbKeyFactory.getPKColumns() : " height DESC, db_id DESC ");
         this.fullTextSearchColumns = fullTextSearchColumns;
+        this.storage = multiversion ? KeyValueEntityStorage.create(this, codec) : null;
     }
 
     protected abstract T load(Connection con, ResultSet rs, DbKey dbKey) throws SQLException;
@@ -60,6 +68,23 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
         db.clearCache(table);
     }
 
+    /**
+     * Get a connection for a query or update of this table, the entities of the table whose write is deferred in
+     * the current transaction are written first
+     *
+     * @return                      Database connection
+     * @throws  SQLException        Database error
+     */
+    public final Connection getConnection() throws SQLException {
+        db.flushPendingWrites(table);
+        return db.getConnection();
+    }
+
+    @Override
+    String getSelfJoinClause() {
+        return multiversion ? dbKeyFactory.getSelfJoinClause() : null;
+    }
+
     public void checkAvailable(int height) {
         if (multiversion) {
             int minRollBackHeight = isPersistent() && Nxt.getBlockchainProcessor().isScanning() ?
@@ -100,9 +125,16 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
                 return t;
             }
         }
-        try (Connection con = db.getConnection();
-             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM " + table + dbKeyFactory.getPKClause()
-             + (multiversion ? " AND latest = TRUE LIMIT 1" : ""))) {
+        if (multiversion) {
+            db.flushPendingWrites(table);
+            T t = storage.get(dbKey);
+            if (t != null && cache && db.isInTransaction()) {
+                db.getCache(table).put(dbKey, t);
+            }
+            return t;
+        }
+        try (Connection con = getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM " + table + dbKeyFactory.getPKClause())) {
             dbKey.setPK(pstmt);
             return get(con, pstmt, cache);
         } catch (SQLException e) {
@@ -115,16 +147,15 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
             return get(dbKey);
         }
         checkAvailable(height);
-        try (Connection con = db.getConnection();
+        if (multiversion) {
+            db.flushPendingWrites(table);
+            return storage.get(dbKey, height);
+        }
+        try (Connection con = getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT * FROM " + table + dbKeyFactory.getPKClause()
-                     + " AND height <= ?" + (multiversion ? " AND (latest = TRUE OR EXISTS ("
-                     + "SELECT 1 FROM " + table + dbKeyFactory.getPKClause() + " AND height > ?)) ORDER BY height DESC LIMIT 1" : ""))) {
+                     + " AND height <= ?")) {
             int i = dbKey.setPK(pstmt);
             pstmt.setInt(i, height);
-            if (multiversion) {
-                i = dbKey.setPK(pstmt, ++i);
-                pstmt.setInt(i, height);
-            }
             return get(con, pstmt, false);
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
@@ -132,7 +163,7 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
     }
 
     public final T getBy(DbClause dbClause) {
-        try (Connection con = db.getConnection();
+        try (Connection con = getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT * FROM " + table
                      + " WHERE " + dbClause.getClause() + (multiversion ? " AND latest = TRUE LIMIT 1" : ""))) {
             dbClause.set(pstmt, 1);
@@ -147,7 +178,7 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
             return getBy(dbClause);
         }
         checkAvailable(height);
-        try (Connection con = db.getConnection();
+        try (Connection con = getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT * FROM " + table + " AS a WHERE " + dbClause.getClause()
                      + " AND height <= ?" + (multiversion ? " AND (latest = TRUE OR EXISTS ("
                      + "SELECT 1 FROM " + table + " AS b WHERE " + dbKeyFactory.getSelfJoinClause()
@@ -164,7 +195,7 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
         }
     }
 
-    private T get(Connection con, PreparedStatement pstmt, boolean cache) throws SQLException {
+    final T get(Connection con, PreparedStatement pstmt, boolean cache) throws SQLException {
         final boolean doCache = cache && db.isInTransaction();
         try (ResultSet rs = pstmt.executeQuery()) {
             if (!rs.next()) {
@@ -196,7 +227,7 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
     public final DbIterator<T> getManyBy(DbClause dbClause, int from, int to, String sort) {
         Connection con = null;
         try {
-            con = db.getConnection();
+            con = getConnection();
             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM " + table
                     + " WHERE " + dbClause.getClause() + (multiversion ? " AND latest = TRUE " : " ") + sort
                     + DbUtils.limitsClause(from, to));
@@ -221,7 +252,7 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
         checkAvailable(height);
         Connection con = null;
         try {
-            con = db.getConnection();
+            con = getConnection();
             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM " + table + " AS a WHERE " + dbClause.getClause()
                     + "AND a.height <= ?" + (multiversion ? " AND (a.latest = TRUE OR (a.latest = FALSE "
                     + "AND EXISTS (SELECT 1 FROM " + table + " AS b WHERE " + dbKeyFactory.getSelfJoinClause() + " AND b.height > ?) "
@@ -270,7 +301,7 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
     public final DbIterator<T> search(String query, DbClause dbClause, int from, int to, String sort) {
         Connection con = null;
         try {
-            con = db.getConnection();
+            con = getConnection();
             PreparedStatement pstmt = con.prepareStatement("SELECT " + table + ".*, ft.score FROM " + table +
                     ", ftl_search('PUBLIC', '" + table + "', ?, 2147483647, 0) ft "
                     + " WHERE " + table + ".db_id = ft.keys[0] "
@@ -295,7 +326,7 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
     public final DbIterator<T> getAll(int from, int to, String sort) {
         Connection con = null;
         try {
-            con = db.getConnection();
+            con = getConnection();
             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM " + table
                      + (multiversion ? " WHERE latest = TRUE " : " ") + sort
                     + DbUtils.limitsClause(from, to));
@@ -318,7 +349,7 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
         checkAvailable(height);
         Connection con = null;
         try {
-            con = db.getConnection();
+            con = getConnection();
             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM " + table + " AS a WHERE height <= ?"
                     + (multiversion ? " AND (latest = TRUE OR (latest = FALSE "
                     + "AND EXISTS (SELECT 1 FROM " + table + " AS b WHERE b.height > ? AND " + dbKeyFactory.getSelfJoinClause()
@@ -340,7 +371,7 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
     }
 
     public final int getCount() {
-        try (Connection con = db.getConnection();
+        try (Connection con = getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT COUNT(*) FROM " + table
                      + (multiversion ? " WHERE latest = TRUE" : ""))) {
             return getCount(pstmt);
@@ -350,7 +381,7 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
     }
 
     public final int getCount(DbClause dbClause) {
-        try (Connection con = db.getConnection();
+        try (Connection con = getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT COUNT(*) FROM " + table
                      + " WHERE " + dbClause.getClause() + (multiversion ? " AND latest = TRUE" : ""))) {
             dbClause.set(pstmt, 1);
@@ -367,7 +398,7 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
         checkAvailable(height);
         Connection con = null;
         try {
-            con = db.getConnection();
+            con = getConnection();
             PreparedStatement pstmt = con.prepareStatement("SELECT COUNT(*) FROM " + table + " AS a WHERE " + dbClause.getClause()
                     + "AND a.height <= ?" + (multiversion ? " AND (a.latest = TRUE OR (a.latest = FALSE "
                     + "AND EXISTS (SELECT 1 FROM " + table + " AS b WHERE " + dbKeyFactory.getSelfJoinClause() + " AND b.height > ?) "
@@ -389,7 +420,7 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
     }
 
     public final int getRowCount() {
-        try (Connection con = db.getConnection();
+        try (Connection con = getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT COUNT(*) FROM " + table)) {
             return getCount(pstmt);
         } catch (SQLException e) {
@@ -420,38 +451,71 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
             throw new IllegalStateException("Different instance found in Db cache, perhaps trying to save an object "
                     + "that was read outside the current transaction");
         }
-        try (Connection con = db.getConnection()) {
-            if (multiversion) {
-                try (PreparedStatement pstmt = con.prepareStatement("UPDATE " + table
-                        + " SET latest = FALSE " + dbKeyFactory.getPKClause() + " AND latest = TRUE LIMIT 1")) {
-                    dbKey.setPK(pstmt);
-                    pstmt.executeUpdate();
-                }
-            }
+        if (multiversion) {
+            db.addPendingWrite(this, dbKey, t);
+            return;
+        }
+        try (Connection con = getConnection()) {
             save(con, t);
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
         }
     }
 
+    /**
+     * Write the versioned entities whose insert was deferred
+     *
+     * @param   con                 Connection of the transaction
+     * @param   entities            Entities to write, by key
+     */
+    final void flushWrites(Connection con, Map<DbKey, T> entities) throws SQLException {
+        storage.write(con, entities);
+    }
+
+    final boolean delete(DbKey dbKey, T t) {
+        db.flushPendingWrites(table);
+        return storage.delete(dbKey, t);
+    }
+
     @Override
     public void rollback(int height) {
         if (multiversion) {
-            VersionedEntityDbTable.rollback(db, table, height, dbKeyFactory);
+            db.flushPendingWrites(table);
+            storage.rollback(height);
         } else {
             super.rollback(height);
         }
     }
 
+    @Override
+    public void truncate() {
+        if (multiversion) {
+            db.flushPendingWrites(table);
+            storage.truncate();
+        } else {
+            super.truncate();
+        }
+    }
+
     @Override
     public void trim(int height) {
         if (multiversion) {
-            VersionedEntityDbTable.trim(db, table, height, dbKeyFactory);
+            db.flushPendingWrites(table);
+            storage.trim(height);
         } else {
             super.trim(height);
         }
     }
 
+    @Override
+    public Object trim(int height, Object fromKey, int limit) {
+        if (multiversion) {
+            db.flushPendingWrites(table);
+            return storage.trim(height, fromKey, limit);
+        }
+        return super.trim(height, fromKey, limit);
+    }
+
     @Override
     public final void createSearchIndex(Connection con) throws SQLException {
         if (fullTextSearchColumns != null) {
@@ -0,0 +1,81 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Storage engine of a versioned entity table
+ *
+ * The engine serves the lookups by key and keeps the versions of the entities: it writes the new versions, deletes,
+ * rolls back, trims and truncates.  Queries on other columns than the key always go to the database, so an engine
+ * that keeps the versions elsewhere still writes them to the table.
+ *
+ * The database engine is used unless nxt.entityStorage selects the key-value engine and the table provides an
+ * {@link EntityCodec}.
+ */
+public interface EntityStorage<T> {
+
+    /**
+     * Get the latest version of an entity, ignoring the transaction cache
+     *
+     * @param   dbKey               Entity key
+     * @return                      Entity or null if it does not exist or was deleted
+     */
+    T get(DbKey dbKey);
+
+    /**
+     * Get an entity as of a height that is available for rollback
+     *
+     * @param   dbKey               Entity key
+     * @param   height              Height below the blockchain height
+     * @return                      Entity or null if it did not exist at that height
+     */
+    T get(DbKey dbKey, int height);
+
+    /**
+     * Write new versions of entities at the current blockchain height
+     *
+     * @param   con                 Connection of the transaction
+     * @param   entities            Entities by key
+     */
+    void write(Connection con, Map<DbKey, T> entities) throws SQLException;
+
+    /**
+     * Delete an entity as of the current blockchain height
+     *
+     * @param   dbKey               Entity key
+     * @param   t                   Entity, written as the last version if the history is kept
+     * @return                      TRUE if the entity existed
+     */
+    boolean delete(DbKey dbKey, T t);
+
+    void rollback(int height);
+
+    void trim(int height);
+
+    /**
+     * Trim one slice of the table, see {@link DerivedDbTable#trim(int, Object, int)}
+     */
+    Object trim(int height, Object fromKey, int limit);
+
+    void truncate();
+
+}
@@ -0,0 +1,158 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt.db;
+
+import nxt.Nxt;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+
+/**
+ * Storage of the entity versions as rows of the table, flagged latest = TRUE for the current version of each key
+ */
+final class H2EntityStorage<T> implements EntityStorage<T> {
+
+    private final EntityDbTable<T> entityTable;
+    private final TransactionalDb db;
+    private final String table;
+    private final DbKey.Factory<T> dbKeyFactory;
+
+    H2EntityStorage(EntityDbTable<T> entityTable) {
+        this.entityTable = entityTable;
+        this.db = DerivedDbTable.db;
+        this.table = entityTable.getName();
+        this.dbKeyFactory = entityTable.dbKeyFactory;
+    }
+
+    @Override
+    public T get(DbKey dbKey) {
+        try (Connection con = db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM " + table + dbKeyFactory.getPKClause()
+                     + " AND latest = TRUE LIMIT 1")) {
+            dbKey.setPK(pstmt);
+            return entityTable.get(con, pstmt, true);
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
+    @Override
+    public T get(DbKey dbKey, int height) {
+        try (Connection con = db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM " + table + dbKeyFactory.getPKClause()
+                     + " AND height <= ? AND (latest = TRUE OR EXISTS (SELECT 1 FROM " + table + dbKeyFactory.getPKClause()
+                     + " AND height > ?)) ORDER BY height DESC LIMIT 1")) {
+            int i = dbKey.setPK(pstmt);
+            pstmt.setInt(i, height);
+            i = dbKey.setPK(pstmt, ++i);
+            pstmt.setInt(i, height);
+            return entityTable.get(con, pstmt, false);
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
+    /**
+     * Write with one batch to clear the latest flag of the previous versions and one batch for each statement used
+     * by save
+     */
+    @Override
+    public void write(Connection con, Map<DbKey, T> entities) throws SQLException {
+        try (PreparedStatement pstmt = con.prepareStatement("UPDATE " + table
+                + " SET latest = FALSE " + dbKeyFactory.getPKClause() + " AND latest = TRUE LIMIT 1")) {
+            for (DbKey dbKey : entities.keySet()) {
+                dbKey.setPK(pstmt);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+        try (BatchConnection batchCon = new BatchConnection(con)) {
+            for (T t : entities.values()) {
+                batchCon.nextEntity();
+                entityTable.save(batchCon, t);
+            }
+            batchCon.executeBatches();
+        }
+    }
+
+    /**
+     * The entity is written once more with latest = FALSE if it has versions below the current height, otherwise
+     * its rows are deleted
+     */
+    @Override
+    public boolean delete(DbKey dbKey, T t) {
+        try (Connection con = db.getConnection();
+             PreparedStatement pstmtCount = con.prepareStatement("SELECT 1 FROM " + table
+                     + dbKeyFactory.getPKClause() + " AND height < ? LIMIT 1")) {
+            int i = dbKey.setPK(pstmtCount);
+            pstmtCount.setInt(i, Nxt.getBlockchain().getHeight());
+            try (ResultSet rs = pstmtCount.executeQuery()) {
+                if (rs.next()) {
+                    try (PreparedStatement pstmt = con.prepareStatement("UPDATE " + table
+                            + " SET latest = FALSE " + dbKeyFactory.getPKClause() + " AND latest = TRUE LIMIT 1")) {
+                        dbKey.setPK(pstmt);
+                        pstmt.executeUpdate();
+                        entityTable.save(con, t);
+                        pstmt.executeUpdate(); // delete after the save
+                    }
+                    return true;
+                } else {
+                    try (PreparedStatement pstmtDelete = con.prepareStatement("DELETE FROM " + table + dbKeyFactory.getPKClause())) {
+                        dbKey.setPK(pstmtDelete);
+                        return pstmtDelete.executeUpdate() > 0;
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
+    @Override
+    public void rollback(int height) {
+        VersionedEntityDbTable.rollback(db, table, height, dbKeyFactory);
+    }
+
+    @Override
+    public void trim(int height) {
+        VersionedEntityDbTable.trim(db, table, height, dbKeyFactory);
+    }
+
+    @Override
+    public Object trim(int height, Object fromKey, int limit) {
+        return VersionedEntityDbTable.trim(db, table, height, dbKeyFactory, fromKey, limit);
+    }
+
+    @Override
+    public void truncate() {
+        if (!db.isInTransaction()) {
+            throw new IllegalStateException("Not in transaction");
+        }
+        try (Connection con = db.getConnection();
+             Statement stmt = con.createStatement()) {
+            stmt.executeUpdate("TRUNCATE TABLE " + table);
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
+}
@@ -0,0 +1,429 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt.db;
+
+import nxt.Db;
+import nxt.Nxt;
+import nxt.util.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Storage of the entity versions as (key, height) to bytes in the embedded {@link KeyValueStore}, next to the rows
+ * of the table
+ *
+ * Changes go to the table first, so that queries on other columns see them, and are appended to the store when the
+ * transaction commits.  Lookups by key read the store unless the current transaction changed the table, the store
+ * does not have these changes yet.
+ *
+ * Each transaction writing to the store also saves the sequence number of its store commit in the entity_store
+ * table.  When the store is opened with another sequence number than the database, because the node stopped between
+ * the two commits, the store is emptied and each table is loaded again from its rows when first used.  When the node
+ * runs with the database engine only, an existing store is left in place and its sequence number in the database is
+ * invalidated, so that the store is loaded again if the node switches back to it.
+ */
+final class KeyValueEntityStorage<T> implements EntityStorage<T> {
+
+    private static final boolean enabled = "kv".equals(Nxt.getStringProperty("nxt.entityStorage"));
+    private static final long INVALID_SEQ = -1; // as inserted with the entity_store table, no store commits with it
+    private static final TransactionalDb db = DerivedDbTable.db;
+    private static final ThreadLocal<Transaction> transaction = new ThreadLocal<>();
+    private static volatile KeyValueStore store;
+    private static boolean discarded;
+    private static volatile boolean disabled;
+
+    // changes of the current transaction, appended to the store with its commit
+    private static final class Transaction {
+        private final Connection con;
+        private final long seq;
+        private final KeyValueStore.Batch batch = new KeyValueStore.Batch();
+
+        private Transaction(Connection con, long seq) {
+            this.con = con;
+            this.seq = seq;
+        }
+    }
+
+    private static final TransactionalDb.TransactionCallback commitCallback = new TransactionalDb.TransactionCallback() {
+        @Override
+        public void commit() {
+            Transaction tx = transaction.get();
+            transaction.remove();
+            KeyValueStore kvStore = store;
+            if (tx == null || kvStore == null) {
+                return;
+            }
+            try {
+                kvStore.commit(tx.batch, tx.seq);
+            } catch (IOException | RuntimeException e) {
+                disable("Entity store commit failed", e);
+                return;
+            }
+            try {
+                if (kvStore.compactIfNeeded()) {
+                    Logger.logDebugMessage("Compacted entity store to " + kvStore.getSize() + " bytes");
+                }
+            } catch (IOException e) {
+                Logger.logErrorMessage("Entity store compaction failed, keeping the current file", e);
+            }
+        }
+
+        @Override
+        public void rollback() {
+            transaction.remove();
+        }
+    };
+
+    static <T> EntityStorage<T> create(EntityDbTable<T> entityTable, EntityCodec<T> codec) {
+        EntityStorage<T> h2 = new H2EntityStorage<>(entityTable);
+        if (codec == null) {
+            return h2;
+        }
+        if (!enabled) {
+            discard();
+            return h2;
+        }
+        return new KeyValueEntityStorage<>(entityTable, h2, codec);
+    }
+
+    static synchronized void shutdown() {
+        disabled = true;
+        if (store != null) {
+            try {
+                store.close();
+                Logger.logShutdownMessage("Entity store closed");
+            } catch (IOException e) {
+                Logger.logShutdownMessage(e.toString(), e);
+            }
+            store = null;
+        }
+    }
+
+    private static Path getPath() {
+        return Paths.get(Nxt.getDbDir(Nxt.getStringProperty(Db.PREFIX + "Dir")) + ".kv");
+    }
+
+    // the tables are about to change without the store, it must not be used again as it is
+    private static synchronized void discard() {
+        if (discarded) {
+            return;
+        }
+        discarded = true;
+        Path path = getPath();
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Connection con = db.getCommittedConnection()) {
+            invalidate(con);
+        } catch (SQLException e) {
+            Logger.logErrorMessage("Cannot invalidate entity store " + path, e);
+            delete(path);
+            return;
+        }
+        Logger.logWarningMessage("Entity store " + path + " is not used, nxt.entityStorage is not kv. It is loaded again "
+                + "from the database if kv is enabled, delete the file to free its space");
+    }
+
+    private static void delete(Path path) {
+        try {
+            if (Files.deleteIfExists(path)) {
+                Logger.logMessage("Deleted entity store " + path);
+            }
+        } catch (IOException e) {
+            Logger.logErrorMessage("Cannot delete entity store " + path, e);
+        }
+    }
+
+    private static synchronized void disable(String message, Exception e) {
+        Logger.logErrorMessage(message + ", using the database only until restart", e);
+        disabled = true;
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException ignore) {}
+            store = null;
+        }
+        // a transaction may hold the entity_store row, the store cannot be invalidated through the database
+        delete(getPath());
+    }
+
+    private static synchronized KeyValueStore getStore() throws IOException, SQLException {
+        if (store != null) {
+            return store;
+        }
+        try (Connection con = db.getCommittedConnection()) {
+            store = open(getPath(), con);
+        }
+        return store;
+    }
+
+    /**
+     * Open the store, emptied when its sequence number is not the one saved in the database
+     *
+     * @param   path                Store file
+     * @param   con                 Connection outside of any transaction
+     * @return                      Store in sync with the database
+     */
+    static KeyValueStore open(Path path, Connection con) throws IOException, SQLException {
+        KeyValueStore kvStore = KeyValueStore.open(path);
+        try (PreparedStatement pstmtSelect = con.prepareStatement("SELECT seq FROM entity_store");
+             PreparedStatement pstmtUpdate = con.prepareStatement("UPDATE entity_store SET seq = ?")) {
+            long seq;
+            try (ResultSet rs = pstmtSelect.executeQuery()) {
+                seq = rs.next() ? rs.getLong("seq") : KeyValueStore.NO_COMMIT;
+            }
+            if (kvStore.getLastSeq() != seq) {
+                Logger.logMessage("Entity store " + path + " is out of sync with the database, its tables are loaded again");
+                kvStore.reset();
+                seq = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE / 2);
+                pstmtUpdate.setLong(1, seq);
+                pstmtUpdate.executeUpdate();
+                kvStore.commit(new KeyValueStore.Batch(), seq);
+            }
+        } catch (IOException | SQLException | RuntimeException e) {
+            kvStore.close();
+            throw e;
+        }
+        return kvStore;
+    }
+
+    /**
+     * Make the store start over the next time it is opened
+     *
+     * @param   con                 Connection outside of any transaction
+     */
+    static void invalidate(Connection con) throws SQLException {
+        try (PreparedStatement pstmt = con.prepareStatement("UPDATE entity_store SET seq = ?")) {
+            pstmt.setLong(1, INVALID_SEQ);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static KeyValueStore.Batch getBatch() {
+        KeyValueStore kvStore = store;
+        if (kvStore == null) {
+            return new KeyValueStore.Batch();
+        }
+        Transaction tx = transaction.get();
+        try {
+            Connection con = db.getConnection();
+            if (tx == null || tx.con != con) {
+                long seq = kvStore.getLastSeq() + 1;
+                try (PreparedStatement pstmt = con.prepareStatement("UPDATE entity_store SET seq = ?")) {
+                    pstmt.setLong(1, seq);
+                    pstmt.executeUpdate();
+                }
+                tx = new Transaction(con, seq);
+                transaction.set(tx);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+        db.registerCallback(commitCallback);
+        return tx.batch;
+    }
+
+    static byte[] toBytes(DbKey dbKey) {
+        if (dbKey instanceof DbKey.LongKey) {
+            return ByteBuffer.allocate(8).putLong(((DbKey.LongKey)dbKey).getId()).array();
+        }
+        if (dbKey instanceof DbKey.LinkKey) {
+            long[] id = ((DbKey.LinkKey)dbKey).getId();
+            return ByteBuffer.allocate(16).putLong(id[0]).putLong(id[1]).array();
+        }
+        if (dbKey instanceof DbKey.StringKey) {
+            String id = ((DbKey.StringKey)dbKey).getId();
+            return id == null ? new byte[0] : id.getBytes(StandardCharsets.UTF_8);
+        }
+        throw new IllegalArgumentException("Unsupported key type " + dbKey.getClass().getName());
+    }
+
+    private final EntityDbTable<T> entityTable;
+    private final EntityStorage<T> h2;
+    private final EntityCodec<T> codec;
+    private final String table;
+    private volatile boolean ready;
+
+    private KeyValueEntityStorage(EntityDbTable<T> entityTable, EntityStorage<T> h2, EntityCodec<T> codec) {
+        this.entityTable = entityTable;
+        this.h2 = h2;
+        this.codec = codec;
+        this.table = entityTable.getName();
+    }
+
+    // open the store and load the table on first use, before any change to the table
+    private boolean isReady() {
+        if (disabled) {
+            return false;
+        }
+        if (ready) {
+            return true;
+        }
+        synchronized (this) {
+            if (!ready && !disabled) {
+                try {
+                    KeyValueStore kvStore = getStore();
+                    if (!kvStore.contains(table)) {
+                        load(kvStore);
+                    }
+                    ready = true;
+                } catch (IOException | SQLException | RuntimeException e) {
+                    disable("Cannot load table " + table + " into the entity store", e);
+                }
+            }
+            return ready && !disabled;
+        }
+    }
+
+    private void load(KeyValueStore kvStore) throws IOException, SQLException {
+        long start = System.currentTimeMillis();
+        KeyValueStore.Batch batch = new KeyValueStore.Batch();
+        batch.truncate(table);
+        // keys whose last row is not flagged latest were deleted at the height of that row
+        Map<ByteBuffer, Integer> deleted = new HashMap<>();
+        int count = 0;
+        try (Connection con = db.getCommittedConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM " + table + " ORDER BY height, db_id");
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                DbKey dbKey = entityTable.dbKeyFactory.newKey(rs);
+                byte[] key = toBytes(dbKey);
+                int height = rs.getInt("height");
+                batch.put(table, key, height, codec.encode(entityTable.load(con, rs, dbKey)));
+                if (rs.getBoolean("latest")) {
+                    deleted.remove(ByteBuffer.wrap(key));
+                } else {
+                    deleted.put(ByteBuffer.wrap(key), height);
+                }
+                count++;
+            }
+        }
+        deleted.forEach((key, height) -> batch.put(table, key.array(), height, null));
+        kvStore.commit(batch, kvStore.getLastSeq());
+        Logger.logMessage(String.format("Loaded %d versions of table %s into the entity store in %d ms",
+                count, table, System.currentTimeMillis() - start));
+    }
+
+    // the store lags behind the table while the current transaction has changes to it
+    private boolean canRead() {
+        if (!isReady()) {
+            return false;
+        }
+        if (db.isInTransaction()) {
+            Transaction tx = transaction.get();
+            return (tx == null || !tx.batch.touches(table)) && !db.hasPendingWrites(table);
+        }
+        return true;
+    }
+
+    private T decode(DbKey dbKey, byte[] bytes) {
+        return bytes == null ? null : codec.decode(dbKey, ByteBuffer.wrap(bytes));
+    }
+
+    @Override
+    public T get(DbKey dbKey) {
+        KeyValueStore kvStore = canRead() ? store : null;
+        if (kvStore == null) {
+            return h2.get(dbKey);
+        }
+        return decode(dbKey, kvStore.get(table, toBytes(dbKey), Integer.MAX_VALUE));
+    }
+
+    @Override
+    public T get(DbKey dbKey, int height) {
+        KeyValueStore kvStore = canRead() ? store : null;
+        if (kvStore == null) {
+            return h2.get(dbKey, height);
+        }
+        return decode(dbKey, kvStore.get(table, toBytes(dbKey), height));
+    }
+
+    @Override
+    public void write(Connection con, Map<DbKey, T> entities) throws SQLException {
+        boolean record = isReady();
+        h2.write(con, entities);
+        if (record) {
+            KeyValueStore.Batch batch = getBatch();
+            int height = Nxt.getBlockchain().getHeight();
+            entities.forEach((dbKey, t) -> batch.put(table, toBytes(dbKey), height, codec.encode(t)));
+        }
+    }
+
+    @Override
+    public boolean delete(DbKey dbKey, T t) {
+        boolean record = isReady();
+        boolean deleted = h2.delete(dbKey, t);
+        if (deleted && record) {
+            getBatch().put(table, toBytes(dbKey), Nxt.getBlockchain().getHeight(), null);
+        }
+        return deleted;
+    }
+
+    @Override
+    public void rollback(int height) {
+        boolean record = isReady();
+        h2.rollback(height);
+        if (record) {
+            getBatch().rollback(table, height);
+        }
+    }
+
+    @Override
+    public void trim(int height) {
+        boolean record = isReady();
+        h2.trim(height);
+        if (record) {
+            getBatch().trim(table, height);
+        }
+    }
+
+    /**
+     * The store is trimmed in memory, all at once with the first slice of the table
+     */
+    @Override
+    public Object trim(int height, Object fromKey, int limit) {
+        boolean record = isReady();
+        Object next = h2.trim(height, fromKey, limit);
+        if (record && fromKey == null) {
+            getBatch().trim(table, height);
+        }
+        return next;
+    }
+
+    @Override
+    public void truncate() {
+        boolean record = isReady();
+        h2.truncate();
+        if (record) {
+            getBatch().truncate(table);
+        }
+    }
+
+}
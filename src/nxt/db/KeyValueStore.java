@@ -0,0 +1,811 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt.db;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Embedded store of versioned values, kept in a single memory-mapped file.
+ *
+ * Values are stored by table, key and height, a table holding at most one value per key and height. The file is
+ * an append-only log of records: puts, deletes (puts without a value), rollbacks, trims and truncates of a table,
+ * and a commit record closing each batch. Opening the store replays the log into an index held in memory, a batch
+ * without its commit record is discarded. A lookup goes through the index straight to the value in the mapped file.
+ *
+ * Once less than half of the file is still referenced, the live values are copied to a new file that replaces it.
+ */
+public final class KeyValueStore {
+
+    /**
+     * Sequence number of a store without any commit
+     */
+    public static final long NO_COMMIT = Long.MIN_VALUE;
+
+    private static final long MAGIC = 0x58454c2d4b563031L; // XEL-KV01
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 8; // payload length and payload CRC32
+    private static final int PUT_SIZE = 15; // type, table, height, key length and value length
+    private static final int MIN_CAPACITY = 1024 * 1024;
+    private static final int MAX_SIZE = Integer.MAX_VALUE; // records are addressed by int offsets into the mapping
+    private static final long MIN_COMPACT_SIZE = 16 * 1024 * 1024;
+
+    private static final byte TABLE = 1;
+    private static final byte PUT = 2;
+    private static final byte ROLLBACK = 3;
+    private static final byte TRIM = 4;
+    private static final byte TRUNCATE = 5;
+    private static final byte COMMIT = 6;
+
+    private static final int NONE = Integer.MIN_VALUE;
+
+    /**
+     * Changes committed together
+     */
+    public static final class Batch {
+
+        private final List<Op> ops = new ArrayList<>();
+        private final Set<String> tables = new HashSet<>();
+
+        /**
+         * Store the value of a key at a height, replacing the value stored at that height
+         *
+         * @param   table               Table name
+         * @param   key                 Key
+         * @param   height              Height
+         * @param   value               Value, null to delete the key as of the height
+         */
+        public void put(String table, byte[] key, int height, byte[] value) {
+            if (key.length > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Key length " + key.length + " exceeds " + Short.MAX_VALUE);
+            }
+            add(new Op(PUT, table, height, key, value));
+        }
+
+        /**
+         * Remove the values above a height
+         */
+        public void rollback(String table, int height) {
+            add(new Op(ROLLBACK, table, height, null, null));
+        }
+
+        /**
+         * Remove the values below a height that are no longer the value of their key as of that height
+         */
+        public void trim(String table, int height) {
+            add(new Op(TRIM, table, height, null, null));
+        }
+
+        /**
+         * Remove all values of a table.  A table is known to the store once a batch referencing it is committed.
+         */
+        public void truncate(String table) {
+            add(new Op(TRUNCATE, table, 0, null, null));
+        }
+
+        public boolean touches(String table) {
+            return tables.contains(table);
+        }
+
+        public boolean isEmpty() {
+            return ops.isEmpty();
+        }
+
+        private void add(Op op) {
+            ops.add(op);
+            tables.add(op.table);
+        }
+    }
+
+    private static final class Op {
+        private final byte type;
+        private final String table;
+        private final int height;
+        private final byte[] key;
+        private final byte[] value;
+        private int tableIndex;
+        private int valueOffset;
+        private int valueLength;
+
+        private Op(byte type, String table, int height, byte[] key, byte[] value) {
+            this.type = type;
+            this.table = table;
+            this.height = height;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static final class Table {
+        private final int index;
+        private final String name;
+        private final Map<ByteBuffer, Versions> keys = new HashMap<>();
+        // keys by the heights they have values at, to find the keys affected by a rollback or a trim
+        private final NavigableMap<Integer, Set<ByteBuffer>> heights = new TreeMap<>();
+
+        private Table(int index, String name) {
+            this.index = index;
+            this.name = name;
+        }
+    }
+
+    // values of a key by ascending height, as offset and length in the file, a length of -1 is a delete
+    private static final class Versions {
+        private int[] heights = new int[1];
+        private int[] offsets = new int[1];
+        private int[] lengths = new int[1];
+        private int count;
+
+        // last version at or below the height, -1 if none
+        private int find(int height) {
+            int i = count - 1;
+            while (i >= 0 && heights[i] > height) {
+                i--;
+            }
+            return i;
+        }
+
+        // returns the length of the replaced value, NONE if there was no value at that height
+        private int put(int height, int offset, int length) {
+            int i = find(height);
+            if (i >= 0 && heights[i] == height) {
+                int replaced = lengths[i];
+                offsets[i] = offset;
+                lengths[i] = length;
+                return replaced;
+            }
+            if (count == heights.length) {
+                int capacity = count * 2;
+                int[] newHeights = new int[capacity];
+                int[] newOffsets = new int[capacity];
+                int[] newLengths = new int[capacity];
+                System.arraycopy(heights, 0, newHeights, 0, count);
+                System.arraycopy(offsets, 0, newOffsets, 0, count);
+                System.arraycopy(lengths, 0, newLengths, 0, count);
+                heights = newHeights;
+                offsets = newOffsets;
+                lengths = newLengths;
+            }
+            i++;
+            System.arraycopy(heights, i, heights, i + 1, count - i);
+            System.arraycopy(offsets, i, offsets, i + 1, count - i);
+            System.arraycopy(lengths, i, lengths, i + 1, count - i);
+            heights[i] = height;
+            offsets[i] = offset;
+            lengths[i] = length;
+            count++;
+            return NONE;
+        }
+
+        private void remove(int from, int to) {
+            System.arraycopy(heights, to, heights, from, count - to);
+            System.arraycopy(offsets, to, offsets, from, count - to);
+            System.arraycopy(lengths, to, lengths, from, count - to);
+            count -= to - from;
+        }
+    }
+
+    private final Path path;
+    private final int maxSize;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Table> tables = new HashMap<>();
+    private final List<Table> tablesByIndex = new ArrayList<>();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int end;
+    private long liveBytes;
+    private long lastSeq;
+    private boolean compactionFailed;
+    private boolean closed;
+
+    /**
+     * Open the store, creating the file if it does not exist
+     *
+     * @param   path                Store file
+     * @return                      Store, with the batches committed to the file
+     * @throws  IOException         The file cannot be mapped or is not a store
+     */
+    public static KeyValueStore open(Path path) throws IOException {
+        return open(path, MAX_SIZE);
+    }
+
+    /**
+     * Open the store with a lower size limit, commits that would extend the file beyond it fail
+     *
+     * @param   path                Store file
+     * @param   maxSize             Maximum size of the file in bytes
+     * @return                      Store, with the batches committed to the file
+     * @throws  IOException         The file cannot be mapped or is not a store
+     */
+    static KeyValueStore open(Path path, int maxSize) throws IOException {
+        KeyValueStore store = new KeyValueStore(path, maxSize);
+        store.load();
+        return store;
+    }
+
+    private KeyValueStore(Path path, int maxSize) {
+        this.path = path;
+        this.maxSize = maxSize;
+    }
+
+    private void load() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            if (size > maxSize) {
+                throw new IOException("Entity store " + path + " exceeds " + maxSize + " bytes");
+            }
+            capacity = (int)Math.min(roundUp(Math.max(size, HEADER_SIZE)), maxSize);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            tables.clear();
+            tablesByIndex.clear();
+            liveBytes = 0;
+            lastSeq = NO_COMMIT;
+            end = HEADER_SIZE;
+            if (buffer.getLong(0) == 0) {
+                buffer.putLong(0, MAGIC);
+                buffer.putInt(8, VERSION);
+            } else if (buffer.getLong(0) != MAGIC || buffer.getInt(8) != VERSION) {
+                throw new IOException(path + " is not an entity store of version " + VERSION);
+            }
+            replay();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void replay() {
+        List<Op> pending = new ArrayList<>();
+        int pendingTables = 0;
+        CRC32 crc = new CRC32();
+        int position = HEADER_SIZE;
+        while (position <= capacity - RECORD_HEADER_SIZE) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || length > capacity - position - RECORD_HEADER_SIZE) {
+                break;
+            }
+            int offset = position + RECORD_HEADER_SIZE;
+            byte[] payload = read(offset, length);
+            crc.reset();
+            crc.update(payload);
+            if ((int)crc.getValue() != buffer.getInt(position + 4)) {
+                break;
+            }
+            position = offset + length;
+            ByteBuffer record = ByteBuffer.wrap(payload);
+            byte type = record.get();
+            if (type == COMMIT) {
+                for (Op op : pending) {
+                    if (op.type == TABLE) {
+                        addTable(op.table, op.tableIndex);
+                    } else {
+                        apply(tablesByIndex.get(op.tableIndex), op);
+                    }
+                }
+                pending.clear();
+                pendingTables = 0;
+                lastSeq = record.getLong();
+                end = position;
+                continue;
+            }
+            Op op = parse(type, record, offset);
+            if (op == null) {
+                break;
+            }
+            int known = tablesByIndex.size() + pendingTables;
+            if (op.type == TABLE ? op.tableIndex != known : op.tableIndex < 0 || op.tableIndex >= known) {
+                break;
+            }
+            if (op.type == TABLE) {
+                pendingTables++;
+            }
+            pending.add(op);
+        }
+        // drop what follows the last commit, so that appended records are never followed by stale ones
+        for (int i = end; i < capacity - 7; i += 8) {
+            if (buffer.getLong(i) != 0) {
+                clear(end, capacity);
+                break;
+            }
+        }
+    }
+
+    private static Op parse(byte type, ByteBuffer record, int offset) {
+        Op op;
+        switch (type) {
+            case TABLE: {
+                int index = record.getInt();
+                byte[] name = new byte[record.getShort()];
+                record.get(name);
+                op = new Op(TABLE, new String(name, StandardCharsets.UTF_8), 0, null, null);
+                op.tableIndex = index;
+                return op;
+            }
+            case PUT: {
+                int index = record.getInt();
+                int height = record.getInt();
+                byte[] key = new byte[record.getShort()];
+                record.get(key);
+                op = new Op(PUT, null, height, key, null);
+                op.tableIndex = index;
+                op.valueLength = record.getInt();
+                op.valueOffset = offset + PUT_SIZE + key.length;
+                return op.valueLength >= -1 && op.valueLength <= record.remaining() ? op : null;
+            }
+            case ROLLBACK:
+            case TRIM: {
+                int index = record.getInt();
+                op = new Op(type, null, record.getInt(), null, null);
+                op.tableIndex = index;
+                return op;
+            }
+            case TRUNCATE:
+                op = new Op(TRUNCATE, null, 0, null, null);
+                op.tableIndex = record.getInt();
+                return op;
+            default:
+                return null;
+        }
+    }
+
+    private void addTable(String name, int index) {
+        Table table = new Table(index, name);
+        tables.put(name, table);
+        tablesByIndex.add(table);
+    }
+
+    private void apply(Table table, Op op) {
+        switch (op.type) {
+            case PUT: {
+                ByteBuffer key = ByteBuffer.wrap(op.key);
+                Versions versions = table.keys.computeIfAbsent(key, k -> new Versions());
+                int replaced = versions.put(op.height, op.valueOffset, op.valueLength);
+                if (replaced != NONE) {
+                    liveBytes -= recordSize(op.key.length, replaced);
+                }
+                liveBytes += recordSize(op.key.length, op.valueLength);
+                table.heights.computeIfAbsent(op.height, height -> new HashSet<>()).add(key);
+                break;
+            }
+            case ROLLBACK: {
+                NavigableMap<Integer, Set<ByteBuffer>> above = table.heights.tailMap(op.height, false);
+                for (Set<ByteBuffer> keys : above.values()) {
+                    for (ByteBuffer key : keys) {
+                        Versions versions = table.keys.get(key);
+                        if (versions != null) {
+                            release(key, versions, versions.find(op.height) + 1, versions.count);
+                            if (versions.count == 0) {
+                                table.keys.remove(key);
+                            }
+                        }
+                    }
+                }
+                above.clear();
+                break;
+            }
+            case TRIM: {
+                NavigableMap<Integer, Set<ByteBuffer>> below = table.heights.headMap(op.height, false);
+                for (Set<ByteBuffer> keys : below.values()) {
+                    for (ByteBuffer key : keys) {
+                        Versions versions = table.keys.get(key);
+                        if (versions == null) {
+                            continue;
+                        }
+                        int i = versions.find(op.height - 1);
+                        if (i == versions.count - 1 && versions.lengths[i] < 0) {
+                            release(key, versions, 0, versions.count);
+                            table.keys.remove(key);
+                        } else if (i > 0) {
+                            release(key, versions, 0, i);
+                        }
+                    }
+                }
+                below.clear();
+                break;
+            }
+            case TRUNCATE:
+                table.keys.forEach((key, versions) -> release(key, versions, 0, versions.count));
+                table.keys.clear();
+                table.heights.clear();
+                break;
+            default:
+                throw new IllegalStateException("Unexpected record type " + op.type);
+        }
+    }
+
+    private void release(ByteBuffer key, Versions versions, int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        for (int i = from; i < to; i++) {
+            liveBytes -= recordSize(key.capacity(), versions.lengths[i]);
+        }
+        versions.remove(from, to);
+    }
+
+    private static long recordSize(int keyLength, int valueLength) {
+        return RECORD_HEADER_SIZE + PUT_SIZE + keyLength + Math.max(valueLength, 0);
+    }
+
+    /**
+     * Get the value of a key as of a height
+     *
+     * @param   table               Table name
+     * @param   key                 Key
+     * @param   height              Height, Integer.MAX_VALUE for the latest value
+     * @return                      Value stored at the highest height not above the given height, null if there is
+     *                              none or the key was deleted
+     */
+    public byte[] get(String table, byte[] key, int height) {
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            Table t = tables.get(table);
+            if (t == null) {
+                return null;
+            }
+            Versions versions = t.keys.get(ByteBuffer.wrap(key));
+            if (versions == null) {
+                return null;
+            }
+            int i = versions.find(height);
+            if (i < 0 || versions.lengths[i] < 0) {
+                return null;
+            }
+            return read(versions.offsets[i], versions.lengths[i]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Check whether a committed batch referenced the table
+     */
+    public boolean contains(String table) {
+        lock.readLock().lock();
+        try {
+            return tables.containsKey(table);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Append a batch and its commit record to the log
+     *
+     * @param   batch               Changes
+     * @param   seq                 Sequence number of the commit, not lower than that of the previous commit
+     * @throws  IOException         The file cannot be extended, the store is left as it was
+     */
+    public void commit(Batch batch, long seq) throws IOException {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            if (seq < lastSeq) {
+                throw new IllegalArgumentException("Commit " + seq + " follows commit " + lastSeq);
+            }
+            int start = end;
+            Map<String, Integer> declared = new LinkedHashMap<>();
+            try {
+                for (Op op : batch.ops) {
+                    Table table = tables.get(op.table);
+                    if (table != null) {
+                        op.tableIndex = table.index;
+                    } else {
+                        Integer index = declared.get(op.table);
+                        if (index == null) {
+                            index = tablesByIndex.size() + declared.size();
+                            declared.put(op.table, index);
+                            append(tableRecord(index, op.table));
+                        }
+                        op.tableIndex = index;
+                    }
+                    int offset = append(record(op));
+                    if (op.type == PUT) {
+                        op.valueOffset = offset + PUT_SIZE + op.key.length;
+                        op.valueLength = op.value == null ? -1 : op.value.length;
+                    }
+                }
+                append(commitRecord(seq));
+            } catch (IOException | RuntimeException e) {
+                clear(start, end);
+                end = start;
+                throw e;
+            }
+            declared.forEach(this::addTable);
+            for (Op op : batch.ops) {
+                apply(tablesByIndex.get(op.tableIndex), op);
+            }
+            lastSeq = seq;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sequence number of the last commit
+     *
+     * @return                      Sequence number, NO_COMMIT if the store is empty
+     */
+    public long getLastSeq() {
+        lock.readLock().lock();
+        try {
+            return lastSeq;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Remove all tables and commits
+     */
+    public void reset() {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            clear(HEADER_SIZE, end);
+            end = HEADER_SIZE;
+            tables.clear();
+            tablesByIndex.clear();
+            liveBytes = 0;
+            lastSeq = NO_COMMIT;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Compact the log once it is at least 16 MB and more than half of it is no longer referenced
+     *
+     * @return                      TRUE if the log was compacted
+     * @throws  IOException         The compacted log could not be written or could not replace the current one, the
+     *                              store keeps using the current log and does not try again
+     */
+    public boolean compactIfNeeded() throws IOException {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            if (compactionFailed || end < MIN_COMPACT_SIZE || end - HEADER_SIZE - liveBytes <= liveBytes) {
+                return false;
+            }
+            compact();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Write the live values to a new log and replace the current log with it
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try {
+                try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(out), 65536));
+                    stream.writeLong(MAGIC);
+                    stream.writeInt(VERSION);
+                    stream.writeInt(0);
+                    CRC32 crc = new CRC32();
+                    long size = HEADER_SIZE;
+                    for (Table table : tablesByIndex) {
+                        size += write(stream, crc, tableRecord(table.index, table.name));
+                        for (Map.Entry<ByteBuffer, Versions> entry : table.keys.entrySet()) {
+                            byte[] key = entry.getKey().array();
+                            Versions versions = entry.getValue();
+                            for (int i = 0; i < versions.count; i++) {
+                                byte[] value = versions.lengths[i] < 0 ? null : read(versions.offsets[i], versions.lengths[i]);
+                                size += write(stream, crc, putRecord(table.index, versions.heights[i], key, value));
+                                if (size > maxSize) {
+                                    throw new IOException("Compacted entity store " + path + " exceeds " + maxSize + " bytes");
+                                }
+                            }
+                        }
+                    }
+                    size += write(stream, crc, commitRecord(lastSeq));
+                    if (size > maxSize) {
+                        throw new IOException("Compacted entity store " + path + " exceeds " + maxSize + " bytes");
+                    }
+                    stream.flush();
+                    out.force(true);
+                }
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                compactionFailed = true;
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+            // the previous file stays mapped until the buffer is collected
+            channel.close();
+            try {
+                load();
+            } catch (IOException | RuntimeException e) {
+                closed = true;
+                throw e;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Size of the log in bytes
+     */
+    public long getSize() {
+        lock.readLock().lock();
+        try {
+            return end;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Size of the records of the values still referenced
+     */
+    public long getLiveBytes() {
+        lock.readLock().lock();
+        try {
+            return liveBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            buffer.force();
+            buffer = null;
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Entity store " + path + " is closed");
+        }
+    }
+
+    private byte[] read(int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return bytes;
+    }
+
+    private int append(byte[] payload) throws IOException {
+        // computed in long, an int offset past the end of a full store would wrap around
+        ensureCapacity((long)end + RECORD_HEADER_SIZE + payload.length);
+        int offset = end + RECORD_HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        buffer.putInt(end, payload.length);
+        buffer.putInt(end + 4, (int)crc.getValue());
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.put(payload);
+        end = offset + payload.length;
+        return offset;
+    }
+
+    private static int write(DataOutputStream stream, CRC32 crc, byte[] payload) throws IOException {
+        crc.reset();
+        crc.update(payload);
+        stream.writeInt(payload.length);
+        stream.writeInt((int)crc.getValue());
+        stream.write(payload);
+        return RECORD_HEADER_SIZE + payload.length;
+    }
+
+    private void ensureCapacity(long size) throws IOException {
+        if (size <= capacity) {
+            return;
+        }
+        if (size > maxSize) {
+            throw new IOException("Entity store " + path + " is full, " + size + " bytes exceed the limit of " + maxSize);
+        }
+        long newCapacity = Math.min(Math.max(2L * capacity, roundUp(size)), maxSize);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, newCapacity);
+        capacity = (int)newCapacity;
+    }
+
+    private static long roundUp(long size) {
+        return (size + MIN_CAPACITY - 1) / MIN_CAPACITY * MIN_CAPACITY;
+    }
+
+    private void clear(int from, int to) {
+        byte[] zeros = new byte[65536];
+        ByteBuffer view = buffer.duplicate();
+        view.position(from);
+        for (int remaining = to - from; remaining > 0; remaining -= zeros.length) {
+            view.put(zeros, 0, Math.min(remaining, zeros.length));
+        }
+    }
+
+    private static byte[] record(Op op) {
+        switch (op.type) {
+            case PUT:
+                return putRecord(op.tableIndex, op.height, op.key, op.value);
+            case ROLLBACK:
+            case TRIM:
+                return ByteBuffer.allocate(9).put(op.type).putInt(op.tableIndex).putInt(op.height).array();
+            case TRUNCATE:
+                return ByteBuffer.allocate(5).put(op.type).putInt(op.tableIndex).array();
+            default:
+                throw new IllegalStateException("Unexpected record type " + op.type);
+        }
+    }
+
+    private static byte[] putRecord(int tableIndex, int height, byte[] key, byte[] value) {
+        ByteBuffer record = ByteBuffer.allocate(PUT_SIZE + key.length + (value == null ? 0 : value.length));
+        record.put(PUT).putInt(tableIndex).putInt(height).putShort((short)key.length).put(key);
+        if (value == null) {
+            record.putInt(-1);
+        } else {
+            record.putInt(value.length).put(value);
+        }
+        return record.array();
+    }
+
+    private static byte[] tableRecord(int tableIndex, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(7 + bytes.length).put(TABLE).putInt(tableIndex).putShort((short)bytes.length).put(bytes).array();
+    }
+
+    private static byte[] commitRecord(long seq) {
+        return ByteBuffer.allocate(9).put(COMMIT).putLong(seq).array();
+    }
+
+}
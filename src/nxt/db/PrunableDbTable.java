@@ -46,7 +46,7 @@ public abstract class PrunableDbTable<T> extends PersistentDbTable<T> {
 
     protected void prune() {
         if (Constants.ENABLE_PRUNING) {
-            try (Connection con = db.getConnection();
+            try (Connection con = getConnection();
                  PreparedStatement pstmt = con.prepareStatement("DELETE FROM " + table + " WHERE transaction_timestamp < ?")) {
                 pstmt.setInt(1, Nxt.getEpochTime() - Constants.MAX_PRUNABLE_LIFETIME);
                 int deleted = pstmt.executeUpdate();
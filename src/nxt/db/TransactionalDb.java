@@ -24,8 +24,11 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -45,6 +48,7 @@ public class TransactionalDb extends BasicDb {
     private final ThreadLocal<DbConnection> localConnection = new ThreadLocal<>();
     private final ThreadLocal<Map<String,Map<DbKey,Object>>> transactionCaches = new ThreadLocal<>();
     private final ThreadLocal<Set<TransactionCallback>> transactionCallback = new ThreadLocal<>();
+    private final ThreadLocal<Map<String, PendingWrites<?>>> pendingWrites = new ThreadLocal<>();
     private volatile long txTimes = 0;
     private volatile long txCount = 0;
     private volatile long statsTime = 0;
@@ -62,6 +66,13 @@ public class TransactionalDb extends BasicDb {
         return new DbConnection(super.getConnection());
     }
 
+    /**
+     * Get a connection outside of the transaction of the current thread, it only sees committed data
+     */
+    Connection getCommittedConnection() throws SQLException {
+        return super.getConnection();
+    }
+
     public boolean isInTransaction() {
         return localConnection.get() != null;
     }
@@ -77,6 +88,7 @@ public class TransactionalDb extends BasicDb {
             ((DbConnection)con).txStart = System.currentTimeMillis();
             localConnection.set((DbConnection)con);
             transactionCaches.set(new HashMap<>());
+            pendingWrites.set(new LinkedHashMap<>());
             return con;
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
@@ -89,6 +101,7 @@ public class TransactionalDb extends BasicDb {
             throw new IllegalStateException("Not in transaction");
         }
         try {
+            flushPendingWrites();
             con.doCommit();
             Set<TransactionCallback> callbacks = transactionCallback.get();
             if (callbacks != null) {
@@ -111,6 +124,7 @@ public class TransactionalDb extends BasicDb {
             throw new RuntimeException(e.toString(), e);
         } finally {
             transactionCaches.get().clear();
+            pendingWrites.get().clear();
             Set<TransactionCallback> callbacks = transactionCallback.get();
             if (callbacks != null) {
                 callbacks.forEach(TransactionCallback::rollback);
@@ -126,6 +140,7 @@ public class TransactionalDb extends BasicDb {
         }
         localConnection.set(null);
         transactionCaches.set(null);
+        pendingWrites.set(null);
         long now = System.currentTimeMillis();
         long elapsed = now - ((DbConnection)con).txStart;
         if (elapsed >= txThreshold) {
@@ -151,6 +166,12 @@ public class TransactionalDb extends BasicDb {
         DbUtils.close(con);
     }
 
+    @Override
+    public void shutdown() {
+        KeyValueEntityStorage.shutdown();
+        super.shutdown();
+    }
+
     public void registerCallback(TransactionCallback callback) {
         Set<TransactionCallback> callbacks = transactionCallback.get();
         if (callbacks == null) {
@@ -173,6 +194,7 @@ public class TransactionalDb extends BasicDb {
     }
 
     void clearCache(String tableName) {
+        flushPendingWrites(tableName);
         Map<DbKey,Object> cacheMap = transactionCaches.get().get(tableName);
         if (cacheMap != null) {
             cacheMap.clear();
@@ -180,9 +202,85 @@ public class TransactionalDb extends BasicDb {
     }
 
     public void clearCache() {
+        // the deferred entities are only visible through the cache
+        flushPendingWrites();
         transactionCaches.get().values().forEach(Map::clear);
     }
 
+    /**
+     * Defer the write of a versioned entity until the transaction commits, or the table reads from the database
+     * again.  Only the last instance inserted for a key is written.
+     *
+     * @param   table               Table of the entity
+     * @param   dbKey               Key of the entity
+     * @param   t                   Entity
+     */
+    <T> void addPendingWrite(EntityDbTable<T> table, DbKey dbKey, T t) {
+        Map<String, PendingWrites<?>> pending = pendingWrites.get();
+        @SuppressWarnings("unchecked")
+        PendingWrites<T> tableWrites = (PendingWrites<T>)pending.get(table.getName());
+        if (tableWrites == null) {
+            tableWrites = new PendingWrites<>(table);
+            pending.put(table.getName(), tableWrites);
+        }
+        tableWrites.entities.put(dbKey, t);
+    }
+
+    boolean hasPendingWrites(String tableName) {
+        Map<String, PendingWrites<?>> pending = pendingWrites.get();
+        return pending != null && pending.containsKey(tableName);
+    }
+
+    /**
+     * Write all deferred entities, done before the transaction commits and before the height of the blockchain
+     * changes within a transaction
+     */
+    public void flushPendingWrites() {
+        Map<String, PendingWrites<?>> pending = pendingWrites.get();
+        if (pending == null || pending.isEmpty()) {
+            return;
+        }
+        List<PendingWrites<?>> tableWrites = new ArrayList<>(pending.values());
+        pending.clear();
+        for (PendingWrites<?> writes : tableWrites) {
+            writes.flush();
+        }
+    }
+
+    /**
+     * Write the deferred entities of one table, done by the table before it uses the database
+     *
+     * @param   tableName           Table name
+     */
+    void flushPendingWrites(String tableName) {
+        Map<String, PendingWrites<?>> pending = pendingWrites.get();
+        if (pending == null) {
+            return;
+        }
+        PendingWrites<?> writes = pending.remove(tableName);
+        if (writes != null) {
+            writes.flush();
+        }
+    }
+
+    private final class PendingWrites<T> {
+
+        private final EntityDbTable<T> table;
+        private final Map<DbKey, T> entities = new LinkedHashMap<>();
+
+        private PendingWrites(EntityDbTable<T> table) {
+            this.table = table;
+        }
+
+        private void flush() {
+            try {
+                table.flushWrites(localConnection.get(), entities);
+            } catch (SQLException e) {
+                throw new RuntimeException(e.toString(), e);
+            }
+        }
+    }
+
     private static void logThreshold(String msg) {
         StringBuilder sb = new StringBuilder(512);
         sb.append(msg).append('\n');
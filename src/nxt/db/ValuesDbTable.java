@@ -46,6 +46,11 @@ public abstract class ValuesDbTable<T,V> extends DerivedDbTable {
         db.clearCache(table);
     }
 
+    @Override
+    String getSelfJoinClause() {
+        return multiversion ? dbKeyFactory.getSelfJoinClause() : null;
+    }
+
     public final List<V> get(DbKey dbKey) {
         List<V> values;
         if (db.isInTransaction()) {
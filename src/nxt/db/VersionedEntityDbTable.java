@@ -17,14 +17,12 @@
 package nxt.db;
 
 
-import nxt.Nxt;
+import nxt.util.Logger;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.List;
 
 public abstract class VersionedEntityDbTable<T> extends EntityDbTable<T> {
 
@@ -36,6 +34,17 @@ public abstract class VersionedEntityDbTable<T> extends EntityDbTable<T> {
         super(table, dbKeyFactory, true, fullTextSearchColumns);
     }
 
+    /**
+     * Create a table whose lookups by key may be served by the key-value storage engine
+     *
+     * @param   table               Table name
+     * @param   dbKeyFactory        Key factory
+     * @param   codec               Binary form of the entities
+     */
+    protected VersionedEntityDbTable(String table, DbKey.Factory<T> dbKeyFactory, EntityCodec<T> codec) {
+        super(table, dbKeyFactory, true, null, codec);
+    }
+
     public final boolean delete(T t) {
         return delete(t, false);
     }
@@ -48,30 +57,8 @@ public abstract class VersionedEntityDbTable<T> extends EntityDbTable<T> {
             throw new IllegalStateException("Not in transaction");
         }
         DbKey dbKey = dbKeyFactory.newKey(t);
-        try (Connection con = db.getConnection();
-             PreparedStatement pstmtCount = con.prepareStatement("SELECT 1 FROM " + table
-                     + dbKeyFactory.getPKClause() + " AND height < ? LIMIT 1")) {
-            int i = dbKey.setPK(pstmtCount);
-            pstmtCount.setInt(i, Nxt.getBlockchain().getHeight());
-            try (ResultSet rs = pstmtCount.executeQuery()) {
-                if (rs.next()) {
-                    try (PreparedStatement pstmt = con.prepareStatement("UPDATE " + table
-                            + " SET latest = FALSE " + dbKeyFactory.getPKClause() + " AND latest = TRUE LIMIT 1")) {
-                        dbKey.setPK(pstmt);
-                        pstmt.executeUpdate();
-                        save(con, t);
-                        pstmt.executeUpdate(); // delete after the save
-                    }
-                    return true;
-                } else {
-                    try (PreparedStatement pstmtDelete = con.prepareStatement("DELETE FROM " + table + dbKeyFactory.getPKClause())) {
-                        dbKey.setPK(pstmtDelete);
-                        return pstmtDelete.executeUpdate() > 0;
-                    }
-                }
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e.toString(), e);
+        try {
+            return delete(dbKey, t);
         } finally {
             if (!keepInCache) {
                 db.getCache(table).remove(dbKey);
@@ -79,44 +66,104 @@ public abstract class VersionedEntityDbTable<T> extends EntityDbTable<T> {
         }
     }
 
+    /**
+     * Roll back a versioned table with one statement to restore the latest flags and one to delete the newer rows
+     *
+     * For every key changed above the height, the version with the highest height at or below it becomes the latest
+     * again.  The changed keys come from the height index and each version from the key index, so the cost depends
+     * on the number of changed keys and not on the size of the table.
+     */
     static void rollback(final TransactionalDb db, final String table, final int height, final DbKey.Factory dbKeyFactory) {
         if (!db.isInTransaction()) {
             throw new IllegalStateException("Not in transaction");
         }
+        long start = System.currentTimeMillis();
         try (Connection con = db.getConnection();
-             PreparedStatement pstmtSelectToDelete = con.prepareStatement("SELECT DISTINCT " + dbKeyFactory.getPKColumns()
-                     + " FROM " + table + " WHERE height > ?");
+             PreparedStatement pstmtSetLatest = con.prepareStatement("UPDATE " + table + " SET latest = TRUE WHERE db_id IN "
+                     + "(SELECT (SELECT b.db_id FROM " + table + " b WHERE " + dbKeyFactory.getSelfJoinClause()
+                     + " AND b.height <= ? ORDER BY b.height DESC LIMIT 1) FROM (SELECT DISTINCT " + dbKeyFactory.getPKColumns()
+                     + " FROM " + table + " WHERE height > ?) a)");
              PreparedStatement pstmtDelete = con.prepareStatement("DELETE FROM " + table
-                     + " WHERE height > ?");
-             PreparedStatement pstmtSetLatest = con.prepareStatement("UPDATE " + table
-                     + " SET latest = TRUE " + dbKeyFactory.getPKClause() + " AND height ="
-                     + " (SELECT MAX(height) FROM " + table + dbKeyFactory.getPKClause() + ")")) {
-            pstmtSelectToDelete.setInt(1, height);
-            List<DbKey> dbKeys = new ArrayList<>();
-            try (ResultSet rs = pstmtSelectToDelete.executeQuery()) {
-                while (rs.next()) {
-                    dbKeys.add(dbKeyFactory.newKey(rs));
-                }
-            }
-            /*
-            if (dbKeys.size() > 0 && Logger.isDebugEnabled()) {
-                Logger.logDebugMessage(String.format("rollback table %s found %d records to update to latest", table, dbKeys.size()));
-            }
-            */
+                     + " WHERE height > ?")) {
+            pstmtSetLatest.setInt(1, height);
+            pstmtSetLatest.setInt(2, height);
+            int restoredRecordsCount = pstmtSetLatest.executeUpdate();
             pstmtDelete.setInt(1, height);
             int deletedRecordsCount = pstmtDelete.executeUpdate();
-            /*
-            if (deletedRecordsCount > 0 && Logger.isDebugEnabled()) {
-                Logger.logDebugMessage(String.format("rollback table %s deleting %d records", table, deletedRecordsCount));
+            if (deletedRecordsCount > 0) {
+                Logger.logDebugMessage(String.format("Rolled back table %s to height %d, deleted %d records and restored %d in %d ms",
+                        table, height, deletedRecordsCount, restoredRecordsCount, System.currentTimeMillis() - start));
             }
-            */
-            for (DbKey dbKey : dbKeys) {
-                int i = 1;
-                i = dbKey.setPK(pstmtSetLatest, i);
-                i = dbKey.setPK(pstmtSetLatest, i);
-                pstmtSetLatest.executeUpdate();
-                //Db.getCache(table).remove(dbKey);
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
+    /**
+     * Trim the versions of the keys whose first key column is above fromKey, up to the column value of the
+     * limit'th row in that order
+     *
+     * @return                      First key column value of the last row trimmed, null if there are no more rows
+     */
+    static Object trim(final TransactionalDb db, final String table, final int height, final DbKey.Factory dbKeyFactory,
+                       final Object fromKey, final int limit) {
+        if (!db.isInTransaction()) {
+            throw new IllegalStateException("Not in transaction");
+        }
+        String keyColumn = dbKeyFactory.getPKColumns().split(",")[0].trim();
+        String fromClause = fromKey == null ? "" : keyColumn + " > ? AND ";
+        String rangeClause = " WHERE " + fromClause + keyColumn + " <= ? ";
+        try (Connection con = db.getConnection();
+             PreparedStatement pstmtRange = con.prepareStatement("SELECT MAX(" + keyColumn + ") FROM (SELECT " + keyColumn
+                     + " FROM " + table + (fromKey == null ? "" : " WHERE " + keyColumn + " > ?") + " ORDER BY " + keyColumn
+                     + " LIMIT ?)");
+             PreparedStatement pstmtSelect = con.prepareStatement("SELECT " + dbKeyFactory.getPKColumns() + ", MAX(height) AS max_height"
+                     + " FROM " + table + rangeClause + "AND height < ? GROUP BY " + dbKeyFactory.getPKColumns()
+                     + " HAVING COUNT(DISTINCT height) > 1");
+             PreparedStatement pstmtDelete = con.prepareStatement("DELETE FROM " + table + dbKeyFactory.getPKClause()
+                     + " AND height < ? AND height >= 0");
+             PreparedStatement pstmtDeleteDeleted = con.prepareStatement("DELETE FROM " + table + rangeClause
+                     + "AND height < ? AND height >= 0 AND latest = FALSE "
+                     + " AND (" + dbKeyFactory.getPKColumns() + ") NOT IN (SELECT (" + dbKeyFactory.getPKColumns() + ") FROM "
+                     + table + rangeClause + "AND height >= ?)")) {
+            int i = 0;
+            if (fromKey != null) {
+                pstmtRange.setObject(++i, fromKey);
+            }
+            pstmtRange.setInt(++i, limit);
+            Object toKey;
+            try (ResultSet rs = pstmtRange.executeQuery()) {
+                toKey = rs.next() ? rs.getObject(1) : null;
+            }
+            if (toKey == null) {
+                return null;
+            }
+            i = 0;
+            if (fromKey != null) {
+                pstmtSelect.setObject(++i, fromKey);
+            }
+            pstmtSelect.setObject(++i, toKey);
+            pstmtSelect.setInt(++i, height);
+            try (ResultSet rs = pstmtSelect.executeQuery()) {
+                while (rs.next()) {
+                    DbKey dbKey = dbKeyFactory.newKey(rs);
+                    int maxHeight = rs.getInt("max_height");
+                    int j = 1;
+                    j = dbKey.setPK(pstmtDelete, j);
+                    pstmtDelete.setInt(j, maxHeight);
+                    pstmtDelete.executeUpdate();
+                }
+            }
+            i = 0;
+            for (int k = 0; k < 2; k++) {
+                if (fromKey != null) {
+                    pstmtDeleteDeleted.setObject(++i, fromKey);
+                }
+                pstmtDeleteDeleted.setObject(++i, toKey);
+                pstmtDeleteDeleted.setInt(++i, height);
             }
+            pstmtDeleteDeleted.executeUpdate();
+            return toKey;
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
         }
@@ -39,7 +39,7 @@ public abstract class VersionedPrunableDbTable<T> extends PrunableDbTable<T> {
         if (!db.isInTransaction()) {
             throw new IllegalStateException("Not in transaction");
         }
-        try (Connection con = db.getConnection();
+        try (Connection con = getConnection();
              PreparedStatement pstmtSetLatest = con.prepareStatement("UPDATE " + table
                      + " AS a SET a.latest = TRUE WHERE a.latest = FALSE AND a.height = "
                      + " (SELECT MAX(height) FROM " + table + " AS b WHERE " + dbKeyFactory.getSelfJoinClause() + ")")) {
@@ -159,7 +159,8 @@ public enum APIEnum {
     SET_API_PROXY_PEER("setAPIProxyPeer", SetAPIProxyPeer.instance),
     SEND_TRANSACTION("sendTransaction", SendTransaction.instance),
     BLACKLIST_API_PROXY_PEER("blacklistAPIProxyPeer", BlacklistAPIProxyPeer.instance),
-    GET_NEXT_BLOCK_GENERATORS("getNextBlockGenerators", GetNextBlockGeneratorsTemp.instance);
+    GET_NEXT_BLOCK_GENERATORS("getNextBlockGenerators", GetNextBlockGeneratorsTemp.instance),
+    EXPORT_SNAPSHOT("exportSnapshot", ExportSnapshot.instance);
 
     private static final Map<String, APIEnum> apiByName = new HashMap<>();
 
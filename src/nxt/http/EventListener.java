@@ -22,8 +22,10 @@ import nxt.Block;
 import nxt.BlockchainProcessor;
 import nxt.Db;
 import nxt.Nxt;
+import nxt.PowAndBounty;
 import nxt.Transaction;
 import nxt.TransactionProcessor;
+import nxt.Work;
 import nxt.db.TransactionalDb;
 import nxt.peer.Peer;
 import nxt.peer.Peers;
@@ -52,7 +54,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * EventListener listens for peer, block, transaction and account ledger events as
+ * EventListener listens for peer, block, transaction, account ledger and work events as
  * specified by the EventRegister API.  Events are held until
  * an EventWait API request is received.  All pending events
  * are then returned to the application.
@@ -136,6 +138,23 @@ class EventListener implements Runnable, AsyncListener, TransactionalDb.Transact
         ledgerEvents.add(AccountLedger.Event.ADD_ENTRY);
     }
 
+    /** Work events - update API comments for EventRegister and EventWait if changed */
+    static final List<Work.Event> workEvents = new ArrayList<>();
+    static {
+        workEvents.add(Work.Event.WORK_CREATED);
+        workEvents.add(Work.Event.WORK_POW_RECEIVED);
+        workEvents.add(Work.Event.WORK_BOUNTY_RECEIVED);
+        workEvents.add(Work.Event.WORK_CANCELLED);
+        workEvents.add(Work.Event.WORK_TIMEOUTED);
+    }
+
+    /** PoW and bounty submission events - update API comments for EventRegister and EventWait if changed */
+    static final List<PowAndBounty.Event> powAndBountyEvents = new ArrayList<>();
+    static {
+        powAndBountyEvents.add(PowAndBounty.Event.POW_SUBMITTED);
+        powAndBountyEvents.add(PowAndBounty.Event.BOUNTY_SUBMITTED);
+    }
+
     /** Application IP address */
     private final String address;
 
@@ -638,6 +657,10 @@ class EventListener implements Runnable, AsyncListener, TransactionalDb.Transact
                 eventHandler = new TransactionEventHandler(eventRegistration);
             } else if (event instanceof AccountLedger.Event) {
                 eventHandler = new LedgerEventHandler(eventRegistration);
+            } else if (event instanceof Work.Event) {
+                eventHandler = new WorkEventHandler(eventRegistration);
+            } else if (event instanceof PowAndBounty.Event) {
+                eventHandler = new PowAndBountyEventHandler(eventRegistration);
             } else {
                 throw new EventListenerException("Unsupported listener event");
             }
@@ -984,6 +1007,89 @@ class EventListener implements Runnable, AsyncListener, TransactionalDb.Transact
                                 Long.toUnsignedString(entry.getLedgerId())));
             }
         }
+
+        /**
+         * Work event handler
+         */
+        private class WorkEventHandler extends NxtEventHandler implements Listener<Work> {
+
+            /**
+             * Create the work event handler
+             *
+             * @param   eventRegistration   Event registration
+             */
+            public WorkEventHandler(EventRegistration eventRegistration) {
+                super(eventRegistration);
+            }
+
+            /**
+             * Add the Nxt listener for this event
+             */
+            @Override
+            public void addListener() {
+                Work.addListener(this, (Work.Event)event);
+            }
+
+            /**
+             * Remove the Nxt listener for this event
+             */
+            @Override
+            public void removeListener() {
+                Work.removeListener(this, (Work.Event)event);
+            }
+
+            /**
+             * Event notification
+             *
+             * @param   work        Work
+             */
+            @Override
+            public void notify(Work work) {
+                dispatch(new PendingEvent("Work." + event.name(), Long.toUnsignedString(work.getId())));
+            }
+        }
+
+        /**
+         * PoW and bounty submission event handler
+         */
+        private class PowAndBountyEventHandler extends NxtEventHandler implements Listener<PowAndBounty> {
+
+            /**
+             * Create the PoW and bounty submission event handler
+             *
+             * @param   eventRegistration   Event registration
+             */
+            public PowAndBountyEventHandler(EventRegistration eventRegistration) {
+                super(eventRegistration);
+            }
+
+            /**
+             * Add the Nxt listener for this event
+             */
+            @Override
+            public void addListener() {
+                PowAndBounty.addListener(this, (PowAndBounty.Event)event);
+            }
+
+            /**
+             * Remove the Nxt listener for this event
+             */
+            @Override
+            public void removeListener() {
+                PowAndBounty.removeListener(this, (PowAndBounty.Event)event);
+            }
+
+            /**
+             * Event notification
+             *
+             * @param   powAndBounty    Submission
+             */
+            @Override
+            public void notify(PowAndBounty powAndBounty) {
+                dispatch(new PendingEvent("PowAndBounty." + event.name(),
+                        Long.toUnsignedString(powAndBounty.getWork_id())));
+            }
+        }
     }
 
     /**
@@ -83,6 +83,8 @@ import java.util.List;
  * may be the numeric identifier or the Reed-Solomon identifier
  * of the account to monitor for updates.  Specifying an account identifier of 0 is the same as
  * not specifying an account.</li>
+ * <li>PowAndBounty.BOUNTY_SUBMITTED</li>
+ * <li>PowAndBounty.POW_SUBMITTED</li>
  * <li>Peer.ADD_INBOUND</li>
  * <li>Peer.ADDED_ACTIVE_PEER</li>
  * <li>Peer.BLACKLIST</li>
@@ -97,6 +99,11 @@ import java.util.List;
  * <li>Transaction.REJECT_PHASED_TRANSACTION</li>
  * <li>Transaction.RELEASE_PHASED_TRANSACTION</li>
  * <li>Transaction.REMOVE_UNCONFIRMED_TRANSACTIONS</li>
+ * <li>Work.WORK_BOUNTY_RECEIVED</li>
+ * <li>Work.WORK_CANCELLED</li>
+ * <li>Work.WORK_CREATED</li>
+ * <li>Work.WORK_POW_RECEIVED</li>
+ * <li>Work.WORK_TIMEOUTED</li>
  * </ul>
  */
 public class EventRegister extends APIServlet.APIRequestHandler {
@@ -174,6 +181,8 @@ public class EventRegister extends APIServlet.APIRequestHandler {
             EventListener.blockEvents.forEach(event -> events.add(new EventRegistration(event, 0)));
             EventListener.txEvents.forEach(event -> events.add(new EventRegistration(event, 0)));
             EventListener.ledgerEvents.forEach(event -> events.add(new EventRegistration(event, 0)));
+            EventListener.workEvents.forEach(event -> events.add(new EventRegistration(event, 0)));
+            EventListener.powAndBountyEvents.forEach(event -> events.add(new EventRegistration(event, 0)));
         } else {
             for (String param : params) {
                 //
@@ -211,6 +220,12 @@ public class EventRegister extends APIServlet.APIRequestHandler {
                     case "Ledger":
                         eventList = EventListener.ledgerEvents;
                         break;
+                    case "Work":
+                        eventList = EventListener.workEvents;
+                        break;
+                    case "PowAndBounty":
+                        eventList = EventListener.powAndBountyEvents;
+                        break;
                     default:
                         return unknownEvent;
                 }
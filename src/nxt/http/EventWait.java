@@ -69,6 +69,8 @@ import java.util.List;
  * <li>Block.BLOCK_PUSHED</li>
  * <li>Ledger.ADD_ENTRY.account - The account suffix will be Reed-Solomon identifier
  * of the account associated with the ledger entry.</li>
+ * <li>PowAndBounty.BOUNTY_SUBMITTED</li>
+ * <li>PowAndBounty.POW_SUBMITTED</li>
  * <li>Peer.ADD_INBOUND</li>
  * <li>Peer.ADDED_ACTIVE_PEER</li>
  * <li>Peer.BLACKLIST</li>
@@ -83,6 +85,11 @@ import java.util.List;
  * <li>Transaction.REJECT_PHASED_TRANSACTION</li>
  * <li>Transaction.RELEASE_PHASED_TRANSACTION</li>
  * <li>Transaction.REMOVE_UNCONFIRMED_TRANSACTIONS</li>
+ * <li>Work.WORK_BOUNTY_RECEIVED</li>
+ * <li>Work.WORK_CANCELLED</li>
+ * <li>Work.WORK_CREATED</li>
+ * <li>Work.WORK_POW_RECEIVED</li>
+ * <li>Work.WORK_TIMEOUTED</li>
  * </ul>
  *
  * <p>Event object identifiers:</p>
@@ -90,6 +97,7 @@ import java.util.List;
  * <li>Block string identifier for a Block event</li>
  * <li>Peer network address for a Peer event</li>
  * <li>Transaction string identifier for a Transaction event</li>
+ * <li>Work string identifier for a Work or PowAndBounty event</li>
  * </ul>
  */
 public class EventWait extends APIServlet.APIRequestHandler {
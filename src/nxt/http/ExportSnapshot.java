@@ -0,0 +1,63 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt.http;
+
+import nxt.Nxt;
+import nxt.Snapshot;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.File;
+import java.io.IOException;
+
+public final class ExportSnapshot extends APIServlet.APIRequestHandler {
+
+    static final ExportSnapshot instance = new ExportSnapshot();
+
+    private ExportSnapshot() {
+        super(new APITag[] {APITag.DEBUG});
+    }
+
+    @Override
+    protected JSONStreamAware processRequest(HttpServletRequest req) {
+        JSONObject response;
+        try {
+            response = Snapshot.export(new File(Nxt.getUserHomeDir(), Nxt.getStringProperty("nxt.snapshotExportDir", "snapshots")));
+        } catch (IOException | RuntimeException e) {
+            response = new JSONObject();
+            JSONData.putException(response, e);
+        }
+        return response;
+    }
+
+    @Override
+    protected final boolean requirePost() {
+        return true;
+    }
+
+    @Override
+    protected boolean requirePassword() {
+        return true;
+    }
+
+    @Override
+    protected boolean allowRequiredBlockParameters() {
+        return false;
+    }
+
+}
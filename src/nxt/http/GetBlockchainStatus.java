@@ -51,7 +51,32 @@ public final class GetBlockchainStatus extends APIServlet.APIRequestHandler {
         response.put("lastBlockchainFeeder", lastBlockchainFeeder == null ? null : lastBlockchainFeeder.getAnnouncedAddress());
         response.put("lastBlockchainFeederHeight", blockchainProcessor.getLastBlockchainFeederHeight());
         response.put("isScanning", blockchainProcessor.isScanning());
+        if (blockchainProcessor.isScanning()) {
+            JSONObject scan = new JSONObject();
+            int startHeight = blockchainProcessor.getScanStartHeight();
+            int targetHeight = blockchainProcessor.getInitialScanHeight();
+            scan.put("startHeight", startHeight);
+            scan.put("targetHeight", targetHeight);
+            scan.put("checkpointHeight", blockchainProcessor.getScanCheckpointHeight());
+            scan.put("blocksPerSecond", Math.round(blockchainProcessor.getScanRate() * 10) / 10.0);
+            scan.put("progress", targetHeight > startHeight ?
+                    Math.min(100, Math.max(0, (lastBlock.getHeight() - startHeight + 1) * 100 / (targetHeight - startHeight + 1))) : 100);
+            response.put("scan", scan);
+        }
         response.put("isDownloading", blockchainProcessor.isDownloading());
+        JSONObject downloadQueues = new JSONObject();
+        for (BlockchainProcessor.DownloadStage stage : BlockchainProcessor.DownloadStage.values()) {
+            downloadQueues.put(stage.name(), blockchainProcessor.getDownloadQueueDepth(stage));
+        }
+        response.put("downloadQueues", downloadQueues);
+        response.put("blockCache", JSONData.cache(Nxt.getBlockchain().getBlockCache()));
+        response.put("transactionCache", JSONData.cache(Nxt.getBlockchain().getTransactionCache()));
+        JSONObject writeLock = new JSONObject();
+        writeLock.put("count", Nxt.getBlockchain().getWriteLockCount());
+        writeLock.put("totalMillis", Nxt.getBlockchain().getWriteLockTime());
+        writeLock.put("maxMillis", Nxt.getBlockchain().getMaxWriteLockTime());
+        writeLock.put("lastMillis", Nxt.getBlockchain().getLastWriteLockTime());
+        response.put("writeLock", writeLock);
         response.put("maxRollback", Constants.MAX_ROLLBACK);
         response.put("currentMinRollbackHeight", Nxt.getBlockchainProcessor().getMinRollbackHeight());
         response.put("isTestnet", Constants.isTestnet);
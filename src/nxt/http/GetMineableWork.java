@@ -1,41 +1,111 @@
 package nxt.http;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONStreamAware;
 
+import nxt.Block;
+import nxt.Nxt;
 import nxt.NxtException;
 import nxt.Work;
+import nxt.crypto.Crypto;
 import nxt.db.DbIterator;
+import nxt.util.Convert;
 
+import java.util.Arrays;
+
+/**
+ * Returns the active work packages, n at a time starting at firstIndex.
+ *
+ * Work only changes when blocks are pushed or popped, so the response carries the last block id in the body, and the
+ * ETag is made of the last block id and a hash of the parsed parameters; a request with a matching If-None-Match
+ * header gets an empty 304 response. Passing the lastBlock of
+ * a previous response as sinceBlock returns only the work that changed after that block, plus the ids of the work
+ * that got closed meanwhile. If sinceBlock is no longer part of the chain the full active set is returned and
+ * incremental is false.
+ */
 public final class GetMineableWork extends APIServlet.APIRequestHandler {
 
 	static final GetMineableWork instance = new GetMineableWork();
 
 	private GetMineableWork() {
-		super(new APITag[] { APITag.MESSAGES });
+		super(new APITag[] { APITag.MESSAGES }, "n", "firstIndex", "sinceBlock");
 	}
 
 	@Override
-	protected JSONStreamAware processRequest(final HttpServletRequest req) throws NxtException {
+	protected JSONStreamAware processRequest(final HttpServletRequest req, final HttpServletResponse resp)
+			throws NxtException {
 		int n = ParameterParser.getInt(req,"n",1,10000, true);
+		int firstIndex = ParameterParser.getFirstIndex(req);
+		long sinceBlockId = ParameterParser.getUnsignedLong(req, "sinceBlock", false);
 
 		final JSONArray work_packages = new JSONArray();
+		final JSONArray closed_work = new JSONArray();
+		final Block lastBlock;
+		boolean incremental = false;
+
+		Nxt.getBlockchain().readLock();
+		try {
+			lastBlock = Nxt.getBlockchain().getLastBlock();
+			String etag = getETag(lastBlock, n, firstIndex, sinceBlockId);
+			if (etag.equals(req.getHeader("If-None-Match"))) {
+				resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return null;
+			}
+			resp.setHeader("ETag", etag);
 
-		try (DbIterator<? extends Work> iterator = Work.getActiveWork(0, n)) {
-			while (iterator.hasNext()) {
-				final Work transaction = iterator.next();
-				work_packages.add(Work.toJson(transaction));
+			int sinceHeight = -1;
+			if (sinceBlockId != 0) {
+				Block sinceBlock = Nxt.getBlockchain().getBlock(sinceBlockId);
+				if (sinceBlock != null) {
+					sinceHeight = sinceBlock.getHeight();
+					incremental = true;
+				}
+			}
+
+			try (DbIterator<? extends Work> iterator = Work.getActiveWork(sinceHeight, firstIndex, firstIndex + n)) {
+				while (iterator.hasNext()) {
+					final Work transaction = iterator.next();
+					work_packages.add(Work.toJson(transaction));
+				}
+			}
+			if (incremental) {
+				try (DbIterator<? extends Work> iterator = Work.getClosedWork(sinceHeight, 0, -1)) {
+					while (iterator.hasNext()) {
+						closed_work.add(Long.toUnsignedString(iterator.next().getId()));
+					}
+				}
 			}
+		} finally {
+			Nxt.getBlockchain().readUnlock();
 		}
 
 		final JSONObject response = new JSONObject();
 		response.put("work_packages", work_packages);
+		response.put("incremental", incremental);
+		if (incremental) {
+			response.put("closed_work", closed_work);
+		}
+		response.put("lastBlock", lastBlock.getStringId());
+		response.put("height", lastBlock.getHeight());
 
 		return response;
 
 	}
 
+	static String getETag(final Block lastBlock, final int n, final int firstIndex, final long sinceBlockId) {
+		final byte[] parameters = Convert.toBytes("n=" + n + "&firstIndex=" + firstIndex
+				+ "&sinceBlock=" + Long.toUnsignedString(sinceBlockId));
+		return "\"" + lastBlock.getStringId() + "-"
+				+ Convert.toHexString(Arrays.copyOf(Crypto.sha256().digest(parameters), 8)) + "\"";
+	}
+
+	@Override
+	protected JSONStreamAware processRequest(final HttpServletRequest req) throws NxtException {
+		throw new UnsupportedOperationException();
+	}
+
 }
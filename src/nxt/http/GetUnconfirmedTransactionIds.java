@@ -18,14 +18,13 @@ package nxt.http;
 
 import nxt.Nxt;
 import nxt.Transaction;
-import nxt.db.DbIterator;
-import nxt.db.FilteringIterator;
 import nxt.util.Convert;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONStreamAware;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.List;
 import java.util.Set;
 
 public final class GetUnconfirmedTransactionIds extends APIServlet.APIRequestHandler {
@@ -44,23 +43,16 @@ public final class GetUnconfirmedTransactionIds extends APIServlet.APIRequestHan
         int lastIndex = ParameterParser.getLastIndex(req);
 
         JSONArray transactionIds = new JSONArray();
+        List<? extends Transaction> unconfirmedTransactions;
         if (accountIds.isEmpty()) {
-            try (DbIterator<? extends Transaction> transactionsIterator = Nxt.getTransactionProcessor().getAllUnconfirmedTransactions(firstIndex, lastIndex)) {
-                while (transactionsIterator.hasNext()) {
-                    Transaction transaction = transactionsIterator.next();
-                    transactionIds.add(transaction.getStringId());
-                }
-            }
+            unconfirmedTransactions = Nxt.getTransactionProcessor().getAllUnconfirmedTransactions(firstIndex, lastIndex);
         } else {
-            try (FilteringIterator<? extends Transaction> transactionsIterator = new FilteringIterator<> (
-                    Nxt.getTransactionProcessor().getAllUnconfirmedTransactions(0, -1),
+            unconfirmedTransactions = Nxt.getTransactionProcessor().getUnconfirmedTransactions(
                     transaction -> accountIds.contains(transaction.getSenderId()) || accountIds.contains(transaction.getRecipientId()),
-                    firstIndex, lastIndex)) {
-                while (transactionsIterator.hasNext()) {
-                    Transaction transaction = transactionsIterator.next();
-                    transactionIds.add(transaction.getStringId());
-                }
-            }
+                    firstIndex, lastIndex);
+        }
+        for (Transaction transaction : unconfirmedTransactions) {
+            transactionIds.add(transaction.getStringId());
         }
 
         JSONObject response = new JSONObject();
@@ -25,6 +25,7 @@ import nxt.peer.Hallmark;
 import nxt.peer.Peer;
 import nxt.util.Convert;
 import nxt.util.Filter;
+import nxt.util.LruCache;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
@@ -589,6 +590,18 @@ public final class JSONData {
         }
     }
 
+    static JSONObject cache(LruCache<?, ?> cache) {
+        JSONObject json = new JSONObject();
+        json.put("size", cache.size());
+        json.put("maxSize", cache.getMaxEntries());
+        json.put("bytes", cache.getBytes());
+        json.put("maxBytes", cache.getMaxBytes());
+        json.put("hits", cache.getHits());
+        json.put("misses", cache.getMisses());
+        json.put("evictions", cache.getEvictions());
+        return json;
+    }
+
     private JSONData() {} // never
 
 }
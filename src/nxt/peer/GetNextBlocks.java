@@ -16,6 +16,7 @@
 
 package nxt.peer;
 
+import nxt.BinaryFormat;
 import nxt.Block;
 import nxt.Nxt;
 import nxt.util.Convert;
@@ -63,7 +64,11 @@ final class GetNextBlocks extends PeerServlet.PeerRequestHandler {
             }
             blocks = Nxt.getBlockchain().getBlocksAfter(blockId, limit > 0 ? (int)limit : 36);
         }
-        blocks.forEach(block -> nextBlocksArray.add(block.getJSONObject()));
+        if (Boolean.TRUE.equals(request.get("binary"))) {
+            blocks.forEach(block -> nextBlocksArray.add(BinaryFormat.encodeBlock(block)));
+        } else {
+            blocks.forEach(block -> nextBlocksArray.add(block.getJSONObject()));
+        }
         response.put("nextBlocks", nextBlocksArray);
 
         return response;
@@ -33,7 +33,8 @@ public interface Peer extends Comparable<Peer> {
         PRUNABLE(2),                    // Stores expired prunable messages
         API(4),                         // Provides open API access over http
         API_SSL(8),                     // Provides open API access over https
-        CORS(16);                       // API CORS enabled
+        CORS(16),                       // API CORS enabled
+        BINARY_BLOCKS(32);              // Accepts blocks and transactions in nxt.BinaryFormat
 
         private final long code;        // Service code - must be a power of 2
 
@@ -17,6 +17,7 @@
 package nxt.peer;
 
 import nxt.Account;
+import nxt.BinaryFormat;
 import nxt.Block;
 import nxt.Constants;
 import nxt.Db;
@@ -296,6 +297,7 @@ public final class Peers {
                 servicesList.add(Peer.Service.CORS);
             }
         }
+        servicesList.add(Peer.Service.BINARY_BLOCKS);
 
         long services = 0;
         for (Peer.Service service : servicesList) {
@@ -1003,7 +1005,12 @@ public final class Peers {
     public static void sendToSomePeers(Block block) {
         JSONObject request = block.getJSONObject();
         request.put("requestType", "processBlock");
-        sendToSomePeers(request);
+        JSONObject binaryRequest = new JSONObject();
+        binaryRequest.put("requestType", "processBlock");
+        binaryRequest.put("previousBlock", Long.toUnsignedString(block.getPreviousBlockId()));
+        binaryRequest.put("timestamp", block.getTimestamp());
+        binaryRequest.put("blockBytes", BinaryFormat.encodeBlock(block));
+        sendToSomePeers(request, binaryRequest);
     }
 
     private static final int sendTransactionsBatchSize = 10;
@@ -1012,20 +1019,26 @@ public final class Peers {
         int nextBatchStart = 0;
         while (nextBatchStart < transactions.size()) {
             JSONObject request = new JSONObject();
+            JSONObject binaryRequest = new JSONObject();
             JSONArray transactionsData = new JSONArray();
+            JSONArray binaryTransactionsData = new JSONArray();
             for (int i = nextBatchStart; i < nextBatchStart + sendTransactionsBatchSize && i < transactions.size(); i++) {
                 transactionsData.add(transactions.get(i).getJSONObject());
+                binaryTransactionsData.add(BinaryFormat.encodeTransaction(transactions.get(i)));
             }
             request.put("requestType", "processTransactions");
             request.put("transactions", transactionsData);
-            sendToSomePeers(request);
+            binaryRequest.put("requestType", "processTransactions");
+            binaryRequest.put("transactions", binaryTransactionsData);
+            sendToSomePeers(request, binaryRequest);
             nextBatchStart += sendTransactionsBatchSize;
         }
     }
 
-    private static void sendToSomePeers(final JSONObject request) {
+    private static void sendToSomePeers(final JSONObject request, final JSONObject binaryRequest) {
         sendingService.submit(() -> {
             final JSONStreamAware jsonRequest = JSON.prepareRequest(request);
+            final JSONStreamAware jsonBinaryRequest = JSON.prepareRequest(binaryRequest);
 
             int successful = 0;
             List<Future<JSONObject>> expectedResponses = new ArrayList<>();
@@ -1037,7 +1050,8 @@ public final class Peers {
 
                 if (!peer.isBlacklisted() && peer.getState() == Peer.State.CONNECTED && peer.getAnnouncedAddress() != null
                         && peer.getBlockchainState() != Peer.BlockchainState.LIGHT_CLIENT) {
-                    Future<JSONObject> futureResponse = peersService.submit(() -> peer.send(jsonRequest));
+                    JSONStreamAware peerRequest = peer.providesService(Peer.Service.BINARY_BLOCKS) ? jsonBinaryRequest : jsonRequest;
+                    Future<JSONObject> futureResponse = peersService.submit(() -> peer.send(peerRequest));
                     expectedResponses.add(futureResponse);
                 }
                 if (expectedResponses.size() >= Peers.sendToPeersLimit - successful) {
@@ -45,22 +45,18 @@ public final class GetInitialData extends UserServlet.UserRequestHandler {
         JSONArray activePeers = new JSONArray(), knownPeers = new JSONArray(), blacklistedPeers = new JSONArray();
         JSONArray recentBlocks = new JSONArray();
 
-        try (DbIterator<? extends Transaction> transactions = Nxt.getTransactionProcessor().getAllUnconfirmedTransactions()) {
-            while (transactions.hasNext()) {
-                Transaction transaction = transactions.next();
-
-                JSONObject unconfirmedTransaction = new JSONObject();
-                unconfirmedTransaction.put("index", Users.getIndex(transaction));
-                unconfirmedTransaction.put("timestamp", transaction.getTimestamp());
-                unconfirmedTransaction.put("deadline", transaction.getDeadline());
-                unconfirmedTransaction.put("recipient", Long.toUnsignedString(transaction.getRecipientId()));
-                unconfirmedTransaction.put("amountNQT", transaction.getAmountNQT());
-                unconfirmedTransaction.put("feeNQT", transaction.getFeeNQT());
-                unconfirmedTransaction.put("sender", Long.toUnsignedString(transaction.getSenderId()));
-                unconfirmedTransaction.put("id", transaction.getStringId());
-
-                unconfirmedTransactions.add(unconfirmedTransaction);
-            }
+        for (Transaction transaction : Nxt.getTransactionProcessor().getAllUnconfirmedTransactions()) {
+            JSONObject unconfirmedTransaction = new JSONObject();
+            unconfirmedTransaction.put("index", Users.getIndex(transaction));
+            unconfirmedTransaction.put("timestamp", transaction.getTimestamp());
+            unconfirmedTransaction.put("deadline", transaction.getDeadline());
+            unconfirmedTransaction.put("recipient", Long.toUnsignedString(transaction.getRecipientId()));
+            unconfirmedTransaction.put("amountNQT", transaction.getAmountNQT());
+            unconfirmedTransaction.put("feeNQT", transaction.getFeeNQT());
+            unconfirmedTransaction.put("sender", Long.toUnsignedString(transaction.getSenderId()));
+            unconfirmedTransaction.put("id", transaction.getStringId());
+
+            unconfirmedTransactions.add(unconfirmedTransaction);
         }
 
         for (Peer peer : Peers.getAllPeers()) {
@@ -95,41 +95,38 @@ public final class UnlockAccount extends UserServlet.UserRequestHandler {
 
             JSONArray myTransactions = new JSONArray();
             byte[] accountPublicKey = Account.getPublicKey(accountId);
-            try (DbIterator<? extends Transaction> transactions = Nxt.getTransactionProcessor().getAllUnconfirmedTransactions()) {
-                while (transactions.hasNext()) {
-                    Transaction transaction = transactions.next();
-                    if (Arrays.equals(transaction.getSenderPublicKey(), accountPublicKey)) {
-
-                        JSONObject myTransaction = new JSONObject();
-                        myTransaction.put("index", Users.getIndex(transaction));
-                        myTransaction.put("transactionTimestamp", transaction.getTimestamp());
-                        myTransaction.put("deadline", transaction.getDeadline());
-                        myTransaction.put("account", Long.toUnsignedString(transaction.getRecipientId()));
-                        myTransaction.put("sentAmountNQT", transaction.getAmountNQT());
-                        if (accountId == transaction.getRecipientId()) {
-                            myTransaction.put("receivedAmountNQT", transaction.getAmountNQT());
-                        }
-                        myTransaction.put("feeNQT", transaction.getFeeNQT());
-                        myTransaction.put("numberOfConfirmations", -1);
-                        myTransaction.put("id", transaction.getStringId());
+            for (Transaction transaction : Nxt.getTransactionProcessor().getAllUnconfirmedTransactions()) {
+                if (Arrays.equals(transaction.getSenderPublicKey(), accountPublicKey)) {
+
+                    JSONObject myTransaction = new JSONObject();
+                    myTransaction.put("index", Users.getIndex(transaction));
+                    myTransaction.put("transactionTimestamp", transaction.getTimestamp());
+                    myTransaction.put("deadline", transaction.getDeadline());
+                    myTransaction.put("account", Long.toUnsignedString(transaction.getRecipientId()));
+                    myTransaction.put("sentAmountNQT", transaction.getAmountNQT());
+                    if (accountId == transaction.getRecipientId()) {
+                        myTransaction.put("receivedAmountNQT", transaction.getAmountNQT());
+                    }
+                    myTransaction.put("feeNQT", transaction.getFeeNQT());
+                    myTransaction.put("numberOfConfirmations", -1);
+                    myTransaction.put("id", transaction.getStringId());
 
-                        myTransactions.add(myTransaction);
+                    myTransactions.add(myTransaction);
 
-                    } else if (accountId == transaction.getRecipientId()) {
+                } else if (accountId == transaction.getRecipientId()) {
 
-                        JSONObject myTransaction = new JSONObject();
-                        myTransaction.put("index", Users.getIndex(transaction));
-                        myTransaction.put("transactionTimestamp", transaction.getTimestamp());
-                        myTransaction.put("deadline", transaction.getDeadline());
-                        myTransaction.put("account", Long.toUnsignedString(transaction.getSenderId()));
-                        myTransaction.put("receivedAmountNQT", transaction.getAmountNQT());
-                        myTransaction.put("feeNQT", transaction.getFeeNQT());
-                        myTransaction.put("numberOfConfirmations", -1);
-                        myTransaction.put("id", transaction.getStringId());
+                    JSONObject myTransaction = new JSONObject();
+                    myTransaction.put("index", Users.getIndex(transaction));
+                    myTransaction.put("transactionTimestamp", transaction.getTimestamp());
+                    myTransaction.put("deadline", transaction.getDeadline());
+                    myTransaction.put("account", Long.toUnsignedString(transaction.getSenderId()));
+                    myTransaction.put("receivedAmountNQT", transaction.getAmountNQT());
+                    myTransaction.put("feeNQT", transaction.getFeeNQT());
+                    myTransaction.put("numberOfConfirmations", -1);
+                    myTransaction.put("id", transaction.getStringId());
 
-                        myTransactions.add(myTransaction);
+                    myTransactions.add(myTransaction);
 
-                    }
                 }
             }
 
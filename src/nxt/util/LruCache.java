@@ -0,0 +1,179 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+
+/**
+ * Least recently used cache, bounded by its number of entries and their estimated size in bytes.
+ *
+ * Reads do not lock, they only stamp the entry with the access time. Updates are serialized, and once a limit is
+ * exceeded the least recently used entries are evicted until the cache is back to 7/8 of its limits, so the cost
+ * of ordering the entries is spread over many updates.
+ *
+ * A value read from the database is only added if the cache was not cleared in the meantime: the caller gets the
+ * generation before the read and passes it to {@link #put}.
+ */
+public final class LruCache<K, V> {
+
+    private static final class Entry<K, V> {
+        private final K key;
+        private final V value;
+        private final int size;
+        private volatile long lastAccess;
+
+        private Entry(K key, V value, int size, long lastAccess) {
+            this.key = key;
+            this.value = value;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private final ConcurrentHashMap<K, Entry<K, V>> map = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final long maxBytes;
+    private final ToIntFunction<V> sizer;
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private volatile long bytes;
+    private volatile int generation;
+
+    /**
+     * Create the cache
+     *
+     * @param   maxEntries          Maximum number of entries, 0 disables the cache
+     * @param   maxBytes            Maximum estimated size of the entries
+     * @param   sizer               Estimated size of a value in bytes
+     */
+    public LruCache(int maxEntries, long maxBytes, ToIntFunction<V> sizer) {
+        this.maxEntries = Math.max(maxEntries, 0);
+        this.maxBytes = Math.max(maxBytes, 0);
+        this.sizer = sizer;
+    }
+
+    public V get(K key) {
+        Entry<K, V> entry = map.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        entry.lastAccess = clock.incrementAndGet();
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Add a value, unless the cache was cleared since the generation was obtained
+     *
+     * @param   key                 Key
+     * @param   value               Value
+     * @param   generation          Generation returned by {@link #getGeneration} before the value was read
+     */
+    public synchronized void put(K key, V value, int generation) {
+        if (maxEntries == 0 || generation != this.generation) {
+            return;
+        }
+        int size = sizer.applyAsInt(value);
+        if (size > maxBytes) {
+            return;
+        }
+        Entry<K, V> previous = map.put(key, new Entry<>(key, value, size, clock.incrementAndGet()));
+        bytes += size - (previous == null ? 0 : previous.size);
+        if (map.size() > maxEntries || bytes > maxBytes) {
+            evict();
+        }
+    }
+
+    public synchronized void remove(K key) {
+        Entry<K, V> entry = map.remove(key);
+        if (entry != null) {
+            bytes -= entry.size;
+        }
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        bytes = 0;
+        generation++;
+    }
+
+    private void evict() {
+        //
+        // Copy the access times first, they keep changing while we sort
+        //
+        List<long[]> order = new ArrayList<>(map.size());
+        List<Entry<K, V>> entries = new ArrayList<>(map.size());
+        map.values().forEach(entry -> {
+            order.add(new long[] {entry.lastAccess, entries.size()});
+            entries.add(entry);
+        });
+        order.sort(Comparator.comparingLong(access -> access[0]));
+        int targetEntries = maxEntries - maxEntries / 8;
+        long targetBytes = maxBytes - maxBytes / 8;
+        for (long[] access : order) {
+            if (map.size() <= targetEntries && bytes <= targetBytes) {
+                break;
+            }
+            Entry<K, V> entry = entries.get((int)access[1]);
+            if (map.remove(entry.key, entry)) {
+                bytes -= entry.size;
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+}
@@ -59,6 +59,12 @@ public class ReadWriteUpdateLock {
     /** Write lock */
     private final WriteLock writeLock = new WriteLock();
 
+    /** Write lock hold statistics, only updated by the thread holding the write lock */
+    private volatile long writeHoldCount;
+    private volatile long writeHoldTime;
+    private volatile long maxWriteHoldTime;
+    private volatile long lastWriteHoldTime;
+
     /**
      * Return the read lock
      *
@@ -86,6 +92,44 @@ public class ReadWriteUpdateLock {
         return writeLock;
     }
 
+    /**
+     * Return the number of times the write lock was obtained and released
+     *
+     * Nested locks of the same thread are counted once
+     *
+     * @return                      Write lock count
+     */
+    public long getWriteHoldCount() {
+        return writeHoldCount;
+    }
+
+    /**
+     * Return the total time the write lock was held
+     *
+     * @return                      Hold time in nanoseconds
+     */
+    public long getWriteHoldTime() {
+        return writeHoldTime;
+    }
+
+    /**
+     * Return the longest time the write lock was held
+     *
+     * @return                      Hold time in nanoseconds
+     */
+    public long getMaxWriteHoldTime() {
+        return maxWriteHoldTime;
+    }
+
+    /**
+     * Return the time the write lock was last held
+     *
+     * @return                      Hold time in nanoseconds
+     */
+    public long getLastWriteHoldTime() {
+        return lastWriteHoldTime;
+    }
+
     /**
      * Lock interface
      */
@@ -208,7 +252,9 @@ public class ReadWriteUpdateLock {
                 counts.updateCount++;
                 lockObtained = true;
                 sharedLock.writeLock().lock();
-                counts.writeCount++;
+                if (counts.writeCount++ == 0) {
+                    counts.writeLockTime = System.nanoTime();
+                }
             } catch (Exception exc) {
                 if (lockObtained) {
                     mutexLock.unlock();
@@ -224,6 +270,15 @@ public class ReadWriteUpdateLock {
         @Override
         public void unlock() {
             LockCount counts = lockCount.get();
+            if (counts.writeCount == 1) {
+                long holdTime = System.nanoTime() - counts.writeLockTime;
+                writeHoldCount++;
+                writeHoldTime += holdTime;
+                lastWriteHoldTime = holdTime;
+                if (holdTime > maxWriteHoldTime) {
+                    maxWriteHoldTime = holdTime;
+                }
+            }
             sharedLock.writeLock().unlock();
             counts.writeCount--;
             mutexLock.unlock();
@@ -254,5 +309,8 @@ public class ReadWriteUpdateLock {
 
         /** Write lock count */
         private int writeCount;
+
+        /** Time the write lock was obtained */
+        private long writeLockTime;
     }
 }
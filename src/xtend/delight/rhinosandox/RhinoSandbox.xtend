@@ -1,6 +1,7 @@
 package delight.rhinosandox
 
 import java.util.Map
+import org.mozilla.javascript.Script
 import org.mozilla.javascript.ScriptableObject
 
 interface RhinoSandbox {
@@ -62,5 +63,14 @@ interface RhinoSandbox {
 	 */
 	def Object eval(String soureName, String js, Map<String, Object> variables)
 
-	
-}
\ No newline at end of file
+	/**
+	 * Compiles a script once so that it can be executed many times using exec.
+	 */
+	def Script compile(String sourceName, String js)
+
+	/**
+	 * <p>Executes a previously compiled script with its own scope, just like eval.
+	 */
+	def Object exec(Script script, Map<String, Object> variables)
+
+}
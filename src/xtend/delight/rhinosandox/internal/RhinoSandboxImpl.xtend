@@ -6,6 +6,7 @@ import java.util.HashMap
 import java.util.Map
 import org.mozilla.javascript.Context
 import org.mozilla.javascript.ContextFactory
+import org.mozilla.javascript.Script
 import org.mozilla.javascript.Scriptable
 import org.mozilla.javascript.ScriptableObject
 
@@ -62,6 +63,14 @@ class RhinoSandboxImpl implements RhinoSandbox {
 	}
 
 	def void assertSafeScope(Context context) {
+		// every context entered by a reused sandbox needs its own shutter and wrap factory
+		val mcx = context as SafeContext.CountContext
+		if (!useSafeStandardObjects && !mcx.restricted) {
+			mcx.restricted = true
+			context.classShutter = classShutter
+			context.wrapFactory = new SafeWrapFactory
+		}
+
 		if (safeScope != null) {
 			return
 		}
@@ -71,9 +80,6 @@ class RhinoSandboxImpl implements RhinoSandbox {
 			return
 		}
 
-		context.classShutter = classShutter
-		context.wrapFactory = new SafeWrapFactory
-
 		safeScope = globalScope
 
 	}
@@ -104,25 +110,63 @@ class RhinoSandboxImpl implements RhinoSandbox {
 				globalScope.sealObject 
 			}
 
-			// any new globals will not be available in global scope
-			val Scriptable instanceScope = context.newObject(safeScope);
-			// val sourceScriptable = context.newObject(safeScope);
-			instanceScope.setPrototype(safeScope);
-			// Scope.joinScopes(sourceScriptable as Scope, instanceScope as Scope);
-			instanceScope.setParentScope(null);
+			val Scriptable instanceScope = newInstanceScope(context, variables)
+
+			return context.evaluateString(instanceScope, js, sourceName, 1, null)
 
-			for (entry : variables.entrySet) {
-				allow(entry.value.class)
-				instanceScope.put(entry.key, instanceScope, Context.toObject(entry.value, instanceScope))
+		} finally {
+			Context.exit
+		}
+	}
+
+	override Script compile(String sourceName, String js) {
+		assertContextFactory
+
+		try {
+			val context = contextFactory.enterContext
+			return context.compileString(js, sourceName, 1, null)
+		} finally {
+			Context.exit
+		}
+	}
+
+	override Object exec(Script script, Map<String, Object> variables) {
+		assertContextFactory
+
+		try {
+			val context = contextFactory.enterContext
+
+			assertSafeScope(context)
+
+			if (sealScope) {
+				globalScope.sealObject
 			}
 
-			return context.evaluateString(instanceScope, js, sourceName, 1, null)
+			val Scriptable instanceScope = newInstanceScope(context, variables)
+
+			return script.exec(context, instanceScope)
 
 		} finally {
 			Context.exit
 		}
 	}
 
+	private def Scriptable newInstanceScope(Context context, Map<String, Object> variables) {
+		// any new globals will not be available in global scope
+		val Scriptable instanceScope = context.newObject(safeScope);
+		// val sourceScriptable = context.newObject(safeScope);
+		instanceScope.setPrototype(safeScope);
+		// Scope.joinScopes(sourceScriptable as Scope, instanceScope as Scope);
+		instanceScope.setParentScope(null);
+
+		for (entry : variables.entrySet) {
+			allow(entry.value.class)
+			instanceScope.put(entry.key, instanceScope, Context.toObject(entry.value, instanceScope))
+		}
+
+		return instanceScope
+	}
+
 	override Object eval(String sourceName, String js) {
 		eval(sourceName, js, new HashMap)
 
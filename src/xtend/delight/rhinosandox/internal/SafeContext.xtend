@@ -22,6 +22,7 @@ class SafeContext extends ContextFactory {
 	static class CountContext extends Context {
 		long startTime
 		long instructions
+		package boolean restricted
 	}
 
 	override Context makeContext() {
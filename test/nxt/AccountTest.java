@@ -0,0 +1,100 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+
+package nxt;
+
+import nxt.crypto.Crypto;
+import nxt.helpers.RedeemFunctions;
+import nxt.util.Time;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+public class AccountTest extends AbstractForgingTest {
+
+    private static void pay(long recipientId, long amountNQT) throws Exception {
+        TransactionImpl transaction = (TransactionImpl) Nxt.newTransactionBuilder(Crypto.getPublicKey(testForgingSecretPhrase), amountNQT,
+                Constants.ONE_NXT, (short) 1440, Attachment.ORDINARY_PAYMENT)
+                .recipientId(recipientId)
+                .build(testForgingSecretPhrase);
+        TransactionProcessorImpl.getInstance().broadcast(transaction);
+    }
+
+    @Test
+    public void effectiveBalances() throws Exception {
+        Properties properties = newTestProperties();
+        properties.setProperty("nxt.enableFakeForging", "true");
+        properties.setProperty("nxt.timeMultiplier", "1");
+        AbstractForgingTest.init(properties);
+
+        Nxt.getBlockchainProcessor().popOffTo(0);
+        Nxt.setTime(new Time.CounterTime(Nxt.getEpochTime()));
+        String address = "1XELjH6JgPS48ZL7ew1Zz2xxczyzqit3h";
+        String[] privkeys = new String[]{"5JDSuYmvAAF85XFQxPTkHGFrNfAk3mhtZKmXvsLJiFZ7tDrSBmp"};
+        Assert.assertTrue("Failed to create redeem transaction.", RedeemFunctions.redeem(address, testForgingSecretPhrase, privkeys));
+        blockchainProcessor.generateBlock(testForgingSecretPhrase, Nxt.getEpochTime());
+
+        long forgerId = Account.getId(Crypto.getPublicKey(testForgingSecretPhrase));
+        // the last id never gets an account
+        List<Long> accountIds = Arrays.asList(forgerId, 1L, 2L, 3L, 4L);
+        for (int i = 0; i < 2 * Constants.GUARANTEED_BALANCE_CONFIRMATIONS; i++) {
+            if (i % 3 == 0) {
+                pay(1, 700 * Constants.ONE_NXT);
+            }
+            if (i % 5 == 0) {
+                pay(2, 1500 * Constants.ONE_NXT);
+            }
+            if (i % 7 == 0) {
+                pay(3, 10 * Constants.ONE_NXT);
+            }
+            blockchainProcessor.generateBlock(testForgingSecretPhrase, Nxt.getEpochTime());
+        }
+
+        // one batch gives the same effective balances as asking each account
+        int chainHeight = blockchain.getHeight();
+        for (int height = Constants.GUARANTEED_BALANCE_CONFIRMATIONS + 1; height <= chainHeight; height++) {
+            Map<Long, Long> effectiveBalances = Account.getEffectiveBalancesNXT(accountIds, height);
+            for (long accountId : accountIds) {
+                Account account = Account.getAccount(accountId, height);
+                long expected = account == null ? 0 : Math.max(account.getEffectiveBalanceNXT(height), 0);
+                Assert.assertEquals("account " + accountId + " at height " + height, Long.valueOf(expected), effectiveBalances.get(accountId));
+            }
+        }
+        Assert.assertTrue(Account.getEffectiveBalancesNXT(accountIds, chainHeight).get(2L) > 0);
+
+        // same range as the guaranteed balance of a single account
+        int unavailableHeight = chainHeight + Constants.GUARANTEED_BALANCE_CONFIRMATIONS + 1;
+        try {
+            Account.getAccount(forgerId).getEffectiveBalanceNXT(unavailableHeight);
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            Account.getEffectiveBalancesNXT(accountIds, unavailableHeight);
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+        }
+
+        AbstractForgingTest.shutdown();
+    }
+
+}
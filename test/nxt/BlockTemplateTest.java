@@ -0,0 +1,119 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt;
+
+import nxt.crypto.Crypto;
+import nxt.helpers.RedeemFunctions;
+import nxt.util.Time;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+public class BlockTemplateTest extends AbstractForgingTest {
+
+    private static TransactionImpl newPayment(long feeNQT, long recipientId, String referencedTransactionFullHash) throws Exception {
+        return (TransactionImpl) Nxt.newTransactionBuilder(Crypto.getPublicKey(testForgingSecretPhrase), Constants.ONE_NXT,
+                feeNQT, (short) 1440, Attachment.ORDINARY_PAYMENT)
+                .recipientId(recipientId)
+                .referencedTransactionFullHash(referencedTransactionFullHash)
+                .build(testForgingSecretPhrase);
+    }
+
+    private static List<UnconfirmedTransaction> getCandidates(BlockTemplate blockTemplate) {
+        blockchain.readLock();
+        try {
+            List<UnconfirmedTransaction> candidates = blockTemplate.getCandidates(blockchain.getLastBlock());
+            // the incremental ranking must match the ranking of the whole pool
+            Assert.assertEquals(new BlockTemplate(blockchainProcessor).getCandidates(blockchain.getLastBlock()), candidates);
+            return candidates;
+        } finally {
+            blockchain.readUnlock();
+        }
+    }
+
+    private static void assertCandidates(BlockTemplate blockTemplate, Transaction... transactions) {
+        List<UnconfirmedTransaction> candidates = getCandidates(blockTemplate);
+        Long[] ids = new Long[candidates.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = candidates.get(i).getId();
+        }
+        Long[] expected = new Long[transactions.length];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = transactions[i].getId();
+        }
+        Assert.assertEquals(Arrays.asList(expected), Arrays.asList(ids));
+    }
+
+    @Test
+    public void packageFeePerByte() throws Exception {
+        Properties properties = newTestProperties();
+        properties.setProperty("nxt.enableFakeForging", "true");
+        properties.setProperty("nxt.timeMultiplier", "1");
+        AbstractForgingTest.init(properties);
+
+        Nxt.getBlockchainProcessor().popOffTo(0);
+        Nxt.setTime(new Time.CounterTime(Nxt.getEpochTime()));
+        String address = "1XELjH6JgPS48ZL7ew1Zz2xxczyzqit3h";
+        String[] privkeys = new String[]{"5JDSuYmvAAF85XFQxPTkHGFrNfAk3mhtZKmXvsLJiFZ7tDrSBmp"};
+        Assert.assertTrue("Failed to create redeem transaction.", RedeemFunctions.redeem(address, testForgingSecretPhrase, privkeys));
+        for (int i = 0; i < 3; i++) {
+            blockchainProcessor.generateBlock(testForgingSecretPhrase, Nxt.getEpochTime());
+        }
+        TransactionProcessorImpl transactionProcessor = TransactionProcessorImpl.getInstance();
+        BlockTemplate blockTemplate = new BlockTemplate(blockchainProcessor);
+
+        // a transaction referencing an unconfirmed one is not includable, but adds its fee to the package of that one
+        TransactionImpl first = newPayment(Constants.ONE_NXT, 1, null);
+        TransactionImpl other = newPayment(3 * Constants.ONE_NXT, 2, null);
+        TransactionImpl second = newPayment(10 * Constants.ONE_NXT, 3, first.getFullHash());
+        transactionProcessor.broadcast(first);
+        transactionProcessor.broadcast(other);
+        assertCandidates(blockTemplate, other, first);
+        transactionProcessor.broadcast(second);
+        assertCandidates(blockTemplate, first, other);
+
+        // unchanged pool and last block, the ranking is not refreshed
+        blockchain.readLock();
+        try {
+            Assert.assertSame(blockTemplate.getCandidates(blockchain.getLastBlock()), blockTemplate.getCandidates(blockchain.getLastBlock()));
+        } finally {
+            blockchain.readUnlock();
+        }
+
+        transactionProcessor.removeUnconfirmedTransaction(second);
+        assertCandidates(blockTemplate, other, first);
+        transactionProcessor.broadcast(second);
+        assertCandidates(blockTemplate, first, other);
+
+        // the next block confirms the first link, the second one becomes includable with the new last block
+        blockchainProcessor.generateBlock(testForgingSecretPhrase, Nxt.getEpochTime());
+        transactionProcessor.processWaitingTransactions();
+        Assert.assertTrue(TransactionDb.hasTransaction(first.getId()));
+        Assert.assertTrue(TransactionDb.hasTransaction(other.getId()));
+        assertCandidates(blockTemplate, second);
+        blockchainProcessor.generateBlock(testForgingSecretPhrase, Nxt.getEpochTime());
+        Assert.assertTrue(TransactionDb.hasTransaction(second.getId()));
+        assertCandidates(blockTemplate);
+
+        AbstractForgingTest.shutdown();
+    }
+
+}
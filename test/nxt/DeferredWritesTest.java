@@ -0,0 +1,116 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+
+package nxt;
+
+import nxt.helpers.RedeemFunctions;
+import nxt.util.Time;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Properties;
+
+public class DeferredWritesTest extends AbstractForgingTest {
+
+    // reads the account table without going through the table, so without writing its deferred entities
+    private static int getAccountHeight(long accountId) throws SQLException {
+        try (Connection con = Db.db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT height FROM account WHERE id = ? AND latest = TRUE")) {
+            pstmt.setLong(1, accountId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        }
+    }
+
+    @Test
+    public void deferredWrites() throws Exception {
+        Properties properties = newTestProperties();
+        properties.setProperty("nxt.enableFakeForging", "true");
+        properties.setProperty("nxt.timeMultiplier", "1");
+        AbstractForgingTest.init(properties);
+
+        Nxt.getBlockchainProcessor().popOffTo(0);
+        Nxt.setTime(new Time.CounterTime(Nxt.getEpochTime()));
+        String address = "1XELjH6JgPS48ZL7ew1Zz2xxczyzqit3h";
+        String[] privkeys = new String[]{"5JDSuYmvAAF85XFQxPTkHGFrNfAk3mhtZKmXvsLJiFZ7tDrSBmp"};
+        Assert.assertTrue("Failed to create redeem transaction.", RedeemFunctions.redeem(address, testForgingSecretPhrase, privkeys, false));
+        List<UnconfirmedTransaction> unconfirmedTransactions = TransactionProcessorImpl.getInstance().getAllUnconfirmedTransactions();
+        Assert.assertEquals(1, unconfirmedTransactions.size());
+        TransactionImpl redeemTransaction = unconfirmedTransactions.get(0).getTransaction();
+
+        // the queries of a table in the transaction see its deferred entities, a rollback discards them
+        Assert.assertFalse(Redeem.isAlreadyRedeemed(address));
+        Db.db.beginTransaction();
+        try {
+            Redeem.add(redeemTransaction);
+            Assert.assertTrue(Redeem.isAlreadyRedeemed(address));
+            Assert.assertEquals(1, Redeem.getCount());
+        } finally {
+            Db.db.rollbackTransaction();
+            Db.db.endTransaction();
+        }
+        Assert.assertFalse(Redeem.isAlreadyRedeemed(address));
+        Assert.assertEquals(0, Redeem.getCount());
+        Db.db.beginTransaction();
+        try {
+            Redeem.add(redeemTransaction);
+            Db.db.rollbackTransaction();
+            Db.db.commitTransaction();
+        } finally {
+            Db.db.endTransaction();
+        }
+        Assert.assertEquals(0, Redeem.getCount());
+
+        for (int i = 0; i < 2; i++) {
+            blockchainProcessor.generateBlock(testForgingSecretPhrase, Nxt.getEpochTime());
+        }
+        Assert.assertTrue(Redeem.isAlreadyRedeemed(address));
+
+        // a new last block in the transaction writes the deferred entities at the height they were inserted at
+        long accountId = 1;
+        BlockImpl lastBlock = blockchain.getLastBlock();
+        int height = lastBlock.getHeight();
+        blockchain.writeLock();
+        try {
+            Db.db.beginTransaction();
+            try {
+                Account.addOrGetAccount(accountId).addToBalanceAndUnconfirmedBalanceNQT(AccountLedger.LedgerEvent.ORDINARY_PAYMENT,
+                        0, Constants.ONE_NXT);
+                Assert.assertEquals(-1, getAccountHeight(accountId));
+                blockchain.setLastBlock(blockchain.getBlockAtHeight(height - 1));
+                Assert.assertEquals(height, getAccountHeight(accountId));
+            } finally {
+                blockchain.setLastBlock(lastBlock);
+                Db.db.rollbackTransaction();
+                Db.db.endTransaction();
+            }
+        } finally {
+            blockchain.writeUnlock();
+        }
+        Assert.assertEquals(-1, getAccountHeight(accountId));
+
+        AbstractForgingTest.shutdown();
+    }
+
+}
@@ -0,0 +1,74 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt;
+
+import nxt.helpers.RedeemFunctions;
+import nxt.util.Time;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+public class DownloadSegmentTest extends AbstractForgingTest {
+
+    @Test
+    public void stopWhenTipMovesBetweenSegments() throws Exception {
+        Properties properties = newTestProperties();
+        properties.setProperty("nxt.enableFakeForging", "true");
+        properties.setProperty("nxt.timeMultiplier", "1");
+        AbstractForgingTest.init(properties);
+
+        BlockchainProcessorImpl processor = BlockchainProcessorImpl.getInstance();
+        processor.popOffTo(0);
+        Nxt.setTime(new Time.CounterTime(Nxt.getEpochTime()));
+        String address = "1XELjH6JgPS48ZL7ew1Zz2xxczyzqit3h";
+        String[] privkeys = new String[]{"5JDSuYmvAAF85XFQxPTkHGFrNfAk3mhtZKmXvsLJiFZ7tDrSBmp"};
+        Assert.assertTrue("Failed to create redeem transaction.", RedeemFunctions.redeem(address, testForgingSecretPhrase, privkeys));
+        blockchainProcessor.generateBlock(testForgingSecretPhrase, Nxt.getEpochTime());
+
+        // the chain a peer would offer: the common block followed by four blocks in two segments
+        Block commonBlock = blockchain.getLastBlock();
+        for (int i = 0; i < 4; i++) {
+            blockchainProcessor.generateBlock(testForgingSecretPhrase, Nxt.getEpochTime());
+        }
+        List<BlockImpl> downloaded = processor.popOffTo(commonBlock);
+        Collections.reverse(downloaded);
+        List<Long> chainBlockIds = new ArrayList<>();
+        chainBlockIds.add(commonBlock.getId());
+        downloaded.forEach(block -> chainBlockIds.add(block.getId()));
+
+        List<BlockImpl> forkBlocks = new ArrayList<>();
+        Assert.assertEquals(3, processor.pushSegment(downloaded.subList(0, 2), chainBlockIds, 1,
+                commonBlock.getHeight(), forkBlocks));
+        Assert.assertEquals(downloaded.get(1).getId(), blockchain.getLastBlock().getId());
+
+        // a block received from another peer is pushed before the next segment
+        blockchainProcessor.generateBlock(testForgingSecretPhrase, Nxt.getEpochTime());
+        long tip = blockchain.getLastBlock().getId();
+        Assert.assertNotEquals(downloaded.get(2).getId(), tip);
+
+        Assert.assertEquals(-1, processor.pushSegment(downloaded.subList(2, 4), chainBlockIds, 3,
+                commonBlock.getHeight(), forkBlocks));
+        Assert.assertTrue(forkBlocks.isEmpty());
+        Assert.assertEquals(tip, blockchain.getLastBlock().getId());
+        AbstractForgingTest.shutdown();
+    }
+
+}
@@ -0,0 +1,154 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt;
+
+import nxt.db.DbKey;
+import nxt.db.EntityCodec;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Arrays;
+import java.util.Properties;
+
+public class EntityCodecTest extends AbstractForgingTest {
+
+    private static final long ID = 4243;
+
+    private static final DbKey.LongKeyFactory<Object> keyFactory = new DbKey.LongKeyFactory<Object>("id") {
+
+        @Override
+        public DbKey newKey(Object o) {
+            throw new UnsupportedOperationException();
+        }
+
+    };
+
+    @BeforeClass
+    public static void init() {
+        Properties properties = newTestProperties();
+        AbstractForgingTest.init(properties);
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        AbstractForgingTest.shutdown();
+    }
+
+    private static void execute(String sql, Object... parameters) throws Exception {
+        Db.db.beginTransaction();
+        try (Connection con = Db.db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                pstmt.setObject(i + 1, parameters[i]);
+            }
+            pstmt.executeUpdate();
+            Db.db.commitTransaction();
+        } finally {
+            Db.db.endTransaction();
+        }
+    }
+
+    private static byte[] bytes(int b) {
+        byte[] bytes = new byte[32];
+        Arrays.fill(bytes, (byte) b);
+        return bytes;
+    }
+
+    // the entity loaded from its row survives encoding, as the store keeps it
+    private static <T> T decode(EntityCodec<T> codec, T t) {
+        byte[] bytes = codec.encode(t);
+        T decoded = codec.decode(keyFactory.newKey(ID), ByteBuffer.wrap(bytes));
+        Assert.assertArrayEquals(bytes, codec.encode(decoded));
+        return decoded;
+    }
+
+    @Test
+    public void account() throws Exception {
+        execute("INSERT INTO account (id, balance, unconfirmed_balance, forged_balance, active_lessee_id, "
+                + "has_control_phasing, height) VALUES (?, 11, 12, 13, 14, TRUE, 0)", ID);
+        try {
+            Account account = Account.getAccount(ID);
+            Assert.assertNotNull(account);
+            Account decoded = decode(Account.accountCodec, account);
+            Assert.assertEquals(ID, decoded.getId());
+            Assert.assertEquals(11, decoded.getBalanceNQT());
+            Assert.assertEquals(12, decoded.getUnconfirmedBalanceNQT());
+            Assert.assertEquals(13, decoded.getForgedBalanceNQT());
+            Assert.assertTrue(decoded.getControls().contains(Account.ControlType.PHASING_ONLY));
+        } finally {
+            execute("DELETE FROM account WHERE id = ?", ID);
+        }
+    }
+
+    @Test
+    public void work() throws Exception {
+        execute("INSERT INTO work (id, block_id, sender_account_id, xel_per_pow, cap_number_pow, blocks_remaining, closed, "
+                + "cancelled, timedout, xel_per_bounty, iterations, iterations_left, received_bounties, received_pows, "
+                + "bounty_limit_per_iteration, originating_height, closing_timestamp, storage_size, verify_hash, source_hash, "
+                + "height) VALUES (?, 21, 22, 23, 24, 25, TRUE, FALSE, TRUE, 26, 27, 28, 29, 30, 31, 32, 33, 34, ?, ?, 0)",
+                ID, bytes(1), bytes(2));
+        try {
+            Work work = Work.getWork(ID);
+            Assert.assertNotNull(work);
+            Work decoded = decode(Work.workCodec, work);
+            Assert.assertEquals(ID, decoded.getId());
+            Assert.assertEquals(21, decoded.getBlock_id());
+            Assert.assertEquals(22, decoded.getSender_account_id());
+            Assert.assertEquals(23, decoded.getXel_per_pow());
+            Assert.assertEquals(24, decoded.getCap_number_pow());
+            Assert.assertEquals(25, decoded.getBlocksRemaining());
+            Assert.assertTrue(decoded.isClosed());
+            Assert.assertFalse(decoded.isCancelled());
+            Assert.assertTrue(decoded.isTimedout());
+            Assert.assertEquals(26, decoded.getXel_per_bounty());
+            Assert.assertEquals(27, decoded.getIterations());
+            Assert.assertEquals(28, decoded.getIterations_left());
+            Assert.assertEquals(29, decoded.getReceived_bounties());
+            Assert.assertEquals(30, decoded.getReceived_pows());
+            Assert.assertEquals(31, decoded.getBounty_limit_per_iteration());
+            Assert.assertEquals(32, decoded.getOriginating_height());
+            Assert.assertEquals(33, decoded.getClosing_timestamp());
+            Assert.assertEquals(34, decoded.getStorage_size());
+        } finally {
+            execute("DELETE FROM work WHERE id = ?", ID);
+        }
+    }
+
+    @Test
+    public void powAndBounty() throws Exception {
+        execute("INSERT INTO pow_and_bounty (id, too_late, work_id, account_id, is_pow, hash, verificator_hash, multiplier, "
+                + "pow_hash, validator, storage_bucket, height) VALUES (?, TRUE, 41, 42, FALSE, ?, ?, ?, ?, ?, 43, 0)",
+                ID, bytes(1), bytes(2), new byte[] {3, 3}, bytes(4), new byte[] {5});
+        try {
+            PowAndBounty powAndBounty = PowAndBounty.getPowOrBountyById(ID);
+            Assert.assertNotNull(powAndBounty);
+            PowAndBounty decoded = decode(PowAndBounty.powAndBountyCodec, powAndBounty);
+            Assert.assertEquals(ID, decoded.getId());
+            Assert.assertEquals(41, decoded.getWork_id());
+            Assert.assertEquals(42, decoded.getAccountId());
+            Assert.assertArrayEquals(bytes(2), decoded.getVerificatorHash());
+        } finally {
+            execute("DELETE FROM pow_and_bounty WHERE id = ?", ID);
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt;
+
+import nxt.db.DbUtils;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Arrays;
+import java.util.Properties;
+
+public class PowAndBountyTest extends AbstractForgingTest {
+
+    private static final long ID = 4242;
+
+    @BeforeClass
+    public static void init() {
+        Properties properties = newTestProperties();
+        AbstractForgingTest.init(properties);
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        AbstractForgingTest.shutdown();
+    }
+
+    private static void execute(String sql, byte[] hash, byte[] verificatorHash) throws Exception {
+        Db.db.beginTransaction();
+        try (Connection con = Db.db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement(sql)) {
+            pstmt.setLong(1, ID);
+            if (hash != null) {
+                DbUtils.setBytes(pstmt, 2, hash);
+                DbUtils.setBytes(pstmt, 3, verificatorHash);
+            }
+            pstmt.executeUpdate();
+            Db.db.commitTransaction();
+        } finally {
+            Db.db.endTransaction();
+        }
+    }
+
+    @Test
+    public void loadVerificatorHash() throws Exception {
+        byte[] hash = new byte[32];
+        byte[] verificatorHash = new byte[32];
+        Arrays.fill(hash, (byte) 1);
+        Arrays.fill(verificatorHash, (byte) 2);
+        execute("INSERT INTO pow_and_bounty (id, work_id, account_id, hash, verificator_hash, height) VALUES (?, 1, 1, ?, ?, 0)",
+                hash, verificatorHash);
+        try {
+            PowAndBounty powAndBounty = PowAndBounty.getPowOrBountyById(ID);
+            Assert.assertNotNull(powAndBounty);
+            Assert.assertArrayEquals(verificatorHash, powAndBounty.getVerificatorHash());
+        } finally {
+            execute("DELETE FROM pow_and_bounty WHERE id = ?", null, null);
+        }
+    }
+
+}
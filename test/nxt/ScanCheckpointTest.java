@@ -0,0 +1,105 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt;
+
+import nxt.crypto.Crypto;
+import nxt.helpers.RedeemFunctions;
+import nxt.util.Listener;
+import nxt.util.Time;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+public class ScanCheckpointTest extends AbstractForgingTest {
+
+    @Test
+    public void resumeFromCheckpoint() throws Exception {
+        Properties properties = newTestProperties();
+        properties.setProperty("nxt.enableFakeForging", "true");
+        properties.setProperty("nxt.timeMultiplier", "1");
+        AbstractForgingTest.init(properties);
+
+        Nxt.getBlockchainProcessor().popOffTo(0);
+        Nxt.setTime(new Time.CounterTime(Nxt.getEpochTime()));
+        String address = "1XELjH6JgPS48ZL7ew1Zz2xxczyzqit3h";
+        String[] privkeys = new String[]{"5JDSuYmvAAF85XFQxPTkHGFrNfAk3mhtZKmXvsLJiFZ7tDrSBmp"};
+        Assert.assertTrue("Failed to create redeem transaction.", RedeemFunctions.redeem(address, testForgingSecretPhrase, privkeys));
+        for (int i = 0; i < 30; i++) {
+            blockchainProcessor.generateBlock(testForgingSecretPhrase, Nxt.getEpochTime());
+        }
+        int height = blockchain.getHeight();
+        long accountId = Account.getId(Crypto.getPublicKey(testForgingSecretPhrase));
+        long balance = Account.getAccount(accountId).getBalanceNQT();
+        long forgedBalance = Account.getAccount(accountId).getForgedBalanceNQT();
+
+        // interrupt a full scan after the block at height 23, with nxt.scanCheckpointInterval=10 the last
+        // checkpoint was recorded with block 19
+        Listener<Block> interrupt = block -> {
+            if (block.getHeight() == 23) {
+                throw new IllegalStateException("Scan interrupted");
+            }
+        };
+        blockchainProcessor.addListener(interrupt, BlockchainProcessor.Event.BLOCK_SCANNED);
+        try {
+            blockchainProcessor.scan(0, false);
+            Assert.fail("Scan was not interrupted");
+        } catch (IllegalStateException expected) {
+        } finally {
+            blockchainProcessor.removeListener(interrupt, BlockchainProcessor.Event.BLOCK_SCANNED);
+        }
+        Assert.assertEquals(23, blockchain.getHeight());
+        assertScan(true, 20);
+
+        // the derived tables are rolled back to the checkpoint, and the scan applies the blocks from there on
+        int[] firstHeight = new int[]{-1};
+        Listener<Block> first = block -> {
+            if (firstHeight[0] < 0) {
+                firstHeight[0] = block.getHeight();
+            }
+        };
+        blockchainProcessor.addListener(first, BlockchainProcessor.Event.BLOCK_SCANNED);
+        try {
+            blockchainProcessor.runScheduledScan();
+        } finally {
+            blockchainProcessor.removeListener(first, BlockchainProcessor.Event.BLOCK_SCANNED);
+        }
+        Assert.assertEquals(20, firstHeight[0]);
+        Assert.assertEquals(height, blockchain.getHeight());
+        Assert.assertEquals(balance, Account.getAccount(accountId).getBalanceNQT());
+        Assert.assertEquals(forgedBalance, Account.getAccount(accountId).getForgedBalanceNQT());
+        assertScan(false, 0);
+
+        AbstractForgingTest.shutdown();
+    }
+
+    private static void assertScan(boolean rescan, int checkpoint) throws SQLException {
+        try (Connection con = Db.db.getConnection();
+             Statement stmt = con.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT rescan, checkpoint FROM scan")) {
+            Assert.assertTrue(rs.next());
+            Assert.assertEquals(rescan, rs.getBoolean("rescan"));
+            Assert.assertEquals(checkpoint, rs.getInt("checkpoint"));
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt;
+
+import nxt.db.DerivedDbTable;
+import nxt.helpers.RedeemFunctions;
+import nxt.util.Convert;
+import nxt.util.Time;
+import org.json.simple.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+public class SnapshotTest extends AbstractForgingTest {
+
+    @Test
+    public void exportAndRestore() throws Exception {
+        Properties properties = newTestProperties();
+        properties.setProperty("nxt.enableFakeForging", "true");
+        properties.setProperty("nxt.timeMultiplier", "1");
+        AbstractForgingTest.init(properties);
+
+        Nxt.getBlockchainProcessor().popOffTo(0);
+        Nxt.setTime(new Time.CounterTime(Nxt.getEpochTime()));
+        String address = "1XELjH6JgPS48ZL7ew1Zz2xxczyzqit3h";
+        String[] privkeys = new String[]{"5JDSuYmvAAF85XFQxPTkHGFrNfAk3mhtZKmXvsLJiFZ7tDrSBmp"};
+        Assert.assertTrue("Failed to create redeem transaction.", RedeemFunctions.redeem(address, testForgingSecretPhrase, privkeys));
+        for (int i = 0; i < Constants.MAX_ROLLBACK + 10; i++) {
+            blockchainProcessor.generateBlock(testForgingSecretPhrase, Nxt.getEpochTime());
+        }
+
+        // the snapshot is taken below the blocks that can be rolled back
+        File dir = Files.createTempDirectory("snapshot").toFile();
+        JSONObject manifest = Snapshot.export(dir);
+        int height = ((Number) manifest.get("height")).intValue();
+        Assert.assertEquals(blockchain.getHeight() - Constants.MAX_ROLLBACK, height);
+        File file = new File((String) manifest.get("file"));
+        String hash = (String) manifest.get("hash");
+
+        // the restored tables must match the database rolled back to the snapshot height
+        blockchainProcessor.popOffTo(height);
+        Map<String, List<List<Object>>> expected = dumpTables(height);
+        Assert.assertTrue(expected.get("block").size() == height + 1);
+        Assert.assertFalse(expected.get("account").isEmpty());
+        int dbVersion = getDbVersion();
+
+        // a snapshot that does not match the trusted hash is not run
+        clearTables();
+        try {
+            Snapshot.restore(file, Convert.toHexString(new byte[32]), dbVersion);
+            Assert.fail("Restored a snapshot with the wrong hash");
+        } catch (RuntimeException expectedException) {
+        }
+        Assert.assertTrue(dumpTables(height).get("block").isEmpty());
+
+        Snapshot.restore(file, hash, dbVersion);
+        Map<String, List<List<Object>>> restored = dumpTables(height);
+        Assert.assertEquals(expected.keySet(), restored.keySet());
+        for (String table : expected.keySet()) {
+            Assert.assertEquals(table, expected.get(table), restored.get(table));
+        }
+        try (Connection con = Db.db.getConnection();
+             Statement stmt = con.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT rescan, snapshot_height FROM scan")) {
+            Assert.assertTrue(rs.next());
+            Assert.assertFalse(rs.getBoolean("rescan"));
+            Assert.assertEquals(height, rs.getInt("snapshot_height"));
+        }
+
+        Files.deleteIfExists(file.toPath());
+        Files.deleteIfExists(dir.toPath());
+        AbstractForgingTest.shutdown();
+    }
+
+    private static List<String> getTables() {
+        List<String> tables = new ArrayList<>(Arrays.asList("block", "transaction", "referenced_transaction"));
+        for (DerivedDbTable table : blockchainProcessor.getDerivedTables()) {
+            tables.add(table.toString());
+        }
+        return tables;
+    }
+
+    private static Map<String, List<List<Object>>> dumpTables(int height) throws SQLException {
+        Map<String, List<List<Object>>> tables = new LinkedHashMap<>();
+        try (Connection con = Db.db.getConnection();
+             Statement stmt = con.createStatement()) {
+            for (String table : getTables()) {
+                List<List<Object>> rows = new ArrayList<>();
+                try (ResultSet rs = stmt.executeQuery("SELECT * FROM " + table
+                        + (table.equals("referenced_transaction") ? "" : " WHERE height <= " + height) + " ORDER BY db_id")) {
+                    int columns = rs.getMetaData().getColumnCount();
+                    while (rs.next()) {
+                        List<Object> row = new ArrayList<>();
+                        for (int i = 1; i <= columns; i++) {
+                            row.add(toComparable(rs.getObject(i)));
+                        }
+                        rows.add(row);
+                    }
+                }
+                tables.put(table, rows);
+            }
+        }
+        return tables;
+    }
+
+    private static Object toComparable(Object value) throws SQLException {
+        if (value instanceof byte[]) {
+            return Convert.toHexString((byte[]) value);
+        }
+        if (value instanceof Array) {
+            value = ((Array) value).getArray();
+        }
+        if (value instanceof Object[]) {
+            List<Object> elements = new ArrayList<>();
+            for (Object element : (Object[]) value) {
+                elements.add(toComparable(element));
+            }
+            return elements;
+        }
+        return value;
+    }
+
+    private static void clearTables() throws SQLException {
+        try (Connection con = Db.db.getConnection();
+             Statement stmt = con.createStatement()) {
+            stmt.executeUpdate("SET REFERENTIAL_INTEGRITY FALSE");
+            for (String table : getTables()) {
+                stmt.executeUpdate("TRUNCATE TABLE " + table);
+            }
+            stmt.executeUpdate("SET REFERENTIAL_INTEGRITY TRUE");
+        }
+    }
+
+    private static int getDbVersion() throws SQLException {
+        try (Connection con = Db.db.getConnection();
+             Statement stmt = con.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT next_update FROM version")) {
+            Assert.assertTrue(rs.next());
+            return rs.getInt(1) - 1;
+        }
+    }
+
+}
@@ -0,0 +1,178 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt;
+
+import nxt.crypto.Crypto;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class UnconfirmedTransactionPoolTest extends AbstractBlockchainTest {
+
+    private static final String SECRET_PHRASE_1 = "aSykrgKGZNlSVOMDxkZZgbTvQqJPGtsBggb";
+    private static final String SECRET_PHRASE_2 = "tqvOzpIjZyhtYGrhWAIzsjsTmZIGmwfXiaxrqHYmpkHtMQoTEmWpNQvbBxcrs";
+
+    private static UnconfirmedTransaction t1;
+    private static UnconfirmedTransaction t2;
+    private static UnconfirmedTransaction t3;
+
+    @BeforeClass
+    public static void init() throws Exception {
+        AbstractBlockchainTest.init(newTestProperties());
+        t1 = newTransaction(SECRET_PHRASE_1, Constants.ONE_NXT, (short) 1440, 1);
+        t2 = newTransaction(SECRET_PHRASE_1, 2 * Constants.ONE_NXT, (short) 60, 2);
+        t3 = newTransaction(SECRET_PHRASE_2, 3 * Constants.ONE_NXT, (short) 10, 3);
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        AbstractBlockchainTest.shutdown();
+    }
+
+    private static UnconfirmedTransaction newTransaction(String secretPhrase, long feeNQT, short deadline, long arrivalTimestamp)
+            throws Exception {
+        TransactionImpl transaction = (TransactionImpl) Nxt.newTransactionBuilder(Crypto.getPublicKey(secretPhrase),
+                Constants.ONE_NXT, feeNQT, deadline, Attachment.ORDINARY_PAYMENT)
+                .recipientId(Account.getId(Crypto.getPublicKey(SECRET_PHRASE_2)) + arrivalTimestamp)
+                .build(secretPhrase);
+        return new UnconfirmedTransaction(transaction, arrivalTimestamp);
+    }
+
+    /**
+     * The contents of the id, sender, expiration and priority indexes
+     */
+    private static List<Object> indexes(UnconfirmedTransactionPool pool) {
+        List<Object> indexes = new ArrayList<>();
+        List<UnconfirmedTransaction> byId = new ArrayList<>();
+        for (UnconfirmedTransaction transaction : Arrays.asList(t1, t2, t3)) {
+            byId.add(pool.get(transaction.getId()));
+        }
+        indexes.add(byId);
+        indexes.add(pool.size());
+        indexes.add(pool.getBySender(t1.getSenderId()));
+        indexes.add(pool.getBySender(t3.getSenderId()));
+        indexes.add(pool.getExpired(Integer.MAX_VALUE));
+        indexes.add(pool.getAll(0, -1));
+        return indexes;
+    }
+
+    @Test
+    public void indexes() {
+        UnconfirmedTransactionPool pool = new UnconfirmedTransactionPool();
+        Assert.assertTrue(pool.add(t1));
+        Assert.assertTrue(pool.add(t2));
+        Assert.assertTrue(pool.add(t3));
+        Assert.assertFalse(pool.add(t1));
+        Assert.assertEquals(Arrays.asList(t2, t1), pool.getBySender(t1.getSenderId()));
+        Assert.assertEquals(Arrays.asList(t3, t2, t1), pool.getExpired(Integer.MAX_VALUE));
+        Assert.assertEquals(Arrays.asList(t3, t2, t1), pool.getAll(0, -1));
+        Assert.assertEquals(t2, pool.remove(t2.getId()));
+        Assert.assertNull(pool.remove(t2.getId()));
+        Assert.assertEquals(Arrays.asList(t3, t1), pool.getAll(0, -1));
+    }
+
+    @Test
+    public void rollbackAddAndRemove() {
+        UnconfirmedTransactionPool pool = new UnconfirmedTransactionPool();
+        pool.add(t1);
+        pool.add(t3);
+        List<Object> before = indexes(pool);
+        long version = pool.getVersion();
+        Db.db.beginTransaction();
+        try {
+            Assert.assertTrue(pool.add(t2));
+            Assert.assertEquals(t3, pool.remove(t3.getId()));
+            Assert.assertEquals(t1, pool.remove(t1.getId()));
+            Assert.assertNotEquals(before, indexes(pool));
+            Db.db.rollbackTransaction();
+        } finally {
+            Db.db.endTransaction();
+        }
+        Assert.assertEquals(before, indexes(pool));
+        Assert.assertNotEquals(version, pool.getVersion());
+    }
+
+    @Test
+    public void rollbackClear() {
+        UnconfirmedTransactionPool pool = new UnconfirmedTransactionPool();
+        pool.add(t1);
+        pool.add(t2);
+        pool.add(t3);
+        List<Object> before = indexes(pool);
+        Db.db.beginTransaction();
+        try {
+            Assert.assertEquals(Arrays.asList(t3, t2, t1), pool.clear());
+            Assert.assertEquals(0, pool.size());
+            Assert.assertTrue(pool.getBySender(t1.getSenderId()).isEmpty());
+            Assert.assertTrue(pool.getExpired(Integer.MAX_VALUE).isEmpty());
+            Db.db.rollbackTransaction();
+        } finally {
+            Db.db.endTransaction();
+        }
+        Assert.assertEquals(before, indexes(pool));
+    }
+
+    @Test
+    public void changesSince() {
+        UnconfirmedTransactionPool pool = new UnconfirmedTransactionPool();
+        pool.add(t1);
+        long version = pool.getVersion();
+        Db.db.beginTransaction();
+        try {
+            pool.add(t2);
+            pool.remove(t1.getId());
+            Db.db.rollbackTransaction();
+        } finally {
+            Db.db.endTransaction();
+        }
+        // the rolled back changes are followed by the ones undoing them
+        List<UnconfirmedTransactionPool.Change> changes = pool.getChangesSince(version);
+        Assert.assertEquals(4, changes.size());
+        Assert.assertEquals(Arrays.asList(t2, t1, t1, t2), Arrays.asList(changes.get(0).transaction, changes.get(1).transaction,
+                changes.get(2).transaction, changes.get(3).transaction));
+        Assert.assertEquals(Arrays.asList(true, false, true, false), Arrays.asList(changes.get(0).added, changes.get(1).added,
+                changes.get(2).added, changes.get(3).added));
+        Assert.assertTrue(pool.getChangesSince(pool.getVersion()).isEmpty());
+        Assert.assertNull(pool.getChangesSince(version - 2));
+    }
+
+    @Test
+    public void rollbackAfterCommit() {
+        UnconfirmedTransactionPool pool = new UnconfirmedTransactionPool();
+        Db.db.beginTransaction();
+        try {
+            pool.add(t1);
+            pool.add(t2);
+            Db.db.commitTransaction();
+            List<Object> committed = indexes(pool);
+            pool.remove(t1.getId());
+            pool.add(t3);
+            Db.db.rollbackTransaction();
+            Assert.assertEquals(committed, indexes(pool));
+        } finally {
+            Db.db.endTransaction();
+        }
+        Assert.assertEquals(Arrays.asList(t2, t1), pool.getAll(0, -1));
+    }
+
+}
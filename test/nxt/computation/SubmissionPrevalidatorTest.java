@@ -0,0 +1,72 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt.computation;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SubmissionPrevalidatorTest {
+
+    private static final byte[] PUBLIC_KEY = new byte[32];
+    private static final byte[] MULTIPLIER = new byte[32];
+    private static final int[] STORAGE = new int[]{1, 2, 3};
+    private static final String VERIFY = "function verify() {}";
+
+    static {
+        PUBLIC_KEY[0] = 1;
+        MULTIPLIER[0] = 2;
+    }
+
+    private final AtomicInteger executions = new AtomicInteger();
+
+    private boolean verify(byte[] publicKey, long blockId, byte[] multiplier, int[] storage, String verifyFunction,
+                           SubmissionPrevalidator.Verdict precomputed) {
+        return SubmissionPrevalidator.verify(publicKey, blockId, multiplier, storage, verifyFunction, () -> {
+            executions.incrementAndGet();
+            return true;
+        }, precomputed);
+    }
+
+    @Test
+    public void reusesMatchingVerdict() {
+        SubmissionPrevalidator.Verdict verdict = SubmissionPrevalidator.newVerdict(PUBLIC_KEY, 7, MULTIPLIER,
+                STORAGE, VERIFY, false);
+        Assert.assertFalse(verify(PUBLIC_KEY.clone(), 7, MULTIPLIER.clone(), STORAGE.clone(), VERIFY, verdict));
+        Assert.assertEquals(0, executions.get());
+    }
+
+    @Test
+    public void executesOnMismatch() {
+        SubmissionPrevalidator.Verdict verdict = SubmissionPrevalidator.newVerdict(PUBLIC_KEY, 7, MULTIPLIER,
+                STORAGE, VERIFY, false);
+        byte[] otherKey = PUBLIC_KEY.clone();
+        otherKey[31] = 1;
+        byte[] otherMultiplier = MULTIPLIER.clone();
+        otherMultiplier[31] = 1;
+        Assert.assertTrue(verify(otherKey, 7, MULTIPLIER, STORAGE, VERIFY, verdict));
+        Assert.assertTrue(verify(PUBLIC_KEY, 0, MULTIPLIER, STORAGE, VERIFY, verdict));
+        Assert.assertTrue(verify(PUBLIC_KEY, 7, otherMultiplier, STORAGE, VERIFY, verdict));
+        Assert.assertTrue(verify(PUBLIC_KEY, 7, MULTIPLIER, new int[]{1, 2, 4}, VERIFY, verdict));
+        Assert.assertTrue(verify(PUBLIC_KEY, 7, MULTIPLIER, STORAGE, VERIFY + " ", verdict));
+        Assert.assertTrue(verify(PUBLIC_KEY, 7, MULTIPLIER, STORAGE, VERIFY, null));
+        Assert.assertEquals(6, executions.get());
+    }
+
+}
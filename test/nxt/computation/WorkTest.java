@@ -5,6 +5,7 @@ import nxt.db.DbIterator;
 import nxt.execution.ExecutionEngineTests;
 import nxt.helpers.RedeemFunctions;
 import nxt.http.JSONData;
+import nxt.http.ParameterParser;
 import nxt.util.Convert;
 import org.json.simple.JSONStreamAware;
 import org.junit.After;
@@ -277,5 +278,44 @@ public class WorkTest extends AbstractForgingTest {
 
 
 
+    }
+    private static Transaction pushSubmission(CommandPowBty pow) throws Exception {
+        JSONStreamAware[] txs = MessageEncoder.encodeTransactions(MessageEncoder.encodeAttachment(pow),
+                AbstractForgingTest.testForgingSecretPhrase);
+        Transaction transaction = ParameterParser.parseTransaction(txs[0].toString(), null, null).build();
+        Nxt.getTransactionProcessor().broadcast(transaction);
+        return transaction;
+    }
+
+    @Test
+    public void invalidSubmissionDroppedFromPool() throws Exception {
+
+        redeemPubkeyhash();
+        // the verify function rejects every bounty
+        String code = ExecutionEngineTests.readFile("test/testfiles/bountyreject.epl", Charset.forName("UTF-8"));
+        CommandNewWork work = new CommandNewWork(10, (short)100,1000001,1000001,2,2, code.getBytes());
+        MessageEncoder.push(work, AbstractForgingTest.testForgingSecretPhrase);
+        AbstractBlockchainTest.forgeNumberOfBlocks(1, AbstractForgingTest.testForgingSecretPhrase);
+
+        Work w;
+        try(DbIterator<Work> wxx = Work.getActiveWork()){
+            w = wxx.next();
+        }
+
+        int[] testarray = new int[w.getStorage_size()];
+        testarray[0] = 6000;
+        Transaction invalid = pushSubmission(new CommandPowBty(w.getId(), false, Convert.int2byte(new int[8]),
+                new byte[32], Convert.int2byte(testarray), 0));
+
+        long deadline = System.currentTimeMillis() + 30000;
+        while (Nxt.getTransactionProcessor().getUnconfirmedTransaction(invalid.getId()) != null
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        Assert.assertNull(Nxt.getTransactionProcessor().getUnconfirmedTransaction(invalid.getId()));
+
+        AbstractBlockchainTest.forgeNumberOfBlocks(2, AbstractForgingTest.testForgingSecretPhrase);
+        Assert.assertNull(Nxt.getBlockchain().getTransaction(invalid.getId()));
+        Assert.assertEquals(0, Work.getWorkById(w.getId()).getReceived_bounties());
     }
 }
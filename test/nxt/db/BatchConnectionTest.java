@@ -0,0 +1,126 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt.db;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+public class BatchConnectionTest {
+
+    private static final String INSERT = "INSERT INTO entry (id, amount) VALUES (?, ?)";
+    private static final String UPDATE = "UPDATE entry SET amount = amount + 1 WHERE id = ?";
+
+    private Connection con;
+
+    @Before
+    public void open() throws Exception {
+        con = DriverManager.getConnection("jdbc:h2:mem:");
+        try (Statement stmt = con.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE entry (id BIGINT NOT NULL, amount BIGINT NOT NULL)");
+        }
+    }
+
+    @After
+    public void close() throws Exception {
+        con.close();
+    }
+
+    private long getAmount(long id) throws Exception {
+        try (PreparedStatement pstmt = con.prepareStatement("SELECT amount FROM entry WHERE id = ?")) {
+            pstmt.setLong(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : -1;
+            }
+        }
+    }
+
+    private static void save(Connection batchCon, long id) throws Exception {
+        try (PreparedStatement pstmt = batchCon.prepareStatement(INSERT)) {
+            pstmt.setLong(1, id);
+            pstmt.setLong(2, id * 10);
+            Assert.assertEquals(Statement.SUCCESS_NO_INFO, pstmt.executeUpdate());
+        }
+        try (PreparedStatement pstmt = batchCon.prepareStatement(UPDATE)) {
+            pstmt.setLong(1, id);
+            pstmt.executeUpdate();
+        }
+    }
+
+    @Test
+    public void batchesInPreparedOrder() throws Exception {
+        try (BatchConnection batchCon = new BatchConnection(con)) {
+            for (long id = 1; id <= 3; id++) {
+                batchCon.nextEntity();
+                save(batchCon, id);
+            }
+            Assert.assertEquals(-1, getAmount(1));
+            batchCon.executeBatches();
+        }
+        for (long id = 1; id <= 3; id++) {
+            Assert.assertEquals(id * 10 + 1, getAmount(id));
+        }
+        Assert.assertFalse(con.isClosed());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void outOfOrder() throws Exception {
+        try (BatchConnection batchCon = new BatchConnection(con)) {
+            save(batchCon, 1);
+            batchCon.nextEntity();
+            try (PreparedStatement pstmt = batchCon.prepareStatement(UPDATE)) {
+                pstmt.setLong(1, 2);
+                pstmt.executeUpdate();
+            }
+            try (PreparedStatement pstmt = batchCon.prepareStatement(INSERT)) {
+                pstmt.setLong(1, 2);
+                pstmt.setLong(2, 20);
+                pstmt.executeUpdate();
+            }
+        }
+    }
+
+    @Test
+    public void unsupported() throws Exception {
+        try (BatchConnection batchCon = new BatchConnection(con)) {
+            try {
+                batchCon.createStatement();
+                Assert.fail();
+            } catch (UnsupportedOperationException expected) {
+            }
+            try {
+                batchCon.prepareStatement(INSERT, Statement.RETURN_GENERATED_KEYS);
+                Assert.fail();
+            } catch (UnsupportedOperationException expected) {
+            }
+            try (PreparedStatement pstmt = batchCon.prepareStatement("SELECT amount FROM entry")) {
+                pstmt.executeQuery();
+                Assert.fail();
+            } catch (UnsupportedOperationException expected) {
+            }
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt.db;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public class KeyValueEntityStorageTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static TransactionalDb db;
+
+    @BeforeClass
+    public static void init() throws SQLException {
+        db = new TransactionalDb(new BasicDb.DbProperties()
+                .dbUrl("jdbc:h2:mem:entitystore")
+                .dbUsername("sa")
+                .dbPassword("sa")
+                .maxConnections(10)
+                .loginTimeout(70)
+                .defaultLockTimeout(60000)
+                .maxMemoryRows(100000));
+        db.init(new DbVersion() {
+            @Override
+            protected void update(int nextUpdate) {
+            }
+        });
+        try (Connection con = db.getConnection();
+             Statement stmt = con.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE entity_store (seq BIGINT NOT NULL)");
+            stmt.executeUpdate("INSERT INTO entity_store (seq) VALUES (-1)");
+        }
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        db.shutdown();
+    }
+
+    private static long getSeq(Connection con) throws SQLException {
+        try (PreparedStatement pstmt = con.prepareStatement("SELECT seq FROM entity_store");
+             ResultSet rs = pstmt.executeQuery()) {
+            Assert.assertTrue(rs.next());
+            return rs.getLong("seq");
+        }
+    }
+
+    private static void setSeq(Connection con, long seq) throws SQLException {
+        try (PreparedStatement pstmt = con.prepareStatement("UPDATE entity_store SET seq = ?")) {
+            pstmt.setLong(1, seq);
+            pstmt.executeUpdate();
+        }
+    }
+
+    // a store commit and the database commit saving its sequence number, as for a transaction
+    private static void put(KeyValueStore store, Connection con, long id) throws Exception {
+        long seq = store.getLastSeq() + 1;
+        setSeq(con, seq);
+        KeyValueStore.Batch batch = new KeyValueStore.Batch();
+        batch.put("t", ByteBuffer.allocate(8).putLong(id).array(), 1, new byte[] {(byte) id});
+        store.commit(batch, seq);
+    }
+
+    @Test
+    public void rebuildOnSeqMismatch() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("store.kv");
+        try (Connection con = db.getConnection()) {
+            // a new store starts with the sequence number of the database
+            KeyValueStore store = KeyValueEntityStorage.open(path, con);
+            Assert.assertEquals(getSeq(con), store.getLastSeq());
+            put(store, con, 1);
+            store.close();
+
+            // in sync, the tables are kept
+            store = KeyValueEntityStorage.open(path, con);
+            Assert.assertEquals(getSeq(con), store.getLastSeq());
+            Assert.assertTrue(store.contains("t"));
+            put(store, con, 2);
+            long seq = store.getLastSeq();
+            store.close();
+
+            // the database committed a transaction the store did not, the tables are loaded again
+            setSeq(con, seq + 1);
+            store = KeyValueEntityStorage.open(path, con);
+            Assert.assertFalse(store.contains("t"));
+            Assert.assertEquals(getSeq(con), store.getLastSeq());
+            put(store, con, 3);
+            store.close();
+
+            // the store committed a transaction the database did not
+            store = KeyValueStore.open(path);
+            put(store, con, 4);
+            store.close();
+            setSeq(con, seq);
+            store = KeyValueEntityStorage.open(path, con);
+            Assert.assertFalse(store.contains("t"));
+            Assert.assertEquals(getSeq(con), store.getLastSeq());
+            put(store, con, 5);
+            store.close();
+
+            // left in place while the node ran without the store
+            KeyValueEntityStorage.invalidate(con);
+            store = KeyValueEntityStorage.open(path, con);
+            Assert.assertFalse(store.contains("t"));
+            Assert.assertEquals(getSeq(con), store.getLastSeq());
+            store.close();
+        }
+    }
+
+}
@@ -0,0 +1,177 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt.db;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+public class KeyValueStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] key(long id) {
+        return ByteBuffer.allocate(8).putLong(id).array();
+    }
+
+    private static byte[] value(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String get(KeyValueStore store, long id, int height) {
+        byte[] value = store.get("t", key(id), height);
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static void put(KeyValueStore store, long seq, long id, int height, String value) throws Exception {
+        KeyValueStore.Batch batch = new KeyValueStore.Batch();
+        batch.put("t", key(id), height, value == null ? null : value(value));
+        store.commit(batch, seq);
+    }
+
+    @Test
+    public void versionsByHeight() throws Exception {
+        KeyValueStore store = KeyValueStore.open(folder.getRoot().toPath().resolve("store.kv"));
+        put(store, 1, 1, 10, "a");
+        put(store, 2, 1, 20, "b");
+        put(store, 3, 1, 30, null);
+        Assert.assertNull(get(store, 1, 5));
+        Assert.assertEquals("a", get(store, 1, 15));
+        Assert.assertEquals("b", get(store, 1, 29));
+        Assert.assertNull(get(store, 1, Integer.MAX_VALUE));
+        KeyValueStore.Batch batch = new KeyValueStore.Batch();
+        batch.rollback("t", 25);
+        store.commit(batch, 4);
+        Assert.assertEquals("b", get(store, 1, Integer.MAX_VALUE));
+        put(store, 5, 1, 20, "c");
+        Assert.assertEquals("c", get(store, 1, Integer.MAX_VALUE));
+        Assert.assertEquals(5, store.getLastSeq());
+        store.close();
+    }
+
+    @Test
+    public void trim() throws Exception {
+        KeyValueStore store = KeyValueStore.open(folder.getRoot().toPath().resolve("store.kv"));
+        put(store, 1, 1, 10, "a");
+        put(store, 2, 1, 20, "b");
+        put(store, 3, 1, 30, "c");
+        put(store, 4, 2, 10, "x");
+        put(store, 5, 2, 20, null);
+        long liveBytes = store.getLiveBytes();
+        KeyValueStore.Batch batch = new KeyValueStore.Batch();
+        batch.trim("t", 25);
+        store.commit(batch, 6);
+        Assert.assertNull(get(store, 1, 15));
+        Assert.assertEquals("b", get(store, 1, 25));
+        Assert.assertEquals("c", get(store, 1, Integer.MAX_VALUE));
+        Assert.assertNull(get(store, 2, 25));
+        Assert.assertTrue(store.getLiveBytes() < liveBytes);
+        store.close();
+    }
+
+    @Test
+    public void reopenDiscardsUncommittedBatch() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("store.kv");
+        KeyValueStore store = KeyValueStore.open(path);
+        put(store, 1, 1, 10, "a");
+        put(store, 2, 1, 20, "b");
+        long end = store.getSize();
+        store.close();
+        // damage the commit record of the last batch
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(end - 1);
+            int b = file.read();
+            file.seek(end - 1);
+            file.write(b ^ 0xff);
+        }
+        store = KeyValueStore.open(path);
+        Assert.assertEquals(1, store.getLastSeq());
+        Assert.assertTrue(store.contains("t"));
+        Assert.assertEquals("a", get(store, 1, Integer.MAX_VALUE));
+        put(store, 2, 1, 30, "c");
+        store.close();
+        store = KeyValueStore.open(path);
+        Assert.assertEquals(2, store.getLastSeq());
+        Assert.assertEquals("a", get(store, 1, 20));
+        Assert.assertEquals("c", get(store, 1, Integer.MAX_VALUE));
+        store.close();
+    }
+
+    @Test
+    public void compact() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("store.kv");
+        KeyValueStore store = KeyValueStore.open(path);
+        for (int height = 1; height <= 100; height++) {
+            KeyValueStore.Batch batch = new KeyValueStore.Batch();
+            for (long id = 0; id < 10; id++) {
+                batch.put("t", key(id), height, value("value" + id + "@" + height));
+            }
+            batch.trim("t", height);
+            store.commit(batch, height);
+        }
+        long size = store.getSize();
+        store.compact();
+        Assert.assertTrue(store.getSize() < size / 10);
+        Assert.assertEquals("value3@100", get(store, 3, Integer.MAX_VALUE));
+        Assert.assertEquals("value3@99", get(store, 3, 99));
+        store.close();
+        store = KeyValueStore.open(path);
+        Assert.assertEquals(100, store.getLastSeq());
+        Assert.assertEquals("value9@100", get(store, 9, Integer.MAX_VALUE));
+        Assert.assertNull(get(store, 9, 98));
+        store.close();
+    }
+
+    @Test
+    public void full() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("store.kv");
+        int maxSize = 2 * 1024 * 1024;
+        KeyValueStore store = KeyValueStore.open(path, maxSize);
+        byte[] value = new byte[100 * 1024];
+        long seq = 0;
+        try {
+            while (true) {
+                KeyValueStore.Batch batch = new KeyValueStore.Batch();
+                batch.put("t", key(seq + 1), 1, value);
+                store.commit(batch, seq + 1);
+                seq++;
+            }
+        } catch (IOException expected) {
+        }
+        // the failed batch leaves the committed ones as they were
+        Assert.assertTrue(seq > 0);
+        Assert.assertTrue(store.getSize() <= maxSize);
+        Assert.assertEquals(seq, store.getLastSeq());
+        Assert.assertNull(store.get("t", key(seq + 1), 1));
+        Assert.assertArrayEquals(value, store.get("t", key(seq), 1));
+        store.close();
+        store = KeyValueStore.open(path, maxSize);
+        Assert.assertEquals(seq, store.getLastSeq());
+        Assert.assertArrayEquals(value, store.get("t", key(1), 1));
+        store.close();
+    }
+
+}
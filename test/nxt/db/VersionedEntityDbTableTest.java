@@ -0,0 +1,238 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt.db;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class VersionedEntityDbTableTest {
+
+    private static final DbKey.LongKeyFactory<Object> longKeyFactory = new DbKey.LongKeyFactory<Object>("id") {
+
+        @Override
+        public DbKey newKey(Object o) {
+            throw new UnsupportedOperationException();
+        }
+
+    };
+
+    private static final DbKey.LinkKeyFactory<Object> linkKeyFactory = new DbKey.LinkKeyFactory<Object>("id", "id_b") {
+
+        @Override
+        public DbKey newKey(Object o) {
+            throw new UnsupportedOperationException();
+        }
+
+    };
+
+    private static TransactionalDb db;
+
+    @BeforeClass
+    public static void init() {
+        db = new TransactionalDb(new BasicDb.DbProperties()
+                .dbUrl("jdbc:h2:mem:versioned")
+                .dbUsername("sa")
+                .dbPassword("sa")
+                .maxConnections(10)
+                .loginTimeout(70)
+                .defaultLockTimeout(60000)
+                .maxMemoryRows(100000));
+        db.init(new DbVersion() {
+            @Override
+            protected void update(int nextUpdate) {
+            }
+        });
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        db.shutdown();
+    }
+
+    private static void execute(String sql) throws SQLException {
+        try (Connection con = db.getConnection();
+             Statement stmt = con.createStatement()) {
+            stmt.executeUpdate(sql);
+        }
+    }
+
+    private static void createTable(String table) throws SQLException {
+        execute("DROP TABLE IF EXISTS " + table);
+        execute("CREATE TABLE " + table + " (db_id IDENTITY, id BIGINT NOT NULL, id_b BIGINT NOT NULL, "
+                + "value INT NOT NULL, height INT NOT NULL, latest BOOLEAN NOT NULL)");
+        execute("CREATE INDEX " + table + "_id_height_idx ON " + table + " (id, id_b, height DESC)");
+        execute("CREATE INDEX " + table + "_height_idx ON " + table + " (height)");
+    }
+
+    /**
+     * Write the same random version histories into the tables, a key either gets a new version or is deleted,
+     * keeping its last version with latest = FALSE
+     */
+    private static void populate(Random random, boolean link, int maxHeight, String... tables) throws SQLException {
+        try (Connection con = db.getConnection()) {
+            for (int height = 1; height <= maxHeight; height++) {
+                for (long id = 1; id <= 8; id++) {
+                    long idB = link ? random.nextInt(2) : 0;
+                    int change = random.nextInt(4);
+                    if (change > 1) {
+                        continue;
+                    }
+                    for (String table : tables) {
+                        try (PreparedStatement pstmt = con.prepareStatement("UPDATE " + table + " SET latest = FALSE "
+                                + "WHERE id = ? AND id_b = ? AND latest = TRUE")) {
+                            pstmt.setLong(1, id);
+                            pstmt.setLong(2, idB);
+                            pstmt.executeUpdate();
+                        }
+                        try (PreparedStatement pstmt = con.prepareStatement("MERGE INTO " + table
+                                + " (id, id_b, value, height, latest) KEY (id, id_b, height) VALUES (?, ?, ?, ?, ?)")) {
+                            pstmt.setLong(1, id);
+                            pstmt.setLong(2, idB);
+                            pstmt.setInt(3, height * 100 + (int) id);
+                            pstmt.setInt(4, height);
+                            pstmt.setBoolean(5, change == 0);
+                            pstmt.executeUpdate();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static List<String> dump(String table) throws SQLException {
+        List<String> rows = new ArrayList<>();
+        try (Connection con = db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT id, id_b, value, height, latest FROM " + table
+                     + " ORDER BY id, id_b, height");
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                rows.add(rs.getLong("id") + "/" + rs.getLong("id_b") + " " + rs.getInt("value") + " "
+                        + rs.getInt("height") + " " + rs.getBoolean("latest"));
+            }
+        }
+        return rows;
+    }
+
+    // the rollback with one UPDATE statement for each changed key, as it was before the single UPDATE statement
+    private static void rollbackByKey(String table, int height, DbKey.Factory<Object> dbKeyFactory) throws SQLException {
+        try (Connection con = db.getConnection();
+             PreparedStatement pstmtSelectToDelete = con.prepareStatement("SELECT DISTINCT " + dbKeyFactory.getPKColumns()
+                     + " FROM " + table + " WHERE height > ?");
+             PreparedStatement pstmtDelete = con.prepareStatement("DELETE FROM " + table
+                     + " WHERE height > ?");
+             PreparedStatement pstmtSetLatest = con.prepareStatement("UPDATE " + table
+                     + " SET latest = TRUE " + dbKeyFactory.getPKClause() + " AND height ="
+                     + " (SELECT MAX(height) FROM " + table + dbKeyFactory.getPKClause() + ")")) {
+            pstmtSelectToDelete.setInt(1, height);
+            List<DbKey> dbKeys = new ArrayList<>();
+            try (ResultSet rs = pstmtSelectToDelete.executeQuery()) {
+                while (rs.next()) {
+                    dbKeys.add(dbKeyFactory.newKey(rs));
+                }
+            }
+            pstmtDelete.setInt(1, height);
+            pstmtDelete.executeUpdate();
+            for (DbKey dbKey : dbKeys) {
+                int i = 1;
+                i = dbKey.setPK(pstmtSetLatest, i);
+                dbKey.setPK(pstmtSetLatest, i);
+                pstmtSetLatest.executeUpdate();
+            }
+        }
+    }
+
+    private static void rollbackEquivalence(boolean link) throws SQLException {
+        DbKey.Factory<Object> dbKeyFactory = link ? linkKeyFactory : longKeyFactory;
+        Random random = new Random(link ? 2 : 1);
+        for (int run = 0; run < 50; run++) {
+            createTable("rollback_by_key");
+            createTable("rollback_single");
+            int maxHeight = 1 + random.nextInt(30);
+            populate(random, link, maxHeight, "rollback_by_key", "rollback_single");
+            db.beginTransaction();
+            try {
+                for (int height = maxHeight; height >= 0; height -= 1 + random.nextInt(10)) {
+                    rollbackByKey("rollback_by_key", height, dbKeyFactory);
+                    VersionedEntityDbTable.rollback(db, "rollback_single", height, dbKeyFactory);
+                    Assert.assertEquals("run " + run + " height " + height, dump("rollback_by_key"), dump("rollback_single"));
+                }
+                db.commitTransaction();
+            } finally {
+                db.endTransaction();
+            }
+        }
+    }
+
+    private static void trimEquivalence(boolean link) throws SQLException {
+        DbKey.Factory<Object> dbKeyFactory = link ? linkKeyFactory : longKeyFactory;
+        Random random = new Random(link ? 4 : 3);
+        for (int run = 0; run < 50; run++) {
+            createTable("trim_full");
+            createTable("trim_sliced");
+            int maxHeight = 1 + random.nextInt(30);
+            populate(random, link, maxHeight, "trim_full", "trim_sliced");
+            int height = random.nextInt(maxHeight + 2);
+            // small slices end inside the version history of a key
+            int limit = 1 + random.nextInt(5);
+            db.beginTransaction();
+            try {
+                VersionedEntityDbTable.trim(db, "trim_full", height, dbKeyFactory);
+                Object fromKey = null;
+                do {
+                    fromKey = VersionedEntityDbTable.trim(db, "trim_sliced", height, dbKeyFactory, fromKey, limit);
+                } while (fromKey != null);
+                Assert.assertEquals("run " + run + " height " + height + " limit " + limit, dump("trim_full"), dump("trim_sliced"));
+                db.commitTransaction();
+            } finally {
+                db.endTransaction();
+            }
+        }
+    }
+
+    @Test
+    public void rollback() throws Exception {
+        rollbackEquivalence(false);
+    }
+
+    @Test
+    public void rollbackLinkKey() throws Exception {
+        rollbackEquivalence(true);
+    }
+
+    @Test
+    public void trim() throws Exception {
+        trimEquivalence(false);
+    }
+
+    @Test
+    public void trimLinkKey() throws Exception {
+        trimEquivalence(true);
+    }
+
+}
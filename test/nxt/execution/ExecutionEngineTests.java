@@ -53,6 +53,18 @@ public class ExecutionEngineTests {
         Assert.assertTrue(aborted);
     }
 
+    @Test
+    public void notAllowedAccessInReusedSandbox() {
+        sandbox.eval("epl", "1+1;");
+        boolean aborted = false;
+        try {
+            sandbox.eval("epl", "java.lang.System.out.println('hello');");
+        }catch(Exception e){
+            aborted=true;
+        }
+        Assert.assertTrue(aborted);
+    }
+
     @Test
     public void injectedObjectDisallowed() {
         boolean aborted = false;
@@ -97,6 +109,29 @@ public class ExecutionEngineTests {
         Assert.assertEquals(res, new Double(3));
     }
 
+    @Test
+    public void executeCompiledScriptTwice() {
+        int[] u = new int[]{1, 2};
+        sandbox.inject("u", u);
+        org.mozilla.javascript.Script script = sandbox.compile("epl", "function sum(a, b) { return a + b; } sum(u[0], u[1]);");
+        Assert.assertEquals(sandbox.exec(script, new java.util.HashMap<>()), new Double(3));
+        u[0] = 4;
+        u[1] = 6;
+        Assert.assertEquals(sandbox.exec(script, new java.util.HashMap<>()), new Double(10));
+    }
+
+    @Test
+    public void compiledInfiniteLoopAbortion() {
+        boolean aborted = false;
+        try {
+            org.mozilla.javascript.Script script = sandbox.compile("epl", "function loop_forever() { var a=1; while(true){a*a+1;} return a; } loop_forever();");
+            sandbox.exec(script, new java.util.HashMap<>());
+        } catch (Exception e) {
+            aborted = true;
+        }
+        Assert.assertTrue(aborted);
+    }
+
     @Test
     public void syntaxError() {
         boolean aborted = false;
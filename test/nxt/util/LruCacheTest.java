@@ -0,0 +1,68 @@
+/******************************************************************************
+ * Copyright © 2017 The XEL Core Developers.                                  *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * XEL software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LruCacheTest {
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        LruCache<Integer, String> cache = new LruCache<>(8, Long.MAX_VALUE, String::length);
+        for (int i = 0; i < 8; i++) {
+            cache.put(i, "value" + i, cache.getGeneration());
+        }
+        Assert.assertEquals("value0", cache.get(0));
+        cache.put(8, "value8", cache.getGeneration());
+        Assert.assertEquals(7, cache.size());
+        Assert.assertEquals(2, cache.getEvictions());
+        Assert.assertEquals("value0", cache.get(0));
+        Assert.assertNull(cache.get(1));
+        Assert.assertNull(cache.get(2));
+        Assert.assertEquals("value8", cache.get(8));
+        Assert.assertEquals(3, cache.getHits());
+        Assert.assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void boundedByBytes() {
+        LruCache<Integer, String> cache = new LruCache<>(100, 16, String::length);
+        cache.put(1, "12345678", cache.getGeneration());
+        cache.put(2, "12345678", cache.getGeneration());
+        Assert.assertEquals(16, cache.getBytes());
+        cache.put(3, "1234", cache.getGeneration());
+        Assert.assertNull(cache.get(1));
+        Assert.assertEquals(12, cache.getBytes());
+        cache.put(4, "12345678901234567", cache.getGeneration());
+        Assert.assertNull(cache.get(4));
+    }
+
+    @Test
+    public void staleGenerationIgnored() {
+        LruCache<Integer, String> cache = new LruCache<>(10, Long.MAX_VALUE, String::length);
+        int generation = cache.getGeneration();
+        cache.put(1, "one", generation);
+        cache.clear();
+        cache.put(2, "two", generation);
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.getBytes());
+        cache.put(2, "two", cache.getGeneration());
+        Assert.assertEquals("two", cache.get(2));
+    }
+
+}